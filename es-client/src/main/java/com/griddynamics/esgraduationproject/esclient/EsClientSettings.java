@@ -0,0 +1,35 @@
+package com.griddynamics.esgraduationproject.esclient;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection settings of the ES transport. The client defaults (10 connections per route, 30 in total)
+ * are far below the concurrency of the services, so requests queued for a pooled connection.
+ */
+@Data
+public class EsClientSettings {
+    // http(s)://host:port of the nodes, requests are round-robined over them
+    private List<String> hosts = new ArrayList<>();
+    private String user;
+    private String pass;
+
+    private int maxConnPerRoute = 50;
+    private int maxConnTotal = 200;
+    // IO reactor (dispatcher) threads, 0 = number of CPUs
+    private int ioThreads;
+    private int connectTimeoutMs = 1000;
+    private int socketTimeoutMs = 30000;
+    // Max wait for a pooled connection, -1 = no limit
+    private int connectionRequestTimeoutMs = 1000;
+
+    // Searches ask ES for Smile instead of JSON responses, cheaper to parse for the client
+    private boolean smileResponses;
+
+    // Replaces the hosts with the HTTP nodes of the cluster, periodically and after failures
+    private boolean sniffEnabled;
+    private int sniffIntervalMs = 300000;
+    private int sniffAfterFailureDelayMs = 60000;
+}
@@ -0,0 +1,145 @@
+package com.griddynamics.esgraduationproject.esclient;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.sniff.ElasticsearchNodesSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Tuned HTTP transport of an ES client: a connection pool sized for the service concurrency, its own IO
+ * reactor threads, connect/socket/pool timeouts, several hosts and optional node sniffing.
+ * <p>
+ * Usage: build the (high level) client from {@link #getRestClientBuilder()}, then {@link #register} its
+ * low-level client. The transport owns the client from then on and closes it in {@link #close()}.
+ */
+@Slf4j
+public class EsTransport implements Closeable {
+    private final String name;
+    private final EsClientSettings settings;
+    private final HttpHost[] hosts;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final SniffOnFailureListener sniffOnFailureListener = new SniffOnFailureListener();
+
+    private RestClient restClient;
+    private Sniffer sniffer;
+
+    public EsTransport(String name, EsClientSettings settings) throws IOReactorException {
+        if (settings.getHosts().isEmpty()) {
+            throw new IllegalArgumentException("No ES hosts configured for " + name);
+        }
+        this.name = name;
+        this.settings = settings;
+        this.hosts = settings.getHosts().stream().map(String::trim).map(HttpHost::create).toArray(HttpHost[]::new);
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+            .setIoThreadCount(settings.getIoThreads() > 0
+                ? settings.getIoThreads() : Runtime.getRuntime().availableProcessors())
+            .setConnectTimeout(settings.getConnectTimeoutMs())
+            .setSoTimeout(settings.getSocketTimeoutMs())
+            .setSoKeepAlive(true)
+            .setTcpNoDelay(true)
+            .build();
+        connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnPerRoute());
+        connectionManager.setMaxTotal(settings.getMaxConnTotal());
+    }
+
+    public RestClientBuilder getRestClientBuilder() {
+        RestClientBuilder builder = RestClient.builder(hosts)
+            .setRequestConfigCallback(requestConfig -> requestConfig
+                .setConnectTimeout(settings.getConnectTimeoutMs())
+                .setSocketTimeout(settings.getSocketTimeoutMs())
+                .setConnectionRequestTimeout(settings.getConnectionRequestTimeoutMs()))
+            .setHttpClientConfigCallback(httpClient -> {
+                // The pool limits and IO reactor settings of the builder are ignored with an own connection manager
+                httpClient.setConnectionManager(connectionManager);
+                // Use credentials if they exist (ES cluster should support authentication)
+                if (isNotBlank(settings.getUser()) && isNotBlank(settings.getPass())) {
+                    BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                    credentialsProvider.setCredentials(AuthScope.ANY,
+                        new UsernamePasswordCredentials(settings.getUser(), settings.getPass()));
+                    httpClient.setDefaultCredentialsProvider(credentialsProvider);
+                }
+                return httpClient;
+            });
+        if (settings.isSniffEnabled()) {
+            builder.setFailureListener(sniffOnFailureListener);
+        }
+        return builder;
+    }
+
+    /**
+     * Options of the search requests. Not default headers of the client: the sniffer and other low-level
+     * callers parse the responses as JSON.
+     */
+    public RequestOptions getSearchRequestOptions() {
+        if (!settings.isSmileResponses()) {
+            return RequestOptions.DEFAULT;
+        }
+        RequestOptions.Builder options = RequestOptions.DEFAULT.toBuilder();
+        options.addHeader(HttpHeaders.ACCEPT, "application/smile");
+        return options.build();
+    }
+
+    /**
+     * @param restClient the low-level client built from {@link #getRestClientBuilder()}
+     */
+    public synchronized void register(RestClient restClient) {
+        this.restClient = restClient;
+        if (settings.isSniffEnabled()) {
+            ElasticsearchNodesSniffer.Scheme scheme = "https".equals(hosts[0].getSchemeName())
+                ? ElasticsearchNodesSniffer.Scheme.HTTPS : ElasticsearchNodesSniffer.Scheme.HTTP;
+            sniffer = Sniffer.builder(restClient)
+                .setSniffIntervalMillis(settings.getSniffIntervalMs())
+                .setSniffAfterFailureDelayMillis(settings.getSniffAfterFailureDelayMs())
+                .setNodesSniffer(new ElasticsearchNodesSniffer(restClient,
+                    TimeUnit.SECONDS.toMillis(1), scheme))
+                .build();
+            sniffOnFailureListener.setSniffer(sniffer);
+        }
+        log.info("ES transport {}: {} host(s), {} connections per route, {} in total, sniffing {}", name,
+            hosts.length, settings.getMaxConnPerRoute(), settings.getMaxConnTotal(),
+            settings.isSniffEnabled() ? "enabled" : "disabled");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Leased (in use), pending (waiting for a connection), available (idle) and max connections of the pool.
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    // The sniffer goes first, it uses the client
+    @Override
+    public synchronized void close() throws IOException {
+        if (sniffer != null) {
+            sniffer.close();
+        }
+        if (restClient != null) {
+            restClient.close();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.griddynamics.esgraduationproject.esclient;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Connection pool usage of a transport: es.client.pool.leased / pending / available / max, tagged with
+ * the transport name. pending > 0 means requests wait for a connection, the pool is too small.
+ */
+public class EsTransportMetrics implements MeterBinder {
+    private final EsTransport transport;
+
+    public EsTransportMetrics(EsTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("es.client.pool.leased", transport, t -> t.getPoolStats().getLeased())
+            .tag("client", transport.getName())
+            .description("Connections in use")
+            .register(registry);
+        Gauge.builder("es.client.pool.pending", transport, t -> t.getPoolStats().getPending())
+            .tag("client", transport.getName())
+            .description("Requests waiting for a connection")
+            .register(registry);
+        Gauge.builder("es.client.pool.available", transport, t -> t.getPoolStats().getAvailable())
+            .tag("client", transport.getName())
+            .description("Idle connections")
+            .register(registry);
+        Gauge.builder("es.client.pool.max", transport, t -> t.getPoolStats().getMax())
+            .tag("client", transport.getName())
+            .description("Max connections")
+            .register(registry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.griddynamics.esgraduationproject.esclient;
+
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class EsTransportTest {
+
+    private EsStubServer node1;
+    private EsStubServer node2;
+    private EsTransport transport;
+    private RestHighLevelClient esClient;
+
+    @Before
+    public void setUp() throws IOException {
+        node1 = new EsStubServer(0).start();
+        node2 = new EsStubServer(0).start();
+        node1.createIndex("test_index");
+        node2.createIndex("test_index");
+
+        EsClientSettings settings = new EsClientSettings();
+        settings.setHosts(Arrays.asList("http://localhost:" + node1.getPort(), " http://localhost:" + node2.getPort()));
+        settings.setMaxConnPerRoute(2);
+        settings.setMaxConnTotal(4);
+        settings.setIoThreads(1);
+        transport = new EsTransport("test", settings);
+        esClient = new RestHighLevelClient(transport.getRestClientBuilder());
+        transport.register(esClient.getLowLevelClient());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        node1.stop();
+        node2.stop();
+    }
+
+    @Test
+    public void testRequestsAreSpreadOverHosts() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            esClient.search(new SearchRequest("test_index"), RequestOptions.DEFAULT);
+        }
+
+        assertThat(node1.getRequestCount(EsStubServer.SEARCH), is(5L));
+        assertThat(node2.getRequestCount(EsStubServer.SEARCH), is(5L));
+    }
+
+    @Test
+    public void testPoolIsReportedAsMetrics() throws IOException {
+        esClient.search(new SearchRequest("test_index"), RequestOptions.DEFAULT);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new EsTransportMetrics(transport).bindTo(registry);
+
+        assertThat(registry.get("es.client.pool.max").tag("client", "test").gauge().value(), is(4.0));
+        assertThat(registry.get("es.client.pool.leased").gauge().value(), is(0.0));
+        assertThat(registry.get("es.client.pool.available").gauge().value(), greaterThan(0.0));
+        assertThat(registry.get("es.client.pool.pending").gauge().value(), is(0.0));
+    }
+}
@@ -1,6 +1,7 @@
 package com.griddynamics.esgraduationproject;
 
-import com.griddynamics.esgraduationproject.service.TypeaheadService;
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
+import com.griddynamics.esgraduationproject.service.IndexRebuildService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
@@ -17,7 +18,7 @@ public class Application implements CommandLineRunner {
     private static final String RECREATE_INDEX_ARG = "recreateIndex";
 
     @Autowired
-    TypeaheadService typeaheadService;
+    IndexRebuildService indexRebuildService;
 
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
@@ -28,7 +29,9 @@ public class Application implements CommandLineRunner {
         List<String> args = asList(strings);
         boolean needRecreateIndex = args.contains(RECREATE_INDEX_ARG);
         if (needRecreateIndex) {
-            typeaheadService.recreateIndex();
+            // In the background, searches are served from the previous index generation meanwhile
+            IndexRebuildJob job = indexRebuildService.startRebuild("startup");
+            log.info("Index rebuild job {}: {}", job.getId(), job.getState());
         }
     }
 }
@@ -1,41 +1,52 @@
 package com.griddynamics.esgraduationproject.config;
 
+import com.griddynamics.esgraduationproject.esclient.EsClientSettings;
+import com.griddynamics.esgraduationproject.esclient.EsTransport;
+import com.griddynamics.esgraduationproject.esclient.EsTransportMetrics;
 import lombok.Data;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestClientBuilder;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import java.util.Arrays;
 
 @Configuration
 @ConfigurationProperties("com.griddynamics.es.graduation.project")
 @Data
 public class ElasticsearchConfig {
+    // One host or a comma-separated list of them
     private String esHost;
     private String user;
     private String pass;
 
-    @Bean(name = "esClient")
-    public RestHighLevelClient getEsClient() {
-        RestClientBuilder restClientBuilder = RestClient.builder(HttpHost.create(esHost));
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.es-client")
+    public EsClientSettings esClientSettings() {
+        return new EsClientSettings();
+    }
 
-        // Use credentials if they exist (ES cluster should support authentication)
-        if (isNotBlank(user) && isNotBlank(pass)) {
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY,
-                new UsernamePasswordCredentials(user, pass));
-            restClientBuilder.setHttpClientConfigCallback(
-                httpClientBuilder -> httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider));
+    @Bean
+    public EsTransport esTransport(EsClientSettings esClientSettings) throws IOReactorException {
+        if (esClientSettings.getHosts().isEmpty()) {
+            esClientSettings.setHosts(Arrays.asList(esHost.split(",")));
         }
+        esClientSettings.setUser(user);
+        esClientSettings.setPass(pass);
+        return new EsTransport("typeahead", esClientSettings);
+    }
+
+    @Bean
+    public EsTransportMetrics esTransportMetrics(EsTransport esTransport) {
+        return new EsTransportMetrics(esTransport);
+    }
 
-        return new RestHighLevelClient(restClientBuilder);
+    // The transport closes the client
+    @Bean(name = "esClient", destroyMethod = "")
+    public RestHighLevelClient getEsClient(EsTransport esTransport) {
+        RestHighLevelClient esClient = new RestHighLevelClient(esTransport.getRestClientBuilder());
+        esTransport.register(esClient.getLowLevelClient());
+        return esClient;
     }
 }
@@ -0,0 +1,26 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.esgraduationproject.rest.IndexRebuildEndpoint;
+import com.griddynamics.esgraduationproject.service.IndexRebuildService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+public class IndexRebuildConfig {
+
+    // Runs the rebuild jobs, their lock heartbeats and the scheduled triggers
+    @Bean
+    public ThreadPoolTaskScheduler indexRebuildScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("index-rebuild-");
+        scheduler.setDaemon(true);
+        return scheduler;
+    }
+
+    @Bean
+    public IndexRebuildEndpoint indexRebuildEndpoint(IndexRebuildService indexRebuildService) {
+        return new IndexRebuildEndpoint(indexRebuildService);
+    }
+}
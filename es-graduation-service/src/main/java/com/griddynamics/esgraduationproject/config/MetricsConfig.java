@@ -0,0 +1,46 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedBinaryJackson2HttpMessageConverter;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedJackson2HttpMessageConverter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Collections;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public StageMetrics typeaheadStageMetrics(MeterRegistry meterRegistry) {
+        return new StageMetrics(meterRegistry, "typeahead");
+    }
+
+    // Replaces the default Jackson converter to measure response serialization
+    @Bean
+    public TimedJackson2HttpMessageConverter timedJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                               StageMetrics typeaheadStageMetrics) {
+        return new TimedJackson2HttpMessageConverter(objectMapper,
+            Collections.singletonMap(TypeaheadServiceResponse.class, typeaheadStageMetrics));
+    }
+
+    // Accept: application/x-jackson-smile, the builder is a prototype: each converter gets its own
+    @Bean
+    public TimedBinaryJackson2HttpMessageConverter timedSmileHttpMessageConverter(
+        Jackson2ObjectMapperBuilder objectMapperBuilder, StageMetrics typeaheadStageMetrics) {
+        return TimedBinaryJackson2HttpMessageConverter.smile(objectMapperBuilder,
+            Collections.singletonMap(TypeaheadServiceResponse.class, typeaheadStageMetrics));
+    }
+
+    // Accept: application/cbor
+    @Bean
+    public TimedBinaryJackson2HttpMessageConverter timedCborHttpMessageConverter(
+        Jackson2ObjectMapperBuilder objectMapperBuilder, StageMetrics typeaheadStageMetrics) {
+        return TimedBinaryJackson2HttpMessageConverter.cbor(objectMapperBuilder,
+            Collections.singletonMap(TypeaheadServiceResponse.class, typeaheadStageMetrics));
+    }
+}
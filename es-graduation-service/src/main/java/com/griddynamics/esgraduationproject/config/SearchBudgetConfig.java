@@ -0,0 +1,42 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.esgraduationproject.esclient.EsTransport;
+import com.griddynamics.esgraduationproject.searchcommons.es.BudgetedSearchExecutor;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchBudget;
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryLog;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+@Configuration
+public class SearchBudgetConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.budget.typeahead")
+    public SearchBudget typeaheadSearchBudget() {
+        return new SearchBudget();
+    }
+
+    // Timers for hedges and deadlines, the tasks only send async requests or complete futures
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService searchTimerScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean
+    public BudgetedSearchExecutor typeaheadSearchExecutor(RestHighLevelClient esClient, EsTransport esTransport,
+                                                          ScheduledExecutorService searchTimerScheduler,
+                                                          SlowQueryLog typeaheadSlowQueryLog) {
+        return new BudgetedSearchExecutor(esClient, "typeahead", typeaheadSearchBudget(), searchTimerScheduler,
+            typeaheadSlowQueryLog)
+            .setRequestOptions(esTransport.getSearchRequestOptions());
+    }
+}
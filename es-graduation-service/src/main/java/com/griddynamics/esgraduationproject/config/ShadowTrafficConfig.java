@@ -0,0 +1,33 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.esgraduationproject.searchcommons.query.BoolPrefixTypeaheadQueryStrategy;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficComparator;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ShadowTrafficConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.shadow.typeahead")
+    public ShadowTrafficSettings typeaheadShadowTrafficSettings() {
+        return new ShadowTrafficSettings();
+    }
+
+    @Bean
+    public ShadowTrafficComparator typeaheadShadowTrafficComparator(RestHighLevelClient esClient,
+                                                                    MeterRegistry registry) {
+        return new ShadowTrafficComparator("typeahead", typeaheadShadowTrafficSettings(), esClient, registry);
+    }
+
+    // Query strategies besides the fuzzy dis_max one of the repository; every TypeaheadQueryStrategy bean
+    // can be the live strategy (request.queryStrategy) or the shadow candidate
+    @Bean
+    public BoolPrefixTypeaheadQueryStrategy boolPrefixTypeaheadQueryStrategy() {
+        return new BoolPrefixTypeaheadQueryStrategy();
+    }
+}
@@ -0,0 +1,38 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryEndpoint;
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryLog;
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQuerySettings;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIdFilter;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+
+@Configuration
+public class SlowQueryConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.slowlog.typeahead")
+    public SlowQuerySettings typeaheadSlowQuerySettings() {
+        return new SlowQuerySettings();
+    }
+
+    @Bean
+    public SlowQueryLog typeaheadSlowQueryLog(RestHighLevelClient esClient) {
+        return new SlowQueryLog("typeahead", typeaheadSlowQuerySettings(), esClient);
+    }
+
+    @Bean
+    public SlowQueryEndpoint slowQueryEndpoint(SlowQueryLog typeaheadSlowQueryLog) {
+        return new SlowQueryEndpoint(Collections.singletonList(typeaheadSlowQueryLog));
+    }
+
+    // X-Request-Id -> MDC, sent to ES as X-Opaque-Id
+    @Bean
+    public RequestIdFilter requestIdFilter() {
+        return new RequestIdFilter();
+    }
+}
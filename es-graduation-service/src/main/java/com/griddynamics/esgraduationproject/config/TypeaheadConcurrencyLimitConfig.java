@@ -0,0 +1,22 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.esgraduationproject.searchcommons.limit.ConcurrencyLimitConfig;
+import com.griddynamics.esgraduationproject.searchcommons.limit.ConcurrencyLimitSettings;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TypeaheadConcurrencyLimitConfig extends ConcurrencyLimitConfig {
+
+    public TypeaheadConcurrencyLimitConfig() {
+        super("typeahead");
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.limit.typeahead")
+    @Override
+    public ConcurrencyLimitSettings concurrencyLimitSettings() {
+        return new ConcurrencyLimitSettings();
+    }
+}
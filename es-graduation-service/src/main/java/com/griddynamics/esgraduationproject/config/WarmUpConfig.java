@@ -0,0 +1,57 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
+import com.griddynamics.esgraduationproject.searchcommons.warmup.ReadinessEndpoint;
+import com.griddynamics.esgraduationproject.searchcommons.warmup.WarmUp;
+import com.griddynamics.esgraduationproject.searchcommons.warmup.WarmUpSettings;
+import com.griddynamics.esgraduationproject.service.TypeaheadService;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+
+@Configuration
+public class WarmUpConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.warmup.typeahead")
+    public WarmUpSettings typeaheadWarmUpSettings() {
+        return new WarmUpSettings();
+    }
+
+    // Same ObjectMapper as the HTTP message converter, so its (de)serializers get warmed up too
+    @Bean
+    public WarmUp typeaheadWarmUp(TypeaheadService typeaheadService, ObjectMapper objectMapper,
+                                  ResourceLoader resourceLoader) throws IOException {
+        WarmUpSettings settings = typeaheadWarmUpSettings();
+        List<String> corpus = settings.isEnabled() && settings.getCorpus() != null
+            ? WarmUp.readCorpus(resourceLoader.getResource(settings.getCorpus()))
+            : Collections.emptyList();
+        return new WarmUp("typeahead", settings, corpus, body -> {
+            try {
+                TypeaheadServiceRequest request = objectMapper.readValue(body, TypeaheadServiceRequest.class);
+                objectMapper.writeValueAsBytes(typeaheadService.getServiceResponse(request));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> typeaheadWarmUpStarter(WarmUp typeaheadWarmUp) {
+        return event -> typeaheadWarmUp.start();
+    }
+
+    @Bean
+    public ReadinessEndpoint readinessEndpoint(WarmUp typeaheadWarmUp) {
+        return new ReadinessEndpoint(Collections.singletonList(typeaheadWarmUp));
+    }
+}
@@ -0,0 +1,17 @@
+package com.griddynamics.esgraduationproject.model;
+
+import lombok.Data;
+
+/**
+ * Lease on an index, stored as a document in ES so that only one instance rebuilds the index at a time.
+ * The sequence number and primary term make renewals and releases conditional on still holding the lease.
+ */
+@Data
+public class IndexLock {
+    private String name;
+    private String owner;
+    private String jobId;
+    private long expiresAtMillis;
+    private long seqNo;
+    private long primaryTerm;
+}
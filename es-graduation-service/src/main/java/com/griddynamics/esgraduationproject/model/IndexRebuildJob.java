@@ -0,0 +1,57 @@
+package com.griddynamics.esgraduationproject.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Index rebuild run in the background: a new index generation is built and the alias is switched to it
+ * when it's done, searches are served from the previous generation meanwhile.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IndexRebuildJob {
+    public enum State { RUNNING, SUCCEEDED, FAILED, SKIPPED }
+
+    private final String id;
+    // admin, scheduler or startup
+    private final String trigger;
+    // Instance that runs the job, see the ES lock document
+    private final String owner;
+    private final Instant startedAt = Instant.now();
+
+    // Written by the job thread, read by the admin endpoint
+    private volatile State state = State.RUNNING;
+    private volatile String alias;
+    private volatile String targetIndex;
+    private volatile long docsTotal;
+    private volatile long docsIndexed;
+    // Rejected by ES, the rebuild fails above rebuild.maxFailedDocs
+    private volatile long docsFailed;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    // Set by the heartbeat when the lock couldn't be renewed, another instance may take it over
+    @JsonIgnore
+    private volatile boolean leaseLost;
+
+    public double getDocsPerSecond() {
+        long elapsedMs = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toMillis();
+        return elapsedMs > 0 ? docsIndexed * 1000.0 / elapsedMs : 0;
+    }
+
+    // Called before each step that writes to the new generation or the alias
+    public void checkLease() {
+        if (leaseLost) {
+            throw new IllegalStateException("The lock of " + alias + " was lost, another instance may rebuild it");
+        }
+    }
+
+    public void finish(State finalState, String finalError) {
+        error = finalError;
+        finishedAt = Instant.now();
+        state = finalState;
+    }
+}
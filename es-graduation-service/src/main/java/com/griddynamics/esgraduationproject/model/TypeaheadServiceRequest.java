@@ -1,5 +1,6 @@
 package com.griddynamics.esgraduationproject.model;
 
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadScoringMode;
 import lombok.Data;
 
 @Data
@@ -7,6 +8,12 @@ public class TypeaheadServiceRequest {
     private Integer size;
     private String textQuery;
     private Boolean considerItemCountInSorting;
+    // null = request.scoringMode of the configuration
+    private TypeaheadScoringMode scoringMode;
+    // false = no facets, the matches don't have to be collected exhaustively
+    private Boolean facets;
+    // Count all matches instead of stopping at request.totalHits.trackUpTo
+    private Boolean exactTotalHits;
 
     public boolean isGetAllRequest() {
         return textQuery == null;
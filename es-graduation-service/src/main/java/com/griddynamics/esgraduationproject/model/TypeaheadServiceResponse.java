@@ -1,6 +1,7 @@
 package com.griddynamics.esgraduationproject.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleMarkable;
 import lombok.Data;
 
 import java.util.ArrayList;
@@ -10,8 +11,14 @@ import java.util.Map;
 
 @Data
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
-public class TypeaheadServiceResponse {
+public class TypeaheadServiceResponse implements StaleMarkable {
     private Long totalHits;
+    // eq, or gte when totalHits is only a lower bound
+    private String totalHitsRelation;
+    // Set only when results may be incomplete because the latency budget was hit
+    private Boolean partial;
+    // Set only when ES is unavailable and the last known good response is served
+    private Boolean stale;
     private List<Map<String, Object>> typeaheads;
     private Map<String, Map<String, Map<String, Number>>> facets = new HashMap<>();
 }
@@ -0,0 +1,22 @@
+package com.griddynamics.esgraduationproject.repository;
+
+import com.griddynamics.esgraduationproject.model.IndexLock;
+
+public interface IndexLockRepository {
+    /**
+     * @return the lock, or null if another owner holds an unexpired lease on it
+     */
+    IndexLock tryAcquire(String name, String owner, String jobId, long leaseMs);
+
+    /**
+     * @return false if the lease was lost (expired and taken over by another owner)
+     */
+    boolean renew(IndexLock lock, long leaseMs);
+
+    void release(IndexLock lock);
+
+    /**
+     * @return the current holder of the lock, or null if it's free
+     */
+    IndexLock getHolder(String name);
+}
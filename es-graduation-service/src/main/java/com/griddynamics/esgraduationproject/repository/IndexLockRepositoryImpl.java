@@ -0,0 +1,177 @@
+package com.griddynamics.esgraduationproject.repository;
+
+import com.griddynamics.esgraduationproject.model.IndexLock;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Locks are documents of the lock index (id = lock name) created with op_type=create, so only one
+ * owner can hold a lock. An expired lock (its owner died mid-rebuild) is taken over with a delete
+ * conditional on its sequence number, so two instances can't take over the same expired lock.
+ */
+@Component
+@Slf4j
+public class IndexLockRepositoryImpl implements IndexLockRepository {
+    private static final String OWNER_FIELD = "owner";
+    private static final String JOB_ID_FIELD = "jobId";
+    private static final String EXPIRES_AT_FIELD = "expiresAt";
+
+    @Autowired
+    private RestHighLevelClient esClient;
+
+    @Value("${com.griddynamics.es.graduation.project.rebuild.lockIndex:index_locks}")
+    private String lockIndex;
+
+    @Override
+    public IndexLock tryAcquire(String name, String owner, String jobId, long leaseMs) {
+        IndexLock lock = newLock(name, owner, jobId, leaseMs);
+        if (create(lock)) {
+            return lock;
+        }
+
+        IndexLock holder = getHolder(name);
+        if (holder != null && holder.getExpiresAtMillis() > System.currentTimeMillis()) {
+            return null;
+        }
+        if (holder != null) {
+            log.warn("Taking over the expired lock {} of {} (job {})", name, holder.getOwner(), holder.getJobId());
+            if (!delete(holder)) {
+                return null;
+            }
+        }
+        return create(lock) ? lock : null;
+    }
+
+    @Override
+    public boolean renew(IndexLock lock, long leaseMs) {
+        long expiresAtMillis = System.currentTimeMillis() + leaseMs;
+        IndexRequest request = new IndexRequest(lockIndex)
+            .id(lock.getName())
+            .source(toSource(lock.getOwner(), lock.getJobId(), expiresAtMillis))
+            .setIfSeqNo(lock.getSeqNo())
+            .setIfPrimaryTerm(lock.getPrimaryTerm())
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        try {
+            IndexResponse response = esClient.index(request, RequestOptions.DEFAULT);
+            lock.setExpiresAtMillis(expiresAtMillis);
+            lock.setSeqNo(response.getSeqNo());
+            lock.setPrimaryTerm(response.getPrimaryTerm());
+            return true;
+        } catch (ElasticsearchStatusException ex) {
+            if (ex.status() == RestStatus.CONFLICT) {
+                return false;
+            }
+            throw ex;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to renew lock " + lock.getName(), ex);
+        }
+    }
+
+    @Override
+    public void release(IndexLock lock) {
+        if (!delete(lock)) {
+            log.warn("Lock {} of job {} was already lost", lock.getName(), lock.getJobId());
+        }
+    }
+
+    @Override
+    public IndexLock getHolder(String name) {
+        try {
+            GetResponse response = esClient.get(new GetRequest(lockIndex, name), RequestOptions.DEFAULT);
+            if (!response.isExists()) {
+                return null;
+            }
+            Map<String, Object> source = response.getSourceAsMap();
+            IndexLock lock = new IndexLock();
+            lock.setName(name);
+            lock.setOwner((String) source.get(OWNER_FIELD));
+            lock.setJobId((String) source.get(JOB_ID_FIELD));
+            lock.setExpiresAtMillis(((Number) source.get(EXPIRES_AT_FIELD)).longValue());
+            lock.setSeqNo(response.getSeqNo());
+            lock.setPrimaryTerm(response.getPrimaryTerm());
+            return lock;
+        } catch (ElasticsearchStatusException ex) {
+            // The lock index is created by the first lock
+            if (ex.status() == RestStatus.NOT_FOUND) {
+                return null;
+            }
+            throw ex;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read lock " + name, ex);
+        }
+    }
+
+    private boolean create(IndexLock lock) {
+        IndexRequest request = new IndexRequest(lockIndex)
+            .id(lock.getName())
+            .opType(DocWriteRequest.OpType.CREATE)
+            .source(toSource(lock.getOwner(), lock.getJobId(), lock.getExpiresAtMillis()))
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        try {
+            IndexResponse response = esClient.index(request, RequestOptions.DEFAULT);
+            lock.setSeqNo(response.getSeqNo());
+            lock.setPrimaryTerm(response.getPrimaryTerm());
+            return true;
+        } catch (ElasticsearchStatusException ex) {
+            if (ex.status() == RestStatus.CONFLICT) {
+                return false;
+            }
+            throw ex;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to create lock " + lock.getName(), ex);
+        }
+    }
+
+    // Conditional on the sequence number: false if the lock was renewed or taken over meanwhile
+    private boolean delete(IndexLock lock) {
+        DeleteRequest request = new DeleteRequest(lockIndex, lock.getName())
+            .setIfSeqNo(lock.getSeqNo())
+            .setIfPrimaryTerm(lock.getPrimaryTerm())
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        try {
+            return esClient.delete(request, RequestOptions.DEFAULT).getResult() == DocWriteResponse.Result.DELETED;
+        } catch (ElasticsearchStatusException ex) {
+            if (ex.status() == RestStatus.CONFLICT || ex.status() == RestStatus.NOT_FOUND) {
+                return false;
+            }
+            throw ex;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to delete lock " + lock.getName(), ex);
+        }
+    }
+
+    private static IndexLock newLock(String name, String owner, String jobId, long leaseMs) {
+        IndexLock lock = new IndexLock();
+        lock.setName(name);
+        lock.setOwner(owner);
+        lock.setJobId(jobId);
+        lock.setExpiresAtMillis(System.currentTimeMillis() + leaseMs);
+        return lock;
+    }
+
+    private static Map<String, Object> toSource(String owner, String jobId, long expiresAtMillis) {
+        Map<String, Object> source = new HashMap<>();
+        source.put(OWNER_FIELD, owner);
+        source.put(JOB_ID_FIELD, jobId);
+        source.put(EXPIRES_AT_FIELD, expiresAtMillis);
+        return source;
+    }
+}
@@ -1,11 +1,38 @@
 package com.griddynamics.esgraduationproject.repository;
 
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
 
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Search methods throw {@link com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException}
+ * if ES can't answer.
+ */
 public interface TypeaheadRepository {
     TypeaheadServiceResponse getAllTypeaheads(TypeaheadServiceRequest request);
     TypeaheadServiceResponse getTypeaheadsByQuery(TypeaheadServiceRequest request);
 
-    void recreateIndex();
+    /**
+     * Searches all the requests in the given index generation instead of the alias, in one _msearch
+     * and without the latency budget of the live searches.
+     */
+    List<TypeaheadServiceResponse> getTypeaheadsByQuery(String generation, List<TypeaheadServiceRequest> requests);
+
+    /**
+     * Names of all the typeaheads in the given index generation.
+     */
+    Set<String> getTypeaheadNames(String generation);
+
+    /**
+     * Concrete index(es) behind the alias, comma separated.
+     */
+    String getGeneration();
+
+    /**
+     * Builds a new index generation and switches the alias to it, the progress is reported to the job.
+     */
+    void recreateIndex(IndexRebuildJob job);
 }
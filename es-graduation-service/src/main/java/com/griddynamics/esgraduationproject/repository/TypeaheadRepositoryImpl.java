@@ -2,28 +2,50 @@ package com.griddynamics.esgraduationproject.repository;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadScoringMode;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.searchcommons.es.BudgetedSearchExecutor;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.SearchEvent;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadQueryBuilder;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadQuerySettings;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadQueryStrategy;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadSearchBuilder;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadSearchSettings;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficComparator;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.TotalHits;
 import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.BoolQueryBuilder;
-import org.elasticsearch.index.query.DisMaxQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
@@ -36,22 +58,29 @@ import org.elasticsearch.search.aggregations.metrics.ParsedStats;
 import org.elasticsearch.search.aggregations.metrics.StatsAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
-import org.elasticsearch.search.sort.ScoreSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
@@ -62,16 +91,30 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
 
     private static final String ITEM_COUNT_AGG = "itemCountRangeAgg";
     private static final String RANK_STATS_SUB_AGG = "RankStatsSubAgg";
-    private static final String NAME_FIELD = "name";
-    private static final String ITEM_COUNT_FIELD = "itemCount";
-    private static final String RANK_FIELD = "rank";
-    private static final String ID_FIELD = "_id";
+    private static final String ITEM_COUNT_FIELD = TypeaheadSearchBuilder.ITEM_COUNT_FIELD;
+    private static final String RANK_FIELD = TypeaheadSearchBuilder.RANK_FIELD;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final DateTimeFormatter GENERATION_FORMAT =
+        DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS").withZone(ZoneOffset.UTC);
 
     @Autowired
     private RestHighLevelClient esClient;
 
+    @Autowired
+    private BudgetedSearchExecutor typeaheadSearchExecutor;
+
+    @Autowired
+    private StageMetrics typeaheadStageMetrics;
+
+    @Autowired
+    private ShadowTrafficComparator typeaheadShadowTrafficComparator;
+
+    // Strategies besides the fuzzy dis_max one (ShadowTrafficConfig)
+    @Autowired(required = false)
+    private List<TypeaheadQueryStrategy> queryStrategyBeans = new ArrayList<>();
+
     @Value("${com.griddynamics.es.graduation.project.index}")
     private String indexName;
 
@@ -87,6 +130,9 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
     float fuzzyTwoBoost;
     @Value("${com.griddynamics.es.graduation.project.request.prefixQueryBoost:0.9}")
     float prefixQueryBoost;
+    // Name of the live text query strategy, see TypeaheadQueryStrategy
+    @Value("${com.griddynamics.es.graduation.project.request.queryStrategy:fuzzy_dismax}")
+    private String queryStrategyName;
 
     // Mappings, settings and bulk data files
     @Value("${com.griddynamics.es.graduation.project.files.mappings:classpath:elastic/typeaheads/mappings.json}")
@@ -95,51 +141,185 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
     private Resource typeaheadsSettingsFile;
     @Value("${com.griddynamics.es.graduation.project.files.bulkData:classpath:elastic/typeaheads/bulk_data.txt}")
     private Resource typeaheadsBulkInsertDataFile;
+    @Value("${com.griddynamics.es.graduation.project.rebuild.batchSize:1000}")
+    private int bulkBatchSize;
+    // Documents ES may reject while a generation is built, above it the rebuild fails and the alias stays
+    @Value("${com.griddynamics.es.graduation.project.rebuild.maxFailedDocs:0}")
+    private long maxFailedDocs;
+    // Total hits are counted exactly up to this number (lower bound above it), unless the request asks for
+    // exact ones; a low value lets shards stop collecting early, -1 = always exact
+    @Value("${com.griddynamics.es.graduation.project.request.totalHits.trackUpTo:1000}")
+    private int trackTotalHitsUpTo;
+    // Scoring mode of the requests without one, see TypeaheadScoringMode
+    @Value("${com.griddynamics.es.graduation.project.request.scoringMode:FIELD_SORT}")
+    private TypeaheadScoringMode defaultScoringMode;
+    // Weight of the rank_feature query in the RANK_FEATURE mode
+    @Value("${com.griddynamics.es.graduation.project.request.rankFeature.boost:1.0}")
+    private float rankFeatureBoost;
+
+    private TypeaheadQueryBuilder typeaheadQueryBuilder;
+    private TypeaheadSearchBuilder typeaheadSearchBuilder;
+    private TypeaheadQueryStrategy queryStrategy;
+    // Get-all sort = the index sort of settings.json, so the shards can stop after size docs per segment
+    private List<FieldSortBuilder> indexSort;
+
+    @PostConstruct
+    public void init() {
+        TypeaheadQuerySettings querySettings = new TypeaheadQuerySettings();
+        querySettings.setFuzzyOneStartsFromLength(fuzzyOneStartsFromLength);
+        querySettings.setFuzzyTwoStartsFromLength(fuzzyTwoStartsFromLength);
+        querySettings.setFuzzyZeroBoost(fuzzyZeroBoost);
+        querySettings.setFuzzyOneBoost(fuzzyOneBoost);
+        querySettings.setFuzzyTwoBoost(fuzzyTwoBoost);
+        querySettings.setPrefixQueryBoost(prefixQueryBoost);
+        typeaheadQueryBuilder = new TypeaheadQueryBuilder(querySettings);
+
+        TypeaheadSearchSettings searchSettings = new TypeaheadSearchSettings();
+        searchSettings.setScoringMode(defaultScoringMode);
+        searchSettings.setRankFeatureBoost(rankFeatureBoost);
+        searchSettings.setTrackTotalHitsUpTo(trackTotalHitsUpTo);
+        searchSettings.setQueryStrategy(queryStrategyName);
+        List<TypeaheadQueryStrategy> strategies = new ArrayList<>();
+        strategies.add(typeaheadQueryBuilder);
+        strategies.addAll(queryStrategyBeans);
+        typeaheadSearchBuilder = new TypeaheadSearchBuilder(searchSettings, strategies);
+        queryStrategy = typeaheadSearchBuilder.getQueryStrategy();
+        String candidate = typeaheadShadowTrafficComparator.getCandidate();
+        if (candidate != null && !candidate.isEmpty()) {
+            typeaheadSearchBuilder.getQueryStrategy(candidate);
+        }
+        log.info("Typeahead query strategy: {}, shadow candidate: {}", queryStrategy.getName(), candidate);
+        indexSort = getIndexSort(getStrFromResource(typeaheadsSettingsFile));
+    }
+
+    private static List<FieldSortBuilder> getIndexSort(String settingsJson) {
+        Settings settings = Settings.builder()
+            .loadFromSource(settingsJson, XContentType.JSON)
+            .normalizePrefix("index.")
+            .build();
+        List<String> fields = settings.getAsList("index.sort.field");
+        List<String> orders = settings.getAsList("index.sort.order");
+        List<FieldSortBuilder> result = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            // asc is the ES default
+            SortOrder order = i < orders.size() ? SortOrder.fromString(orders.get(i)) : SortOrder.ASC;
+            result.add(new FieldSortBuilder(fields.get(i)).order(order));
+        }
+        log.info("Index sort: {}", fields.isEmpty() ? "none" : fields + " " + orders);
+        return result;
+    }
 
     @Override
     public TypeaheadServiceResponse getAllTypeaheads(TypeaheadServiceRequest request) {
-        QueryBuilder mainQuery = QueryBuilders.matchAllQuery();
-        return getTypeaheads(mainQuery, request);
+        return getTypeaheads(strategy -> QueryBuilders.matchAllQuery(), request);
     }
 
     @Override
     public TypeaheadServiceResponse getTypeaheadsByQuery(TypeaheadServiceRequest request) {
-        QueryBuilder mainQuery = getQueryByText(request.getTextQuery());
-        return getTypeaheads(mainQuery, request);
+        SearchEvent event = SearchEvent.current();
+        if (event != null && queryStrategy == typeaheadQueryBuilder) {
+            event.setFuzziness(typeaheadQueryBuilder.getFuzziness(request.getTextQuery()));
+        }
+        return getTypeaheads(strategy -> strategy.getQueryByText(request.getTextQuery()), request);
     }
 
-    private TypeaheadServiceResponse getTypeaheads(QueryBuilder mainQuery, TypeaheadServiceRequest request) {
-        // Create search request
-        SearchSourceBuilder ssb = new SearchSourceBuilder()
-            .query(mainQuery)
-            .size(request.getSize());
-
-        // Add sorting and aggregation if necessary
-        if (!request.isGetAllRequest()) {
-            // Sorting
-            ssb.sort(new ScoreSortBuilder().order(SortOrder.DESC)); // sort by _score DESC
-            if (Boolean.TRUE.equals(request.getConsiderItemCountInSorting())) {
-                ssb.sort(new FieldSortBuilder(ITEM_COUNT_FIELD).order(SortOrder.DESC)); // sort by itemCount DESC
-            } else {
-                ssb.sort(new FieldSortBuilder(RANK_FIELD).order(SortOrder.DESC)); // sort by rank DESC
+    private TypeaheadServiceResponse getTypeaheads(Function<TypeaheadQueryStrategy, QueryBuilder> mainQuery,
+                                                   TypeaheadServiceRequest request) {
+        String queryMode = getQueryMode(request);
+        SearchRequest searchRequest = typeaheadStageMetrics.time(StageMetrics.QUERY_BUILD, queryMode,
+            () -> createSearchRequest(mainQuery.apply(queryStrategy), request));
+
+        // Search in ES
+        SearchResponse searchResponse;
+        long esStart = System.nanoTime();
+        try {
+            searchResponse = typeaheadSearchExecutor.search(searchRequest);
+        } catch (IOException ex) {
+            typeaheadStageMetrics.esError(queryMode);
+            throw new SearchUnavailableException("Typeahead search failed: " + ex.getMessage(), ex);
+        }
+        long esNanos = System.nanoTime() - esStart;
+        typeaheadStageMetrics.record(StageMetrics.ES_ROUND_TRIP, queryMode, esNanos);
+        typeaheadStageMetrics.recordTook(queryMode, searchResponse.getTook().millis());
+
+        // Same request with the candidate strategy, compared in the background
+        if (!request.isGetAllRequest() && typeaheadShadowTrafficComparator.shouldMirror(queryStrategy.getName())) {
+            TypeaheadQueryStrategy candidate = typeaheadSearchBuilder.findQueryStrategy(
+                typeaheadShadowTrafficComparator.getCandidate());
+            if (candidate != null) {
+                typeaheadShadowTrafficComparator.mirror(queryStrategy.getName(), searchResponse, esNanos,
+                    () -> createSearchRequest(mainQuery.apply(candidate), request));
             }
-            ssb.sort(new FieldSortBuilder(ID_FIELD).order(SortOrder.DESC)); // tie breaker: sort by _id DESC
+        }
 
-            // Aggregation
-            List<AggregationBuilder> aggs = createAggs();
-            aggs.forEach(ssb::aggregation);
+        // Build service response
+        TypeaheadServiceResponse response = typeaheadStageMetrics.time(StageMetrics.RESPONSE_MAPPING, queryMode,
+            () -> getServiceResponse(searchResponse, hasFacets(request)));
+        if (response.getTypeaheads().isEmpty()) {
+            typeaheadStageMetrics.emptyResult(queryMode);
         }
+        return response;
+    }
 
-        // Search in ES
-        SearchRequest searchRequest = new SearchRequest(indexName).source(ssb);
+    @Override
+    public List<TypeaheadServiceResponse> getTypeaheadsByQuery(String generation,
+                                                               List<TypeaheadServiceRequest> requests) {
+        MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        requests.forEach(request -> multiSearchRequest.add(
+            createSearchRequest(queryStrategy.getQueryByText(request.getTextQuery()), request).indices(generation)));
+
+        MultiSearchResponse multiSearchResponse;
         try {
-            SearchResponse searchResponse = esClient.search(searchRequest, RequestOptions.DEFAULT);
-            // Build service response
-            return getServiceResponse(searchResponse, !request.isGetAllRequest());
+            multiSearchResponse = esClient.msearch(multiSearchRequest, RequestOptions.DEFAULT);
         } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-            return new TypeaheadServiceResponse();
+            throw new SearchUnavailableException("Typeahead multi search failed: " + ex.getMessage(), ex);
+        }
+
+        List<TypeaheadServiceResponse> responses = new ArrayList<>();
+        MultiSearchResponse.Item[] items = multiSearchResponse.getResponses();
+        for (int i = 0; i < items.length; i++) {
+            TypeaheadServiceRequest request = requests.get(i);
+            if (items[i].isFailure()) {
+                throw new SearchUnavailableException("Typeahead search of " + request.getTextQuery()
+                    + " failed: " + items[i].getFailureMessage(), items[i].getFailure());
+            }
+            responses.add(getServiceResponse(items[i].getResponse(), hasFacets(request)));
+        }
+        return responses;
+    }
+
+    private SearchRequest createSearchRequest(QueryBuilder mainQuery, TypeaheadServiceRequest request) {
+        // Create search request with sorting and aggregation if necessary
+        SearchSourceBuilder ssb;
+        if (request.isGetAllRequest()) {
+            ssb = typeaheadSearchBuilder.newSource(mainQuery, request.getSize(), request.getExactTotalHits());
+            // Must stay a prefix of the index sort, a tie breaker would disable the early termination
+            indexSort.forEach(ssb::sort);
+        } else {
+            // Same scoring and sorting as the federated search of product-search-service
+            ssb = typeaheadSearchBuilder.buildSource(mainQuery, request.getSize(),
+                request.getConsiderItemCountInSorting(), request.getScoringMode(), request.getExactTotalHits());
+
+            // Aggregation (collects every match, so no block skipping when facets are requested)
+            if (hasFacets(request)) {
+                List<AggregationBuilder> aggs = createAggs();
+                aggs.forEach(ssb::aggregation);
+            }
+        }
+
+        return new SearchRequest(indexName).source(ssb);
+    }
+
+    private String getQueryMode(TypeaheadServiceRequest request) {
+        if (request.isGetAllRequest()) {
+            return "getAll";
         }
+        return typeaheadSearchBuilder.getScoringMode(request.getScoringMode()) == TypeaheadScoringMode.RANK_FEATURE
+            ? "byQueryRankFeature" : "byQuery";
+    }
+
+    private static boolean hasFacets(TypeaheadServiceRequest request) {
+        return !request.isGetAllRequest() && !Boolean.FALSE.equals(request.getFacets());
     }
 
     private List<AggregationBuilder> createAggs() {
@@ -165,8 +345,15 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
     private TypeaheadServiceResponse getServiceResponse(SearchResponse searchResponse, boolean hasFacets) {
         TypeaheadServiceResponse response = new TypeaheadServiceResponse();
 
-        // Total hits
+        // Total hits, a lower bound if there are more than trackTotalHitsUpTo
         response.setTotalHits(searchResponse.getHits().getTotalHits().value);
+        response.setTotalHitsRelation(searchResponse.getHits().getTotalHits().relation == TotalHits.Relation.EQUAL_TO
+            ? "eq" : "gte");
+
+        // Partial results: ES timeout, terminate_after or failed shards
+        if (isPartial(searchResponse)) {
+            response.setPartial(true);
+        }
 
         // Documents
         List<Map<String, Object>> typeaheads = Arrays.stream(searchResponse.getHits().getHits())
@@ -202,77 +389,119 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
         return response;
     }
 
-    private QueryBuilder getQueryByText(String textQuery) {
-        List<String> words = Arrays.asList(textQuery.split(" "));
-        List<QueryBuilder> mainQueryList = new ArrayList<>();
-        for (int i = 0; i < words.size(); i++) {
-            String word = words.get(i);
-
-            int maxLevenshteinDistance = getDistanceByTermLength(word);
-            List<QueryBuilder> wordQueries = new ArrayList<>();
-            // Queries for all possible Levenshtein distances
-            for (int distance = 0; distance <= maxLevenshteinDistance; distance++) {
-                float boost = getBoostByDistance(distance);
-                if (distance == 0) {
-                    wordQueries.add(QueryBuilders.matchQuery(NAME_FIELD, word).boost(boost));
-                } else {
-                    wordQueries.add(QueryBuilders.matchQuery(NAME_FIELD, word).boost(boost).fuzziness(String.valueOf(distance)));
-                }
-            }
+    private static boolean isPartial(SearchResponse searchResponse) {
+        return searchResponse.isTimedOut()
+            || Boolean.TRUE.equals(searchResponse.isTerminatedEarly())
+            || searchResponse.getFailedShards() > 0;
+    }
 
-            // Prefix query for the last word
-            if (i == words.size() - 1) {
-                wordQueries.add(QueryBuilders.prefixQuery(NAME_FIELD, word.toLowerCase()).boost(prefixQueryBoost));
-            }
+    @Override
+    public void recreateIndex(IndexRebuildJob job) {
+        // indexName is the alias searched by the service, each rebuild creates a new generation behind it
+        String generation = indexName + "_" + GENERATION_FORMAT.format(Instant.now());
+        job.setAlias(indexName);
+        job.setTargetIndex(generation);
 
-            // Add all queries for the current word to mainQueryList
-            if (wordQueries.size() == 1) {
-                mainQueryList.add(wordQueries.get(0));
-            } else {
-                DisMaxQueryBuilder dmqb = QueryBuilders.disMaxQuery().tieBreaker(1.0f);
-                wordQueries.forEach(dmqb::add);
-                mainQueryList.add(dmqb);
-            }
-        }
+        String settings = getStrFromResource(typeaheadsSettingsFile);
+        String mappings = getStrFromResource(typeaheadsMappingsFile);
+        createIndex(generation, settings, mappings);
 
-        // Create result query from mainQueryList
-        BoolQueryBuilder result = QueryBuilders.boolQuery();
-        mainQueryList.forEach(result::must);
-        return result;
-    }
+        Set<String> previousGenerations;
+        try {
+            processBulkInsertData(typeaheadsBulkInsertDataFile, generation, job);
 
-    private int getDistanceByTermLength(final String token) {
-        return token.length() >= fuzzyTwoStartsFromLength
-            ? 2
-            : (token.length() >= fuzzyOneStartsFromLength ? 1 : 0);
-    }
+            // Force refresh the index to make documents searchable immediately
+            esClient.indices().refresh(new RefreshRequest(generation), RequestOptions.DEFAULT);
 
-    private float getBoostByDistance(final int distance) {
-        return distance == 0
-            ? fuzzyZeroBoost
-            : (distance == 1 ? fuzzyOneBoost : fuzzyTwoBoost);
+            job.checkLease();
+            previousGenerations = switchAlias(generation);
+        } catch (IOException | RuntimeException ex) {
+            // Searches stay on the previous generation
+            deleteIndex(generation);
+            throw new RuntimeException("Failed to build index " + generation, ex);
+        }
+
+        // The alias points to the new generation now, a failure to drop the previous ones must not roll it back
+        previousGenerations.forEach(previous -> {
+            try {
+                deleteIndex(previous);
+            } catch (RuntimeException ex) {
+                log.warn("Previous generation {} couldn't be deleted: {}", previous, ex.getMessage());
+            }
+        });
     }
 
     @Override
-    public void recreateIndex() {
-        if (indexExists(indexName)) {
-            deleteIndex(indexName);
+    public Set<String> getTypeaheadNames(String generation) {
+        SearchRequest searchRequest = new SearchRequest(generation)
+            .scroll(SCROLL_KEEP_ALIVE)
+            .source(new SearchSourceBuilder()
+                .fetchSource(TypeaheadQueryBuilder.NAME_FIELD, null)
+                .size(bulkBatchSize));
+
+        Set<String> names = new HashSet<>();
+        try {
+            SearchResponse response = esClient.search(searchRequest, RequestOptions.DEFAULT);
+            String scrollId = response.getScrollId();
+            try {
+                while (response.getHits().getHits().length > 0) {
+                    for (SearchHit hit : response.getHits().getHits()) {
+                        Object name = hit.getSourceAsMap().get(TypeaheadQueryBuilder.NAME_FIELD);
+                        if (name != null) {
+                            names.add(name.toString());
+                        }
+                    }
+                    response = esClient.scroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE),
+                        RequestOptions.DEFAULT);
+                    scrollId = response.getScrollId();
+                }
+            } finally {
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                esClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read the typeahead names of " + generation, ex);
         }
+        return names;
+    }
 
-        String settings = getStrFromResource(typeaheadsSettingsFile);
-        String mappings = getStrFromResource(typeaheadsMappingsFile);
-        createIndex(indexName, settings, mappings);
-
-        processBulkInsertData(typeaheadsBulkInsertDataFile);
-
-        // Force refresh the index to make documents searchable immediately
+    @Override
+    public String getGeneration() {
         try {
-            esClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+            String[] indices = esClient.indices().get(new GetIndexRequest(indexName), RequestOptions.DEFAULT)
+                .getIndices();
+            Arrays.sort(indices);
+            return String.join(",", indices);
         } catch (IOException ex) {
-            throw new RuntimeException("Failed to refresh index " + indexName, ex);
+            throw new RuntimeException("Failed to resolve the indices of alias " + indexName, ex);
         }
     }
 
+    // Atomically moves the alias to the new generation, returns the previous ones
+    private Set<String> switchAlias(String generation) throws IOException {
+        Set<String> previousGenerations = esClient.indices()
+            .getAlias(new GetAliasesRequest(indexName), RequestOptions.DEFAULT)
+            .getAliases()
+            .keySet();
+
+        IndicesAliasesRequest aliasesRequest = new IndicesAliasesRequest();
+        aliasesRequest.addAliasAction(AliasActions.add().index(generation).alias(indexName));
+        previousGenerations.forEach(previous ->
+            aliasesRequest.addAliasAction(AliasActions.remove().index(previous).alias(indexName)));
+        // Concrete index created under the alias name before generations were introduced
+        if (previousGenerations.isEmpty() && indexExists(indexName)) {
+            aliasesRequest.addAliasAction(AliasActions.removeIndex().index(indexName));
+        }
+
+        AcknowledgedResponse response = esClient.indices().updateAliases(aliasesRequest, RequestOptions.DEFAULT);
+        if (!response.isAcknowledged()) {
+            throw new RuntimeException("Alias switch not acknowledged for alias: " + indexName);
+        }
+        log.info("Alias {} has been switched to {}, previous generations: {}", indexName, generation, previousGenerations);
+        return previousGenerations;
+    }
+
     private boolean indexExists(String indexName) {
         GetIndexRequest existsRequest = new GetIndexRequest(indexName);
 
@@ -325,43 +554,53 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
         }
     }
 
-    private void processBulkInsertData(Resource bulkInsertDataFile) {
+    private void processBulkInsertData(Resource bulkInsertDataFile, String targetIndex, IndexRebuildJob job)
+        throws IOException {
         int requestCnt = 0;
-        try {
-            BulkRequest bulkRequest = new BulkRequest();
-            BufferedReader br = new BufferedReader(new InputStreamReader(bulkInsertDataFile.getInputStream()));
-
+        List<IndexRequest> indexRequests = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(bulkInsertDataFile.getInputStream()))) {
             while (br.ready()) {
                 String line1 = br.readLine(); // action_and_metadata
                 if (isNotEmpty(line1) && br.ready()) {
                     requestCnt++;
                     String line2 = br.readLine();
-                    IndexRequest indexRequest = createIndexRequestFromBulkData(line1, line2);
+                    IndexRequest indexRequest = createIndexRequestFromBulkData(line1, line2, targetIndex);
                     if (indexRequest != null) {
-                        bulkRequest.add(indexRequest);
+                        indexRequests.add(indexRequest);
                     }
                 }
             }
+        }
+        if (indexRequests.size() != requestCnt) {
+            log.warn("Only {} out of {} requests could be parsed from the bulk data file.", indexRequests.size(), requestCnt);
+        }
+        job.setDocsTotal(indexRequests.size());
 
-            BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-            if (bulkResponse.getItems().length != requestCnt) {
-                log.warn("Only {} out of {} requests have been processed in a bulk request.", bulkResponse.getItems().length, requestCnt);
-            } else {
-                log.info("{} requests have been processed in a bulk request.", bulkResponse.getItems().length);
-            }
+        // Sent in batches, the job reports the progress after each of them
+        for (int from = 0; from < indexRequests.size(); from += bulkBatchSize) {
+            job.checkLease();
+            BulkRequest bulkRequest = new BulkRequest();
+            indexRequests.subList(from, Math.min(from + bulkBatchSize, indexRequests.size())).forEach(bulkRequest::add);
 
-            if (bulkResponse.hasFailures()) {
+            BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+            long failed = Arrays.stream(bulkResponse.getItems()).filter(BulkItemResponse::isFailed).count();
+            if (failed > 0) {
                 log.warn("Bulk data processing has failures:\n{}", bulkResponse.buildFailureMessage());
             }
-        } catch (IOException ex) {
-            log.error("An exception occurred during bulk data processing", ex);
-            throw new RuntimeException(ex);
+            job.setDocsFailed(job.getDocsFailed() + failed);
+            job.setDocsIndexed(job.getDocsIndexed() + bulkResponse.getItems().length - failed);
+        }
+        log.info("{} out of {} documents have been indexed into {}, {} rejected.", job.getDocsIndexed(), requestCnt,
+            targetIndex, job.getDocsFailed());
+        if (job.getDocsFailed() > maxFailedDocs) {
+            throw new IllegalStateException(job.getDocsFailed() + " documents were rejected by ES, at most "
+                + maxFailedDocs + " are allowed");
         }
     }
 
-    private IndexRequest createIndexRequestFromBulkData(String line1, String line2) {
+    // The _index of the file is ignored, documents go to the generation being built
+    private IndexRequest createIndexRequestFromBulkData(String line1, String line2, String targetIndex) {
         DocWriteRequest.OpType opType = null;
-        String esIndexName = null;
         String esId = null;
         boolean isOk = true;
 
@@ -369,9 +608,6 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
             String esOpType = objectMapper.readTree(line1).fieldNames().next();
             opType = DocWriteRequest.OpType.fromString(esOpType);
 
-            JsonNode indexJsonNode = objectMapper.readTree(line1).iterator().next().get("_index");
-            esIndexName = (indexJsonNode != null ? indexJsonNode.textValue() : indexName);
-
             JsonNode idJsonNode = objectMapper.readTree(line1).iterator().next().get("_id");
             esId = (idJsonNode != null ? idJsonNode.textValue() : null);
         } catch (IOException | IllegalArgumentException ex) {
@@ -379,20 +615,39 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
             isOk = false;
         }
 
+        String source = null;
         try {
-            objectMapper.readTree(line2);
+            source = addRankFeatures(objectMapper.readTree(line2));
         } catch (IOException ex) {
             log.warn("An exception occurred during parsing source line in the bulk data file:\n{}\nwith a message:\n{}", line2, ex.getMessage());
             isOk = false;
         }
 
         if (isOk) {
-            return new IndexRequest(esIndexName)
+            return new IndexRequest(targetIndex)
                 .id(esId)
                 .opType(opType)
-                .source(line2, XContentType.JSON);
+                .source(source, XContentType.JSON);
         } else {
             return null;
         }
     }
+
+    // rank_feature fields reject values <= 0 (and the whole document with them), so the features are set only
+    // for positive rank/itemCount: the other documents get no popularity boost in the RANK_FEATURE mode
+    private static String addRankFeatures(JsonNode source) throws IOException {
+        if (source instanceof ObjectNode) {
+            ObjectNode document = (ObjectNode) source;
+            copyPositive(document, RANK_FIELD, TypeaheadSearchBuilder.RANK_FEATURE_FIELD);
+            copyPositive(document, ITEM_COUNT_FIELD, TypeaheadSearchBuilder.ITEM_COUNT_FEATURE_FIELD);
+        }
+        return objectMapper.writeValueAsString(source);
+    }
+
+    private static void copyPositive(ObjectNode document, String field, String featureField) {
+        JsonNode value = document.get(field);
+        if (value != null && value.isNumber() && value.doubleValue() > 0) {
+            document.set(featureField, value);
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package com.griddynamics.esgraduationproject.rest;
+
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
+import com.griddynamics.esgraduationproject.service.IndexRebuildService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.List;
+
+/**
+ * Admin trigger and progress of the index rebuilds: POST /actuator/indexrebuild starts a rebuild,
+ * GET /actuator/indexrebuild lists the recent jobs and GET /actuator/indexrebuild/{jobId} shows one.
+ */
+@Endpoint(id = "indexrebuild")
+public class IndexRebuildEndpoint {
+    private final IndexRebuildService indexRebuildService;
+
+    public IndexRebuildEndpoint(IndexRebuildService indexRebuildService) {
+        this.indexRebuildService = indexRebuildService;
+    }
+
+    @WriteOperation
+    public IndexRebuildJob startRebuild() {
+        return indexRebuildService.startRebuild("admin");
+    }
+
+    @ReadOperation
+    public List<IndexRebuildJob> jobs() {
+        return indexRebuildService.getJobs();
+    }
+
+    @ReadOperation
+    public IndexRebuildJob job(@Selector String jobId) {
+        return indexRebuildService.getJob(jobId);
+    }
+}
@@ -2,7 +2,9 @@ package com.griddynamics.esgraduationproject.rest;
 
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
 import com.griddynamics.esgraduationproject.service.TypeaheadService;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedBinaryJackson2HttpMessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -17,9 +19,14 @@ public class TypeaheadController {
     @Autowired
     private TypeaheadService typeaheadService;
 
+    @Autowired
+    private AdaptiveConcurrencyLimiter typeaheadConcurrencyLimiter;
+
+    // Smile/CBOR for internal callers asking for them in the Accept header, JSON otherwise
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, TimedBinaryJackson2HttpMessageConverter.SMILE_VALUE,
+            TimedBinaryJackson2HttpMessageConverter.CBOR_VALUE})
     public TypeaheadServiceResponse getSearchServiceResponse(@RequestBody TypeaheadServiceRequest request) {
-        return typeaheadService.getServiceResponse(request);
+        return typeaheadConcurrencyLimiter.execute(() -> typeaheadService.getServiceResponse(request));
     }
 }
@@ -0,0 +1,25 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+
+/**
+ * Materialized responses of the short single-word typeahead queries (the bulk of the traffic and the most
+ * expensive prefix expansions), per index generation, served from memory instead of ES.
+ */
+public interface HotPrefixTable {
+    /**
+     * @return the materialized response for the request, null if the request has to go to ES
+     */
+    TypeaheadServiceResponse get(TypeaheadServiceRequest request);
+
+    /**
+     * Same check as {@link #get}, without counting it as a lookup.
+     */
+    boolean canServe(TypeaheadServiceRequest request);
+
+    /**
+     * Materializes the table of the index generation and replaces the current one with it.
+     */
+    void build(String generation);
+}
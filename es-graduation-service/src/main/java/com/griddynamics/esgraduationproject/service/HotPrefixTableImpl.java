@@ -0,0 +1,242 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.google.common.collect.Lists;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadScoringMode;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.repository.TypeaheadRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The table holds the responses of every minLength..maxLength prefix of the name words of a generation, for both
+ * sort modes, with topN hits and the facets. They are searched with the live query and sorts while the table is
+ * built (after each index rebuild and when another instance switched the alias), so serving them changes nothing
+ * but the latency. Requests of another size, scoring mode or with multiple words go to ES.
+ */
+@Component
+@Slf4j
+public class HotPrefixTableImpl implements HotPrefixTable {
+
+    // Split like the standard tokenizer does for the plain words, the prefixes of the other ones go to ES
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    @Value("${com.griddynamics.es.graduation.project.hotPrefix.enabled:false}")
+    private boolean enabled;
+    @Value("${com.griddynamics.es.graduation.project.hotPrefix.minLength:3}")
+    private int minLength;
+    @Value("${com.griddynamics.es.graduation.project.hotPrefix.maxLength:4}")
+    private int maxLength;
+    // Hits kept per prefix and sort mode, requests of a larger size go to ES
+    @Value("${com.griddynamics.es.graduation.project.hotPrefix.topN:10}")
+    private int topN;
+    // Prefix searches per _msearch while the table is built
+    @Value("${com.griddynamics.es.graduation.project.hotPrefix.batchSize:100}")
+    private int batchSize;
+    // The alias is resolved periodically, for the first table and the generations built by other instances
+    @Value("${com.griddynamics.es.graduation.project.hotPrefix.refreshSeconds:60}")
+    private long refreshSeconds;
+    @Value("${com.griddynamics.es.graduation.project.request.scoringMode:FIELD_SORT}")
+    private TypeaheadScoringMode defaultScoringMode;
+
+    @Autowired
+    private TypeaheadRepository typeaheadRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private volatile Table table = Table.EMPTY;
+    private ScheduledExecutorService scheduler;
+
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = lookupCounter("hit");
+        missCounter = lookupCounter("miss");
+        Gauge.builder("typeahead.hot_prefix.entries", this, hotPrefixTable -> hotPrefixTable.table.responses.size())
+            .description("Materialized prefix responses")
+            .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "typeahead-hot-prefix");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public TypeaheadServiceResponse get(TypeaheadServiceRequest request) {
+        if (!enabled || request.isGetAllRequest()) {
+            return null;
+        }
+        String textQuery = request.getTextQuery();
+        if (textQuery.length() < minLength || textQuery.length() > maxLength) {
+            return null;
+        }
+
+        TypeaheadServiceResponse materialized = lookup(request);
+        if (materialized == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return copy(materialized, request);
+    }
+
+    @Override
+    public boolean canServe(TypeaheadServiceRequest request) {
+        return enabled && !request.isGetAllRequest() && request.getTextQuery().length() >= minLength
+            && request.getTextQuery().length() <= maxLength && lookup(request) != null;
+    }
+
+    private TypeaheadServiceResponse lookup(TypeaheadServiceRequest request) {
+        TypeaheadServiceResponse materialized = isServable(request) ? table.responses.get(
+            getKey(request.getTextQuery().toLowerCase(Locale.ROOT), request.getConsiderItemCountInSorting())) : null;
+        // Counted only when not all the matches were counted while building, as ES would do with exactTotalHits
+        if (materialized == null || (Boolean.TRUE.equals(request.getExactTotalHits())
+            && !"eq".equals(materialized.getTotalHitsRelation()))) {
+            return null;
+        }
+        return materialized;
+    }
+
+    private boolean isServable(TypeaheadServiceRequest request) {
+        TypeaheadScoringMode scoringMode = request.getScoringMode() != null
+            ? request.getScoringMode() : defaultScoringMode;
+        return scoringMode == TypeaheadScoringMode.FIELD_SORT && request.getSize() <= topN;
+    }
+
+    // The typeaheads and facets are shared with the table, they are only serialized
+    private static TypeaheadServiceResponse copy(TypeaheadServiceResponse materialized, TypeaheadServiceRequest request) {
+        TypeaheadServiceResponse response = new TypeaheadServiceResponse();
+        response.setTotalHits(materialized.getTotalHits());
+        response.setTotalHitsRelation(materialized.getTotalHitsRelation());
+        List<Map<String, Object>> typeaheads = materialized.getTypeaheads();
+        response.setTypeaheads(typeaheads.subList(0, Math.min(request.getSize(), typeaheads.size())));
+        if (!Boolean.FALSE.equals(request.getFacets())) {
+            response.setFacets(materialized.getFacets());
+        }
+        return response;
+    }
+
+    @Override
+    public synchronized void build(String generation) {
+        if (!enabled || generation.equals(table.generation)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            List<TypeaheadServiceRequest> requests = new ArrayList<>();
+            for (String prefix : getPrefixes(typeaheadRepository.getTypeaheadNames(generation))) {
+                requests.add(newRequest(prefix, false));
+                requests.add(newRequest(prefix, true));
+            }
+
+            Map<String, TypeaheadServiceResponse> responses = new HashMap<>();
+            for (List<TypeaheadServiceRequest> batch : Lists.partition(requests, batchSize)) {
+                List<TypeaheadServiceResponse> batchResponses = typeaheadRepository.getTypeaheadsByQuery(generation, batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    TypeaheadServiceRequest request = batch.get(i);
+                    TypeaheadServiceResponse response = batchResponses.get(i);
+                    if (Boolean.TRUE.equals(response.getPartial())) {
+                        throw new IllegalStateException("Partial response for prefix " + request.getTextQuery());
+                    }
+                    responses.put(getKey(request.getTextQuery(), request.getConsiderItemCountInSorting()), response);
+                }
+            }
+
+            table = new Table(generation, responses);
+            log.info("Hot prefix table of {} built: {} responses in {} ms", generation, responses.size(),
+                System.currentTimeMillis() - start);
+        } catch (RuntimeException ex) {
+            // The previous generation's responses would be served after its documents have changed
+            table = Table.EMPTY;
+            log.error("Hot prefix table of {} couldn't be built, the short queries go to ES", generation, ex);
+        }
+    }
+
+    private void refresh() {
+        try {
+            build(typeaheadRepository.getGeneration());
+        } catch (RuntimeException ex) {
+            log.warn("Typeahead index generation couldn't be resolved: {}", ex.getMessage());
+        }
+    }
+
+    private Set<String> getPrefixes(Set<String> names) {
+        Set<String> prefixes = new TreeSet<>();
+        for (String name : names) {
+            for (String word : WORD_SEPARATOR.split(name.toLowerCase(Locale.ROOT))) {
+                for (int length = minLength; length <= Math.min(maxLength, word.length()); length++) {
+                    prefixes.add(word.substring(0, length));
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    private TypeaheadServiceRequest newRequest(String prefix, boolean considerItemCountInSorting) {
+        TypeaheadServiceRequest request = new TypeaheadServiceRequest();
+        request.setTextQuery(prefix);
+        request.setSize(topN);
+        request.setConsiderItemCountInSorting(considerItemCountInSorting);
+        request.setScoringMode(TypeaheadScoringMode.FIELD_SORT);
+        request.setFacets(true);
+        return request;
+    }
+
+    private static String getKey(String prefix, Boolean considerItemCountInSorting) {
+        return prefix + (Boolean.TRUE.equals(considerItemCountInSorting) ? "|itemCount" : "|rank");
+    }
+
+    private Counter lookupCounter(String outcome) {
+        return Counter.builder("typeahead.hot_prefix")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private static final class Table {
+        static final Table EMPTY = new Table(null, Collections.emptyMap());
+
+        final String generation;
+        final Map<String, TypeaheadServiceResponse> responses;
+
+        Table(String generation, Map<String, TypeaheadServiceResponse> responses) {
+            this.generation = generation;
+            this.responses = responses;
+        }
+    }
+}
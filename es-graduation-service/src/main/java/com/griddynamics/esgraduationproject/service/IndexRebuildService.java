@@ -0,0 +1,28 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
+
+import java.util.List;
+
+/**
+ * Index rebuilds, mutually exclusive across the instances through a lock document in ES.
+ * A rebuild that finds the lock taken by another instance is recorded as SKIPPED.
+ */
+public interface IndexRebuildService {
+    /**
+     * Starts a rebuild in the background, returns the running job if there is one already.
+     */
+    IndexRebuildJob startRebuild(String trigger);
+
+    /**
+     * Runs a rebuild in the calling thread.
+     */
+    IndexRebuildJob rebuild(String trigger);
+
+    IndexRebuildJob getJob(String jobId);
+
+    /**
+     * @return the recent jobs, the newest first
+     */
+    List<IndexRebuildJob> getJobs();
+}
@@ -0,0 +1,208 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.griddynamics.esgraduationproject.model.IndexLock;
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
+import com.griddynamics.esgraduationproject.repository.IndexLockRepository;
+import com.griddynamics.esgraduationproject.repository.TypeaheadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+@Component
+@Slf4j
+public class IndexRebuildServiceImpl implements IndexRebuildService {
+
+    // pid@host, identifies the instance in the lock document
+    private static final String OWNER = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Value("${com.griddynamics.es.graduation.project.index}")
+    private String indexName;
+    // Empty = no scheduled rebuilds
+    @Value("${com.griddynamics.es.graduation.project.rebuild.cron:}")
+    private String cron;
+    @Value("${com.griddynamics.es.graduation.project.rebuild.lockLeaseSeconds:60}")
+    private long lockLeaseSeconds;
+    @Value("${com.griddynamics.es.graduation.project.rebuild.heartbeatSeconds:10}")
+    private long heartbeatSeconds;
+    @Value("${com.griddynamics.es.graduation.project.rebuild.historySize:20}")
+    private int historySize;
+
+    @Autowired
+    private TypeaheadRepository typeaheadRepository;
+
+    @Autowired
+    private IndexLockRepository indexLockRepository;
+
+    @Autowired
+    private ThreadPoolTaskScheduler indexRebuildScheduler;
+
+    @Autowired
+    private HotPrefixTable hotPrefixTable;
+
+    // Newest first, guarded by this
+    private final LinkedList<IndexRebuildJob> jobs = new LinkedList<>();
+
+    @PostConstruct
+    public void scheduleRebuilds() {
+        if (isNotBlank(cron)) {
+            // Every instance fires, the lock lets only one of them rebuild
+            indexRebuildScheduler.schedule(() -> startRebuild("scheduler"), new CronTrigger(cron));
+            log.info("Index rebuilds of {} scheduled: {}", indexName, cron);
+        }
+    }
+
+    @Override
+    public IndexRebuildJob startRebuild(String trigger) {
+        IndexRebuildJob job;
+        synchronized (this) {
+            IndexRebuildJob runningJob = getRunningJob();
+            if (runningJob != null) {
+                return runningJob;
+            }
+            job = newJob(trigger);
+        }
+        // The running job keeps the other local triggers out meanwhile
+        IndexLock lock = acquireLock(job);
+        if (lock != null) {
+            indexRebuildScheduler.execute(() -> run(job, lock));
+        }
+        return job;
+    }
+
+    @Override
+    public IndexRebuildJob rebuild(String trigger) {
+        IndexRebuildJob job;
+        synchronized (this) {
+            IndexRebuildJob runningJob = getRunningJob();
+            if (runningJob != null) {
+                throw new IllegalStateException("Index rebuild job " + runningJob.getId() + " is running already");
+            }
+            job = newJob(trigger);
+        }
+        IndexLock lock = acquireLock(job);
+        if (lock != null) {
+            run(job, lock);
+        }
+        return job;
+    }
+
+    @Override
+    public synchronized IndexRebuildJob getJob(String jobId) {
+        return jobs.stream().filter(job -> job.getId().equals(jobId)).findFirst().orElse(null);
+    }
+
+    @Override
+    public synchronized List<IndexRebuildJob> getJobs() {
+        return Collections.unmodifiableList(new ArrayList<>(jobs));
+    }
+
+    private IndexRebuildJob getRunningJob() {
+        return jobs.stream().filter(job -> job.getState() == IndexRebuildJob.State.RUNNING).findFirst().orElse(null);
+    }
+
+    private IndexRebuildJob newJob(String trigger) {
+        IndexRebuildJob job = new IndexRebuildJob(UUID.randomUUID().toString(), trigger, OWNER);
+        job.setAlias(indexName);
+        jobs.addFirst(job);
+        while (jobs.size() > historySize) {
+            jobs.removeLast();
+        }
+        return job;
+    }
+
+    // null if the job can't run, it's finished as SKIPPED or FAILED then
+    private IndexLock acquireLock(IndexRebuildJob job) {
+        try {
+            IndexLock lock = indexLockRepository.tryAcquire(indexName, OWNER, job.getId(),
+                TimeUnit.SECONDS.toMillis(lockLeaseSeconds));
+            if (lock == null) {
+                IndexLock holder = indexLockRepository.getHolder(indexName);
+                String holderInfo = holder != null ? holder.getOwner() + " (job " + holder.getJobId() + ")" : "another instance";
+                job.finish(IndexRebuildJob.State.SKIPPED, "Index " + indexName + " is being rebuilt by " + holderInfo);
+                log.info("Index rebuild job {} skipped: {}", job.getId(), job.getError());
+            }
+            return lock;
+        } catch (RuntimeException ex) {
+            log.error("Index rebuild job {} failed to acquire the lock", job.getId(), ex);
+            job.finish(IndexRebuildJob.State.FAILED, "Failed to acquire the lock: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private void run(IndexRebuildJob job, IndexLock lock) {
+        log.info("Index rebuild job {} ({}) started", job.getId(), job.getTrigger());
+        long heartbeatMs = TimeUnit.SECONDS.toMillis(heartbeatSeconds);
+        AtomicLong renewedAt = new AtomicLong(System.currentTimeMillis());
+        ScheduledFuture<?> heartbeat = indexRebuildScheduler.scheduleAtFixedRate(() -> onHeartbeat(job, lock, renewedAt),
+            new Date(System.currentTimeMillis() + heartbeatMs), heartbeatMs);
+        try {
+            typeaheadRepository.recreateIndex(job);
+            // Before the job is done, so recreateIndex() returns with the short queries of the new generation served
+            hotPrefixTable.build(job.getTargetIndex());
+            job.finish(IndexRebuildJob.State.SUCCEEDED, null);
+            log.info("Index rebuild job {} done: {} documents indexed into {}, {} docs/s", job.getId(),
+                job.getDocsIndexed(), job.getTargetIndex(), Math.round(job.getDocsPerSecond()));
+        } catch (RuntimeException ex) {
+            log.error("Index rebuild job {} failed", job.getId(), ex);
+            job.finish(IndexRebuildJob.State.FAILED, ex.getMessage());
+        } finally {
+            heartbeat.cancel(false);
+            releaseLock(job, lock);
+        }
+    }
+
+    // Reports the progress and extends the lease of the lock while the job runs; once the lease may have expired
+    // the job is aborted at its next step, before it writes to the alias
+    private void onHeartbeat(IndexRebuildJob job, IndexLock lock, AtomicLong renewedAt) {
+        log.info("Index rebuild job {}: {}/{} documents indexed into {}, {} docs/s", job.getId(),
+            job.getDocsIndexed(), job.getDocsTotal(), job.getTargetIndex(), Math.round(job.getDocsPerSecond()));
+        long leaseMs = TimeUnit.SECONDS.toMillis(lockLeaseSeconds);
+        try {
+            synchronized (lock) {
+                if (job.getState() != IndexRebuildJob.State.RUNNING) {
+                    return;
+                }
+                if (indexLockRepository.renew(lock, leaseMs)) {
+                    renewedAt.set(System.currentTimeMillis());
+                } else {
+                    job.setLeaseLost(true);
+                    log.error("Index rebuild job {} lost the lock of {}, aborting it", job.getId(), indexName);
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Index rebuild job {} failed to renew the lock", job.getId(), ex);
+            if (System.currentTimeMillis() - renewedAt.get() >= leaseMs) {
+                job.setLeaseLost(true);
+                log.error("Index rebuild job {}: the lease of {} has expired, aborting it", job.getId(), indexName);
+            }
+        }
+    }
+
+    private void releaseLock(IndexRebuildJob job, IndexLock lock) {
+        try {
+            synchronized (lock) {
+                indexLockRepository.release(lock);
+            }
+        } catch (RuntimeException ex) {
+            // Expires after the lease
+            log.warn("Index rebuild job {} failed to release the lock", job.getId(), ex);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+
+/**
+ * Speculative lookups of the most probable next keystrokes of a typeahead query, run in the background
+ * within a concurrency and request rate budget.
+ */
+public interface TypeaheadPrefetcher {
+    /**
+     * @return the prefetched response for the request with this cache key, null if there is none
+     */
+    TypeaheadServiceResponse getPrefetched(String cacheKey);
+
+    /**
+     * Records the query and schedules the prefetch of its likely extensions, derived from the returned names.
+     */
+    void onResponse(TypeaheadServiceRequest request, TypeaheadServiceResponse response);
+}
@@ -0,0 +1,266 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.RateLimiter;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.repository.TypeaheadRepository;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleFallbackCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Next keystroke candidates: the typed query + the next character of each returned name word the last query token
+ * is a prefix of, scored by the rank of the name and by how often the candidate was typed (prefix frequency table).
+ * Prefetched responses live in their own short-lived cache, responses never used are counted as wasted.
+ * Candidates the hot prefix table serves are not prefetched.
+ */
+@Component
+@Slf4j
+public class TypeaheadPrefetcherImpl implements TypeaheadPrefetcher {
+
+    @Value("${com.griddynamics.es.graduation.project.prefetch.enabled:false}")
+    private boolean enabled;
+    // Candidates prefetched per answered query
+    @Value("${com.griddynamics.es.graduation.project.prefetch.candidates:2}")
+    private int maxCandidates;
+    @Value("${com.griddynamics.es.graduation.project.prefetch.concurrency:2}")
+    private int concurrency;
+    // Lookups waiting for a thread, further ones are dropped
+    @Value("${com.griddynamics.es.graduation.project.prefetch.queueSize:16}")
+    private int queueSize;
+    // Cap of the extra ES load
+    @Value("${com.griddynamics.es.graduation.project.prefetch.maxRequestsPerSecond:20}")
+    private double maxRequestsPerSecond;
+    // Short: the entries are not invalidated on index rebuilds
+    @Value("${com.griddynamics.es.graduation.project.prefetch.ttlSeconds:10}")
+    private long ttlSeconds;
+    @Value("${com.griddynamics.es.graduation.project.prefetch.maxEntries:10000}")
+    private long maxEntries;
+    @Value("${com.griddynamics.es.graduation.project.prefetch.frequencyTableSize:100000}")
+    private long frequencyTableSize;
+
+    @Autowired
+    private TypeaheadRepository typeaheadRepository;
+
+    @Autowired
+    private StaleFallbackCache<TypeaheadServiceResponse> typeaheadFallbackCache;
+
+    @Autowired
+    private HotPrefixTable hotPrefixTable;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, PrefetchedResponse> prefetched;
+    // Lower-cased query -> times it was typed
+    private Cache<String, AtomicLong> prefixFrequencies;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor executor;
+    private RateLimiter rateLimiter;
+
+    private Counter issuedCounter;
+    private Counter hitCounter;
+    private Counter wastedCounter;
+    private Counter droppedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        issuedCounter = prefetchCounter("issued");
+        hitCounter = prefetchCounter("hits");
+        wastedCounter = prefetchCounter("wasted");
+        droppedCounter = prefetchCounter("dropped");
+        failedCounter = prefetchCounter("failed");
+        if (!enabled) {
+            return;
+        }
+
+        prefetched = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .<String, PrefetchedResponse>removalListener(notification -> {
+                if (notification.getCause() != RemovalCause.REPLACED && !notification.getValue().used) {
+                    wastedCounter.increment();
+                }
+            })
+            .build();
+        prefixFrequencies = CacheBuilder.newBuilder()
+            .maximumSize(frequencyTableSize)
+            .build();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), runnable -> {
+                Thread thread = new Thread(runnable, "typeahead-prefetch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        rateLimiter = RateLimiter.create(maxRequestsPerSecond);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public TypeaheadServiceResponse getPrefetched(String cacheKey) {
+        if (!enabled) {
+            return null;
+        }
+        PrefetchedResponse entry = prefetched.getIfPresent(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+        entry.used = true;
+        hitCounter.increment();
+        return entry.response;
+    }
+
+    @Override
+    public void onResponse(TypeaheadServiceRequest request, TypeaheadServiceResponse response) {
+        if (!enabled || request.isGetAllRequest()) {
+            return;
+        }
+        long typed = recordQuery(request.getTextQuery());
+        // ES is failing or slow, the budget is better spent on the user's requests; the response may not come
+        // from ES (prefetched, hot prefix), so the circuit is only checked, never probed by the prefetch
+        if (response.getTypeaheads() == null || Boolean.TRUE.equals(response.getStale())
+            || Boolean.TRUE.equals(response.getPartial()) || !typeaheadFallbackCache.isClosed()) {
+            return;
+        }
+
+        for (String candidate : predictNextQueries(request.getTextQuery(), response.getTypeaheads(), typed)) {
+            TypeaheadServiceRequest candidateRequest = withTextQuery(request, candidate);
+            // Served from memory anyway, a prefetch would only add ES load
+            if (hotPrefixTable.canServe(candidateRequest)) {
+                continue;
+            }
+            String cacheKey = TypeaheadServiceImpl.getCacheKey(candidateRequest);
+            if (prefetched.getIfPresent(cacheKey) != null || !inFlight.add(cacheKey)) {
+                continue;
+            }
+            if (!rateLimiter.tryAcquire()) {
+                inFlight.remove(cacheKey);
+                droppedCounter.increment();
+                return;
+            }
+            try {
+                executor.execute(() -> prefetch(cacheKey, candidateRequest));
+            } catch (RejectedExecutionException ex) {
+                inFlight.remove(cacheKey);
+                droppedCounter.increment();
+                return;
+            }
+        }
+    }
+
+    private void prefetch(String cacheKey, TypeaheadServiceRequest request) {
+        try {
+            issuedCounter.increment();
+            TypeaheadServiceResponse response = typeaheadRepository.getTypeaheadsByQuery(request);
+            if (!Boolean.TRUE.equals(response.getPartial())) {
+                prefetched.put(cacheKey, new PrefetchedResponse(response));
+            }
+        } catch (Exception ex) {
+            failedCounter.increment();
+            log.debug("Prefetch of {} failed: {}", request.getTextQuery(), ex.getMessage());
+        } finally {
+            inFlight.remove(cacheKey);
+        }
+    }
+
+    // Returns how often the query has been typed, including this time
+    private long recordQuery(String query) {
+        AtomicLong count = prefixFrequencies.asMap()
+            .computeIfAbsent(query.toLowerCase(Locale.ROOT), key -> new AtomicLong());
+        return count.incrementAndGet();
+    }
+
+    List<String> predictNextQueries(String query, List<Map<String, Object>> typeaheads, long typed) {
+        String lastToken = query.substring(query.lastIndexOf(' ') + 1).toLowerCase(Locale.ROOT);
+        if (lastToken.isEmpty()) {
+            // The next word can start with anything
+            return new ArrayList<>();
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        for (int i = 0; i < typeaheads.size(); i++) {
+            Object name = typeaheads.get(i).get("name");
+            if (name == null) {
+                continue;
+            }
+            for (String word : name.toString().toLowerCase(Locale.ROOT).split("\\s+")) {
+                if (word.length() > lastToken.length() && word.startsWith(lastToken)) {
+                    // Typed casing is kept, so the cache key matches the next request
+                    String candidate = query + word.charAt(lastToken.length());
+                    scores.merge(candidate, 1.0 / (i + 1), Double::sum);
+                    break;
+                }
+            }
+        }
+        // Candidates typed often after this query count more, new ones still get their name score
+        scores.replaceAll((candidate, score) -> {
+            AtomicLong count = prefixFrequencies.getIfPresent(candidate.toLowerCase(Locale.ROOT));
+            return score * (1 + (count != null ? (double) count.get() / typed : 0));
+        });
+        return scores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+            .limit(maxCandidates)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    private static TypeaheadServiceRequest withTextQuery(TypeaheadServiceRequest request, String textQuery) {
+        TypeaheadServiceRequest copy = new TypeaheadServiceRequest();
+        copy.setSize(request.getSize());
+        copy.setTextQuery(textQuery);
+        copy.setConsiderItemCountInSorting(request.getConsiderItemCountInSorting());
+        copy.setScoringMode(request.getScoringMode());
+        copy.setFacets(request.getFacets());
+        copy.setExactTotalHits(request.getExactTotalHits());
+        return copy;
+    }
+
+    private Counter prefetchCounter(String outcome) {
+        return Counter.builder("typeahead.prefetch")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private static class PrefetchedResponse {
+        private final TypeaheadServiceResponse response;
+        private volatile boolean used;
+
+        PrefetchedResponse(TypeaheadServiceResponse response) {
+            this.response = response;
+        }
+    }
+}
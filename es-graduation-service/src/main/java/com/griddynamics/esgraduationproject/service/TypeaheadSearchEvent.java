@@ -0,0 +1,33 @@
+package com.griddynamics.esgraduationproject.service;
+
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.SearchEvent;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.griddynamics.search.Typeahead")
+@Label("Typeahead Search")
+public class TypeaheadSearchEvent extends SearchEvent {
+
+    @Label("Size")
+    int size;
+
+    @Label("Get All")
+    boolean getAll;
+
+    TypeaheadSearchEvent(TypeaheadServiceRequest request) {
+        size = request.getSize();
+        getAll = request.isGetAllRequest();
+    }
+
+    // null response = the search threw
+    void finish(TypeaheadServiceResponse response) {
+        if (response == null) {
+            setOutcome("failed");
+            finish(null, null, null);
+        } else {
+            finish(response.getTotalHits(), response.getStale(), response.getPartial());
+        }
+    }
+}
@@ -6,5 +6,8 @@ import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
 public interface TypeaheadService {
     TypeaheadServiceResponse getServiceResponse(TypeaheadServiceRequest request);
 
+    /**
+     * Rebuilds the index in the calling thread, see {@link IndexRebuildService} for background rebuilds.
+     */
     void recreateIndex();
 }
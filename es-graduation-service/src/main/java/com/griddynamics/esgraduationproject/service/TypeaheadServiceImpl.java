@@ -1,15 +1,25 @@
 package com.griddynamics.esgraduationproject.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
 import com.griddynamics.esgraduationproject.repository.TypeaheadRepository;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleFallbackCache;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
+@Slf4j
 public class TypeaheadServiceImpl implements TypeaheadService {
 
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
     @Value("${com.griddynamics.es.graduation.project.request.default.findByQuerySize}")
     private int defaultFindByQuerySize;
     @Value("${com.griddynamics.es.graduation.project.request.default.getAllSize}")
@@ -20,15 +30,60 @@ public class TypeaheadServiceImpl implements TypeaheadService {
     @Autowired
     private TypeaheadRepository typeaheadRepository;
 
+    @Autowired
+    private StaleFallbackCache<TypeaheadServiceResponse> typeaheadFallbackCache;
+
+    @Autowired
+    private StageMetrics typeaheadStageMetrics;
+
+    @Autowired
+    private IndexRebuildService indexRebuildService;
+
+    @Autowired
+    private TypeaheadPrefetcher typeaheadPrefetcher;
+
+    @Autowired
+    private HotPrefixTable hotPrefixTable;
+
     @Override
     public TypeaheadServiceResponse getServiceResponse(TypeaheadServiceRequest request) {
         prepareServiceRequest(request);
+        // JFR event, ES and mapping times are added by the stage metrics
+        TypeaheadSearchEvent event = new TypeaheadSearchEvent(request);
+        event.start(request.getTextQuery());
+        TypeaheadServiceResponse response = null;
+        try {
+            response = getResponse(request, event);
+            return response;
+        } finally {
+            event.finish(response);
+        }
+    }
+
+    private TypeaheadServiceResponse getResponse(TypeaheadServiceRequest request, TypeaheadSearchEvent event) {
         if (request.isGetAllRequest()) {
-            return typeaheadRepository.getAllTypeaheads(request);
+            return typeaheadFallbackCache.execute(getCacheKey(request),
+                () -> typeaheadRepository.getAllTypeaheads(request), this::getUnavailableResponse);
         } else if (request.getTextQuery().length() < minQueryLength) {
+            typeaheadStageMetrics.shortQueryRejected();
+            event.setOutcome("short");
             return new TypeaheadServiceResponse();
         } else {
-            return typeaheadRepository.getTypeaheadsByQuery(request);
+            String cacheKey = getCacheKey(request);
+            TypeaheadServiceResponse response = hotPrefixTable.get(request);
+            if (response != null) {
+                event.setOutcome("hot_prefix");
+            } else {
+                response = typeaheadPrefetcher.getPrefetched(cacheKey);
+                if (response != null) {
+                    event.setOutcome("cached");
+                } else {
+                    response = typeaheadFallbackCache.execute(cacheKey,
+                        () -> typeaheadRepository.getTypeaheadsByQuery(request), this::getUnavailableResponse);
+                }
+            }
+            typeaheadPrefetcher.onResponse(request, response);
+            return response;
         }
     }
 
@@ -38,8 +93,32 @@ public class TypeaheadServiceImpl implements TypeaheadService {
         }
     }
 
+    // Also the key of the prefetched responses
+    static String getCacheKey(TypeaheadServiceRequest request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Can not serialize request " + request, ex);
+        }
+    }
+
+    // No fallback entry: empty response, flagged as partial if only the latency budget was exceeded
+    private TypeaheadServiceResponse getUnavailableResponse(SearchUnavailableException ex) {
+        TypeaheadServiceResponse response = new TypeaheadServiceResponse();
+        if (ex.isDeadlineExceeded()) {
+            log.warn(ex.getMessage());
+            response.setPartial(true);
+        } else {
+            log.error(ex.getMessage(), ex);
+        }
+        return response;
+    }
+
     @Override
     public void recreateIndex() {
-        typeaheadRepository.recreateIndex();
+        IndexRebuildJob job = indexRebuildService.rebuild("api");
+        if (job.getState() != IndexRebuildJob.State.SUCCEEDED) {
+            throw new IllegalStateException("Index rebuild job " + job.getId() + " " + job.getState() + ": " + job.getError());
+        }
     }
 }
@@ -0,0 +1,150 @@
+package com.griddynamics.esgraduationproject.common;
+
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import com.griddynamics.esgraduationproject.service.TypeaheadService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Hot prefix table against the ES stub, which returns all typeaheads for any query: the table is materialized
+ * with _msearch by the rebuild, then the 3-4 character queries don't search anymore.
+ */
+@ContextConfiguration(initializers = TypeaheadHotPrefixStubTest.EsStubInitializer.class)
+@TestPropertySource(properties = {
+    "com.griddynamics.es.graduation.project.hotPrefix.enabled=true",
+    "com.griddynamics.es.graduation.project.hotPrefix.refreshSeconds=3600"
+})
+public class TypeaheadHotPrefixStubTest extends BaseTest {
+
+    private static final EsStubServer ES_STUB = startStub();
+
+    private APIClient client = new APIClient();
+
+    @Autowired
+    TypeaheadService typeaheadService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Before
+    public void init() {
+        typeaheadService.recreateIndex();
+    }
+
+    @After
+    public void cleanUp() {
+        ES_STUB.reset();
+    }
+
+    @Test
+    public void testShortQueriesAreServedFromTheTable() {
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MSEARCH), greaterThan(0L));
+        long searches = ES_STUB.getRequestCount(EsStubServer.SEARCH);
+        double hits = hotPrefixCount("hit");
+
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"Wom\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3))
+            .body("totalHits", is(36));
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"wome\", \"considerItemCountInSorting\": true}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(10));
+
+        assertThat(hotPrefixCount("hit") - hits, is(2.0));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH), is(searches));
+    }
+
+    @Test
+    public void testLongerQueriesAndLargerSizesGoToEs() {
+        long searches = ES_STUB.getRequestCount(EsStubServer.SEARCH);
+
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\"}")
+            .post()
+            .then()
+            .statusCode(200);
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"wom\", \"size\": 20}")
+            .post()
+            .then()
+            .statusCode(200);
+
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH) - searches, is(2L));
+    }
+
+    @Test
+    public void testTableIsRebuiltForTheNewGeneration() {
+        String previousGeneration = ES_STUB.getAliasIndices("test_typeaheads").iterator().next();
+        long multiSearches = ES_STUB.getRequestCount(EsStubServer.MSEARCH);
+
+        typeaheadService.recreateIndex();
+
+        String generation = ES_STUB.getAliasIndices("test_typeaheads").iterator().next();
+        assertThat(generation, not(previousGeneration));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MSEARCH), greaterThan(multiSearches));
+        assertThat(ES_STUB.getLastRequestBody(EsStubServer.MSEARCH), containsString(generation));
+        assertThat(ES_STUB.getLastRequestBody(EsStubServer.MSEARCH), not(containsString(previousGeneration)));
+        assertThat(meterRegistry.get("typeahead.hot_prefix.entries").gauge().value(), greaterThan(0.0));
+
+        long searches = ES_STUB.getRequestCount(EsStubServer.SEARCH);
+        double hits = hotPrefixCount("hit");
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"wom\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3));
+        assertThat(hotPrefixCount("hit") - hits, is(1.0));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH), is(searches));
+    }
+
+    private double hotPrefixCount(String outcome) {
+        return meterRegistry.get("typeahead.hot_prefix").tag("outcome", outcome).counter().count();
+    }
+
+    private static EsStubServer startStub() {
+        try {
+            return new EsStubServer(0).start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class EsStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues
+                .of("com.griddynamics.es.graduation.project.esHost=http://localhost:" + ES_STUB.getPort())
+                .applyTo(context);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.griddynamics.esgraduationproject.common;
+
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.CircuitBreaker;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleFallbackCache;
+import com.griddynamics.esgraduationproject.service.TypeaheadService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Speculative prefetch against the ES stub, which returns all typeaheads for any query:
+ * "wome" matches "Women...", so "women" is prefetched. The 3-4 character queries are in the hot prefix table.
+ */
+@ContextConfiguration(initializers = TypeaheadPrefetchStubTest.EsStubInitializer.class)
+@TestPropertySource(properties = {
+    "com.griddynamics.es.graduation.project.prefetch.enabled=true",
+    "com.griddynamics.es.graduation.project.hotPrefix.enabled=true",
+    "com.griddynamics.es.graduation.project.hotPrefix.refreshSeconds=3600",
+    "com.griddynamics.es.graduation.project.fallback.typeahead.circuit.openDurationMs=300"
+})
+public class TypeaheadPrefetchStubTest extends BaseTest {
+
+    private static final EsStubServer ES_STUB = startStub();
+
+    private APIClient client = new APIClient();
+
+    @Autowired
+    TypeaheadService typeaheadService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    StaleFallbackCache<TypeaheadServiceResponse> typeaheadFallbackCache;
+
+    @Before
+    public void init() {
+        typeaheadService.recreateIndex();
+    }
+
+    @After
+    public void cleanUp() {
+        ES_STUB.reset();
+    }
+
+    @Test
+    public void testNextKeystrokeIsServedFromPrefetch() throws InterruptedException {
+        double hits = prefetchCount("hits");
+        prefetch("{\"textQuery\": \"wome\", \"size\": 3}");
+        long searches = ES_STUB.getRequestCount(EsStubServer.SEARCH);
+
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3));
+
+        assertThat(prefetchCount("hits") - hits, is(1.0));
+        // Only the prefetches of "women" itself went to ES
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH) - searches <= 2, is(true));
+    }
+
+    @Test
+    public void testCandidatesOfTheHotPrefixTableAreNotPrefetched() throws InterruptedException {
+        double issued = prefetchCount("issued");
+        long searches = ES_STUB.getRequestCount(EsStubServer.SEARCH);
+
+        // "wome" is a candidate, the table serves it
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"wom\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3));
+        Thread.sleep(200);
+
+        assertThat(prefetchCount("issued"), is(issued));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH), is(searches));
+    }
+
+    @Test
+    public void testPrefetchedResponseDoesNotProbeTheOpenCircuit() throws InterruptedException {
+        prefetch("{\"textQuery\": \"wome\", \"size\": 4}");
+        ES_STUB.setErrorRate(1.0, 503);
+        for (int i = 0; i < 5 && typeaheadFallbackCache.isClosed(); i++) {
+            client.typeaheadRequest().body("{\"textQuery\": \"shoes" + i + "\"}").post();
+        }
+        assertThat(typeaheadFallbackCache.getState(), is(CircuitBreaker.State.OPEN));
+        ES_STUB.setErrorRate(0, 503);
+        Thread.sleep(400);
+
+        // Served without ES, the circuit stays open for the next live search to probe it
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 4}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(4));
+        assertThat(typeaheadFallbackCache.getState(), is(CircuitBreaker.State.OPEN));
+
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"womens\", \"size\": 4}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(4))
+            .body("stale", nullValue());
+        assertThat(typeaheadFallbackCache.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    // Sends the query and waits for the prefetch of its next keystrokes
+    private void prefetch(String body) throws InterruptedException {
+        double issued = prefetchCount("issued");
+        client
+            .typeaheadRequest()
+            .body(body)
+            .post()
+            .then()
+            .statusCode(200);
+        for (int i = 0; i < 100 && prefetchCount("issued") <= issued; i++) {
+            Thread.sleep(20);
+        }
+        // Lets the prefetch response land in the cache after the stub has counted the search
+        Thread.sleep(200);
+    }
+
+    private double prefetchCount(String outcome) {
+        return meterRegistry.get("typeahead.prefetch").tag("outcome", outcome).counter().count();
+    }
+
+    private static EsStubServer startStub() {
+        try {
+            return new EsStubServer(0).start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class EsStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues
+                .of("com.griddynamics.es.graduation.project.esHost=http://localhost:" + ES_STUB.getPort())
+                .applyTo(context);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.griddynamics.esgraduationproject.common;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficSettings;
+import com.griddynamics.esgraduationproject.model.IndexRebuildJob;
+import com.griddynamics.esgraduationproject.service.IndexRebuildService;
+import com.griddynamics.esgraduationproject.service.TypeaheadService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.elasticsearch.search.internal.SearchContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Request paths of the service against the in-JVM ES stub, runs without an ES cluster.
+ * The stub doesn't evaluate queries, so only the plumbing is checked here, not the relevance.
+ */
+@ContextConfiguration(initializers = TypeaheadStubTest.EsStubInitializer.class)
+public class TypeaheadStubTest extends BaseTest {
+
+    private static final EsStubServer ES_STUB = startStub();
+
+    private APIClient client = new APIClient();
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    TypeaheadService typeaheadService;
+
+    @Autowired
+    IndexRebuildService indexRebuildService;
+
+    @Autowired
+    ShadowTrafficSettings typeaheadShadowTrafficSettings;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    AdaptiveConcurrencyLimiter typeaheadConcurrencyLimiter;
+
+    @Before
+    public void init() {
+        typeaheadService.recreateIndex();
+    }
+
+    @After
+    public void cleanUp() {
+        typeaheadShadowTrafficSettings.setSampleRate(0.0);
+        ES_STUB.reset();
+    }
+
+    @Test
+    public void testIndexIsRecreatedThroughStub() {
+        Set<String> generations = ES_STUB.getAliasIndices("test_typeaheads");
+
+        assertThat(generations, hasSize(1));
+        assertThat(ES_STUB.getIndex(generations.iterator().next()).size(), greaterThan(0));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.BULK), is(1L));
+    }
+
+    @Test
+    public void testRankFeaturesAreIndexedFromThePositiveValues() {
+        String generation = ES_STUB.getAliasIndices("test_typeaheads").iterator().next();
+        JsonNode women = ES_STUB.getIndex(generation).get("1");
+
+        assertThat(women.get("rankFeature").asInt(), is(women.get("rank").asInt()));
+        assertThat(women.get("itemCountFeature").asInt(), is(women.get("itemCount").asInt()));
+    }
+
+    @Test
+    public void testRebuildFailsWhenEsRejectsDocuments() throws InterruptedException {
+        String previousGeneration = ES_STUB.getAliasIndices("test_typeaheads").iterator().next();
+        ES_STUB.addRecordedResponse("POST", "/_bulk", 200, "{\"took\":1,\"errors\":true,\"items\":["
+            + "{\"index\":{\"_index\":\"test_typeaheads\",\"_type\":\"_doc\",\"_id\":\"1\",\"status\":400,"
+            + "\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse field [rankFeature]\"}}},"
+            + "{\"index\":{\"_index\":\"test_typeaheads\",\"_type\":\"_doc\",\"_id\":\"2\",\"status\":201,"
+            + "\"result\":\"created\",\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,"
+            + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}}]}");
+
+        IndexRebuildJob job = indexRebuildService.startRebuild("test");
+        while (job.getState() == IndexRebuildJob.State.RUNNING) {
+            Thread.sleep(50);
+        }
+
+        assertThat(job.getState(), is(IndexRebuildJob.State.FAILED));
+        assertThat(job.getDocsFailed(), is(1L));
+        assertThat(job.getDocsIndexed(), is(1L));
+        assertThat(ES_STUB.getAliasIndices("test_typeaheads"), contains(previousGeneration));
+    }
+
+    @Test
+    public void testPreviousGenerationIsServedDuringBackgroundRebuild() throws InterruptedException {
+        String previousGeneration = ES_STUB.getAliasIndices("test_typeaheads").iterator().next();
+        ES_STUB.setFaultOperations(EsStubServer.BULK);
+        ES_STUB.setLatency(1000, 0);
+
+        IndexRebuildJob job = indexRebuildService.startRebuild("test");
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3));
+        assertThat(job.getState(), is(IndexRebuildJob.State.RUNNING));
+
+        while (job.getState() == IndexRebuildJob.State.RUNNING) {
+            Thread.sleep(50);
+        }
+        assertThat(job.getState(), is(IndexRebuildJob.State.SUCCEEDED));
+        assertThat(job.getDocsIndexed(), is(job.getDocsTotal()));
+        assertThat(ES_STUB.getAliasIndices("test_typeaheads"), contains(job.getTargetIndex()));
+        assertThat(ES_STUB.getIndex(previousGeneration), nullValue());
+    }
+
+    @Test
+    public void testNewGenerationIsKeptWhenThePreviousOneCanNotBeDeleted() {
+        String previousGeneration = ES_STUB.getAliasIndices("test_typeaheads").iterator().next();
+        // E.g. dropped by another instance meanwhile
+        ES_STUB.addRecordedResponse("DELETE", "/" + previousGeneration, 404,
+            "{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},\"status\":404}");
+
+        IndexRebuildJob job = indexRebuildService.rebuild("test");
+
+        assertThat(job.getState(), is(IndexRebuildJob.State.SUCCEEDED));
+        assertThat(ES_STUB.getAliasIndices("test_typeaheads"), contains(job.getTargetIndex()));
+        assertThat(ES_STUB.getIndex(job.getTargetIndex()), notNullValue());
+    }
+
+    @Test
+    public void testRebuildIsSkippedWhileAnotherInstanceHoldsTheLock() {
+        ES_STUB.createIndex("index_locks").put("test_typeaheads", JsonNodeFactory.instance.objectNode()
+            .put("owner", "other-instance")
+            .put("jobId", "other-job")
+            .put("expiresAt", System.currentTimeMillis() + 60_000));
+
+        IndexRebuildJob job = indexRebuildService.startRebuild("test");
+
+        assertThat(job.getState(), is(IndexRebuildJob.State.SKIPPED));
+        assertThat(job.getError(), containsString("other-instance"));
+    }
+
+    @Test
+    public void testTypeaheadsAreReturned() {
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3))
+            .body("totalHits", greaterThan(3));
+    }
+
+    @Test
+    public void testSmileIsNegotiatedAndTimedByFormat() throws IOException {
+        byte[] body = client
+            .typeaheadRequest()
+            .accept("application/x-jackson-smile")
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .contentType("application/x-jackson-smile")
+            .extract()
+            .asByteArray();
+
+        JsonNode response = new ObjectMapper(new SmileFactory()).readTree(body);
+        assertThat(response.get("typeaheads").size(), is(3));
+        Timer serialization = meterRegistry.get("search.stage.duration")
+            .tag("stage", "serialization")
+            .tag("format", "smile")
+            .timer();
+        assertThat(serialization.getId().getTag("queryMode"), is("any"));
+        assertThat(serialization.count(), greaterThan(0L));
+    }
+
+    @Test
+    public void testWildcardAcceptAndErrorsAreJson() {
+        client
+            .typeaheadRequest()
+            .accept("*/*")
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .contentType("application/json");
+        client
+            .typeaheadRequest()
+            .accept("*/*")
+            .body("{\"textQuery\": ")
+            .post()
+            .then()
+            .statusCode(400)
+            .contentType("application/json")
+            .body("status", is(400));
+    }
+
+    @Test
+    public void testGetAllIsSortedByIndexSortWithBoundedTotalHits() throws IOException {
+        client.typeaheadRequest().body("{}").post().then().statusCode(200);
+
+        JsonNode search = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(search.get("track_total_hits").asInt(), is(1000));
+        assertThat(search.get("sort").size(), is(2));
+        assertThat(search.get("sort").get(0).has("rank"), is(true));
+        assertThat(search.get("sort").get(1).has("itemCount"), is(true));
+    }
+
+    @Test
+    public void testTotalHitsAreBoundedUnlessExactOnesAreRequested() throws IOException {
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("totalHits", is(36))
+            .body("totalHitsRelation", is("eq"));
+        JsonNode search = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(search.get("track_total_hits").asInt(), is(1000));
+
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3, \"exactTotalHits\": true}")
+            .post()
+            .then()
+            .statusCode(200);
+        search = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        // trackTotalHits(true) is sent as the accurate bound
+        assertThat(search.get("track_total_hits").asInt(), is(SearchContext.TRACK_TOTAL_HITS_ACCURATE));
+
+        client.typeaheadRequest().body("{\"exactTotalHits\": true}").post().then().statusCode(200);
+        search = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(search.get("track_total_hits").asInt(), is(SearchContext.TRACK_TOTAL_HITS_ACCURATE));
+        assertThat(search.get("sort").get(0).get("rank").get("order").asText(), is("desc"));
+        assertThat(search.get("sort").get(1).get("itemCount").get("order").asText(), is("desc"));
+    }
+
+    @Test
+    public void testRankFeatureScoringSortsByScoreOnly() throws IOException {
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3, \"scoringMode\": \"RANK_FEATURE\", \"facets\": false}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3))
+            .body("facets", nullValue());
+
+        JsonNode search = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(search.has("sort"), is(false));
+        assertThat(search.has("aggregations"), is(false));
+        assertThat(search.at("/query/bool/should/0").has("wrapper"), is(true));
+    }
+
+    @Test
+    public void testRequestsAboveTheConcurrencyLimitAreRejected() {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (AdaptiveConcurrencyLimiter.Permit permit = typeaheadConcurrencyLimiter.tryAcquire(); permit != null;
+             permit = typeaheadConcurrencyLimiter.tryAcquire()) {
+            permits.add(permit);
+        }
+        try {
+            client
+                .typeaheadRequest()
+                .body("{\"textQuery\": \"shoes\"}")
+                .post()
+                .then()
+                .statusCode(503)
+                .header("Retry-After", "1");
+        } finally {
+            permits.forEach(AdaptiveConcurrencyLimiter.Permit::release);
+        }
+    }
+
+    @Test
+    public void testStaleResponseIsServedOnInjectedEsErrors() {
+        String body = "{\"textQuery\": \"shoes\", \"size\": 2}";
+        client.typeaheadRequest().body(body).post().then().statusCode(200);
+
+        ES_STUB.setErrorRate(1.0, 503);
+
+        client
+            .typeaheadRequest()
+            .body(body)
+            .post()
+            .then()
+            .statusCode(200)
+            .body("stale", is(true))
+            .body("typeaheads", hasSize(2));
+    }
+
+    @Test
+    public void testCandidateStrategyIsComparedOnMirroredTraffic() throws IOException, InterruptedException {
+        typeaheadShadowTrafficSettings.setSampleRate(1.0);
+
+        client
+            .typeaheadRequest()
+            .body("{\"textQuery\": \"women\", \"size\": 3}")
+            .post()
+            .then()
+            .statusCode(200)
+            .body("typeaheads", hasSize(3));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (getShadowCount("compared") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(getShadowCount("compared"), is(1.0));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH), is(2L));
+        JsonNode candidateSearch = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(candidateSearch.at("/query/match_bool_prefix").has("name"), is(true));
+        // The stub returns the same hits for both queries
+        assertThat(meterRegistry.get("search.shadow.overlap").summary().mean(), is(1.0));
+        assertThat(meterRegistry.get("search.shadow.rank_correlation").summary().mean(), is(1.0));
+    }
+
+    private double getShadowCount(String outcome) {
+        Counter counter = meterRegistry.find("search.shadow.requests").tag("outcome", outcome).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static EsStubServer startStub() {
+        try {
+            return new EsStubServer(0).start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class EsStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues
+                .of("com.griddynamics.es.graduation.project.esHost=http://localhost:" + ES_STUB.getPort())
+                .applyTo(context);
+        }
+    }
+}
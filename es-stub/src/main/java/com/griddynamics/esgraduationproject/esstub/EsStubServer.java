@@ -0,0 +1,811 @@
+package com.griddynamics.esgraduationproject.esstub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-JVM stand-in for the subset of the Elasticsearch REST API used by the services: _search (also sliced
+ * scrolls), _msearch, _bulk, single documents (with _create and if_seq_no conditional writes), index create/delete/exists,
+ * aliases and refresh.
+ * <p>
+ * Searches return the stored documents (from/size applied, queries and aggregations ignored) or a recorded
+ * response registered with {@link #addRecordedResponse}. Latency and errors can be injected into the
+ * search operations to benchmark and regression-test the service-side request paths without a cluster.
+ */
+@Slf4j
+public class EsStubServer {
+    public static final String SEARCH = "search";
+    public static final String MSEARCH = "msearch";
+    public static final String BULK = "bulk";
+    public static final String SCROLL = "scroll";
+    public static final String MGET = "mget";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // Responses in the format of the Accept header, as ES does
+    private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    private final Map<String, StubIndex> indices = new ConcurrentHashMap<>();
+    // alias -> indices
+    private final Map<String, Set<String>> aliases = new ConcurrentHashMap<>();
+    private final List<RecordedResponse> recordedResponses = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, String> lastRequestBodies = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> lastRequestParams = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> lastRequestHeaders = new ConcurrentHashMap<>();
+    // Scroll id -> hits not returned yet
+    private final Map<String, ScrollContext> scrolls = new ConcurrentHashMap<>();
+    private final AtomicLong nextScrollId = new AtomicLong();
+
+    // Fault injection, applied to the operations in faultOperations
+    private volatile Set<String> faultOperations = new HashSet<>(Arrays.asList(SEARCH, MSEARCH));
+    private volatile long latencyMs;
+    private volatile long latencyJitterMs;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+
+    private final int requestedPort;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    /**
+     * @param port 0 = any free port, see {@link #getPort()}
+     */
+    public EsStubServer(int port) {
+        this.requestedPort = port;
+    }
+
+    public EsStubServer start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "es-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/", this::handle);
+        httpServer.start();
+        log.info("ES stub is listening on port {}", getPort());
+        return this;
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public StubIndex createIndex(String name) {
+        return indices.computeIfAbsent(name, StubIndex::new);
+    }
+
+    public StubIndex getIndex(String name) {
+        return indices.get(name);
+    }
+
+    public Set<String> getAliasIndices(String alias) {
+        return new HashSet<>(aliases.getOrDefault(alias, new HashSet<>()));
+    }
+
+    public void addAlias(String alias, String index) {
+        aliases.computeIfAbsent(alias, key -> ConcurrentHashMap.newKeySet()).add(index);
+    }
+
+    /**
+     * Requests whose method and path (without the query string) match are answered with the given
+     * response instead of the synthetic one, for example a search response with aggregations
+     * recorded from a real cluster. The first matching response wins.
+     */
+    public void addRecordedResponse(String method, String pathRegex, int status, String body) {
+        recordedResponses.add(new RecordedResponse(method, Pattern.compile(pathRegex), status, body));
+    }
+
+    public void setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = jitterMs;
+    }
+
+    public void setErrorRate(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+    }
+
+    public void setFaultOperations(String... operations) {
+        this.faultOperations = new HashSet<>(Arrays.asList(operations));
+    }
+
+    public long getRequestCount(String operation) {
+        AtomicLong count = requestCounts.get(operation);
+        return count != null ? count.get() : 0;
+    }
+
+    // Lets the tests check the queries built by the services, null if no request was received
+    public String getLastRequestBody(String operation) {
+        return lastRequestBodies.get(operation);
+    }
+
+    // URL parameters (routing, preference, ...) of the last request, null if no request was received
+    public Map<String, String> getLastRequestParams(String operation) {
+        return lastRequestParams.get(operation);
+    }
+
+    // Headers of the last request, names lower-cased; null if no request was received
+    public Map<String, String> getLastRequestHeaders(String operation) {
+        return lastRequestHeaders.get(operation);
+    }
+
+    // Scroll contexts not cleared yet
+    public int getOpenScrollCount() {
+        return scrolls.size();
+    }
+
+    /**
+     * Removes indices, aliases, recorded responses, faults and counters.
+     */
+    public void reset() {
+        indices.clear();
+        aliases.clear();
+        recordedResponses.clear();
+        requestCounts.clear();
+        lastRequestBodies.clear();
+        lastRequestParams.clear();
+        lastRequestHeaders.clear();
+        scrolls.clear();
+        setLatency(0, 0);
+        setErrorRate(0, 503);
+        setFaultOperations(SEARCH, MSEARCH);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String body = readBody(exchange);
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            List<String> segments = Arrays.stream(path.split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .collect(Collectors.toList());
+            String operation = getOperation(method, segments);
+            requestCounts.computeIfAbsent(operation, key -> new AtomicLong()).incrementAndGet();
+            lastRequestBodies.put(operation, body);
+            lastRequestParams.put(operation, params);
+            Map<String, String> headers = new HashMap<>();
+            exchange.getRequestHeaders().forEach((name, values) -> headers.put(name.toLowerCase(), values.get(0)));
+            lastRequestHeaders.put(operation, headers);
+
+            if (faultOperations.contains(operation)) {
+                injectLatency();
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    send(exchange, errorStatus, error("stub_injected_exception", "Injected failure", errorStatus));
+                    return;
+                }
+            }
+
+            for (RecordedResponse recorded : recordedResponses) {
+                if (recorded.method.equalsIgnoreCase(method) && recorded.pathPattern.matcher(path).matches()) {
+                    send(exchange, recorded.status, recorded.body);
+                    return;
+                }
+            }
+
+            StubResponse response = dispatch(method, operation, segments, params, body);
+            send(exchange, response.status, response.body);
+        } catch (Exception ex) {
+            log.warn("ES stub failed to handle {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), ex);
+            send(exchange, 500, error("stub_exception", String.valueOf(ex.getMessage()), 500));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String getOperation(String method, List<String> segments) {
+        if (segments.isEmpty()) {
+            return "info";
+        }
+        if (segments.size() == 2 && "_search".equals(segments.get(0)) && SCROLL.equals(segments.get(1))) {
+            return "DELETE".equalsIgnoreCase(method) ? "clear_scroll" : SCROLL;
+        }
+        if (segments.size() == 2 && "_alias".equals(segments.get(0))) {
+            return method.toLowerCase() + "_alias";
+        }
+        if (segments.size() == 3 && "_create".equals(segments.get(1))) {
+            return "create_doc";
+        }
+        String last = segments.get(segments.size() - 1);
+        if (last.startsWith("_")) {
+            return last.substring(1);
+        }
+        if (segments.size() == 1) {
+            return method.toLowerCase() + "_index";
+        }
+        if (segments.size() == 3 && "_doc".equals(segments.get(1))) {
+            return method.toLowerCase() + "_doc";
+        }
+        if (segments.size() == 3 && segments.get(1).startsWith("_alias")) {
+            return "aliases";
+        }
+        return "unsupported";
+    }
+
+    private StubResponse dispatch(String method, String operation, List<String> segments, Map<String, String> params,
+                                  String body) throws IOException {
+        String pathIndex = segments.size() > 1 || (segments.size() == 1 && !segments.get(0).startsWith("_"))
+            ? segments.get(0) : null;
+        switch (operation) {
+            case "info":
+                return StubResponse.ok(INFO_RESPONSE);
+            case SEARCH:
+                return search(pathIndex, parseObject(body), params.containsKey(SCROLL));
+            case SCROLL:
+                return scroll(parseObject(body));
+            case "clear_scroll":
+                return clearScroll(parseObject(body));
+            case MSEARCH:
+                return msearch(pathIndex, body);
+            case BULK:
+                return bulk(pathIndex, body);
+            case MGET:
+                return multiGet(pathIndex, parseObject(body));
+            case "refresh":
+                return StubResponse.ok("{\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}");
+            case "aliases":
+                return updateAliases(segments, parseObject(body));
+            case "put_index":
+                if (indices.containsKey(pathIndex)) {
+                    return new StubResponse(400, error("resource_already_exists_exception",
+                        "index [" + pathIndex + "] already exists", 400));
+                }
+                createIndex(pathIndex);
+                return StubResponse.ok("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\""
+                    + pathIndex + "\"}");
+            case "delete_index":
+                if (indices.remove(pathIndex) == null) {
+                    return indexNotFound(pathIndex);
+                }
+                aliases.values().forEach(aliasIndices -> aliasIndices.remove(pathIndex));
+                return StubResponse.ok("{\"acknowledged\":true}");
+            case "head_index":
+            case "get_index":
+                return getIndexInfo(pathIndex);
+            case "put_doc":
+            case "post_doc":
+                return putDocument(pathIndex, segments.get(2), params, parseObject(body));
+            case "create_doc":
+                return createDocument(pathIndex, segments.get(2), parseObject(body));
+            case "get_doc":
+                return getDocument(pathIndex, segments.get(2));
+            case "delete_doc":
+                return deleteDocument(pathIndex, segments.get(2), params);
+            case "get_alias":
+            case "head_alias":
+                return getAlias(segments.get(1));
+            default:
+                return new StubResponse(400, error("stub_unsupported_operation_exception",
+                    "The ES stub doesn't support " + method + " /" + String.join("/", segments), 400));
+        }
+    }
+
+    private StubResponse search(String index, ObjectNode source, boolean scroll) {
+        List<String> searchIndices = resolveIndices(index);
+        if (searchIndices.isEmpty()) {
+            return indexNotFound(index);
+        }
+
+        // Slices split the documents by id, as ES does with the _id field
+        JsonNode slice = source.path("slice");
+        List<ObjectNode> hits = new ArrayList<>();
+        for (String searchIndex : searchIndices) {
+            for (Map.Entry<String, ObjectNode> document : indices.get(searchIndex).getDocuments()) {
+                if (slice.has("max")
+                    && Math.floorMod(document.getKey().hashCode(), slice.get("max").asInt()) != slice.path("id").asInt()) {
+                    continue;
+                }
+                ObjectNode hit = objectMapper.createObjectNode();
+                hit.put("_index", searchIndex);
+                hit.put("_type", "_doc");
+                hit.put("_id", document.getKey());
+                hit.put("_score", 1.0);
+                hit.set("_source", filterSource(document.getValue(), source.path("_source").path("includes")));
+                hits.add(hit);
+            }
+        }
+        int from = source.path("from").asInt(0);
+        int size = source.path("size").asInt(10);
+
+        ObjectNode response = getSearchResponse(searchIndices.size(), hits.size(),
+            hits.stream().skip(from).limit(size).collect(Collectors.toList()));
+        if (scroll) {
+            String scrollId = "stub-scroll-" + nextScrollId.incrementAndGet();
+            List<ObjectNode> remaining = hits.stream().skip(from + size).collect(Collectors.toList());
+            scrolls.put(scrollId, new ScrollContext(searchIndices.size(), hits.size(), size, remaining));
+            response.put("_scroll_id", scrollId);
+        }
+        return StubResponse.ok(response.toString());
+    }
+
+    private StubResponse scroll(ObjectNode body) {
+        String scrollId = body.path("scroll_id").asText();
+        ScrollContext context = scrolls.get(scrollId);
+        if (context == null) {
+            return new StubResponse(404, error("search_context_missing_exception",
+                "No search context found for id [" + scrollId + "]", 404));
+        }
+        ObjectNode response = getSearchResponse(context.shards, context.total, context.nextPage());
+        response.put("_scroll_id", scrollId);
+        return StubResponse.ok(response.toString());
+    }
+
+    private StubResponse clearScroll(ObjectNode body) {
+        int freed = 0;
+        for (JsonNode scrollId : body.path("scroll_id")) {
+            if (scrolls.remove(scrollId.asText()) != null) {
+                freed++;
+            }
+        }
+        return StubResponse.ok("{\"succeeded\":true,\"num_freed\":" + freed + "}");
+    }
+
+    private static ObjectNode getSearchResponse(int shards, int total, List<ObjectNode> hits) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("took", 1);
+        response.put("timed_out", false);
+        response.set("_shards", objectMapper.createObjectNode()
+            .put("total", shards).put("successful", shards)
+            .put("skipped", 0).put("failed", 0));
+        ObjectNode hitsNode = response.putObject("hits");
+        hitsNode.putObject("total").put("value", total).put("relation", "eq");
+        hitsNode.put("max_score", 1.0);
+        hitsNode.putArray("hits").addAll(hits);
+        return response;
+    }
+
+    // _source includes, top-level field names only
+    private static ObjectNode filterSource(ObjectNode document, JsonNode includes) {
+        if (!includes.isArray() || includes.size() == 0) {
+            return document;
+        }
+        ObjectNode filtered = objectMapper.createObjectNode();
+        includes.forEach(field -> {
+            if (document.has(field.asText())) {
+                filtered.set(field.asText(), document.get(field.asText()));
+            }
+        });
+        return filtered;
+    }
+
+    private StubResponse msearch(String pathIndex, String body) throws IOException {
+        List<String> lines = Arrays.stream(body.split("\n"))
+            .filter(line -> !line.trim().isEmpty())
+            .collect(Collectors.toList());
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("took", 1);
+        ArrayNode responses = response.putArray("responses");
+        for (int i = 0; i + 1 < lines.size(); i += 2) {
+            JsonNode header = objectMapper.readTree(lines.get(i));
+            String index = header.has("index") ? getIndexName(header.get("index")) : pathIndex;
+            StubResponse itemResponse = search(index, parseObject(lines.get(i + 1)), false);
+            ObjectNode item = (ObjectNode) objectMapper.readTree(itemResponse.body);
+            item.put("status", itemResponse.status);
+            responses.add(item);
+        }
+        return StubResponse.ok(response.toString());
+    }
+
+    private StubResponse bulk(String pathIndex, String body) throws IOException {
+        List<String> lines = Arrays.stream(body.split("\n"))
+            .filter(line -> !line.trim().isEmpty())
+            .collect(Collectors.toList());
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("took", 1);
+        response.put("errors", false);
+        ArrayNode items = response.putArray("items");
+
+        int i = 0;
+        while (i < lines.size()) {
+            JsonNode action = objectMapper.readTree(lines.get(i++));
+            String opType = action.fieldNames().next();
+            JsonNode metadata = action.get(opType);
+            String index = metadata.has("_index") ? metadata.get("_index").asText() : pathIndex;
+            String id = metadata.has("_id") ? metadata.get("_id").asText() : null;
+            StubIndex stubIndex = createIndex(index);
+
+            ObjectNode item;
+            if ("delete".equals(opType)) {
+                boolean deleted = stubIndex.delete(id);
+                item = writeResultItem(index, id, deleted ? "deleted" : "not_found", deleted ? 200 : 404);
+            } else if ("update".equals(opType)) {
+                ObjectNode existing = stubIndex.get(id);
+                ObjectNode update = parseObject(lines.get(i++));
+                ObjectNode merged = existing != null ? existing.deepCopy() : objectMapper.createObjectNode();
+                if (update.has("doc")) {
+                    merged.setAll((ObjectNode) update.get("doc"));
+                }
+                stubIndex.put(id, merged);
+                item = writeResultItem(index, id, "updated", 200);
+            } else {
+                ObjectNode source = parseObject(lines.get(i++));
+                boolean created = true;
+                if (id == null) {
+                    id = stubIndex.put(source);
+                } else {
+                    created = stubIndex.put(id, source);
+                }
+                item = writeResultItem(index, id, created ? "created" : "updated", created ? 201 : 200);
+            }
+            items.add(objectMapper.createObjectNode().set(opType, item));
+        }
+        return StubResponse.ok(response.toString());
+    }
+
+    private StubResponse updateAliases(List<String> segments, ObjectNode body) {
+        if (segments.size() == 3) {
+            // PUT /{index}/_alias/{alias}
+            addAlias(segments.get(2), segments.get(0));
+            return StubResponse.ok("{\"acknowledged\":true}");
+        }
+        for (JsonNode action : body.path("actions")) {
+            String type = action.fieldNames().next();
+            JsonNode spec = action.get(type);
+            List<String> actionIndices = getNames(spec, "index", "indices");
+            List<String> actionAliases = getNames(spec, "alias", "aliases");
+            for (String index : actionIndices) {
+                if ("add".equals(type)) {
+                    actionAliases.forEach(alias -> addAlias(alias, index));
+                } else if ("remove".equals(type)) {
+                    actionAliases.forEach(alias -> aliases.getOrDefault(alias, new HashSet<>()).remove(index));
+                } else if ("remove_index".equals(type)) {
+                    indices.remove(index);
+                }
+            }
+        }
+        return StubResponse.ok("{\"acknowledged\":true}");
+    }
+
+    private StubResponse putDocument(String index, String id, Map<String, String> params, ObjectNode source) {
+        StubIndex stubIndex = createIndex(index);
+        synchronized (stubIndex) {
+            if (!matchesSeqNo(stubIndex, id, params)) {
+                return versionConflict(index, id);
+            }
+            boolean created = stubIndex.put(id, source);
+            return new StubResponse(created ? 201 : 200, writeResultItem(index, id, created ? "created" : "updated",
+                created ? 201 : 200, stubIndex.getSeqNo(id)).toString());
+        }
+    }
+
+    private StubResponse createDocument(String index, String id, ObjectNode source) {
+        StubIndex stubIndex = createIndex(index);
+        synchronized (stubIndex) {
+            if (!stubIndex.create(id, source)) {
+                return versionConflict(index, id);
+            }
+            return new StubResponse(201, writeResultItem(index, id, "created", 201, stubIndex.getSeqNo(id)).toString());
+        }
+    }
+
+    private StubResponse deleteDocument(String index, String id, Map<String, String> params) {
+        StubIndex stubIndex = indices.get(index);
+        if (stubIndex == null) {
+            return indexNotFound(index);
+        }
+        synchronized (stubIndex) {
+            if (!matchesSeqNo(stubIndex, id, params)) {
+                return versionConflict(index, id);
+            }
+            boolean deleted = stubIndex.delete(id);
+            return new StubResponse(deleted ? 200 : 404,
+                writeResultItem(index, id, deleted ? "deleted" : "not_found", deleted ? 200 : 404, 0).toString());
+        }
+    }
+
+    private static boolean matchesSeqNo(StubIndex stubIndex, String id, Map<String, String> params) {
+        String ifSeqNo = params.get("if_seq_no");
+        return ifSeqNo == null || Long.parseLong(ifSeqNo) == stubIndex.getSeqNo(id);
+    }
+
+    // Concrete indices behind the names, without mappings and settings
+    private StubResponse getIndexInfo(String names) {
+        List<String> resolved = resolveIndices(names);
+        if (resolved.isEmpty()) {
+            return indexNotFound(names);
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        resolved.forEach(index -> {
+            ObjectNode indexNode = response.putObject(index);
+            indexNode.putObject("aliases");
+            indexNode.putObject("mappings");
+            indexNode.putObject("settings").putObject("index")
+                .put("uuid", indices.get(index).getUuid());
+        });
+        return StubResponse.ok(response.toString());
+    }
+
+    // docs with _index/_id or ids of the path index; an alias must point to a single index, as in ES
+    private StubResponse multiGet(String pathIndex, ObjectNode body) throws IOException {
+        ArrayNode docs = objectMapper.createArrayNode();
+        List<ObjectNode> items = new ArrayList<>();
+        body.path("docs").forEach(doc -> items.add(objectMapper.createObjectNode()
+            .put("_index", doc.path("_index").asText(pathIndex))
+            .put("_id", doc.path("_id").asText())));
+        body.path("ids").forEach(id -> items.add(objectMapper.createObjectNode()
+            .put("_index", pathIndex)
+            .put("_id", id.asText())));
+        for (ObjectNode item : items) {
+            String name = item.get("_index").asText();
+            List<String> resolved = resolveIndices(name);
+            if (resolved.size() != 1) {
+                item.put("_type", "_doc");
+                item.set("error", objectMapper.readTree(indexNotFound(name).body).get("error"));
+                docs.add(item);
+                continue;
+            }
+            docs.add(objectMapper.readTree(getDocument(resolved.get(0), item.get("_id").asText()).body));
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.set("docs", docs);
+        return StubResponse.ok(response.toString());
+    }
+
+    private StubResponse getAlias(String alias) {
+        Set<String> aliasIndices = aliases.getOrDefault(alias, new HashSet<>());
+        ObjectNode response = objectMapper.createObjectNode();
+        aliasIndices.stream().filter(indices::containsKey).forEach(index ->
+            response.putObject(index).putObject("aliases").putObject(alias));
+        if (response.size() == 0) {
+            return new StubResponse(404, objectMapper.createObjectNode()
+                .put("error", "alias [" + alias + "] missing").put("status", 404).toString());
+        }
+        return StubResponse.ok(response.toString());
+    }
+
+    private StubResponse getDocument(String index, String id) {
+        StubIndex stubIndex = indices.get(index);
+        if (stubIndex == null) {
+            return indexNotFound(index);
+        }
+        ObjectNode source = stubIndex.get(id);
+        ObjectNode response = objectMapper.createObjectNode()
+            .put("_index", index).put("_type", "_doc").put("_id", id).put("found", source != null);
+        if (source != null) {
+            response.put("_version", 1).put("_seq_no", stubIndex.getSeqNo(id)).put("_primary_term", 1);
+            response.set("_source", source);
+        }
+        return new StubResponse(source != null ? 200 : 404, response.toString());
+    }
+
+    // Index names, comma separated lists and aliases -> existing indices
+    private List<String> resolveIndices(String names) {
+        Set<String> result = new LinkedHashSet<>();
+        if (names == null || "_all".equals(names)) {
+            result.addAll(indices.keySet());
+        } else {
+            for (String name : names.split(",")) {
+                if (indices.containsKey(name)) {
+                    result.add(name);
+                } else if (aliases.containsKey(name)) {
+                    aliases.get(name).stream().filter(indices::containsKey).forEach(result::add);
+                } else {
+                    return new ArrayList<>();
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private void injectLatency() throws InterruptedException {
+        long delay = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMs + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private static ObjectNode writeResultItem(String index, String id, String result, int status) {
+        return writeResultItem(index, id, result, status, 0);
+    }
+
+    private static ObjectNode writeResultItem(String index, String id, String result, int status, long seqNo) {
+        ObjectNode item = objectMapper.createObjectNode()
+            .put("_index", index).put("_type", "_doc").put("_id", id).put("_version", 1).put("result", result);
+        item.set("_shards", objectMapper.createObjectNode().put("total", 1).put("successful", 1).put("failed", 0));
+        return item.put("_seq_no", seqNo).put("_primary_term", 1).put("status", status);
+    }
+
+    private static List<String> getNames(JsonNode spec, String singleField, String arrayField) {
+        List<String> names = new ArrayList<>();
+        if (spec.has(singleField)) {
+            names.add(spec.get(singleField).asText());
+        }
+        spec.path(arrayField).forEach(name -> names.add(name.asText()));
+        return names;
+    }
+
+    private static String getIndexName(JsonNode indexNode) {
+        if (indexNode.isArray()) {
+            List<String> names = new ArrayList<>();
+            indexNode.forEach(name -> names.add(name.asText()));
+            return String.join(",", names);
+        }
+        return indexNode.asText();
+    }
+
+    private static StubResponse versionConflict(String index, String id) {
+        return new StubResponse(409, error("version_conflict_engine_exception",
+            "[" + id + "]: version conflict in index [" + index + "]", 409));
+    }
+
+    private static StubResponse indexNotFound(String index) {
+        return new StubResponse(404, error("index_not_found_exception", "no such index [" + index + "]", 404));
+    }
+
+    private static String error(String type, String reason, int status) {
+        ObjectNode cause = objectMapper.createObjectNode().put("type", type).put("reason", reason);
+        ObjectNode error = cause.deepCopy();
+        error.putArray("root_cause").add(cause);
+        ObjectNode response = objectMapper.createObjectNode();
+        response.set("error", error);
+        return response.put("status", status).toString();
+    }
+
+    private static ObjectNode parseObject(String json) throws IOException {
+        if (json == null || json.trim().isEmpty()) {
+            return objectMapper.createObjectNode();
+        }
+        return (ObjectNode) objectMapper.readTree(json);
+    }
+
+    private static Map<String, String> parseParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int separator = param.indexOf('=');
+                if (separator > 0) {
+                    params.put(param.substring(0, separator), param.substring(separator + 1));
+                }
+            }
+        }
+        return params;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        // Sent by the clients with compression enabled (product-indexer)
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            String body = readBody(new GZIPInputStream(exchange.getRequestBody()));
+            // The gzip stream stops at its trailer, the last chunk must be consumed before responding
+            readBody(exchange.getRequestBody());
+            return body;
+        }
+        return readBody(exchange.getRequestBody());
+    }
+
+    private static String readBody(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        // Checked by the 7.14+ clients (product-indexer)
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        if ("HEAD".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes;
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept != null && accept.startsWith("application/smile") && !body.isEmpty()) {
+            bytes = smileMapper.writeValueAsBytes(objectMapper.readTree(body));
+            exchange.getResponseHeaders().set("Content-Type", "application/smile");
+        } else {
+            bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Standalone stub for benchmarks: {@code java -jar es-stub-1.0-exec.jar [port] [latencyMs] [jitterMs] [errorRate]}.
+     * Load data through the services or product-indexer as with a real cluster.
+     */
+    public static void main(String[] args) throws IOException {
+        EsStubServer stub = new EsStubServer(args.length > 0 ? Integer.parseInt(args[0]) : 9200);
+        stub.setLatency(args.length > 1 ? Long.parseLong(args[1]) : 0, args.length > 2 ? Long.parseLong(args[2]) : 0);
+        stub.setErrorRate(args.length > 3 ? Double.parseDouble(args[3]) : 0, 503);
+        stub.start();
+    }
+
+    private static final String INFO_RESPONSE = "{\"name\":\"es-stub\",\"cluster_name\":\"es-stub\","
+        + "\"cluster_uuid\":\"es-stub\",\"version\":{\"number\":\"7.17.0\",\"build_flavor\":\"default\","
+        + "\"build_type\":\"tar\",\"build_hash\":\"stub\",\"build_date\":\"2022-01-28T08:36:04.875Z\","
+        + "\"build_snapshot\":false,\"lucene_version\":\"8.11.1\",\"minimum_wire_compatibility_version\":\"6.8.0\","
+        + "\"minimum_index_compatibility_version\":\"6.0.0-beta1\"},\"tagline\":\"You Know, for Search\"}";
+
+    private static class StubResponse {
+        private final int status;
+        private final String body;
+
+        StubResponse(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static StubResponse ok(String body) {
+            return new StubResponse(200, body);
+        }
+    }
+
+    private static class ScrollContext {
+        private final int shards;
+        private final int total;
+        private final int size;
+        private final List<ObjectNode> remaining;
+
+        ScrollContext(int shards, int total, int size, List<ObjectNode> remaining) {
+            this.shards = shards;
+            this.total = total;
+            this.size = size;
+            this.remaining = remaining;
+        }
+
+        synchronized List<ObjectNode> nextPage() {
+            List<ObjectNode> page = new ArrayList<>(remaining.subList(0, Math.min(size, remaining.size())));
+            remaining.subList(0, page.size()).clear();
+            return page;
+        }
+    }
+
+    private static class RecordedResponse {
+        private final String method;
+        private final Pattern pathPattern;
+        private final int status;
+        private final String body;
+
+        RecordedResponse(String method, Pattern pathPattern, int status, String body) {
+            this.method = method;
+            this.pathPattern = pathPattern;
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
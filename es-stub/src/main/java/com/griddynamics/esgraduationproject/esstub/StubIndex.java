@@ -0,0 +1,89 @@
+package com.griddynamics.esgraduationproject.esstub;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Documents of one stub index in insertion order. Searches don't evaluate queries, they return
+ * the documents as they are, which is enough to measure the service-side overhead.
+ */
+public class StubIndex {
+    private final String name;
+    // index.uuid setting: an index recreated under the same name gets a new one
+    private final String uuid = UUID.randomUUID().toString();
+    private final Map<String, ObjectNode> documents = new LinkedHashMap<>();
+    // Sequence number of the last write of each document, for if_seq_no conditional writes
+    private final Map<String, Long> seqNos = new HashMap<>();
+    private long nextAutoId = 1;
+    private long nextSeqNo;
+
+    public StubIndex(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return true if the document was created, false if an existing one was replaced
+     */
+    public synchronized boolean put(String id, ObjectNode source) {
+        seqNos.put(id, nextSeqNo++);
+        return documents.put(id, source) == null;
+    }
+
+    /**
+     * @return false if a document with this id exists
+     */
+    public synchronized boolean create(String id, ObjectNode source) {
+        if (documents.containsKey(id)) {
+            return false;
+        }
+        put(id, source);
+        return true;
+    }
+
+    public synchronized String put(ObjectNode source) {
+        String id;
+        do {
+            id = "stub-" + nextAutoId++;
+        } while (documents.containsKey(id));
+        put(id, source);
+        return id;
+    }
+
+    public synchronized ObjectNode get(String id) {
+        return documents.get(id);
+    }
+
+    public synchronized boolean delete(String id) {
+        seqNos.remove(id);
+        return documents.remove(id) != null;
+    }
+
+    /**
+     * @return the sequence number of the document, -1 if there is no such document
+     */
+    public synchronized long getSeqNo(String id) {
+        return seqNos.getOrDefault(id, -1L);
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    public synchronized List<Map.Entry<String, ObjectNode>> getDocuments() {
+        return new ArrayList<>(documents.entrySet());
+    }
+}
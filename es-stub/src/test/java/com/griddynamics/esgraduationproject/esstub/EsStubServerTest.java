@@ -0,0 +1,113 @@
+package com.griddynamics.esgraduationproject.esstub;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class EsStubServerTest {
+
+    private EsStubServer stub;
+    private RestHighLevelClient esClient;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new EsStubServer(0).start();
+        esClient = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", stub.getPort(), "http")));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        esClient.close();
+        stub.stop();
+    }
+
+    @Test
+    public void testIndexLifecycleWithHighLevelClient() throws IOException {
+        esClient.indices().create(new CreateIndexRequest("products_v1")
+            .mapping("{\"properties\":{\"name\":{\"type\":\"text\"}}}", XContentType.JSON), RequestOptions.DEFAULT);
+        IndicesAliasesRequest aliasRequest = new IndicesAliasesRequest();
+        aliasRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add().index("products_v1").alias("products"));
+        esClient.indices().updateAliases(aliasRequest, RequestOptions.DEFAULT);
+
+        BulkRequest bulkRequest = new BulkRequest();
+        for (int i = 1; i <= 15; i++) {
+            bulkRequest.add(new IndexRequest("products_v1").id(String.valueOf(i))
+                .source("{\"name\":\"product " + i + "\"}", XContentType.JSON));
+        }
+        BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+        esClient.indices().refresh(new RefreshRequest("products"), RequestOptions.DEFAULT);
+
+        assertThat(bulkResponse.hasFailures(), is(false));
+        assertThat(esClient.indices().exists(new GetIndexRequest("products_v1"), RequestOptions.DEFAULT), is(true));
+        assertThat(esClient.indices().exists(new GetIndexRequest("missing"), RequestOptions.DEFAULT), is(false));
+
+        SearchResponse searchResponse = esClient.search(new SearchRequest("products")
+            .source(new SearchSourceBuilder().from(10).size(10)), RequestOptions.DEFAULT);
+        assertThat(searchResponse.getHits().getTotalHits().value, is(15L));
+        assertThat(searchResponse.getHits().getHits().length, is(5));
+        assertThat(searchResponse.getHits().getHits()[0].getSourceAsMap().get("name"), is("product 11"));
+
+        MultiSearchResponse multiSearchResponse = esClient.msearch(new MultiSearchRequest()
+            .add(new SearchRequest("products").source(new SearchSourceBuilder().size(1)))
+            .add(new SearchRequest("missing")), RequestOptions.DEFAULT);
+        assertThat(multiSearchResponse.getResponses()[0].getResponse().getHits().getHits().length, is(1));
+        assertThat(multiSearchResponse.getResponses()[1].isFailure(), is(true));
+    }
+
+    @Test
+    public void testInjectedErrorsAndLatency() throws IOException {
+        stub.createIndex("products");
+        stub.setErrorRate(1.0, 503);
+        try {
+            esClient.search(new SearchRequest("products"), RequestOptions.DEFAULT);
+            fail("Injected error expected");
+        } catch (ElasticsearchStatusException ex) {
+            assertThat(ex.status().getStatus(), is(503));
+        }
+
+        stub.setErrorRate(0, 503);
+        stub.setLatency(100, 0);
+        long start = System.nanoTime();
+        esClient.search(new SearchRequest("products"), RequestOptions.DEFAULT);
+        assertThat((System.nanoTime() - start) / 1_000_000, greaterThanOrEqualTo(100L));
+        assertThat(stub.getRequestCount(EsStubServer.SEARCH), is(2L));
+    }
+
+    @Test
+    public void testRecordedResponseOverridesSyntheticOne() throws IOException {
+        stub.createIndex("products");
+        stub.addRecordedResponse("POST", "/products/_search", 200, "{\"took\":7,\"timed_out\":true,"
+            + "\"_shards\":{\"total\":2,\"successful\":1,\"skipped\":0,\"failed\":1},"
+            + "\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]}}");
+
+        SearchResponse searchResponse = esClient.search(new SearchRequest("products"), RequestOptions.DEFAULT);
+
+        assertThat(searchResponse.isTimedOut(), is(true));
+        assertThat(searchResponse.getSuccessfulShards(), is(1));
+    }
+}
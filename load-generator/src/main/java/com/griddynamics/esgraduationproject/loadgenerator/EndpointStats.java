@@ -0,0 +1,79 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histogram (microseconds), response bytes and outcome counters of one endpoint. Interval reports show the
+ * requests since the previous report, the summary covers the whole run.
+ */
+@Slf4j
+public class EndpointStats {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String endpoint;
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private long reportedShed;
+    private long reportedErrors;
+    private long reportedResponseBytes;
+
+    public EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void recordSuccess(long latencyNanos, long bodyBytes) {
+        recorder.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        responseBytes.addAndGet(bodyBytes);
+    }
+
+    // 503 from the load shedding of the service
+    public void recordShed() {
+        shed.incrementAndGet();
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public synchronized void reportInterval(long intervalNanos) {
+        Histogram interval = recorder.getIntervalHistogram();
+        total.add(interval);
+        long shedCount = shed.get();
+        long errorCount = errors.get();
+        long bytes = responseBytes.get();
+        report("interval", interval, shedCount - reportedShed, errorCount - reportedErrors,
+            bytes - reportedResponseBytes, intervalNanos);
+        reportedShed = shedCount;
+        reportedErrors = errorCount;
+        reportedResponseBytes = bytes;
+    }
+
+    public synchronized void reportSummary(long runNanos) {
+        total.add(recorder.getIntervalHistogram());
+        report("summary", total, shed.get(), errors.get(), responseBytes.get(), runNanos);
+    }
+
+    private void report(String label, Histogram histogram, long shedCount, long errorCount, long bytes, long nanos) {
+        double seconds = Math.max(1e-9, nanos / 1e9);
+        long count = histogram.getTotalCount();
+        log.info("[{}] {}: {} ok ({} req/s, {} bytes/response), {} shed, {} errors, "
+                + "latency ms p50={} p90={} p99={} p99.9={} max={}",
+            label, endpoint, count, String.format("%.1f", count / seconds), count == 0 ? 0 : bytes / count,
+            shedCount, errorCount,
+            toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(90)),
+            toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getValueAtPercentile(99.9)),
+            toMillis(histogram.getMaxValue()));
+    }
+
+    private static String toMillis(long micros) {
+        return String.format("%.1f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,122 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.http.HttpClient;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays typing sessions against the typeahead and product search services and reports
+ * throughput and latency percentiles per endpoint, for example:
+ * <pre>
+ * java -jar load-generator/target/load-generator-1.0.jar --model=open --arrivalRate=20 --durationSeconds=120
+ * java -jar load-generator/target/load-generator-1.0.jar --model=closed --users=50 --sessionsFile=sessions.jsonl
+ * </pre>
+ */
+@Slf4j
+public class LoadGenerator {
+    private final LoadGeneratorConfig config;
+    private final List<Session> sessions;
+    private final EndpointStats typeaheadStats = new EndpointStats("typeahead");
+    private final EndpointStats productStats = new EndpointStats("product");
+    private final AtomicInteger nextSession = new AtomicInteger();
+    private final AtomicInteger sessionsInProgress = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(4);
+    private final SessionRunner sessionRunner;
+
+    private volatile boolean running = true;
+
+    public LoadGenerator(LoadGeneratorConfig config, List<Session> sessions) {
+        this.config = config;
+        this.sessions = sessions;
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(config.getRequestTimeoutMs()))
+            .executor(httpExecutor)
+            .build();
+        this.sessionRunner = new SessionRunner(config, httpClient, scheduler, typeaheadStats, productStats);
+    }
+
+    public void run() throws InterruptedException {
+        log.info("Starting {} model load for {} s with {} sessions", config.getModel(), config.getDurationSeconds(),
+            sessions.size());
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(config.getReportIntervalSeconds());
+        scheduler.scheduleAtFixedRate(() -> {
+            typeaheadStats.reportInterval(intervalNanos);
+            productStats.reportInterval(intervalNanos);
+        }, config.getReportIntervalSeconds(), config.getReportIntervalSeconds(), TimeUnit.SECONDS);
+
+        if (config.getModel() == LoadGeneratorConfig.Model.OPEN) {
+            long periodNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / config.getArrivalRate());
+            scheduler.scheduleAtFixedRate(this::startSession, 0, periodNanos, TimeUnit.NANOSECONDS);
+        } else {
+            for (int i = 0; i < config.getUsers(); i++) {
+                runUserSessions();
+            }
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.getDurationSeconds()));
+        running = false;
+        long runNanos = System.nanoTime() - start;
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getDrainSeconds());
+        while (sessionsInProgress.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(100);
+        }
+        if (sessionsInProgress.get() > 0) {
+            log.warn("{} sessions are still in progress after the drain period", sessionsInProgress.get());
+        }
+        scheduler.shutdownNow();
+        httpExecutor.shutdownNow();
+
+        typeaheadStats.reportSummary(runNanos);
+        productStats.reportSummary(runNanos);
+    }
+
+    private CompletableFuture<Void> startSession() {
+        if (!running) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Session session = sessions.get(Math.floorMod(nextSession.getAndIncrement(), sessions.size()));
+        sessionsInProgress.incrementAndGet();
+        return sessionRunner.run(session)
+            .whenComplete((result, ex) -> sessionsInProgress.decrementAndGet());
+    }
+
+    // Closed model: the user starts the next session as soon as the previous one is finished
+    private void runUserSessions() {
+        if (running) {
+            startSession().thenRun(this::runUserSessions);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            LoadGeneratorConfig config = LoadGeneratorConfig.fromArgs(args);
+            Random random = new Random(config.getSeed());
+            List<Session> sessions = config.getSessionsFile() != null
+                ? SessionSource.load(Paths.get(config.getSessionsFile()), random)
+                : SessionSource.synthesize(config.getSynthesizedSessions(), Paths.get(config.getTypeaheadDataFile()),
+                    Paths.get(config.getProductsDataFile()), random);
+            if (sessions.isEmpty()) {
+                throw new IllegalArgumentException("No sessions to replay");
+            }
+            new LoadGenerator(config, sessions).run();
+        } catch (Exception e) {
+            log.error("Load generation failed", e);
+            System.exit(1);
+        }
+    }
+}
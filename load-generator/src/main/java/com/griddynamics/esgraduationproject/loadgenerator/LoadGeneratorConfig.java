@@ -0,0 +1,85 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load test parameters, given as --name=value command line arguments.
+ */
+@Data
+public class LoadGeneratorConfig {
+    public enum Model {
+        // Sessions start at a constant rate, independent of how fast the services answer
+        OPEN,
+        // A fixed number of users, each starts the next session when the previous one is finished
+        CLOSED
+    }
+
+    private String typeaheadUrl = "http://localhost:8080/v1/typeahead";
+    private String productUrl = "http://localhost:8081/v1/product";
+
+    private Model model = Model.OPEN;
+    // OPEN: sessions started per second
+    private double arrivalRate = 5;
+    // CLOSED: concurrent users
+    private int users = 20;
+    private int durationSeconds = 60;
+    // Time given to the sessions in progress after the end of the test
+    private int drainSeconds = 10;
+    private int reportIntervalSeconds = 10;
+
+    // Session log (JSON lines), if not set sessions are synthesized from the data files
+    private String sessionsFile;
+    private int synthesizedSessions = 1000;
+    private String typeaheadDataFile = "es-graduation-service/src/main/resources/elastic/typeaheads/bulk_data.txt";
+    private String productsDataFile = "product-indexer/src/main/resources/elastic/products/products.json";
+    private long seed = 42;
+
+    // Shorter prefixes are not sent, same as the minQueryLength of the typeahead service
+    private int minPrefixLength = 3;
+    private int typeaheadSize = 10;
+    private int pageSize = 10;
+    private int requestTimeoutMs = 5000;
+    // Accept header of the requests: application/json, application/x-jackson-smile or application/cbor
+    private String accept = "application/json";
+
+    public static LoadGeneratorConfig fromArgs(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Arguments must look like --name=value: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        config.setTypeaheadUrl(values.getOrDefault("typeaheadUrl", config.getTypeaheadUrl()));
+        config.setProductUrl(values.getOrDefault("productUrl", config.getProductUrl()));
+        if (values.containsKey("model")) {
+            config.setModel(Model.valueOf(values.get("model").toUpperCase()));
+        }
+        config.setArrivalRate(Double.parseDouble(values.getOrDefault("arrivalRate", String.valueOf(config.getArrivalRate()))));
+        config.setUsers(getInt(values, "users", config.getUsers()));
+        config.setDurationSeconds(getInt(values, "durationSeconds", config.getDurationSeconds()));
+        config.setDrainSeconds(getInt(values, "drainSeconds", config.getDrainSeconds()));
+        config.setReportIntervalSeconds(getInt(values, "reportIntervalSeconds", config.getReportIntervalSeconds()));
+        config.setSessionsFile(values.getOrDefault("sessionsFile", config.getSessionsFile()));
+        config.setSynthesizedSessions(getInt(values, "synthesizedSessions", config.getSynthesizedSessions()));
+        config.setTypeaheadDataFile(values.getOrDefault("typeaheadDataFile", config.getTypeaheadDataFile()));
+        config.setProductsDataFile(values.getOrDefault("productsDataFile", config.getProductsDataFile()));
+        config.setSeed(Long.parseLong(values.getOrDefault("seed", String.valueOf(config.getSeed()))));
+        config.setMinPrefixLength(getInt(values, "minPrefixLength", config.getMinPrefixLength()));
+        config.setTypeaheadSize(getInt(values, "typeaheadSize", config.getTypeaheadSize()));
+        config.setPageSize(getInt(values, "pageSize", config.getPageSize()));
+        config.setRequestTimeoutMs(getInt(values, "requestTimeoutMs", config.getRequestTimeoutMs()));
+        config.setAccept(values.getOrDefault("accept", config.getAccept()));
+        return config;
+    }
+
+    private static int getInt(Map<String, String> values, String name, int defaultValue) {
+        return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+    }
+}
@@ -0,0 +1,24 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One user session: the query is typed character by character (a typeahead request per keystroke),
+ * then the product search is submitted and a few result pages are viewed.
+ */
+@Data
+public class Session {
+    private String query;
+    // Delay before each keystroke, one per character of the query
+    private List<Long> keyDelaysMs = new ArrayList<>();
+    // Pause between the last keystroke and the product search, and between result pages
+    private long thinkTimeMs;
+    // Product search filters: color, productSize, brand, category, minPrice, maxPrice
+    private Map<String, Object> filters = new LinkedHashMap<>();
+    private int pages = 1;
+}
@@ -0,0 +1,135 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays one session without blocking: typeahead requests are sent on the keystroke schedule, whether
+ * or not the previous suggestions have arrived (as a browser does), the product search pages are viewed
+ * one after another. Latency is measured from the intended send time, so a lagging generator or
+ * connection pool doesn't hide service latency.
+ */
+@Slf4j
+public class SessionRunner {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LoadGeneratorConfig config;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final EndpointStats typeaheadStats;
+    private final EndpointStats productStats;
+
+    public SessionRunner(LoadGeneratorConfig config, HttpClient httpClient, ScheduledExecutorService scheduler,
+                         EndpointStats typeaheadStats, EndpointStats productStats) {
+        this.config = config;
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.typeaheadStats = typeaheadStats;
+        this.productStats = productStats;
+    }
+
+    /**
+     * @return completed when all requests of the session are answered
+     */
+    public CompletableFuture<Void> run(Session session) {
+        long sessionStart = System.nanoTime();
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+
+        long offsetMs = 0;
+        String query = session.getQuery();
+        for (int i = 0; i < query.length(); i++) {
+            offsetMs += session.getKeyDelaysMs().get(i);
+            String prefix = query.substring(0, i + 1);
+            if (prefix.trim().length() < config.getMinPrefixLength()) {
+                continue;
+            }
+            long keystrokeOffsetMs = offsetMs;
+            long intendedNanos = sessionStart + TimeUnit.MILLISECONDS.toNanos(keystrokeOffsetMs);
+            requests.add(after(keystrokeOffsetMs).thenCompose(ignored ->
+                send(config.getTypeaheadUrl(), getTypeaheadRequest(prefix), typeaheadStats, intendedNanos)));
+        }
+
+        long searchDelayMs = offsetMs + session.getThinkTimeMs();
+        requests.add(after(searchDelayMs).thenCompose(ignored ->
+            searchPages(session, 0, sessionStart + TimeUnit.MILLISECONDS.toNanos(searchDelayMs))));
+
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<Void> searchPages(Session session, int page, long intendedNanos) {
+        return send(config.getProductUrl(), getProductRequest(session, page), productStats, intendedNanos)
+            .thenCompose(ignored -> {
+                if (page + 1 >= session.getPages()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                long nextIntendedNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(session.getThinkTimeMs());
+                return after(session.getThinkTimeMs())
+                    .thenCompose(next -> searchPages(session, page + 1, nextIntendedNanos));
+            });
+    }
+
+    private CompletableFuture<Void> after(long delayMs) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        scheduler.schedule(() -> result.complete(null), delayMs, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    // Never completes exceptionally, failures are counted in the stats
+    private CompletableFuture<Void> send(String url, Map<String, Object> body, EndpointStats stats, long intendedNanos) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(config.getRequestTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .header("Accept", config.getAccept())
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Can not serialize request " + body, ex);
+        }
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .handle((response, ex) -> {
+                if (ex != null) {
+                    log.debug("Request to {} failed", url, ex);
+                    stats.recordError();
+                } else if (response.statusCode() == 503) {
+                    stats.recordShed();
+                } else if (response.statusCode() / 100 != 2) {
+                    stats.recordError();
+                } else {
+                    stats.recordSuccess(System.nanoTime() - intendedNanos, response.body().length);
+                }
+                return null;
+            });
+    }
+
+    private Map<String, Object> getTypeaheadRequest(String prefix) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("textQuery", prefix);
+        request.put("size", config.getTypeaheadSize());
+        return request;
+    }
+
+    private Map<String, Object> getProductRequest(Session session, int page) {
+        Map<String, Object> request = new LinkedHashMap<>(session.getFilters());
+        request.put("queryText", session.getQuery());
+        request.put("page", page);
+        request.put("size", config.getPageSize());
+        return request;
+    }
+}
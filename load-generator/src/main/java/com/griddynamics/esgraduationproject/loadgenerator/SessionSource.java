@@ -0,0 +1,142 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Sessions replayed by the load generator: read from a session log or synthesized from the typeahead
+ * bulk data and products.json.
+ */
+@Slf4j
+public class SessionSource {
+    // Inter-key delays and think times are log-normal, the typical shape of human typing intervals
+    private static final double KEY_DELAY_MEDIAN_MS = 160;
+    private static final double KEY_DELAY_SIGMA = 0.5;
+    private static final long KEY_DELAY_MIN_MS = 40;
+    private static final long KEY_DELAY_MAX_MS = 1500;
+    private static final double THINK_TIME_MEDIAN_MS = 800;
+    private static final double THINK_TIME_SIGMA = 0.6;
+
+    // Share of synthesized sessions that use filters, and probability of viewing one more page
+    private static final double FILTER_PROBABILITY = 0.3;
+    private static final double NEXT_PAGE_PROBABILITY = 0.3;
+    private static final int MAX_PAGES = 5;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private SessionSource() {
+    }
+
+    /**
+     * Reads a session log, one JSON session per line, for example
+     * {"query":"nike air","keyDelaysMs":[0,150,120,...],"thinkTimeMs":900,"filters":{"color":"black"},"pages":2}.
+     * Missing delays and think times are synthesized.
+     */
+    public static List<Session> load(Path sessionsFile, Random random) throws IOException {
+        List<Session> sessions = new ArrayList<>();
+        for (String line : Files.readAllLines(sessionsFile, StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Session session = objectMapper.readValue(line, Session.class);
+            if (session.getQuery() == null || session.getQuery().isEmpty()) {
+                log.warn("Session without a query is skipped: {}", line);
+                continue;
+            }
+            if (session.getKeyDelaysMs().size() != session.getQuery().length()) {
+                session.setKeyDelaysMs(getKeyDelays(session.getQuery().length(), random));
+            }
+            if (session.getThinkTimeMs() <= 0) {
+                session.setThinkTimeMs(logNormal(THINK_TIME_MEDIAN_MS, THINK_TIME_SIGMA, random));
+            }
+            sessions.add(session);
+        }
+        log.info("{} sessions have been loaded from {}", sessions.size(), sessionsFile);
+        return sessions;
+    }
+
+    public static List<Session> synthesize(int count, Path typeaheadDataFile, Path productsDataFile,
+                                           Random random) throws IOException {
+        List<String> typeaheadNames = readTypeaheadNames(typeaheadDataFile);
+        JsonNode products = objectMapper.readTree(productsDataFile.toFile());
+        if (typeaheadNames.isEmpty() || products.size() == 0) {
+            throw new IllegalArgumentException("No typeaheads or products to synthesize sessions from");
+        }
+
+        List<Session> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JsonNode product = products.get(random.nextInt(products.size()));
+            Session session = new Session();
+            // Half of the users type a category name, the other half the beginning of a product name
+            String query = random.nextBoolean()
+                ? typeaheadNames.get(random.nextInt(typeaheadNames.size()))
+                : getLeadingWords(product.path("name").asText(), 1 + random.nextInt(3));
+            session.setQuery(query.toLowerCase());
+            session.setKeyDelaysMs(getKeyDelays(session.getQuery().length(), random));
+            session.setThinkTimeMs(logNormal(THINK_TIME_MEDIAN_MS, THINK_TIME_SIGMA, random));
+
+            // Filters are taken from one product, so the filtered search can match something
+            if (random.nextDouble() < FILTER_PROBABILITY) {
+                String filter = Arrays.asList("brand", "color", "category").get(random.nextInt(3));
+                session.getFilters().put(filter, product.path(filter).asText());
+            }
+            int pages = 1;
+            while (pages < MAX_PAGES && random.nextDouble() < NEXT_PAGE_PROBABILITY) {
+                pages++;
+            }
+            session.setPages(pages);
+            sessions.add(session);
+        }
+        log.info("{} sessions have been synthesized from {} typeaheads and {} products",
+            count, typeaheadNames.size(), products.size());
+        return sessions;
+    }
+
+    static List<Long> getKeyDelays(int keystrokes, Random random) {
+        List<Long> delays = new ArrayList<>(keystrokes);
+        for (int i = 0; i < keystrokes; i++) {
+            // The first keystroke starts the session
+            delays.add(i == 0 ? 0 : Math.min(KEY_DELAY_MAX_MS,
+                Math.max(KEY_DELAY_MIN_MS, logNormal(KEY_DELAY_MEDIAN_MS, KEY_DELAY_SIGMA, random))));
+        }
+        return delays;
+    }
+
+    private static long logNormal(double median, double sigma, Random random) {
+        return Math.round(median * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    private static List<String> readTypeaheadNames(Path typeaheadDataFile) throws IOException {
+        // Bulk data: action_and_metadata and source lines, only the sources have a name
+        return Files.readAllLines(typeaheadDataFile, StandardCharsets.UTF_8).stream()
+            .filter(line -> line.contains("\"name\""))
+            .map(line -> {
+                try {
+                    return objectMapper.readTree(line).path("name").asText();
+                } catch (IOException ex) {
+                    throw new IllegalArgumentException("Can not parse typeahead bulk data line: " + line, ex);
+                }
+            })
+            .filter(name -> !name.isEmpty())
+            .collect(Collectors.toList());
+    }
+
+    private static String getLeadingWords(String text, int words) {
+        return Arrays.stream(text.split(" "))
+            .limit(words)
+            .collect(Collectors.joining(" "));
+    }
+}
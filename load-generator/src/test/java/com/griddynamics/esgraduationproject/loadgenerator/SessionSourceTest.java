@@ -0,0 +1,60 @@
+package com.griddynamics.esgraduationproject.loadgenerator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SessionSourceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSessionLogWithoutDelaysGetsSynthesizedDelays() throws Exception {
+        Path sessionsFile = tmp.newFile("sessions.jsonl").toPath();
+        Files.write(sessionsFile, Arrays.asList(
+            "{\"query\":\"nike\",\"keyDelaysMs\":[0,100,200,300],\"thinkTimeMs\":500,\"filters\":{\"color\":\"black\"},\"pages\":2}",
+            "",
+            "{\"query\":\"shoes\"}",
+            "{\"pages\":1}"), StandardCharsets.UTF_8);
+
+        List<Session> sessions = SessionSource.load(sessionsFile, new Random(1));
+
+        assertThat(sessions.size(), is(2));
+        assertThat(sessions.get(0).getKeyDelaysMs(), is(Arrays.asList(0L, 100L, 200L, 300L)));
+        assertThat(sessions.get(0).getFilters().get("color"), is("black"));
+        assertThat(sessions.get(0).getPages(), is(2));
+        assertThat(sessions.get(1).getKeyDelaysMs().size(), is(5));
+        assertThat(sessions.get(1).getThinkTimeMs(), greaterThan(0L));
+    }
+
+    @Test
+    public void testSynthesizedSessionsAreReproducible() throws Exception {
+        Path typeaheads = Paths.get("../es-graduation-service/src/main/resources/elastic/typeaheads/bulk_data.txt");
+        Path products = Paths.get("../product-indexer/src/main/resources/elastic/products/products.json");
+
+        List<Session> first = SessionSource.synthesize(50, typeaheads, products, new Random(7));
+        List<Session> second = SessionSource.synthesize(50, typeaheads, products, new Random(7));
+
+        assertThat(first, is(second));
+        for (Session session : first) {
+            assertThat(session.getKeyDelaysMs().size(), is(session.getQuery().length()));
+            assertThat(session.getKeyDelaysMs().get(0), is(0L));
+            assertTrue(session.getKeyDelaysMs().stream().skip(1).allMatch(delay -> delay >= 40 && delay <= 1500));
+            assertTrue(session.getPages() >= 1 && session.getPages() <= 5);
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package com.griddynamics.esgraduationproject.productindexer;
 
+import com.griddynamics.esgraduationproject.esclient.EsClientSettings;
+import com.griddynamics.esgraduationproject.esclient.EsTransport;
 import org.apache.http.HttpHost;
-import org.elasticsearch.client.RestClient;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.elasticsearch.client.RestHighLevelClient;
 
+import java.util.Collections;
+
 public class ElasticsearchClientFactory {
-    public static RestHighLevelClient createClient(String host, int port) {
-        return new RestHighLevelClient(
-                RestClient.builder(
-                        new HttpHost(host, port, "http")));
+    public static EsTransport createTransport(String host, int port) throws IOReactorException {
+        EsClientSettings settings = new EsClientSettings();
+        settings.setHosts(Collections.singletonList(new HttpHost(host, port, "http").toURI()));
+        // Bulk requests of the whole catalog, no point to cut them short
+        settings.setSocketTimeoutMs(120000);
+        return new EsTransport("indexer", settings);
+    }
+
+    public static RestHighLevelClient createClient(EsTransport transport) {
+        // Bulk bodies are large and compress well
+        RestHighLevelClient client = new RestHighLevelClient(
+                transport.getRestClientBuilder().setCompressionEnabled(true));
+        transport.register(client.getLowLevelClient());
+        return client;
     }
-} 
\ No newline at end of file
+}
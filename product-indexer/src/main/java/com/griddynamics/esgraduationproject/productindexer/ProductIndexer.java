@@ -2,27 +2,51 @@ package com.griddynamics.esgraduationproject.productindexer;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import com.griddynamics.esgraduationproject.esclient.EsTransport;
+import com.griddynamics.esgraduationproject.productlucene.LuceneProductIndexWriter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.action.admin.cluster.repositories.put.PutRepositoryRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.create.CreateSnapshotRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.create.CreateSnapshotResponse;
+import org.elasticsearch.action.admin.cluster.snapshots.restore.RestoreSnapshotRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.restore.RestoreSnapshotResponse;
 import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.snapshots.RestoreInfo;
+import org.elasticsearch.snapshots.SnapshotInfo;
+import org.elasticsearch.snapshots.SnapshotState;
 import org.elasticsearch.xcontent.XContentType;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Slf4j
-public class ProductIndexer {
+public class ProductIndexer implements Closeable {
     private static final String INDEX_NAME = "product_index";
     private static final String INDEX_ALIAS = "product_index_alias";
     private static final String SETTINGS_FILE = "elastic/products/settings.json";
@@ -30,30 +54,157 @@ public class ProductIndexer {
     private static final String DATA_FILE = "elastic/products/products.json";
     private static final String ELASTICSEARCH_HOST = "localhost";
     private static final int ELASTICSEARCH_PORT = 9200;
+    // -Dproduct.shards=N overrides number_of_shards of settings.json
+    private static final String SHARDS_PROPERTY = "product.shards";
+    // -Dproduct.routing=category: products of a category share a shard, category-filtered searches hit only it
+    private static final String ROUTING_PROPERTY = "product.routing";
+    // -Dproduct.routingPartitionSize=N spreads each category over N shards instead of 1 (hot categories)
+    private static final String ROUTING_PARTITION_SIZE_PROPERTY = "product.routingPartitionSize";
+    // Shared filesystem snapshot repository of the build and deploy modes, the location must be in path.repo
+    // of every node of both clusters
+    private static final String SNAPSHOT_REPOSITORY_PROPERTY = "product.snapshotRepository";
+    private static final String SNAPSHOT_LOCATION_PROPERTY = "product.snapshotLocation";
+    private static final String DEFAULT_SNAPSHOT_REPOSITORY = "product_builds";
+    // Index of the build mode, only ever lives in the snapshot: deploys restore it under a generation name
+    private static final String BUILD_INDEX_NAME = INDEX_NAME + "_build";
+    private static final DateTimeFormatter GENERATION_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS").withZone(ZoneOffset.UTC);
+    // Force merge, snapshot and restore wait for completion, which takes longer than any bulk request
+    private static final RequestOptions LONG_RUNNING = RequestOptions.DEFAULT.toBuilder()
+            .setRequestConfig(RequestConfig.custom().setSocketTimeout(3_600_000).build())
+            .build();
 
+    private final EsTransport esTransport;
     private final RestHighLevelClient esClient;
     private final ObjectMapper objectMapper;
+    private final Integer shards;
+    private final String routingField;
+    private final Integer routingPartitionSize;
 
-    public ProductIndexer() {
-        this.esClient = ElasticsearchClientFactory.createClient(ELASTICSEARCH_HOST, ELASTICSEARCH_PORT);
+    public ProductIndexer() throws IOException {
+        this.esTransport = ElasticsearchClientFactory.createTransport(ELASTICSEARCH_HOST, ELASTICSEARCH_PORT);
+        this.esClient = ElasticsearchClientFactory.createClient(esTransport);
         this.objectMapper = new ObjectMapper();
+        this.shards = Integer.getInteger(SHARDS_PROPERTY);
+        this.routingField = System.getProperty(ROUTING_PROPERTY);
+        this.routingPartitionSize = Integer.getInteger(ROUTING_PARTITION_SIZE_PROPERTY);
+        if (routingPartitionSize != null && routingField == null) {
+            throw new IllegalArgumentException(ROUTING_PARTITION_SIZE_PROPERTY + " needs " + ROUTING_PROPERTY);
+        }
     }
 
     public void recreateIndex() throws IOException {
-        if (indexExists(INDEX_NAME)) {
-            deleteIndex(INDEX_NAME);
+        // After a deploy the name is an alias of the restored generation
+        for (String index : getConcreteIndices(INDEX_NAME)) {
+            deleteIndex(index);
         }
 
         String settings = getStrFromResource(SETTINGS_FILE);
         String mappings = getStrFromResource(MAPPINGS_FILE);
         createIndex(INDEX_NAME, settings, mappings);
+        createAlias(INDEX_NAME);
 
-        processBulkInsertData(DATA_FILE);
+        processBulkInsertData(INDEX_NAME, DATA_FILE);
 
         // Force refresh the index to make documents searchable immediately
         esClient.indices().refresh(new RefreshRequest(INDEX_NAME), RequestOptions.DEFAULT);
     }
 
+    /**
+     * Build mode: indexes the products once into a staging index, merges it to a single segment per shard
+     * and snapshots it, so the other environments restore the segment files instead of reindexing.
+     */
+    public void buildSnapshot(String snapshot) throws IOException {
+        String repository = registerSnapshotRepository(false);
+        if (indexExists(BUILD_INDEX_NAME)) {
+            deleteIndex(BUILD_INDEX_NAME);
+        }
+        createIndex(BUILD_INDEX_NAME, getStrFromResource(SETTINGS_FILE), getStrFromResource(MAPPINGS_FILE));
+        processBulkInsertData(BUILD_INDEX_NAME, DATA_FILE);
+        esClient.indices().refresh(new RefreshRequest(BUILD_INDEX_NAME), RequestOptions.DEFAULT);
+
+        // Read-only from now on: fewer, larger segments are faster to search and to copy
+        esClient.indices().forcemerge(new ForceMergeRequest(BUILD_INDEX_NAME).maxNumSegments(1), LONG_RUNNING);
+        log.info("Index {} has been force merged.", BUILD_INDEX_NAME);
+
+        CreateSnapshotResponse response = esClient.snapshot().create(new CreateSnapshotRequest(repository, snapshot)
+                .indices(BUILD_INDEX_NAME)
+                .includeGlobalState(false)
+                .waitForCompletion(true), LONG_RUNNING);
+        SnapshotInfo snapshotInfo = response.getSnapshotInfo();
+        if (snapshotInfo.state() != SnapshotState.SUCCESS) {
+            throw new IOException("Snapshot " + snapshot + " ended in state " + snapshotInfo.state()
+                    + ", " + snapshotInfo.failedShards() + " failed shard(s): " + snapshotInfo.reason());
+        }
+        log.info("Snapshot {} of {} has been written to repository {}, {} shard(s).", snapshot, BUILD_INDEX_NAME,
+                repository, snapshotInfo.successfulShards());
+
+        // The staging index isn't searched, the snapshot is the artifact
+        deleteIndex(BUILD_INDEX_NAME);
+    }
+
+    /**
+     * Deploy mode: restores the index of a build snapshot as a new generation and points both the index name
+     * and the alias to it, in one atomic request that also deletes the previous generations
+     * (a plain product_index of the default mode included).
+     */
+    public void deploySnapshot(String snapshot) throws IOException {
+        String repository = registerSnapshotRepository(true);
+        String generation = INDEX_NAME + "_" + GENERATION_FORMAT.format(Instant.now());
+
+        RestoreSnapshotResponse response = esClient.snapshot().restore(new RestoreSnapshotRequest(repository, snapshot)
+                .indices(BUILD_INDEX_NAME)
+                .renamePattern(BUILD_INDEX_NAME)
+                .renameReplacement(generation)
+                .includeAliases(false)
+                .includeGlobalState(false)
+                .waitForCompletion(true), LONG_RUNNING);
+        RestoreInfo restoreInfo = response.getRestoreInfo();
+        if (restoreInfo == null || restoreInfo.failedShards() > 0) {
+            throw new IOException("Restore of snapshot " + snapshot + " failed"
+                    + (restoreInfo != null ? ", " + restoreInfo.failedShards() + " failed shard(s)" : ""));
+        }
+        log.info("Snapshot {} has been restored as {}, {} shard(s).", snapshot, generation,
+                restoreInfo.successfulShards());
+
+        List<String> previousGenerations = getConcreteIndices(INDEX_NAME, INDEX_ALIAS).stream()
+                .filter(index -> !index.equals(generation))
+                .collect(Collectors.toList());
+        IndicesAliasesRequest aliasRequest = new IndicesAliasesRequest();
+        previousGenerations.forEach(index -> aliasRequest.addAliasAction(
+                IndicesAliasesRequest.AliasActions.removeIndex().index(index)));
+        aliasRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add()
+                .index(generation)
+                .aliases(INDEX_NAME, INDEX_ALIAS));
+        esClient.indices().updateAliases(aliasRequest, RequestOptions.DEFAULT);
+        log.info("Alias {} has been switched to {}, previous generation(s) {} deleted.", INDEX_ALIAS, generation,
+                previousGenerations);
+    }
+
+    // Registering is idempotent; deploys register it read-only, so they can't corrupt the builds' repository
+    private String registerSnapshotRepository(boolean readonly) throws IOException {
+        String repository = System.getProperty(SNAPSHOT_REPOSITORY_PROPERTY, DEFAULT_SNAPSHOT_REPOSITORY);
+        String location = System.getProperty(SNAPSHOT_LOCATION_PROPERTY);
+        if (location == null) {
+            throw new IllegalArgumentException("-D" + SNAPSHOT_LOCATION_PROPERTY + " is required");
+        }
+        esClient.snapshot().createRepository(new PutRepositoryRequest(repository)
+                .type("fs")
+                .settings(Settings.builder()
+                        .put("location", location)
+                        .put("compress", true)
+                        .put("readonly", readonly)), RequestOptions.DEFAULT);
+        log.info("Snapshot repository {} is at {}{}.", repository, location, readonly ? " (read-only)" : "");
+        return repository;
+    }
+
+    // Indices behind the names (themselves if they are indices), missing ones are ignored
+    private List<String> getConcreteIndices(String... names) throws IOException {
+        return Arrays.asList(esClient.indices().get(
+                new GetIndexRequest(names).indicesOptions(IndicesOptions.lenientExpandOpen()),
+                RequestOptions.DEFAULT).getIndices());
+    }
+
     private boolean indexExists(String indexName) throws IOException {
         return esClient.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT);
     }
@@ -65,12 +216,21 @@ public class ProductIndexer {
 
     private void createIndex(String indexName, String settings, String mappings) throws IOException {
         CreateIndexRequest request = new CreateIndexRequest(indexName);
-        request.settings(Settings.builder().loadFromSource(settings, XContentType.JSON));
-        request.mapping(mappings, XContentType.JSON);
+        Settings.Builder settingsBuilder = Settings.builder().loadFromSource(settings, XContentType.JSON);
+        if (shards != null) {
+            settingsBuilder.put("number_of_shards", shards);
+        }
+        if (routingPartitionSize != null) {
+            settingsBuilder.put("routing_partition_size", routingPartitionSize);
+        }
+        request.settings(settingsBuilder);
+        request.mapping(routingPartitionSize != null ? requireRouting(mappings) : mappings, XContentType.JSON);
         esClient.indices().create(request, RequestOptions.DEFAULT);
-        log.info("Index {} has been created.", indexName);
+        log.info("Index {} has been created with {} shard(s), routing by {}.", indexName,
+                settingsBuilder.get("number_of_shards"), routingField != null ? routingField : "_id");
+    }
 
-        // Create alias
+    private void createAlias(String indexName) throws IOException {
         IndicesAliasesRequest aliasRequest = new IndicesAliasesRequest();
         aliasRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add()
                 .index(indexName)
@@ -79,31 +239,91 @@ public class ProductIndexer {
         log.info("Alias {} has been created for index {}.", INDEX_ALIAS, indexName);
     }
 
-    private void processBulkInsertData(String dataFile) throws IOException {
+    // routing_partition_size is only accepted for indices with required routing
+    private String requireRouting(String mappings) throws IOException {
+        ObjectNode mappingsNode = (ObjectNode) objectMapper.readTree(mappings);
+        mappingsNode.putObject("_routing").put("required", true);
+        return mappingsNode.toString();
+    }
+
+    private void processBulkInsertData(String indexName, String dataFile) throws IOException {
         String data = getStrFromResource(dataFile);
         JsonNode rootNode = objectMapper.readTree(data);
         BulkRequest bulkRequest = new BulkRequest();
 
         for (Iterator<JsonNode> it = rootNode.elements(); it.hasNext(); ) {
             JsonNode node = it.next();
-            IndexRequest indexRequest = new IndexRequest(INDEX_NAME)
+            IndexRequest indexRequest = new IndexRequest(indexName)
                     .source(node.toString(), XContentType.JSON);
+            if (routingField != null) {
+                indexRequest.routing(getRouting(node));
+            }
             bulkRequest.add(indexRequest);
         }
 
-        esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+        BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+        if (bulkResponse.hasFailures()) {
+            // A partial index must not be snapshotted and shipped everywhere
+            throw new IOException("Bulk request failed: " + bulkResponse.buildFailureMessage());
+        }
         log.info("{} requests have been processed in a bulk request.", rootNode.size());
     }
 
-    private String getStrFromResource(String resourceName) throws IOException {
+    // A new generation of the embedded index searched by product-search-service with product.engine=lucene
+    public static void writeLuceneIndex(Path indexDir) throws IOException {
+        LuceneProductIndexWriter writer = new LuceneProductIndexWriter(indexDir,
+                getStrFromResource(SETTINGS_FILE), getStrFromResource(MAPPINGS_FILE));
+        writer.writeGeneration(new ObjectMapper().readTree(getStrFromResource(DATA_FILE)));
+    }
+
+    private String getRouting(JsonNode product) {
+        JsonNode value = product.get(routingField);
+        if (value == null || value.isNull() || value.asText().isEmpty()) {
+            // Not found by routed searches either: they always filter on the routing field
+            if (routingPartitionSize != null) {
+                throw new IllegalArgumentException("Product has no " + routingField + ": " + product);
+            }
+            return null;
+        }
+        return value.asText();
+    }
+
+    private static String getStrFromResource(String resourceName) throws IOException {
         URL url = Resources.getResource(resourceName);
         return Resources.toString(url, Charsets.UTF_8);
     }
 
+    @Override
+    public void close() throws IOException {
+        esTransport.close();
+    }
+
     public static void main(String[] args) {
-        try {
-            ProductIndexer indexer = new ProductIndexer();
-            indexer.recreateIndex();
+        // "lucene <dir>": no ES involved, the products are written to a local index directory
+        if (args.length > 0 && "lucene".equals(args[0])) {
+            try {
+                writeLuceneIndex(Paths.get(args.length > 1 ? args[1] : "product-index"));
+            } catch (Exception e) {
+                log.error("Failed to write Lucene index", e);
+                System.exit(1);
+            }
+            return;
+        }
+        // The client threads are not daemons, the JVM doesn't exit until the client is closed
+        try (ProductIndexer indexer = new ProductIndexer()) {
+            // "build [snapshot]" indexes once into a snapshot, "deploy <snapshot>" restores it as a new generation
+            if (args.length > 0 && "build".equals(args[0])) {
+                indexer.buildSnapshot(args.length > 1
+                        ? args[1]
+                        : "products-" + GENERATION_FORMAT.format(Instant.now()));
+            } else if (args.length > 0 && "deploy".equals(args[0])) {
+                if (args.length < 2) {
+                    throw new IllegalArgumentException("deploy needs the snapshot name");
+                }
+                indexer.deploySnapshot(args[1]);
+            } else {
+                indexer.recreateIndex();
+            }
         } catch (Exception e) {
             log.error("Failed to recreate index", e);
             System.exit(1);
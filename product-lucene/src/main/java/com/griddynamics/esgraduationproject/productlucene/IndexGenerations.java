@@ -0,0 +1,62 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Layout of the index base directory: one sub-directory per generation (gen_<UTC timestamp>, never modified
+ * after it's written) and the CURRENT file with the name of the generation to search.
+ */
+final class IndexGenerations {
+    static final String GENERATION_PREFIX = "gen_";
+    static final String SETTINGS_FILE = "settings.json";
+    static final String MAPPINGS_FILE = "mappings.json";
+    private static final String CURRENT_FILE = "CURRENT";
+
+    private IndexGenerations() {
+    }
+
+    // null if no generation has been written yet
+    static String readCurrent(Path baseDir) throws IOException {
+        Path currentFile = baseDir.resolve(CURRENT_FILE);
+        if (!Files.exists(currentFile)) {
+            return null;
+        }
+        return new String(Files.readAllBytes(currentFile), StandardCharsets.UTF_8).trim();
+    }
+
+    // Readers see either the previous or the new name, never a partial file
+    static void switchCurrent(Path baseDir, String generation) throws IOException {
+        Path tmpFile = baseDir.resolve(CURRENT_FILE + ".tmp");
+        Files.write(tmpFile, generation.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmpFile, baseDir.resolve(CURRENT_FILE), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Oldest first, the timestamps sort lexicographically
+    static List<String> list(Path baseDir) throws IOException {
+        try (Stream<Path> paths = Files.list(baseDir)) {
+            return paths
+                .filter(Files::isDirectory)
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(GENERATION_PREFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    static void delete(Path generationDir) throws IOException {
+        try (Stream<Path> paths = Files.walk(generationDir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
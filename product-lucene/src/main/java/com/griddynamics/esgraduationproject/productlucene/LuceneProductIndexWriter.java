@@ -0,0 +1,93 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Writes the products into a new read-only index generation under the base directory and switches CURRENT to it.
+ * Searchers pick the new generation up on their next refresh, the older generations beyond the retained ones
+ * are deleted (a searcher still holding one keeps its files open, deletion doesn't break it on Linux).
+ */
+@Slf4j
+public class LuceneProductIndexWriter {
+    private static final DateTimeFormatter GENERATION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+
+    private final Path baseDir;
+    private final String settingsJson;
+    private final String mappingsJson;
+    private final ProductIndexSchema schema;
+    private int retainedGenerations = 2;
+
+    public LuceneProductIndexWriter(Path baseDir, String settingsJson, String mappingsJson) throws IOException {
+        this.baseDir = baseDir;
+        this.settingsJson = settingsJson;
+        this.mappingsJson = mappingsJson;
+        this.schema = new ProductIndexSchema(settingsJson, mappingsJson);
+    }
+
+    public LuceneProductIndexWriter setRetainedGenerations(int retainedGenerations) {
+        this.retainedGenerations = Math.max(1, retainedGenerations);
+        return this;
+    }
+
+    // Returns the name of the written generation
+    public String writeGeneration(Iterable<JsonNode> products) throws IOException {
+        Files.createDirectories(baseDir);
+        String generation = nextGenerationName();
+        Path generationDir = baseDir.resolve(generation);
+
+        int docs = 0;
+        IndexWriterConfig config = new IndexWriterConfig(schema.getAnalyzer())
+            .setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        try (Directory directory = FSDirectory.open(generationDir);
+             IndexWriter writer = new IndexWriter(directory, config)) {
+            for (JsonNode product : products) {
+                writer.addDocument(schema.toDocument(product));
+                docs++;
+            }
+            // Never written again: one segment is the cheapest to search
+            writer.forceMerge(1);
+            writer.commit();
+        }
+        // The searcher analyzes the queries of a generation with the schema it was written with
+        Files.write(generationDir.resolve(IndexGenerations.SETTINGS_FILE), settingsJson.getBytes(StandardCharsets.UTF_8));
+        Files.write(generationDir.resolve(IndexGenerations.MAPPINGS_FILE), mappingsJson.getBytes(StandardCharsets.UTF_8));
+
+        IndexGenerations.switchCurrent(baseDir, generation);
+        log.info("Generation {} with {} products has been written to {}.", generation, docs, baseDir);
+
+        deleteOldGenerations();
+        return generation;
+    }
+
+    private String nextGenerationName() throws IOException {
+        String generation = IndexGenerations.GENERATION_PREFIX + GENERATION_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC));
+        List<String> generations = IndexGenerations.list(baseDir);
+        // Two writes within a millisecond still get ordered names
+        if (!generations.isEmpty() && generations.get(generations.size() - 1).compareTo(generation) >= 0) {
+            generation = generations.get(generations.size() - 1) + "_1";
+        }
+        return generation;
+    }
+
+    private void deleteOldGenerations() throws IOException {
+        List<String> generations = IndexGenerations.list(baseDir);
+        for (int i = 0; i < generations.size() - retainedGenerations; i++) {
+            IndexGenerations.delete(baseDir.resolve(generations.get(i)));
+            log.info("Generation {} has been deleted.", generations.get(i));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import lombok.Data;
+
+/**
+ * Product search against the embedded index, the same criteria as the ES product search.
+ * Null filters aren't applied.
+ */
+@Data
+public class LuceneProductQuery {
+    private String queryText;
+    // search_text instead of the per-field matches, see the COMBINED_FIELD query mode
+    private boolean combinedFields;
+    private float combinedShinglesBoost = 1.5f;
+    private String color;
+    private String productSize;
+    private String brand;
+    private String category;
+    private Float minPrice;
+    private Float maxPrice;
+    private int from = 0;
+    private int size = 10;
+}
@@ -0,0 +1,15 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class LuceneProductResult {
+    private long totalHits;
+    // Stored sources of the hits
+    private List<Map<String, Object>> products;
+    // Facet name -> value -> count, in the order of the ES aggregations
+    private Map<String, Map<String, Long>> facets;
+}
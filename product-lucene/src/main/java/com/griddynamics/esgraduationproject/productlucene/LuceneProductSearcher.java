@@ -0,0 +1,315 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.range.DoubleRange;
+import org.apache.lucene.facet.range.DoubleRangeFacetCounts;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.QueryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the CURRENT generation of an index written by {@link LuceneProductIndexWriter}, memory mapped.
+ * A new generation is opened by {@link #refresh()} (also run periodically), searches in flight finish on the previous
+ * one, which is closed after the last of them releases it.
+ * The queries and facets follow the ES product search; the COMBINED_FIELD rescoring of the top hits isn't replicated.
+ */
+@Slf4j
+public class LuceneProductSearcher implements Closeable {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> SOURCE_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    // Same as the ES aggregations of the product search: facet name -> keyword field, top 20 values
+    private static final Map<String, String> TERM_FACETS = new LinkedHashMap<>();
+    static {
+        TERM_FACETS.put("colors", "color");
+        TERM_FACETS.put("sizes", "size");
+        TERM_FACETS.put("categories", "category");
+    }
+    private static final int TERM_FACET_SIZE = 20;
+    private static final DoubleRange[] PRICE_RANGES = {
+        new DoubleRange("0-50", 0, true, 50, false),
+        new DoubleRange("50-100", 50, true, 100, false),
+        new DoubleRange("100-200", 100, true, 200, false),
+        new DoubleRange("200+", 200, true, Double.POSITIVE_INFINITY, true)
+    };
+
+    private final Path baseDir;
+    private final ScheduledExecutorService refresher;
+    private volatile Generation current;
+    private volatile boolean closed;
+
+    public LuceneProductSearcher(Path baseDir, long refreshIntervalMs) throws IOException {
+        this.baseDir = baseDir;
+        if (!refresh()) {
+            throw new IllegalStateException("No index generation has been written to " + baseDir);
+        }
+        if (refreshIntervalMs > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "lucene-generation-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs,
+                TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    // True if CURRENT names a generation other than the open one and it has been opened
+    public synchronized boolean refresh() throws IOException {
+        String generationName = IndexGenerations.readCurrent(baseDir);
+        Generation previous = current;
+        if (closed || generationName == null || (previous != null && previous.name.equals(generationName))) {
+            return false;
+        }
+        current = new Generation(generationName, baseDir.resolve(generationName));
+        log.info("Generation {} of {} has been opened.", generationName, baseDir);
+        if (previous != null) {
+            // Readers acquired before the swap stay open until released
+            previous.close();
+        }
+        return true;
+    }
+
+    public String getCurrentGeneration() {
+        return current.name;
+    }
+
+    public LuceneProductResult search(LuceneProductQuery query) throws IOException {
+        while (true) {
+            Generation generation = current;
+            if (closed) {
+                throw new AlreadyClosedException("Searcher of " + baseDir + " is closed");
+            }
+            IndexSearcher searcher;
+            try {
+                searcher = generation.searcherManager.acquire();
+            } catch (AlreadyClosedException ex) {
+                // Swapped between reading current and acquiring, the next one is open already
+                continue;
+            }
+            try {
+                return generation.search(searcher, query);
+            } finally {
+                generation.searcherManager.release(searcher);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception ex) {
+            // The open generation keeps serving
+            log.error("Failed to open the current generation of {}", baseDir, ex);
+        }
+    }
+
+    private static class Generation implements Closeable {
+        private final String name;
+        private final Directory directory;
+        private final SearcherManager searcherManager;
+        private final ProductIndexSchema schema;
+        // Generations are never modified, so the facet ordinals are mapped once
+        private final SortedSetDocValuesReaderState facetState;
+
+        Generation(String name, Path dir) throws IOException {
+            this.name = name;
+            this.schema = new ProductIndexSchema(
+                new String(Files.readAllBytes(dir.resolve(IndexGenerations.SETTINGS_FILE)), StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(dir.resolve(IndexGenerations.MAPPINGS_FILE)), StandardCharsets.UTF_8));
+            this.directory = new MMapDirectory(dir);
+            this.searcherManager = new SearcherManager(directory, null);
+
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                facetState = hasFacets(searcher)
+                    ? new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader())
+                    : null;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        }
+
+        private static boolean hasFacets(IndexSearcher searcher) {
+            return searcher.getIndexReader().leaves().stream()
+                .anyMatch(leaf -> leaf.reader().getFieldInfos().fieldInfo("$facets") != null);
+        }
+
+        LuceneProductResult search(IndexSearcher searcher, LuceneProductQuery query) throws IOException {
+            FacetsCollector facetsCollector = new FacetsCollector();
+            TopDocs topDocs = FacetsCollector.search(searcher, buildQuery(query),
+                Math.max(1, query.getFrom() + query.getSize()), facetsCollector);
+
+            List<Map<String, Object>> products = new ArrayList<>();
+            for (int i = query.getFrom(); i < topDocs.scoreDocs.length && products.size() < query.getSize(); i++) {
+                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                Document document = searcher.doc(scoreDoc.doc, Collections.singleton(ProductIndexSchema.SOURCE_FIELD));
+                products.add(objectMapper.readValue(
+                    document.getBinaryValue(ProductIndexSchema.SOURCE_FIELD).utf8ToString(), SOURCE_TYPE));
+            }
+
+            LuceneProductResult result = new LuceneProductResult();
+            result.setTotalHits(topDocs.totalHits.value);
+            result.setProducts(products);
+            result.setFacets(buildFacets(facetsCollector));
+            return result;
+        }
+
+        private Query buildQuery(LuceneProductQuery query) {
+            BooleanQuery.Builder bool = new BooleanQuery.Builder();
+            boolean hasClauses = false;
+
+            if (query.getQueryText() != null && !query.getQueryText().trim().isEmpty()) {
+                Query textQuery = query.isCombinedFields()
+                    ? combinedFieldsQuery(query.getQueryText(), query.getCombinedShinglesBoost())
+                    : multiFieldQuery(query.getQueryText());
+                if (textQuery == null) {
+                    // Nothing left after analysis, as with ES nothing matches
+                    return new BooleanQuery.Builder().build();
+                }
+                bool.add(textQuery, BooleanClause.Occur.MUST);
+                hasClauses = true;
+            }
+
+            hasClauses |= addTermFilter(bool, "color", query.getColor());
+            hasClauses |= addTermFilter(bool, "size", query.getProductSize());
+            hasClauses |= addTermFilter(bool, "brand", query.getBrand());
+            hasClauses |= addTermFilter(bool, "category", query.getCategory());
+
+            if (query.getMinPrice() != null || query.getMaxPrice() != null) {
+                bool.add(FloatPoint.newRangeQuery("price",
+                    query.getMinPrice() != null ? query.getMinPrice() : Float.NEGATIVE_INFINITY,
+                    query.getMaxPrice() != null ? query.getMaxPrice() : Float.POSITIVE_INFINITY),
+                    BooleanClause.Occur.FILTER);
+                hasClauses = true;
+            }
+
+            return hasClauses ? bool.build() : new MatchAllDocsQuery();
+        }
+
+        // best_fields multi_match: the best scoring field counts
+        private Query multiFieldQuery(String text) {
+            List<Query> fieldQueries = new ArrayList<>();
+            addMatch(fieldQueries, "name", text, 2.0f);
+            addMatch(fieldQueries, "name.shingles", text, 1.5f);
+            addMatch(fieldQueries, "brand", text, 1.5f);
+            addMatch(fieldQueries, "brand.shingles", text, 1.0f);
+            addMatch(fieldQueries, "description", text, 1.0f);
+            return fieldQueries.isEmpty() ? null : new DisjunctionMaxQuery(fieldQueries, 0.0f);
+        }
+
+        private Query combinedFieldsQuery(String text, float shinglesBoost) {
+            List<Query> fieldQueries = new ArrayList<>();
+            addMatch(fieldQueries, "search_text", text, 1.0f);
+            addMatch(fieldQueries, "search_text.shingles", text, shinglesBoost);
+            if (fieldQueries.isEmpty()) {
+                return null;
+            }
+            BooleanQuery.Builder bool = new BooleanQuery.Builder();
+            fieldQueries.forEach(fieldQuery -> bool.add(fieldQuery, BooleanClause.Occur.SHOULD));
+            return bool.build();
+        }
+
+        private void addMatch(List<Query> queries, String field, String text, float boost) {
+            // A match query: the analyzed terms of the field OR'ed
+            Query match = new QueryBuilder(schema.getAnalyzer()).createBooleanQuery(field, text);
+            if (match != null) {
+                queries.add(boost == 1.0f ? match : new BoostQuery(match, boost));
+            }
+        }
+
+        private static boolean addTermFilter(BooleanQuery.Builder bool, String field, String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return false;
+            }
+            bool.add(new TermQuery(new Term(field, value)), BooleanClause.Occur.FILTER);
+            return true;
+        }
+
+        private Map<String, Map<String, Long>> buildFacets(FacetsCollector facetsCollector) throws IOException {
+            Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+
+            SortedSetDocValuesFacetCounts termCounts = facetState != null
+                ? new SortedSetDocValuesFacetCounts(facetState, facetsCollector)
+                : null;
+            for (Map.Entry<String, String> facet : TERM_FACETS.entrySet()) {
+                Map<String, Long> values = new LinkedHashMap<>();
+                if (termCounts != null && facetState.getPrefixToOrdRange().containsKey(facet.getValue())) {
+                    FacetResult result = termCounts.getTopChildren(TERM_FACET_SIZE, facet.getValue());
+                    if (result != null) {
+                        for (LabelAndValue labelAndValue : result.labelValues) {
+                            values.put(labelAndValue.label, labelAndValue.value.longValue());
+                        }
+                    }
+                }
+                facets.put(facet.getKey(), values);
+            }
+
+            Map<String, Long> priceRanges = new LinkedHashMap<>();
+            FacetResult priceResult = new DoubleRangeFacetCounts("price", DoubleValuesSource.fromFloatField("price"),
+                facetsCollector, PRICE_RANGES).getTopChildren(PRICE_RANGES.length, "price");
+            for (LabelAndValue labelAndValue : priceResult.labelValues) {
+                priceRanges.put(labelAndValue.label, labelAndValue.value.longValue());
+            }
+            facets.put("price_ranges", priceRanges);
+            return facets;
+        }
+
+        @Override
+        public void close() throws IOException {
+            searcherManager.close();
+            directory.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatDocValuesField;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lucene counterpart of the settings.json + mappings.json of the ES product index: the custom analyzers
+ * (tokenizer and token filters by name, ES and Lucene share them for standard, lowercase, asciifolding and shingle),
+ * text fields with their sub-fields and copy_to targets, keyword fields and numeric fields.
+ * Properties missing in the mappings are only kept in the stored source, there is no dynamic mapping.
+ */
+class ProductIndexSchema {
+    static final String SOURCE_FIELD = "_source";
+    // Keyword fields counted as facets: the terms aggregations of the ES search
+    static final List<String> FACET_FIELDS = Arrays.asList("color", "size", "category");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JsonNode properties;
+    private final Analyzer analyzer;
+    private final FacetsConfig facetsConfig = new FacetsConfig();
+
+    ProductIndexSchema(String settingsJson, String mappingsJson) throws IOException {
+        JsonNode settings = objectMapper.readTree(settingsJson);
+        JsonNode mappings = objectMapper.readTree(mappingsJson);
+        properties = mappings.path("properties");
+
+        JsonNode analyzerDefinitions = settings.path("analysis").path("analyzer");
+        if (analyzerDefinitions.isMissingNode()) {
+            analyzerDefinitions = settings.path("index").path("analysis").path("analyzer");
+        }
+        Map<String, Analyzer> analyzers = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = analyzerDefinitions.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> definition = it.next();
+            analyzers.put(definition.getKey(), buildAnalyzer(definition.getKey(), definition.getValue()));
+        }
+        // The ES standard analyzer, used when a text field names none
+        Analyzer standardAnalyzer = CustomAnalyzer.builder()
+            .withTokenizer("standard")
+            .addTokenFilter("lowercase")
+            .build();
+
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = properties.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> property = it.next();
+            addFieldAnalyzer(fieldAnalyzers, property.getKey(), property.getValue(), analyzers, standardAnalyzer);
+            for (Iterator<Map.Entry<String, JsonNode>> subIt = property.getValue().path("fields").fields(); subIt.hasNext(); ) {
+                Map.Entry<String, JsonNode> subField = subIt.next();
+                addFieldAnalyzer(fieldAnalyzers, property.getKey() + "." + subField.getKey(), subField.getValue(),
+                    analyzers, standardAnalyzer);
+            }
+        }
+        analyzer = new PerFieldAnalyzerWrapper(standardAnalyzer, fieldAnalyzers);
+
+        FACET_FIELDS.forEach(field -> facetsConfig.setMultiValued(field, true));
+    }
+
+    private static Analyzer buildAnalyzer(String name, JsonNode definition) throws IOException {
+        if (!"custom".equals(definition.path("type").asText("custom"))) {
+            throw new IllegalArgumentException("Only custom analyzers are supported, " + name + " is "
+                + definition.path("type").asText());
+        }
+        CustomAnalyzer.Builder builder = CustomAnalyzer.builder()
+            .withTokenizer(definition.path("tokenizer").asText("standard"));
+        for (JsonNode filter : definition.path("filter")) {
+            builder.addTokenFilter(filter.asText());
+        }
+        return builder.build();
+    }
+
+    private static void addFieldAnalyzer(Map<String, Analyzer> fieldAnalyzers, String field, JsonNode mapping,
+                                         Map<String, Analyzer> analyzers, Analyzer standardAnalyzer) {
+        if (!"text".equals(mapping.path("type").asText())) {
+            return;
+        }
+        String analyzerName = mapping.path("analyzer").asText("standard");
+        Analyzer fieldAnalyzer = analyzers.get(analyzerName);
+        if (fieldAnalyzer == null && !"standard".equals(analyzerName)) {
+            throw new IllegalArgumentException("Analyzer " + analyzerName + " of field " + field + " is not defined");
+        }
+        fieldAnalyzers.put(field, fieldAnalyzer != null ? fieldAnalyzer : standardAnalyzer);
+    }
+
+    Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    Document toDocument(JsonNode product) throws IOException {
+        Document document = new Document();
+        document.add(new StoredField(SOURCE_FIELD, new BytesRef(product.toString().getBytes(StandardCharsets.UTF_8))));
+        for (Iterator<Map.Entry<String, JsonNode>> it = product.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            JsonNode mapping = properties.path(field.getKey());
+            if (mapping.isMissingNode()) {
+                continue;
+            }
+            if (field.getValue().isArray()) {
+                field.getValue().forEach(value -> addField(document, field.getKey(), mapping, value));
+            } else if (!field.getValue().isNull()) {
+                addField(document, field.getKey(), mapping, field.getValue());
+            }
+        }
+        return facetsConfig.build(document);
+    }
+
+    private void addField(Document document, String name, JsonNode mapping, JsonNode value) {
+        addValue(document, name, mapping, value);
+        // copy_to isn't transitive in ES either
+        JsonNode copyTo = mapping.path("copy_to");
+        for (JsonNode target : copyTo.isArray() ? copyTo : Arrays.asList(copyTo)) {
+            if (target.isTextual()) {
+                addValue(document, target.asText(), properties.path(target.asText()), value);
+            }
+        }
+    }
+
+    private void addValue(Document document, String name, JsonNode mapping, JsonNode value) {
+        switch (mapping.path("type").asText()) {
+            case "text":
+                document.add(new TextField(name, value.asText(), Field.Store.NO));
+                for (Iterator<Map.Entry<String, JsonNode>> it = mapping.path("fields").fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> subField = it.next();
+                    addValue(document, name + "." + subField.getKey(), subField.getValue(), value);
+                }
+                break;
+            case "keyword":
+                document.add(new StringField(name, value.asText(), Field.Store.NO));
+                if (FACET_FIELDS.contains(name)) {
+                    document.add(new SortedSetDocValuesFacetField(name, value.asText()));
+                }
+                break;
+            case "float":
+            case "double":
+            case "half_float":
+            case "scaled_float":
+                document.add(new FloatPoint(name, (float) value.asDouble()));
+                document.add(new FloatDocValuesField(name, (float) value.asDouble()));
+                break;
+            case "integer":
+            case "long":
+            case "short":
+            case "byte":
+                document.add(new LongPoint(name, value.asLong()));
+                document.add(new NumericDocValuesField(name, value.asLong()));
+                break;
+            default:
+                // Not searchable in the embedded index, still returned from the source
+                break;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.griddynamics.esgraduationproject.productlucene;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class LuceneProductSearcherTest {
+    private static final Path PRODUCTS_DIR = Paths.get("../product-indexer/src/main/resources/elastic/products");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private LuceneProductIndexWriter indexWriter;
+    private LuceneProductSearcher searcher;
+
+    @Before
+    public void setUp() throws IOException {
+        indexWriter = new LuceneProductIndexWriter(folder.getRoot().toPath(),
+            read("settings.json"), read("mappings.json"));
+        indexWriter.writeGeneration(objectMapper.readTree(PRODUCTS_DIR.resolve("products.json").toFile()));
+        searcher = new LuceneProductSearcher(folder.getRoot().toPath(), 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        searcher.close();
+    }
+
+    @Test
+    public void testTextQueryWithFacets() throws IOException {
+        LuceneProductQuery query = new LuceneProductQuery();
+        query.setQueryText("nike air");
+
+        LuceneProductResult result = searcher.search(query);
+
+        assertThat(result.getTotalHits(), is(2L));
+        assertThat(result.getProducts().get(0).get("brand"), is("Nike"));
+        assertThat(result.getFacets().keySet(), contains("colors", "sizes", "categories", "price_ranges"));
+        assertThat(result.getFacets().get("colors").get("white"), is(1L));
+        assertThat(result.getFacets().get("price_ranges").get("50-100"), is(1L));
+        assertThat(result.getFacets().get("price_ranges").get("100-200"), is(1L));
+    }
+
+    @Test
+    public void testFiltersAndPaging() throws IOException {
+        LuceneProductQuery query = new LuceneProductQuery();
+        query.setColor("black");
+        query.setMinPrice(140f);
+        query.setCombinedFields(true);
+        query.setQueryText("adidas");
+
+        LuceneProductResult result = searcher.search(query);
+        assertThat(result.getTotalHits(), is(1L));
+        assertThat(result.getProducts().get(0).get("id"), is("5"));
+
+        LuceneProductQuery page = new LuceneProductQuery();
+        page.setFrom(4);
+        page.setSize(2);
+        result = searcher.search(page);
+        assertThat(result.getTotalHits(), is(5L));
+        assertThat(result.getProducts(), hasSize(1));
+    }
+
+    @Test
+    public void testNewGenerationIsPickedUpOnRefresh() throws IOException {
+        String previousGeneration = searcher.getCurrentGeneration();
+        JsonNode product = objectMapper.readTree("{\"id\":\"9\",\"name\":\"Reebok Classic\",\"brand\":\"Reebok\","
+            + "\"color\":\"blue\",\"size\":\"40\",\"price\":59.99,\"category\":\"shoes\"}");
+        indexWriter.writeGeneration(Collections.singletonList(product));
+
+        assertThat(searcher.refresh(), is(true));
+        assertThat(searcher.getCurrentGeneration(), not(previousGeneration));
+        assertThat(searcher.search(new LuceneProductQuery()).getTotalHits(), is(1L));
+        assertThat(searcher.refresh(), is(false));
+    }
+
+    private static String read(String file) throws IOException {
+        return new String(Files.readAllBytes(PRODUCTS_DIR.resolve(file)), StandardCharsets.UTF_8);
+    }
+}
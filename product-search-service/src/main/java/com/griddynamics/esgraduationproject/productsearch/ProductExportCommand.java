@@ -0,0 +1,80 @@
+package com.griddynamics.esgraduationproject.productsearch;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.service.ProductExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export to a file instead of serving requests, the application exits when it is written:
+ * <pre>
+ * java -jar product-search-service-1.0.jar --spring.main.web-application-type=none \
+ *   export products.ndjson.gz category=shoes fields=id,name,price slices=4
+ * </pre>
+ * Files ending with .gz are gzipped, the other name=value arguments are product search request fields.
+ */
+@Component
+@Slf4j
+public class ProductExportCommand implements ApplicationRunner {
+    private static final String EXPORT_ARG = "export";
+
+    @Autowired
+    private ProductExportService productExportService;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments applicationArguments) throws IOException {
+        // --options are Spring properties, the rest is the command
+        List<String> args = applicationArguments.getNonOptionArgs();
+        if (args.isEmpty() || !EXPORT_ARG.equals(args.get(0))) {
+            return;
+        }
+        if (args.size() < 2) {
+            throw new IllegalArgumentException("Usage: export <file> [name=value ...]");
+        }
+        String file = args.get(1);
+        ProductSearchRequest request = new ProductSearchRequest();
+        BeanWrapperImpl requestWrapper = new BeanWrapperImpl(request);
+        List<String> fields = null;
+        Integer slices = null;
+        for (String arg : args.subList(2, args.size())) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Export arguments must look like name=value: " + arg);
+            }
+            String name = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if ("fields".equals(name)) {
+                fields = Arrays.asList(value.split(","));
+            } else if ("slices".equals(name)) {
+                slices = Integer.parseInt(value);
+            } else {
+                requestWrapper.setPropertyValue(name, value);
+            }
+        }
+
+        OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(Paths.get(file)), 65536);
+        try (OutputStream out = file.endsWith(".gz") ? new GZIPOutputStream(fileOut, 65536) : fileOut) {
+            productExportService.exportProducts(request, fields, slices, out);
+        }
+        log.info("Products exported to {}", file);
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+}
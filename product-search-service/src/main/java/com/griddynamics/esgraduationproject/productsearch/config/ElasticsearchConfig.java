@@ -1,12 +1,18 @@
 package com.griddynamics.esgraduationproject.productsearch.config;
 
+import com.griddynamics.esgraduationproject.esclient.EsClientSettings;
+import com.griddynamics.esgraduationproject.esclient.EsTransport;
+import com.griddynamics.esgraduationproject.esclient.EsTransportMetrics;
 import org.apache.http.HttpHost;
-import org.elasticsearch.client.RestClient;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collections;
+
 @Configuration
 public class ElasticsearchConfig {
 
@@ -19,10 +25,31 @@ public class ElasticsearchConfig {
     @Value("${elasticsearch.scheme:http}")
     private String scheme;
 
+    // elasticsearch.client.hosts takes precedence over the single host above
     @Bean
-    public RestHighLevelClient restHighLevelClient() {
-        return new RestHighLevelClient(
-            RestClient.builder(new HttpHost(host, port, scheme))
-        );
+    @ConfigurationProperties("elasticsearch.client")
+    public EsClientSettings esClientSettings() {
+        return new EsClientSettings();
+    }
+
+    @Bean
+    public EsTransport esTransport(EsClientSettings esClientSettings) throws IOReactorException {
+        if (esClientSettings.getHosts().isEmpty()) {
+            esClientSettings.setHosts(Collections.singletonList(new HttpHost(host, port, scheme).toURI()));
+        }
+        return new EsTransport("product", esClientSettings);
+    }
+
+    @Bean
+    public EsTransportMetrics esTransportMetrics(EsTransport esTransport) {
+        return new EsTransportMetrics(esTransport);
+    }
+
+    // The transport closes the client
+    @Bean(destroyMethod = "")
+    public RestHighLevelClient restHighLevelClient(EsTransport esTransport) {
+        RestHighLevelClient restHighLevelClient = new RestHighLevelClient(esTransport.getRestClientBuilder());
+        esTransport.register(restHighLevelClient.getLowLevelClient());
+        return restHighLevelClient;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.CircuitBreaker;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleFallbackCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+@Configuration
+public class FallbackCacheConfig {
+
+    @Value("${com.griddynamics.es.graduation.project.fallback.product.maxEntries:10000}")
+    private int maxEntries;
+    // Empty = in-memory only
+    @Value("${com.griddynamics.es.graduation.project.fallback.product.persistenceFile:}")
+    private String persistenceFile;
+    @Value("${com.griddynamics.es.graduation.project.fallback.product.persistIntervalSeconds:60}")
+    private long persistIntervalSeconds;
+    @Value("${com.griddynamics.es.graduation.project.fallback.product.circuit.failureThreshold:5}")
+    private int failureThreshold;
+    @Value("${com.griddynamics.es.graduation.project.fallback.product.circuit.openDurationMs:5000}")
+    private long openDurationMs;
+
+    @Bean(destroyMethod = "close")
+    public StaleFallbackCache<ProductSearchResponse> productFallbackCache() {
+        return new StaleFallbackCache<>("product", maxEntries, ProductSearchResponse.class,
+            new CircuitBreaker(failureThreshold, openDurationMs),
+            isNotBlank(persistenceFile) ? Paths.get(persistenceFile) : null, persistIntervalSeconds);
+    }
+}
@@ -0,0 +1,69 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.model.TypeaheadSuggestions;
+import com.griddynamics.esgraduationproject.searchcommons.query.BoolPrefixTypeaheadQueryStrategy;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadQueryBuilder;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadQuerySettings;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadSearchBuilder;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadSearchSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class FederatedSearchConfig {
+
+    @Value("${com.griddynamics.es.graduation.project.federated.cache.maxEntries:10000}")
+    private long cacheMaxEntries;
+    // Short: the entries are not invalidated on index updates
+    @Value("${com.griddynamics.es.graduation.project.federated.cache.ttlSeconds:30}")
+    private long cacheTtlSeconds;
+
+    // Should match the request.fuzziness / prefixQueryBoost settings of es-graduation-service
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.federated.typeahead.query")
+    public TypeaheadQuerySettings typeaheadQuerySettings() {
+        return new TypeaheadQuerySettings();
+    }
+
+    @Bean
+    public TypeaheadQueryBuilder typeaheadQueryBuilder() {
+        return new TypeaheadQueryBuilder(typeaheadQuerySettings());
+    }
+
+    // Should match the request.scoringMode / rankFeature / totalHits / queryStrategy settings of es-graduation-service
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.federated.typeahead.search")
+    public TypeaheadSearchSettings typeaheadSearchSettings() {
+        return new TypeaheadSearchSettings();
+    }
+
+    @Bean
+    public TypeaheadSearchBuilder typeaheadSearchBuilder() {
+        return new TypeaheadSearchBuilder(typeaheadSearchSettings(),
+            Arrays.asList(typeaheadQueryBuilder(), new BoolPrefixTypeaheadQueryStrategy()));
+    }
+
+    @Bean
+    public Cache<String, TypeaheadSuggestions> federatedTypeaheadCache() {
+        return CacheBuilder.newBuilder()
+            .maximumSize(cacheMaxEntries)
+            .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    @Bean
+    public Cache<String, ProductSearchResponse> federatedProductCache() {
+        return CacheBuilder.newBuilder()
+            .maximumSize(cacheMaxEntries)
+            .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+}
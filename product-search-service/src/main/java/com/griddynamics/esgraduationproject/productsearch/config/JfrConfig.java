@@ -0,0 +1,37 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.productsearch.service.ProductSearchEvent;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.JfrDumpWebEndpoint;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.JfrRecorder;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.JfrRecordingEndpoint;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.JfrSettings;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+
+@Configuration
+public class JfrConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.jfr")
+    public JfrSettings jfrSettings() {
+        return new JfrSettings();
+    }
+
+    @Bean
+    public JfrRecorder jfrRecorder() {
+        return new JfrRecorder("product", jfrSettings(), Collections.singletonList(ProductSearchEvent.class));
+    }
+
+    @Bean
+    public JfrRecordingEndpoint jfrRecordingEndpoint(JfrRecorder jfrRecorder) {
+        return new JfrRecordingEndpoint(jfrRecorder);
+    }
+
+    @Bean
+    public JfrDumpWebEndpoint jfrDumpWebEndpoint(JfrRecorder jfrRecorder) {
+        return new JfrDumpWebEndpoint(jfrRecorder);
+    }
+}
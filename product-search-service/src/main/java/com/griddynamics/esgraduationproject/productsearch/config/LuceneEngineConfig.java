@@ -0,0 +1,27 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.productlucene.LuceneProductSearcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+// product.engine=lucene: products are searched in a local index written by the indexer (lucene mode) instead of ES
+@Configuration
+@ConditionalOnProperty(name = "com.griddynamics.es.graduation.project.product.engine", havingValue = "lucene")
+public class LuceneEngineConfig {
+
+    @Value("${com.griddynamics.es.graduation.project.product.lucene.dir:product-index}")
+    private String indexDir;
+    // How often the CURRENT generation is checked, 0 = only on startup
+    @Value("${com.griddynamics.es.graduation.project.product.lucene.refreshIntervalMs:10000}")
+    private long refreshIntervalMs;
+
+    @Bean(destroyMethod = "close")
+    public LuceneProductSearcher luceneProductSearcher() throws IOException {
+        return new LuceneProductSearcher(Paths.get(indexDir), refreshIntervalMs);
+    }
+}
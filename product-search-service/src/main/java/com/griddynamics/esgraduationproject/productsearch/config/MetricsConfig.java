@@ -0,0 +1,50 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedBinaryJackson2HttpMessageConverter;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedJackson2HttpMessageConverter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Collections;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public StageMetrics productStageMetrics(MeterRegistry meterRegistry) {
+        return new StageMetrics(meterRegistry, "product");
+    }
+
+    // Replaces the default Jackson converter to measure response serialization (MVC mode only)
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public TimedJackson2HttpMessageConverter timedJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                               StageMetrics productStageMetrics) {
+        return new TimedJackson2HttpMessageConverter(objectMapper,
+            Collections.singletonMap(ProductSearchResponse.class, productStageMetrics));
+    }
+
+    // Accept: application/x-jackson-smile, the builder is a prototype: each converter gets its own
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public TimedBinaryJackson2HttpMessageConverter timedSmileHttpMessageConverter(
+        Jackson2ObjectMapperBuilder objectMapperBuilder, StageMetrics productStageMetrics) {
+        return TimedBinaryJackson2HttpMessageConverter.smile(objectMapperBuilder,
+            Collections.singletonMap(ProductSearchResponse.class, productStageMetrics));
+    }
+
+    // Accept: application/cbor
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public TimedBinaryJackson2HttpMessageConverter timedCborHttpMessageConverter(
+        Jackson2ObjectMapperBuilder objectMapperBuilder, StageMetrics productStageMetrics) {
+        return TimedBinaryJackson2HttpMessageConverter.cbor(objectMapperBuilder,
+            Collections.singletonMap(ProductSearchResponse.class, productStageMetrics));
+    }
+}
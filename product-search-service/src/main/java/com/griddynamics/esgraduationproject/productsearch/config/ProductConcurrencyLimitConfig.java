@@ -0,0 +1,24 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.searchcommons.limit.ConcurrencyLimitConfig;
+import com.griddynamics.esgraduationproject.searchcommons.limit.ConcurrencyLimitSettings;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ProductConcurrencyLimitConfig extends ConcurrencyLimitConfig {
+
+    public ProductConcurrencyLimitConfig() {
+        super("product");
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.limit.product")
+    @Override
+    public ConcurrencyLimitSettings concurrencyLimitSettings() {
+        ConcurrencyLimitSettings settings = new ConcurrencyLimitSettings();
+        settings.setLatencyThresholdMs(500);
+        return settings;
+    }
+}
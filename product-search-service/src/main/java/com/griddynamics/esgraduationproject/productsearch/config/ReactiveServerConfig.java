@@ -0,0 +1,27 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+    // Small fixed event-loop pool instead of reactor-netty's default (one per core, min 4)
+    @Value("${com.griddynamics.es.graduation.project.reactive.eventLoopThreads:2}")
+    private int eventLoopThreads;
+
+    // Tomcat is on the classpath for the MVC mode and would be picked first, so Netty is declared explicitly
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        LoopResources loopResources = LoopResources.create("product-search-event-loop", eventLoopThreads, true);
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        factory.addServerCustomizers(httpServer ->
+            httpServer.tcpConfiguration(tcpServer -> tcpServer.runOn(loopResources)));
+        return factory;
+    }
+}
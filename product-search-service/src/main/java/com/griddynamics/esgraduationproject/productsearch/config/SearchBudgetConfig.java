@@ -0,0 +1,56 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.esclient.EsTransport;
+import com.griddynamics.esgraduationproject.searchcommons.es.BudgetedSearchExecutor;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchBudget;
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryLog;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+@Configuration
+public class SearchBudgetConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.budget.product")
+    public SearchBudget productSearchBudget() {
+        return new SearchBudget();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.budget.federated")
+    public SearchBudget federatedSearchBudget() {
+        return new SearchBudget();
+    }
+
+    // Timers for hedges and deadlines, the tasks only send async requests or complete futures
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService searchTimerScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean
+    public BudgetedSearchExecutor productSearchExecutor(RestHighLevelClient esClient, EsTransport esTransport,
+                                                        ScheduledExecutorService searchTimerScheduler,
+                                                        SlowQueryLog productSlowQueryLog) {
+        return new BudgetedSearchExecutor(esClient, "product", productSearchBudget(), searchTimerScheduler,
+            productSlowQueryLog)
+            .setRequestOptions(esTransport.getSearchRequestOptions());
+    }
+
+    // _msearch of /v1/search, not hedged
+    @Bean
+    public BudgetedSearchExecutor federatedSearchExecutor(RestHighLevelClient esClient, EsTransport esTransport,
+                                                          ScheduledExecutorService searchTimerScheduler) {
+        return new BudgetedSearchExecutor(esClient, "federated", federatedSearchBudget(), searchTimerScheduler)
+            .setRequestOptions(esTransport.getSearchRequestOptions());
+    }
+}
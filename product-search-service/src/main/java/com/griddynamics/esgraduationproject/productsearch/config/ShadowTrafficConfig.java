@@ -0,0 +1,25 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficComparator;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ShadowTrafficConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.shadow.product")
+    public ShadowTrafficSettings productShadowTrafficSettings() {
+        return new ShadowTrafficSettings();
+    }
+
+    @Bean
+    public ShadowTrafficComparator productShadowTrafficComparator(RestHighLevelClient esClient,
+                                                                  MeterRegistry registry) {
+        return new ShadowTrafficComparator("product", productShadowTrafficSettings(), esClient, registry);
+    }
+}
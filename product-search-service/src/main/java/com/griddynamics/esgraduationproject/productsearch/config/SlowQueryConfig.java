@@ -0,0 +1,55 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryEndpoint;
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryLog;
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQuerySettings;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIdFilter;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.WebFilter;
+
+import java.util.Collections;
+
+@Configuration
+public class SlowQueryConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.slowlog.product")
+    public SlowQuerySettings productSlowQuerySettings() {
+        return new SlowQuerySettings();
+    }
+
+    @Bean
+    public SlowQueryLog productSlowQueryLog(RestHighLevelClient esClient) {
+        return new SlowQueryLog("product", productSlowQuerySettings(), esClient);
+    }
+
+    @Bean
+    public SlowQueryEndpoint slowQueryEndpoint(SlowQueryLog productSlowQueryLog) {
+        return new SlowQueryEndpoint(Collections.singletonList(productSlowQueryLog));
+    }
+
+    // X-Request-Id -> MDC, sent to ES as X-Opaque-Id
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public RequestIdFilter requestIdFilter() {
+        return new RequestIdFilter();
+    }
+
+    // Event loop threads are shared by requests, so the id goes to the Reactor context instead of the MDC
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public WebFilter requestIdWebFilter() {
+        return (exchange, chain) -> {
+            String requestId = RequestIds.resolve(
+                exchange.getRequest().getHeaders().getFirst(RequestIds.REQUEST_ID_HEADER));
+            exchange.getResponse().getHeaders().set(RequestIds.REQUEST_ID_HEADER, requestId);
+            return chain.filter(exchange)
+                .subscriberContext(context -> context.put(RequestIds.REQUEST_ID_KEY, requestId));
+        };
+    }
+}
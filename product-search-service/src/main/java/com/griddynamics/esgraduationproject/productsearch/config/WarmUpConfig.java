@@ -0,0 +1,67 @@
+package com.griddynamics.esgraduationproject.productsearch.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.service.ProductSearchService;
+import com.griddynamics.esgraduationproject.productsearch.service.ReactiveProductSearchService;
+import com.griddynamics.esgraduationproject.searchcommons.warmup.ReadinessEndpoint;
+import com.griddynamics.esgraduationproject.searchcommons.warmup.WarmUp;
+import com.griddynamics.esgraduationproject.searchcommons.warmup.WarmUpSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+@Configuration
+public class WarmUpConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.warmup.product")
+    public WarmUpSettings productWarmUpSettings() {
+        return new WarmUpSettings();
+    }
+
+    // Warms up the service of the active mode (MVC or WebFlux), with the ObjectMapper of the HTTP layer
+    @Bean
+    public WarmUp productWarmUp(ProductSearchService productSearchService,
+                                ObjectProvider<ReactiveProductSearchService> reactiveProductSearchService,
+                                ObjectMapper objectMapper, ResourceLoader resourceLoader) throws IOException {
+        WarmUpSettings settings = productWarmUpSettings();
+        List<String> corpus = settings.isEnabled() && settings.getCorpus() != null
+            ? WarmUp.readCorpus(resourceLoader.getResource(settings.getCorpus()))
+            : Collections.emptyList();
+        ReactiveProductSearchService reactiveService = reactiveProductSearchService.getIfAvailable();
+        Function<ProductSearchRequest, ProductSearchResponse> search = reactiveService != null
+            ? request -> reactiveService.searchProducts(request).block()
+            : productSearchService::searchProducts;
+
+        return new WarmUp("product", settings, corpus, body -> {
+            try {
+                ProductSearchRequest request = objectMapper.readValue(body, ProductSearchRequest.class);
+                objectMapper.writeValueAsBytes(search.apply(request));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> productWarmUpStarter(WarmUp productWarmUp) {
+        return event -> productWarmUp.start();
+    }
+
+    @Bean
+    public ReadinessEndpoint readinessEndpoint(WarmUp productWarmUp) {
+        return new ReadinessEndpoint(Collections.singletonList(productWarmUp));
+    }
+}
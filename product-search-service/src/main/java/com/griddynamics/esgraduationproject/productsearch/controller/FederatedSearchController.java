@@ -0,0 +1,51 @@
+package com.griddynamics.esgraduationproject.productsearch.controller;
+
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.service.FederatedSearchService;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedBinaryJackson2HttpMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping(value = "/v1/search")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FederatedSearchController {
+
+    @Autowired
+    private FederatedSearchService federatedSearchService;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter productConcurrencyLimiter;
+
+    @Value("${com.griddynamics.es.graduation.project.federated.typeahead.maxSize:50}")
+    private int maxTypeaheadSize;
+    @Value("${com.griddynamics.es.graduation.project.federated.product.maxSize:100}")
+    private int maxProductSize;
+
+    // Smile/CBOR for internal callers asking for them in the Accept header, JSON otherwise
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = {MediaType.APPLICATION_JSON_VALUE, TimedBinaryJackson2HttpMessageConverter.SMILE_VALUE,
+            TimedBinaryJackson2HttpMessageConverter.CBOR_VALUE})
+    public FederatedSearchResponse search(@RequestBody FederatedSearchRequest request) {
+        checkSize("typeaheadSize", request.getTypeaheadSize(), maxTypeaheadSize);
+        checkSize("productSize", request.getProductSize(), maxProductSize);
+        return productConcurrencyLimiter.execute(() -> federatedSearchService.search(request));
+    }
+
+    private static void checkSize(String name, Integer size, int maxSize) {
+        if (size == null || size <= 0 || size > maxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                name + " must be between 1 and " + maxSize + ", was " + size);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.griddynamics.esgraduationproject.productsearch.controller;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.service.ProductExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Full catalog dump for the downstream feeds, streamed as NDJSON, e.g.
+ * GET /v1/product/export?category=shoes&fields=id,name,price&slices=4&gzip=true
+ * The filters are the fields of the product search request, given as query parameters.
+ */
+@RestController
+@RequestMapping(value = "/v1/product/export")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductExportController {
+    static final String NDJSON_VALUE = "application/x-ndjson";
+
+    @Autowired
+    private ProductExportService productExportService;
+
+    // Written on the request thread: an async response would be cut by the async request timeout
+    @GetMapping
+    public void exportProducts(ProductSearchRequest request,
+                               @RequestParam(required = false) List<String> fields,
+                               @RequestParam(required = false) Integer slices,
+                               @RequestParam(defaultValue = "false") boolean gzip,
+                               HttpServletResponse response) throws IOException {
+        response.setContentType(gzip ? "application/gzip" : NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=products.ndjson" + (gzip ? ".gz" : ""));
+        OutputStream out = gzip ? new AbortableGzipOutputStream(response.getOutputStream()) : response.getOutputStream();
+        boolean exported = false;
+        try {
+            productExportService.exportProducts(request, fields, slices, out);
+            exported = true;
+        } finally {
+            if (exported) {
+                out.close();
+            } else if (out instanceof AbortableGzipOutputStream) {
+                ((AbortableGzipOutputStream) out).abort();
+            }
+            // On failure neither the gzip trailer nor the last chunk is written: the rethrown error makes the
+            // container close the connection of a committed response, the client sees a truncated export
+        }
+    }
+
+    private static class AbortableGzipOutputStream extends GZIPOutputStream {
+        AbortableGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 65536);
+        }
+
+        // Releases the deflater without finishing the stream
+        void abort() {
+            def.end();
+        }
+    }
+}
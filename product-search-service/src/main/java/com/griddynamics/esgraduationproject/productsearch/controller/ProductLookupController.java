@@ -0,0 +1,50 @@
+package com.griddynamics.esgraduationproject.productsearch.controller;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductLookupRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductLookupResponse;
+import com.griddynamics.esgraduationproject.productsearch.service.ProductLookupService;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedBinaryJackson2HttpMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Products by id, e.g. POST /v1/product/_mget {"ids": ["1", "2"]} or GET /v1/product/_mget?ids=1,2
+ */
+@RestController
+@RequestMapping(value = "/v1/product/_mget")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductLookupController {
+
+    @Autowired
+    private ProductLookupService productLookupService;
+
+    @Value("${com.griddynamics.es.graduation.project.lookup.maxIds:100}")
+    private int maxIds;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = {MediaType.APPLICATION_JSON_VALUE, TimedBinaryJackson2HttpMessageConverter.SMILE_VALUE,
+            TimedBinaryJackson2HttpMessageConverter.CBOR_VALUE})
+    public ResponseEntity<ProductLookupResponse> getProducts(@RequestBody ProductLookupRequest request) {
+        return getProducts(request.getIds());
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, TimedBinaryJackson2HttpMessageConverter.SMILE_VALUE,
+        TimedBinaryJackson2HttpMessageConverter.CBOR_VALUE})
+    public ResponseEntity<ProductLookupResponse> getProducts(@RequestParam List<String> ids) {
+        if (ids == null || ids.isEmpty() || ids.size() > maxIds) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productLookupService.getProducts(ids));
+    }
+}
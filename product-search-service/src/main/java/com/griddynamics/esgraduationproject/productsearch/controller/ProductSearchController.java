@@ -3,7 +3,10 @@ package com.griddynamics.esgraduationproject.productsearch.controller;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
 import com.griddynamics.esgraduationproject.productsearch.service.ProductSearchService;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.TimedBinaryJackson2HttpMessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -12,14 +15,20 @@ import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 @RequestMapping(value = "/v1/product")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductSearchController {
 
     @Autowired
     private ProductSearchService productSearchService;
 
+    @Autowired
+    private AdaptiveConcurrencyLimiter productConcurrencyLimiter;
+
+    // Smile/CBOR for internal callers asking for them in the Accept header, JSON otherwise
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
-        produces = MediaType.APPLICATION_JSON_VALUE)
+        produces = {MediaType.APPLICATION_JSON_VALUE, TimedBinaryJackson2HttpMessageConverter.SMILE_VALUE,
+            TimedBinaryJackson2HttpMessageConverter.CBOR_VALUE})
     public ProductSearchResponse searchProducts(@RequestBody ProductSearchRequest request) {
-        return productSearchService.searchProducts(request);
+        return productConcurrencyLimiter.execute(() -> productSearchService.searchProducts(request));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.griddynamics.esgraduationproject.productsearch.controller;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.service.ReactiveProductSearchService;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * WebFlux counterpart of {@link ProductSearchController}, active only with the "reactive" profile
+ * (spring.main.web-application-type=reactive).
+ */
+@RestController
+@RequestMapping(value = "/v1/product")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductSearchController {
+
+    @Autowired
+    private ReactiveProductSearchService productSearchService;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter productConcurrencyLimiter;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ProductSearchResponse> searchProducts(@RequestBody ProductSearchRequest request) {
+        return Mono.defer(() -> {
+            AdaptiveConcurrencyLimiter.Permit permit = productConcurrencyLimiter.tryAcquire();
+            if (permit == null) {
+                return Mono.error(productConcurrencyLimiter.limitExceeded());
+            }
+            return productSearchService.searchProducts(request)
+                .doFinally(signal -> {
+                    if (signal == SignalType.ON_COMPLETE) {
+                        permit.release();
+                    } else {
+                        permit.drop();
+                    }
+                });
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadScoringMode;
+import lombok.Data;
+
+@Data
+public class FederatedSearchRequest {
+    private String queryText;
+    private Integer typeaheadSize = 5;
+    private Integer productSize = 10;
+    // Ranking of the suggestions, as in the typeahead request of es-graduation-service
+    private Boolean considerItemCountInSorting;
+    // null = federated.typeahead.search.scoringMode of the configuration
+    private TypeaheadScoringMode scoringMode;
+    // Filter of the products only, the suggestions are not categorized
+    private String category;
+    private ProductQueryMode queryMode;
+}
@@ -0,0 +1,12 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+import lombok.Data;
+
+/**
+ * Typeahead suggestions and top products (with facets) for one keystroke. The parts are cached separately.
+ */
+@Data
+public class FederatedSearchResponse {
+    private TypeaheadSuggestions typeaheads;
+    private ProductSearchResponse products;
+}
@@ -0,0 +1,15 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Products of one ES lookup, by id.
+ */
+@Data
+public class ProductLookupBatch {
+    // Concrete index the products were read from, null if none of the ids was found
+    private String index;
+    private Map<String, Map<String, Object>> products;
+}
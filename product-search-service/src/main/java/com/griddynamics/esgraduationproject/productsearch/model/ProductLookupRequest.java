@@ -0,0 +1,10 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ProductLookupRequest {
+    private List<String> ids;
+}
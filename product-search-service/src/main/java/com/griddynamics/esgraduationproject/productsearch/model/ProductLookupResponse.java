@@ -0,0 +1,14 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class ProductLookupResponse {
+    // Found products, in the order of the requested ids
+    private List<Map<String, Object>> products;
+    // Requested ids that don't exist
+    private List<String> missing;
+}
@@ -0,0 +1,9 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+public enum ProductQueryMode {
+    // best_fields multi_match over name, name.shingles, brand, brand.shingles and description
+    MULTI_FIELD,
+    // match over the copy_to aggregate field (search_text + search_text.shingles),
+    // name/brand boosts are restored by rescoring the top window
+    COMBINED_FIELD
+}
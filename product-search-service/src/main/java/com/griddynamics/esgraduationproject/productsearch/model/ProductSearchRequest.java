@@ -13,4 +13,5 @@ public class ProductSearchRequest {
     private String category;
     private Float minPrice;
     private Float maxPrice;
+    private ProductQueryMode queryMode;
 } 
\ No newline at end of file
@@ -1,12 +1,20 @@
 package com.griddynamics.esgraduationproject.productsearch.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleMarkable;
 import lombok.Data;
 import java.util.List;
 import java.util.Map;
 
 @Data
-public class ProductSearchResponse {
+public class ProductSearchResponse implements StaleMarkable {
     private Long totalHits;
     private List<Map<String, Object>> products;
     private Map<String, Map<String, Number>> facets;
+    // Set only when results may be incomplete because the latency budget was hit
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean partial;
+    // Set only when ES is unavailable and the last known good response is served
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean stale;
 } 
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.griddynamics.esgraduationproject.productsearch.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class TypeaheadSuggestions {
+    private Long totalHits = 0L;
+    private List<Map<String, Object>> typeaheads = new ArrayList<>();
+    // Set only when the suggestions may be incomplete or missing because ES didn't answer in time
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean partial;
+}
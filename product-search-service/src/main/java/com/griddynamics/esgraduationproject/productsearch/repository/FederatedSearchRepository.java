@@ -0,0 +1,20 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+
+/**
+ * Throws {@link com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException} if ES can't answer.
+ */
+public interface FederatedSearchRepository {
+    /**
+     * Searches the typeaheads and the products in one _msearch round trip.
+     *
+     * @param typeaheadText  text of the suggestions, null = no suggestions (left null in the response)
+     * @param request        size and ranking of the suggestions
+     * @param productRequest products to search, null = no products (left null in the response)
+     */
+    FederatedSearchResponse search(String typeaheadText, FederatedSearchRequest request,
+                                   ProductSearchRequest productRequest);
+}
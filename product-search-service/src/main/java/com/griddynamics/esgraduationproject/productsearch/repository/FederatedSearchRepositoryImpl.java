@@ -0,0 +1,126 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.model.TypeaheadSuggestions;
+import com.griddynamics.esgraduationproject.searchcommons.es.BudgetedSearchExecutor;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import com.griddynamics.esgraduationproject.searchcommons.query.TypeaheadSearchBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+@Component
+@Slf4j
+public class FederatedSearchRepositoryImpl implements FederatedSearchRepository {
+    private static final String QUERY_MODE = "federated";
+
+    @Autowired
+    private BudgetedSearchExecutor federatedSearchExecutor;
+
+    @Autowired
+    private StageMetrics productStageMetrics;
+
+    // Same query strategy, scoring and sorting as /v1/typeahead
+    @Autowired
+    private TypeaheadSearchBuilder typeaheadSearchBuilder;
+
+    // Same product query, sorting and facets as /v1/product
+    @Autowired
+    private ProductSearchRepositoryImpl productSearchRepository;
+
+    // Alias maintained by es-graduation-service, in the same cluster as the products
+    @Value("${com.griddynamics.es.graduation.project.federated.typeahead.index:typeaheads}")
+    private String typeaheadIndexName;
+
+    @Override
+    public FederatedSearchResponse search(String typeaheadText, FederatedSearchRequest typeaheadRequest,
+                                          ProductSearchRequest productRequest) {
+        MultiSearchRequest multiSearchRequest = productStageMetrics.time(StageMetrics.QUERY_BUILD, QUERY_MODE, () -> {
+            MultiSearchRequest request = new MultiSearchRequest();
+            if (typeaheadText != null) {
+                request.add(buildTypeaheadRequest(typeaheadText, typeaheadRequest));
+            }
+            if (productRequest != null) {
+                request.add(productSearchRepository.buildSearchRequest(productRequest));
+            }
+            return request;
+        });
+
+        MultiSearchResponse multiSearchResponse;
+        long esStart = System.nanoTime();
+        try {
+            multiSearchResponse = federatedSearchExecutor.multiSearch(multiSearchRequest);
+        } catch (IOException e) {
+            productStageMetrics.esError(QUERY_MODE);
+            throw new SearchUnavailableException("Federated search failed: " + e.getMessage(), e);
+        }
+        productStageMetrics.record(StageMetrics.ES_ROUND_TRIP, QUERY_MODE, System.nanoTime() - esStart);
+        productStageMetrics.recordTook(QUERY_MODE, multiSearchResponse.getTook().millis());
+
+        // Items come back in the order of the requests
+        FederatedSearchResponse response = new FederatedSearchResponse();
+        int item = 0;
+        if (typeaheadText != null) {
+            MultiSearchResponse.Item typeaheadItem = multiSearchResponse.getResponses()[item++];
+            response.setTypeaheads(typeaheadItem.isFailure()
+                ? getFailedTypeaheads(typeaheadItem) : buildTypeaheads(typeaheadItem.getResponse()));
+        }
+        if (productRequest != null) {
+            MultiSearchResponse.Item productItem = multiSearchResponse.getResponses()[item];
+            response.setProducts(productItem.isFailure()
+                ? getFailedProducts(productItem) : productSearchRepository.buildTimedResponse(QUERY_MODE, productItem.getResponse()));
+        }
+        return response;
+    }
+
+    private SearchRequest buildTypeaheadRequest(String textQuery, FederatedSearchRequest request) {
+        SearchSourceBuilder ssb = typeaheadSearchBuilder.buildSource(
+            typeaheadSearchBuilder.getQueryStrategy().getQueryByText(textQuery), request.getTypeaheadSize(),
+            request.getConsiderItemCountInSorting(), request.getScoringMode(), null);
+        return new SearchRequest(typeaheadIndexName).source(ssb);
+    }
+
+    private TypeaheadSuggestions buildTypeaheads(SearchResponse searchResponse) {
+        TypeaheadSuggestions suggestions = new TypeaheadSuggestions();
+        suggestions.setTotalHits(searchResponse.getHits().getTotalHits().value);
+        if (searchResponse.isTimedOut() || searchResponse.getFailedShards() > 0) {
+            suggestions.setPartial(true);
+        }
+        suggestions.setTypeaheads(Arrays.stream(searchResponse.getHits().getHits())
+            .map(SearchHit::getSourceAsMap)
+            .collect(Collectors.toList()));
+        return suggestions;
+    }
+
+    // One failed item doesn't fail the other one
+    private TypeaheadSuggestions getFailedTypeaheads(MultiSearchResponse.Item item) {
+        log.error("Typeahead part of the federated search failed", item.getFailure());
+        productStageMetrics.esError(QUERY_MODE);
+        TypeaheadSuggestions suggestions = new TypeaheadSuggestions();
+        suggestions.setPartial(true);
+        return suggestions;
+    }
+
+    private ProductSearchResponse getFailedProducts(MultiSearchResponse.Item item) {
+        log.error("Product part of the federated search failed", item.getFailure());
+        productStageMetrics.esError(QUERY_MODE);
+        ProductSearchResponse products = new ProductSearchResponse();
+        products.setPartial(true);
+        return products;
+    }
+}
@@ -0,0 +1,94 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productlucene.LuceneProductQuery;
+import com.griddynamics.esgraduationproject.productlucene.LuceneProductResult;
+import com.griddynamics.esgraduationproject.productlucene.LuceneProductSearcher;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductQueryMode;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Product search in the embedded Lucene index, replaces the ES repository for the product endpoints.
+ * The federated search stays on ES.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "com.griddynamics.es.graduation.project.product.engine", havingValue = "lucene")
+public class LuceneProductSearchRepositoryImpl implements ProductSearchRepository, ReactiveProductSearchRepository {
+
+    @Autowired
+    private LuceneProductSearcher luceneProductSearcher;
+
+    @Autowired
+    private StageMetrics productStageMetrics;
+
+    @Value("${com.griddynamics.es.graduation.project.product.queryMode:MULTI_FIELD}")
+    private ProductQueryMode defaultQueryMode;
+    @Value("${com.griddynamics.es.graduation.project.product.combined.shinglesBoost:1.5}")
+    private float combinedShinglesBoost;
+
+    @Override
+    public ProductSearchResponse searchProducts(ProductSearchRequest request) {
+        LuceneProductResult result;
+        try {
+            result = luceneProductSearcher.search(buildQuery(request));
+        } catch (IOException e) {
+            throw new SearchUnavailableException("Product search failed: " + e.getMessage(), e);
+        }
+        ProductSearchResponse response = buildResponse(result);
+        if (response.getProducts().isEmpty()) {
+            productStageMetrics.emptyResult(getQueryMode(request).name());
+        }
+        return response;
+    }
+
+    @Override
+    public Mono<ProductSearchResponse> searchProductsAsync(ProductSearchRequest request) {
+        // Searching blocks on the mapped index files, so not on the event loop
+        return Mono.fromCallable(() -> searchProducts(request))
+            .subscribeOn(Schedulers.elastic());
+    }
+
+    private LuceneProductQuery buildQuery(ProductSearchRequest request) {
+        LuceneProductQuery query = new LuceneProductQuery();
+        query.setQueryText(request.getQueryText());
+        query.setCombinedFields(getQueryMode(request) == ProductQueryMode.COMBINED_FIELD);
+        query.setCombinedShinglesBoost(combinedShinglesBoost);
+        query.setColor(request.getColor());
+        query.setProductSize(request.getProductSize());
+        query.setBrand(request.getBrand());
+        query.setCategory(request.getCategory());
+        query.setMinPrice(request.getMinPrice());
+        query.setMaxPrice(request.getMaxPrice());
+        query.setFrom(request.getPage() * request.getSize());
+        query.setSize(request.getSize());
+        return query;
+    }
+
+    private ProductQueryMode getQueryMode(ProductSearchRequest request) {
+        return request.getQueryMode() != null ? request.getQueryMode() : defaultQueryMode;
+    }
+
+    private ProductSearchResponse buildResponse(LuceneProductResult result) {
+        ProductSearchResponse response = new ProductSearchResponse();
+        response.setTotalHits(result.getTotalHits());
+        response.setProducts(result.getProducts());
+        Map<String, Map<String, Number>> facets = new LinkedHashMap<>();
+        result.getFacets().forEach((name, counts) -> facets.put(name, new LinkedHashMap<>(counts)));
+        response.setFacets(facets);
+        return response;
+    }
+}
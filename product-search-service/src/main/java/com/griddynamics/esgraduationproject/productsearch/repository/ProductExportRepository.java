@@ -0,0 +1,21 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface ProductExportRepository {
+    /**
+     * Writes the source of every product matching the text query and filters of the request (paging is ignored)
+     * to the output, one JSON document per line. The slices are read in parallel, each one holds a single batch
+     * in memory at a time.
+     *
+     * @param fields _source fields to export, null or empty = all
+     * @param slices number of slices read in parallel, 1 = no slicing
+     * @return the number of exported products
+     */
+    long exportProducts(ProductSearchRequest request, List<String> fields, int slices, OutputStream out)
+        throws IOException;
+}
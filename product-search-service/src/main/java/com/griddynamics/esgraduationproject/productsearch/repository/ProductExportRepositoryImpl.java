@@ -0,0 +1,175 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sliced scrolls sorted by _doc: each slice is a consistent view of its part of the index, read without
+ * scoring or deep paging costs. Point-in-time + search_after would do the same on 7.10+, the 7.2 client
+ * of the service doesn't have it.
+ */
+@Component
+@Slf4j
+public class ProductExportRepositoryImpl implements ProductExportRepository {
+
+    @Autowired
+    private RestHighLevelClient esClient;
+
+    @Autowired
+    private ProductSearchRepositoryImpl productSearchRepository;
+
+    @Value("${com.griddynamics.es.graduation.project.product.index:product_index}")
+    private String indexName;
+    // Documents per scroll page and slice
+    @Value("${com.griddynamics.es.graduation.project.export.batchSize:1000}")
+    private int batchSize;
+    // Scroll contexts are kept this long between two pages
+    @Value("${com.griddynamics.es.graduation.project.export.scrollKeepAliveSeconds:60}")
+    private long scrollKeepAliveSeconds;
+    // Slices read at the same time over all exports
+    @Value("${com.griddynamics.es.graduation.project.export.maxSlices:8}")
+    private int maxSlices;
+
+    private ExecutorService sliceExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        sliceExecutor = Executors.newFixedThreadPool(maxSlices, runnable -> {
+            Thread thread = new Thread(runnable, "product-export-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        sliceExecutor.shutdownNow();
+    }
+
+    @Override
+    public long exportProducts(ProductSearchRequest request, List<String> fields, int slices, OutputStream out)
+        throws IOException {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(productSearchRepository.buildQuery(request))
+            .size(batchSize)
+            .sort(new FieldSortBuilder("_doc"));
+        if (fields != null && !fields.isEmpty()) {
+            source.fetchSource(fields.toArray(new String[0]), null);
+        }
+        String routing = productSearchRepository.getRouting(request);
+        RequestOptions options = RequestIds.requestOptions(RequestIds.current());
+        // Queued slices may start after a deploy switched the alias, they must all read the same index
+        String[] indices = resolveIndices(options);
+
+        if (slices <= 1) {
+            return exportSlice(new SearchRequest(indices).source(source).routing(routing), options, out);
+        }
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int slice = 0; slice < slices; slice++) {
+            SearchRequest sliceRequest = new SearchRequest(indices)
+                .source(source.copyWithNewSlice(new SliceBuilder(slice, slices)))
+                .routing(routing);
+            futures.add(sliceExecutor.submit(() -> exportSlice(sliceRequest, options, out)));
+        }
+        long total = 0;
+        try {
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Product export interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException
+                ? (IOException) ex.getCause()
+                : new IOException("Product export failed: " + ex.getCause().getMessage(), ex.getCause());
+        } finally {
+            // The other slices stop at their next page, their scrolls are cleared
+            futures.forEach(future -> future.cancel(true));
+        }
+        return total;
+    }
+
+    private String[] resolveIndices(RequestOptions options) throws IOException {
+        return esClient.indices().get(new GetIndexRequest(indexName), options).getIndices();
+    }
+
+    private long exportSlice(SearchRequest searchRequest, RequestOptions options, OutputStream out)
+        throws IOException {
+        TimeValue keepAlive = TimeValue.timeValueSeconds(scrollKeepAliveSeconds);
+        SearchResponse response = esClient.search(searchRequest.scroll(keepAlive), options);
+        String scrollId = response.getScrollId();
+        long count = 0;
+        try {
+            while (response.getHits().getHits().length > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Slice export cancelled");
+                }
+                write(response.getHits().getHits(), out);
+                count += response.getHits().getHits().length;
+                response = esClient.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), options);
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            clearScroll(scrollId, options);
+        }
+        return count;
+    }
+
+    // A page at a time, so the lines of the slices don't interleave
+    private static void write(SearchHit[] hits, OutputStream out) throws IOException {
+        ByteArrayOutputStream page = new ByteArrayOutputStream(hits.length * 512);
+        for (SearchHit hit : hits) {
+            page.write(hit.getSourceAsString().getBytes(StandardCharsets.UTF_8));
+            page.write('\n');
+        }
+        synchronized (out) {
+            page.writeTo(out);
+        }
+    }
+
+    private void clearScroll(String scrollId, RequestOptions options) {
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        try {
+            esClient.clearScroll(clearScrollRequest, options);
+        } catch (IOException | RuntimeException ex) {
+            // Expires after the keep-alive anyway
+            log.warn("Can not clear scroll {}: {}", scrollId, ex.getMessage());
+        }
+    }
+}
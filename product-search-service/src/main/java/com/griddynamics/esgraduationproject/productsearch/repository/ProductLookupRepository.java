@@ -0,0 +1,21 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductLookupBatch;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+public interface ProductLookupRepository {
+    /**
+     * Loads the products in one ES round trip; ids that don't exist are left out.
+     */
+    CompletableFuture<ProductLookupBatch> getProducts(Set<String> ids);
+
+    /**
+     * Concrete indices behind the product index name with their index.uuid, which changes when a new
+     * generation is deployed and when the index is recreated under the same name.
+     */
+    Map<String, String> getGeneration() throws IOException;
+}
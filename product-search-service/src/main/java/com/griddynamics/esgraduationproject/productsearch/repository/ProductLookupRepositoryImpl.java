@@ -0,0 +1,115 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductLookupBatch;
+import com.griddynamics.esgraduationproject.searchcommons.es.BudgetedSearchExecutor;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.GetIndexResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class ProductLookupRepositoryImpl implements ProductLookupRepository {
+
+    @Autowired
+    private RestHighLevelClient esClient;
+
+    @Autowired
+    private BudgetedSearchExecutor productSearchExecutor;
+
+    @Value("${com.griddynamics.es.graduation.project.product.index:product_index}")
+    private String indexName;
+    // Routed products can only be got with their routing value (the category), which the callers don't know
+    @Value("${com.griddynamics.es.graduation.project.product.routingByCategory:false}")
+    private boolean routingByCategory;
+
+    @Override
+    public CompletableFuture<ProductLookupBatch> getProducts(Set<String> ids) {
+        if (routingByCategory) {
+            return searchProducts(ids);
+        }
+
+        // Not realtime: reads the refreshed segments like the searches do, without forcing a refresh
+        MultiGetRequest request = new MultiGetRequest().realtime(false);
+        ids.forEach(id -> request.add(indexName, id));
+        CompletableFuture<ProductLookupBatch> result = new CompletableFuture<>();
+        esClient.mgetAsync(request, RequestOptions.DEFAULT, new ActionListener<MultiGetResponse>() {
+            @Override
+            public void onResponse(MultiGetResponse response) {
+                ProductLookupBatch batch = new ProductLookupBatch();
+                Map<String, Map<String, Object>> products = new LinkedHashMap<>();
+                for (MultiGetItemResponse item : response.getResponses()) {
+                    if (item.isFailed()) {
+                        // Not a missing product: nothing of this batch may be reported as missing
+                        result.completeExceptionally(new IOException("Product lookup of " + item.getId()
+                            + " failed: " + item.getFailure().getMessage(), item.getFailure().getFailure()));
+                        return;
+                    }
+                    if (item.getResponse().isExists()) {
+                        batch.setIndex(item.getIndex());
+                        products.put(item.getId(), item.getResponse().getSourceAsMap());
+                    }
+                }
+                batch.setProducts(products);
+                result.complete(batch);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Every shard is searched, still one round trip for the batch
+    private CompletableFuture<ProductLookupBatch> searchProducts(Set<String> ids) {
+        SearchRequest searchRequest = new SearchRequest(indexName).source(new SearchSourceBuilder()
+            .query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+            .size(ids.size()));
+        return productSearchExecutor.searchAsync(searchRequest, null).thenApply(this::toBatch);
+    }
+
+    private ProductLookupBatch toBatch(SearchResponse response) {
+        if (response.isTimedOut() || response.getFailedShards() > 0) {
+            throw new IllegalStateException("Product lookup is incomplete: timed out " + response.isTimedOut()
+                + ", " + response.getFailedShards() + " failed shard(s)");
+        }
+        ProductLookupBatch batch = new ProductLookupBatch();
+        Map<String, Map<String, Object>> products = new LinkedHashMap<>();
+        for (SearchHit hit : response.getHits().getHits()) {
+            batch.setIndex(hit.getIndex());
+            products.put(hit.getId(), hit.getSourceAsMap());
+        }
+        batch.setProducts(products);
+        return batch;
+    }
+
+    @Override
+    public Map<String, String> getGeneration() throws IOException {
+        GetIndexResponse response = esClient.indices().get(new GetIndexRequest(indexName), RequestOptions.DEFAULT);
+        Map<String, String> generation = new TreeMap<>();
+        for (String index : response.getIndices()) {
+            generation.put(index, response.getSetting(index, "index.uuid"));
+        }
+        return generation;
+    }
+}
@@ -0,0 +1,22 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.rescore.QueryRescorerBuilder;
+
+/**
+ * Text part of the product query; filters, paging and facets are the same for every strategy.
+ * The built-in strategies are the ProductQueryMode values, further ones are picked up as beans
+ * and can be compared with the live one on mirrored traffic (shadow.product.candidate).
+ */
+public interface ProductQueryStrategy {
+
+    // Name used in the configuration and as the queryMode metrics tag
+    String getName();
+
+    QueryBuilder buildTextQuery(String queryText);
+
+    // Second-phase scoring of the top hits, covering at least requestedHits; null = sort by _score only
+    default QueryRescorerBuilder buildRescorer(String queryText, int requestedHits) {
+        return null;
+    }
+}
@@ -3,6 +3,9 @@ package com.griddynamics.esgraduationproject.productsearch.repository;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
 
+/**
+ * Throws {@link com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException} if ES can't answer.
+ */
 public interface ProductSearchRepository {
     ProductSearchResponse searchProducts(ProductSearchRequest request);
 } 
\ No newline at end of file
@@ -1,12 +1,16 @@
 package com.griddynamics.esgraduationproject.productsearch.repository;
 
+import com.griddynamics.esgraduationproject.productsearch.model.ProductQueryMode;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.searchcommons.es.BudgetedSearchExecutor;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficComparator;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -17,78 +21,201 @@ import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilde
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.bucket.range.Range;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.rescore.QueryRescorerBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.ScoreSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
-public class ProductSearchRepositoryImpl implements ProductSearchRepository {
+public class ProductSearchRepositoryImpl implements ProductSearchRepository, ReactiveProductSearchRepository {
 
     @Autowired
-    private RestHighLevelClient esClient;
+    private BudgetedSearchExecutor productSearchExecutor;
+
+    @Autowired
+    private StageMetrics productStageMetrics;
+
+    @Autowired
+    private ShadowTrafficComparator productShadowTrafficComparator;
+
+    // Strategies besides the ProductQueryMode ones
+    @Autowired(required = false)
+    private List<ProductQueryStrategy> queryStrategyBeans = new ArrayList<>();
 
     @Value("${com.griddynamics.es.graduation.project.product.index:product_index}")
     private String indexName;
 
+    // Query mode used when the request doesn't specify one
+    @Value("${com.griddynamics.es.graduation.project.product.queryMode:MULTI_FIELD}")
+    private ProductQueryMode defaultQueryMode;
+    // Live strategy of the requests without a queryMode, any registered one (a ProductQueryMode or a
+    // ProductQueryStrategy bean); empty = product.queryMode
+    @Value("${com.griddynamics.es.graduation.project.product.queryStrategy:}")
+    private String liveStrategyName;
+    // Number of top hits per shard re-scored with name/brand boosts in the COMBINED_FIELD mode
+    @Value("${com.griddynamics.es.graduation.project.product.combined.rescoreWindowSize:50}")
+    private int rescoreWindowSize;
+    @Value("${com.griddynamics.es.graduation.project.product.combined.shinglesBoost:1.5}")
+    private float combinedShinglesBoost;
+    @Value("${com.griddynamics.es.graduation.project.product.combined.rescoreQueryWeight:1.0}")
+    private float rescoreQueryWeight;
+    // Must match the indexer (-Dproduct.routing=category): otherwise a routed search misses the other shards
+    @Value("${com.griddynamics.es.graduation.project.product.routingByCategory:false}")
+    private boolean routingByCategory;
+
+    private final Map<String, ProductQueryStrategy> queryStrategies = new LinkedHashMap<>();
+    private ProductQueryStrategy liveStrategy;
+
+    @PostConstruct
+    public void init() {
+        queryStrategies.put(ProductQueryMode.MULTI_FIELD.name(), new MultiFieldQueryStrategy());
+        queryStrategies.put(ProductQueryMode.COMBINED_FIELD.name(), new CombinedFieldQueryStrategy());
+        queryStrategyBeans.forEach(strategy -> queryStrategies.put(strategy.getName(), strategy));
+        liveStrategy = getQueryStrategy(liveStrategyName.isEmpty() ? defaultQueryMode.name() : liveStrategyName);
+        String candidate = productShadowTrafficComparator.getCandidate();
+        if (candidate != null && !candidate.isEmpty()) {
+            getQueryStrategy(candidate);
+        }
+        log.info("Product query strategies: {}, live: {}, shadow candidate: {}", queryStrategies.keySet(),
+            liveStrategy.getName(), candidate);
+    }
+
+    private ProductQueryStrategy getQueryStrategy(String name) {
+        ProductQueryStrategy strategy = queryStrategies.get(name);
+        if (strategy == null) {
+            throw new IllegalStateException("Unknown product query strategy " + name
+                + ", available: " + queryStrategies.keySet());
+        }
+        return strategy;
+    }
+
     @Override
     public ProductSearchResponse searchProducts(ProductSearchRequest request) {
+        String queryMode = getQueryStrategy(request).getName();
+        SearchRequest searchRequest = productStageMetrics.time(StageMetrics.QUERY_BUILD, queryMode,
+            () -> buildSearchRequest(request));
+
+        // Execute search
+        SearchResponse searchResponse;
+        long esStart = System.nanoTime();
         try {
-            // Build search request
-            SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-            
-            // Build query
-            QueryBuilder query = buildQuery(request);
-            searchSourceBuilder.query(query);
-            
-            // Set pagination
-            int from = request.getPage() * request.getSize();
-            searchSourceBuilder.from(from);
-            searchSourceBuilder.size(request.getSize());
-            
-            // Set sorting
-            searchSourceBuilder.sort(new ScoreSortBuilder().order(SortOrder.DESC));
-            
-            // Add aggregations for facets
-            addAggregations(searchSourceBuilder);
-            
-            // Execute search
-            SearchRequest searchRequest = new SearchRequest(indexName).source(searchSourceBuilder);
-            SearchResponse searchResponse = esClient.search(searchRequest, RequestOptions.DEFAULT);
-            
-            // Build response
-            return buildResponse(searchResponse);
-            
+            searchResponse = productSearchExecutor.search(searchRequest);
         } catch (IOException e) {
-            log.error("Error searching products", e);
-            return new ProductSearchResponse();
+            productStageMetrics.esError(queryMode);
+            throw new SearchUnavailableException("Product search failed: " + e.getMessage(), e);
+        }
+        onEsResponse(request, queryMode, searchResponse, esStart);
+        
+        // Build response
+        return buildTimedResponse(queryMode, searchResponse);
+    }
+
+    @Override
+    public Mono<ProductSearchResponse> searchProductsAsync(ProductSearchRequest request) {
+        String queryMode = getQueryStrategy(request).getName();
+        SearchRequest searchRequest = productStageMetrics.time(StageMetrics.QUERY_BUILD, queryMode,
+            () -> buildSearchRequest(request));
+        // The future is completed on the ES client IO reactor thread, so nothing blocks the event loop
+        return Mono.subscriberContext().flatMap(context -> {
+            String requestId = context.getOrDefault(RequestIds.REQUEST_ID_KEY, null);
+            long esStart = System.nanoTime();
+            return Mono.fromFuture(productSearchExecutor.searchAsync(searchRequest, requestId))
+                .doOnNext(searchResponse -> onEsResponse(request, queryMode, searchResponse, esStart));
+        }).onErrorMap(e -> {
+            productStageMetrics.esError(queryMode);
+            return new SearchUnavailableException("Product search failed: " + e.getMessage(), e);
+        }).map(searchResponse -> buildTimedResponse(queryMode, searchResponse));
+    }
+
+    private void onEsResponse(ProductSearchRequest request, String queryMode, SearchResponse searchResponse,
+                              long esStart) {
+        long esNanos = System.nanoTime() - esStart;
+        productStageMetrics.record(StageMetrics.ES_ROUND_TRIP, queryMode, esNanos);
+        productStageMetrics.recordTook(queryMode, searchResponse.getTook().millis());
+
+        // Same request with the candidate strategy, compared in the background; without text all are the same
+        if (hasQueryText(request) && productShadowTrafficComparator.shouldMirror(queryMode)) {
+            ProductQueryStrategy candidate = queryStrategies.get(productShadowTrafficComparator.getCandidate());
+            if (candidate != null) {
+                productShadowTrafficComparator.mirror(queryMode, searchResponse, esNanos,
+                    () -> buildSearchRequest(request, candidate));
+            }
+        }
+    }
+
+    // Also used by the federated search
+    ProductSearchResponse buildTimedResponse(String queryMode, SearchResponse searchResponse) {
+        ProductSearchResponse response = productStageMetrics.time(StageMetrics.RESPONSE_MAPPING, queryMode,
+            () -> buildResponse(searchResponse));
+        if (response.getProducts().isEmpty()) {
+            productStageMetrics.emptyResult(queryMode);
+        }
+        return response;
+    }
+
+    SearchRequest buildSearchRequest(ProductSearchRequest request) {
+        return buildSearchRequest(request, getQueryStrategy(request));
+    }
+
+    private SearchRequest buildSearchRequest(ProductSearchRequest request, ProductQueryStrategy strategy) {
+        // Build search request
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        
+        // Build query
+        QueryBuilder query = buildQuery(request, strategy);
+        searchSourceBuilder.query(query);
+        
+        // Set pagination
+        int from = request.getPage() * request.getSize();
+        searchSourceBuilder.from(from);
+        searchSourceBuilder.size(request.getSize());
+        
+        // Set sorting (rescoring can't be combined with an explicit sort, _score DESC is the default anyway)
+        QueryRescorerBuilder rescorer = hasQueryText(request)
+            ? strategy.buildRescorer(request.getQueryText(), from + request.getSize())
+            : null;
+        if (rescorer != null) {
+            searchSourceBuilder.addRescorer(rescorer);
+        } else {
+            searchSourceBuilder.sort(new ScoreSortBuilder().order(SortOrder.DESC));
         }
+        
+        // Add aggregations for facets
+        addAggregations(searchSourceBuilder);
+        
+        return new SearchRequest(indexName)
+            .source(searchSourceBuilder)
+            .routing(getRouting(request));
+    }
+
+    // A category filter only matches the shard(s) of that category, the others needn't be queried; also used by the export
+    String getRouting(ProductSearchRequest request) {
+        return routingByCategory && request.getCategory() != null && !request.getCategory().trim().isEmpty()
+            ? request.getCategory()
+            : null;
+    }
+
+    // Text query and filters, also used by the export
+    QueryBuilder buildQuery(ProductSearchRequest request) {
+        return buildQuery(request, getQueryStrategy(request));
     }
 
-    private QueryBuilder buildQuery(ProductSearchRequest request) {
+    private QueryBuilder buildQuery(ProductSearchRequest request, ProductQueryStrategy strategy) {
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
         
         // Text query with shingles
-        if (request.getQueryText() != null && !request.getQueryText().trim().isEmpty()) {
-            BoolQueryBuilder textQuery = QueryBuilders.boolQuery();
-            
-            // Main text search
-            textQuery.should(QueryBuilders.multiMatchQuery(request.getQueryText())
-                .field("name", 2.0f)
-                .field("name.shingles", 1.5f)
-                .field("brand", 1.5f)
-                .field("brand.shingles", 1.0f)
-                .field("description", 1.0f)
-                .type(org.elasticsearch.index.query.MultiMatchQueryBuilder.Type.BEST_FIELDS));
-            
-            boolQuery.must(textQuery);
+        if (hasQueryText(request)) {
+            boolQuery.must(strategy.buildTextQuery(request.getQueryText()));
         }
         
         // Filters
@@ -123,6 +250,64 @@ public class ProductSearchRepositoryImpl implements ProductSearchRepository {
         return boolQuery;
     }
 
+    private class MultiFieldQueryStrategy implements ProductQueryStrategy {
+        @Override
+        public String getName() {
+            return ProductQueryMode.MULTI_FIELD.name();
+        }
+
+        @Override
+        public QueryBuilder buildTextQuery(String queryText) {
+            // Main text search
+            return QueryBuilders.boolQuery().should(QueryBuilders.multiMatchQuery(queryText)
+                .field("name", 2.0f)
+                .field("name.shingles", 1.5f)
+                .field("brand", 1.5f)
+                .field("brand.shingles", 1.0f)
+                .field("description", 1.0f)
+                .type(org.elasticsearch.index.query.MultiMatchQueryBuilder.Type.BEST_FIELDS));
+        }
+    }
+
+    private class CombinedFieldQueryStrategy implements ProductQueryStrategy {
+        @Override
+        public String getName() {
+            return ProductQueryMode.COMBINED_FIELD.name();
+        }
+
+        @Override
+        public QueryBuilder buildTextQuery(String queryText) {
+            // Single aggregate field: 2 postings lookups per term instead of 5
+            return QueryBuilders.boolQuery()
+                .should(QueryBuilders.matchQuery("search_text", queryText))
+                .should(QueryBuilders.matchQuery("search_text.shingles", queryText).boost(combinedShinglesBoost));
+        }
+
+        @Override
+        public QueryRescorerBuilder buildRescorer(String queryText, int requestedHits) {
+            // Restore name/brand field weighting, but only for the top window instead of every match
+            QueryBuilder fieldWeightQuery = QueryBuilders.multiMatchQuery(queryText)
+                .field("name", 2.0f)
+                .field("name.shingles", 1.5f)
+                .field("brand", 1.5f)
+                .field("brand.shingles", 1.0f)
+                .type(org.elasticsearch.index.query.MultiMatchQueryBuilder.Type.BEST_FIELDS);
+            // The window must cover the requested page, otherwise deep pages would mix rescored and plain scores
+            return new QueryRescorerBuilder(fieldWeightQuery)
+                .windowSize(Math.max(rescoreWindowSize, requestedHits))
+                .setRescoreQueryWeight(rescoreQueryWeight);
+        }
+    }
+
+    // The queryMode of the request picks a built-in strategy, the others get the live one
+    private ProductQueryStrategy getQueryStrategy(ProductSearchRequest request) {
+        return request.getQueryMode() != null ? queryStrategies.get(request.getQueryMode().name()) : liveStrategy;
+    }
+
+    private boolean hasQueryText(ProductSearchRequest request) {
+        return request.getQueryText() != null && !request.getQueryText().trim().isEmpty();
+    }
+
     private void addAggregations(SearchSourceBuilder searchSourceBuilder) {
         // Color aggregation
         TermsAggregationBuilder colorAgg = AggregationBuilders
@@ -160,6 +345,13 @@ public class ProductSearchRepositoryImpl implements ProductSearchRepository {
         
         // Set total hits
         response.setTotalHits(searchResponse.getHits().getTotalHits().value);
+
+        // Partial results: ES timeout, terminate_after or failed shards
+        if (searchResponse.isTimedOut()
+            || Boolean.TRUE.equals(searchResponse.isTerminatedEarly())
+            || searchResponse.getFailedShards() > 0) {
+            response.setPartial(true);
+        }
         
         // Set products
         List<Map<String, Object>> products = Arrays.stream(searchResponse.getHits().getHits())
@@ -0,0 +1,9 @@
+package com.griddynamics.esgraduationproject.productsearch.repository;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveProductSearchRepository {
+    Mono<ProductSearchResponse> searchProductsAsync(ProductSearchRequest request);
+}
@@ -0,0 +1,8 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchResponse;
+
+public interface FederatedSearchService {
+    FederatedSearchResponse search(FederatedSearchRequest request);
+}
@@ -0,0 +1,98 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.google.common.cache.Cache;
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.FederatedSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.model.TypeaheadSuggestions;
+import com.griddynamics.esgraduationproject.productsearch.repository.FederatedSearchRepository;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+
+/**
+ * Suggestions and products are cached separately: the same suggestions are reused across product filters and
+ * query modes, the same products across suggestion sizes. Only the missing parts are sent to ES.
+ */
+@Service
+@Slf4j
+public class FederatedSearchServiceImpl implements FederatedSearchService {
+
+    @Autowired
+    private FederatedSearchRepository federatedSearchRepository;
+
+    @Autowired
+    private Cache<String, TypeaheadSuggestions> federatedTypeaheadCache;
+
+    @Autowired
+    private Cache<String, ProductSearchResponse> federatedProductCache;
+
+    // Shorter texts get no suggestions, same as /v1/typeahead
+    @Value("${com.griddynamics.es.graduation.project.federated.typeahead.minQueryLength:3}")
+    private int minQueryLength;
+
+    @Override
+    public FederatedSearchResponse search(FederatedSearchRequest request) {
+        String queryText = request.getQueryText() == null ? "" : request.getQueryText().trim();
+        ProductSearchRequest productRequest = getProductRequest(request);
+
+        boolean hasTypeaheads = queryText.length() >= minQueryLength;
+        String typeaheadKey = request.getTypeaheadSize() + ":" + request.getConsiderItemCountInSorting() + ":"
+            + request.getScoringMode() + ":" + queryText.toLowerCase(Locale.ROOT);
+        String productKey = ProductSearchFallbacks.getCacheKey(productRequest);
+        TypeaheadSuggestions typeaheads = hasTypeaheads
+            ? federatedTypeaheadCache.getIfPresent(typeaheadKey) : new TypeaheadSuggestions();
+        ProductSearchResponse products = federatedProductCache.getIfPresent(productKey);
+
+        if (typeaheads == null || products == null) {
+            try {
+                FederatedSearchResponse fetched = federatedSearchRepository.search(
+                    typeaheads == null ? queryText : null, request,
+                    products == null ? productRequest : null);
+                if (typeaheads == null) {
+                    typeaheads = fetched.getTypeaheads();
+                    cacheIfComplete(federatedTypeaheadCache, typeaheadKey, typeaheads, typeaheads.getPartial());
+                }
+                if (products == null) {
+                    products = fetched.getProducts();
+                    cacheIfComplete(federatedProductCache, productKey, products, products.getPartial());
+                }
+            } catch (SearchUnavailableException ex) {
+                if (typeaheads == null) {
+                    typeaheads = new TypeaheadSuggestions();
+                    typeaheads.setPartial(true);
+                }
+                if (products == null) {
+                    products = ProductSearchFallbacks.getUnavailableResponse(ex);
+                    products.setPartial(true);
+                }
+            }
+        }
+
+        FederatedSearchResponse response = new FederatedSearchResponse();
+        response.setTypeaheads(typeaheads);
+        response.setProducts(products);
+        return response;
+    }
+
+    private static ProductSearchRequest getProductRequest(FederatedSearchRequest request) {
+        ProductSearchRequest productRequest = new ProductSearchRequest();
+        productRequest.setQueryText(request.getQueryText());
+        productRequest.setSize(request.getProductSize());
+        productRequest.setCategory(request.getCategory());
+        productRequest.setQueryMode(request.getQueryMode());
+        return productRequest;
+    }
+
+    // Partial results would be served for the whole TTL otherwise
+    private static <T> void cacheIfComplete(Cache<String, T> cache, String key, T value, Boolean partial) {
+        if (!Boolean.TRUE.equals(partial)) {
+            cache.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface ProductExportService {
+    /**
+     * Streams the matching products as NDJSON, throws
+     * {@link com.griddynamics.esgraduationproject.searchcommons.limit.ConcurrencyLimitExceededException}
+     * before writing anything if too many exports are running.
+     *
+     * @param fields _source fields to export, null or empty = all
+     * @param slices null = the configured default, capped by the configured maximum
+     * @return the number of exported products
+     */
+    long exportProducts(ProductSearchRequest request, List<String> fields, Integer slices, OutputStream out)
+        throws IOException;
+}
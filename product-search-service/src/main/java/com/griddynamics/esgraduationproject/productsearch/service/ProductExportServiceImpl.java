@@ -0,0 +1,57 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.repository.ProductExportRepository;
+import com.griddynamics.esgraduationproject.searchcommons.limit.ConcurrencyLimitExceededException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@Slf4j
+public class ProductExportServiceImpl implements ProductExportService {
+
+    @Autowired
+    private ProductExportRepository productExportRepository;
+
+    @Value("${com.griddynamics.es.graduation.project.export.defaultSlices:4}")
+    private int defaultSlices;
+    @Value("${com.griddynamics.es.graduation.project.export.maxSlices:8}")
+    private int maxSlices;
+    // Each export keeps slices scroll contexts open in ES for its whole duration
+    @Value("${com.griddynamics.es.graduation.project.export.maxConcurrentExports:2}")
+    private int maxConcurrentExports;
+
+    private Semaphore runningExports;
+
+    @PostConstruct
+    public void init() {
+        runningExports = new Semaphore(maxConcurrentExports);
+    }
+
+    @Override
+    public long exportProducts(ProductSearchRequest request, List<String> fields, Integer slices, OutputStream out)
+        throws IOException {
+        if (!runningExports.tryAcquire()) {
+            throw new ConcurrencyLimitExceededException("export", 60);
+        }
+        try {
+            int sliceCount = Math.max(1, Math.min(maxSlices, slices != null ? slices : defaultSlices));
+            long start = System.nanoTime();
+            long count = productExportRepository.exportProducts(request, fields, sliceCount, out);
+            log.info("Exported {} products in {} ms with {} slices", count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), sliceCount);
+            return count;
+        } finally {
+            runningExports.release();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductLookupResponse;
+
+import java.util.List;
+
+public interface ProductLookupService {
+    /**
+     * Products by id, from the near-cache or one batched ES lookup; throws
+     * {@link com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException} if ES can't answer.
+     */
+    ProductLookupResponse getProducts(List<String> ids);
+}
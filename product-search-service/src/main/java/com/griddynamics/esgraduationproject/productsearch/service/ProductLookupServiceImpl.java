@@ -0,0 +1,206 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductLookupResponse;
+import com.griddynamics.esgraduationproject.productsearch.repository.ProductLookupRepository;
+import com.griddynamics.esgraduationproject.searchcommons.batch.MicroBatcher;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Products by id for the cart, PDP and recommendation widgets: served from a bounded near-cache keyed by
+ * index generation (the index.uuid of the indices behind the alias) and id, the misses of concurrent requests
+ * are merged into one ES lookup per batch window. A new generation (deploy, or the index recreated under the
+ * same name) makes every entry of the old one a miss, they age out of the cache. Only the periodic refresh
+ * advances the generation; lookups that don't match it at completion are served but not cached.
+ */
+@Service
+@Slf4j
+public class ProductLookupServiceImpl implements ProductLookupService {
+
+    @Value("${com.griddynamics.es.graduation.project.lookup.maxEntries:50000}")
+    private long maxEntries;
+    // Bounds the staleness of products updated in place, within the same generation
+    @Value("${com.griddynamics.es.graduation.project.lookup.ttlSeconds:300}")
+    private long ttlSeconds;
+    // Misses of requests arriving within this window share one ES lookup, added to the latency of the first one
+    @Value("${com.griddynamics.es.graduation.project.lookup.batchWindowMicros:2000}")
+    private long batchWindowMicros;
+    @Value("${com.griddynamics.es.graduation.project.lookup.maxBatchSize:200}")
+    private int maxBatchSize;
+    @Value("${com.griddynamics.es.graduation.project.lookup.timeoutMs:500}")
+    private long timeoutMs;
+    // The alias is resolved periodically, on its own thread so a slow ES doesn't hold up the batches
+    @Value("${com.griddynamics.es.graduation.project.lookup.generationRefreshSeconds:30}")
+    private long generationRefreshSeconds;
+
+    @Autowired
+    private ProductLookupRepository productLookupRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, Map<String, Object>> nearCache;
+    private MicroBatcher<String, Map<String, Object>> batcher;
+    private ScheduledExecutorService scheduler;
+    private ScheduledExecutorService generationScheduler;
+    private volatile Generation generation = Generation.UNKNOWN;
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    public void init() {
+        nearCache = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .build();
+        scheduler = newScheduler("product-lookup");
+        batcher = new MicroBatcher<>(batchWindowMicros, maxBatchSize, this::loadBatch, scheduler);
+        generationScheduler = newScheduler("product-lookup-generation");
+        generationScheduler.scheduleWithFixedDelay(this::refreshGeneration, 0, generationRefreshSeconds,
+            TimeUnit.SECONDS);
+
+        hitCounter = cacheCounter("hit");
+        missCounter = cacheCounter("miss");
+        batchSizes = DistributionSummary.builder("product.lookup.batch.size")
+            .description("Ids per ES lookup")
+            .register(meterRegistry);
+        Gauge.builder("product.lookup.cache.size", nearCache, Cache::size).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+        generationScheduler.shutdownNow();
+    }
+
+    private static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public ProductLookupResponse getProducts(List<String> ids) {
+        List<String> distinctIds = ids.stream()
+            .filter(Objects::nonNull)
+            .distinct()
+            .collect(Collectors.toList());
+        Generation currentGeneration = generation;
+        Map<String, Map<String, Object>> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : distinctIds) {
+            Map<String, Object> product = nearCache.getIfPresent(getCacheKey(currentGeneration, id));
+            if (product != null) {
+                found.put(id, product);
+            } else {
+                misses.add(id);
+            }
+        }
+        hitCounter.increment(found.size());
+        missCounter.increment(misses.size());
+
+        if (!misses.isEmpty()) {
+            try {
+                found.putAll(batcher.load(misses).get(timeoutMs, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SearchUnavailableException("Product lookup interrupted", ex);
+            } catch (ExecutionException ex) {
+                throw new SearchUnavailableException("Product lookup failed: " + ex.getCause().getMessage(),
+                    ex.getCause());
+            } catch (TimeoutException ex) {
+                throw new SearchUnavailableException("Product lookup timed out after " + timeoutMs + " ms", ex);
+            }
+        }
+
+        ProductLookupResponse response = new ProductLookupResponse();
+        response.setProducts(distinctIds.stream()
+            .map(found::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList()));
+        response.setMissing(distinctIds.stream()
+            .filter(id -> !found.containsKey(id))
+            .collect(Collectors.toList()));
+        return response;
+    }
+
+    // Runs on the batch window thread, the lookup itself completes on the ES client IO threads
+    private CompletableFuture<Map<String, Map<String, Object>>> loadBatch(Set<String> ids) {
+        batchSizes.record(ids.size());
+        Generation batchGeneration = generation;
+        return productLookupRepository.getProducts(ids).thenApply(batch -> {
+            // A deploy may have happened meanwhile, the products of another index must not land under this key
+            if (batch.getIndex() != null && generation == batchGeneration
+                && batchGeneration.indices.containsKey(batch.getIndex())) {
+                batch.getProducts().forEach((id, product) -> nearCache.put(getCacheKey(batchGeneration, id), product));
+            }
+            return batch.getProducts();
+        });
+    }
+
+    private void refreshGeneration() {
+        try {
+            Map<String, String> current = productLookupRepository.getGeneration();
+            if (!current.equals(generation.indices)) {
+                log.info("Product index generation {} -> {}", generation.indices, current);
+                generation = new Generation(current);
+            }
+        } catch (Exception ex) {
+            log.warn("Product index generation couldn't be resolved: {}", ex.getMessage());
+        }
+    }
+
+    private static String getCacheKey(Generation generation, String id) {
+        return generation.key + '/' + id;
+    }
+
+    // Nothing is cached while the generation is unknown
+    private static final class Generation {
+        static final Generation UNKNOWN = new Generation(Collections.emptyMap());
+
+        // index -> index.uuid
+        final Map<String, String> indices;
+        final String key;
+
+        Generation(Map<String, String> indices) {
+            this.indices = indices;
+            this.key = String.join(",", indices.values());
+        }
+    }
+
+    private Counter cacheCounter(String outcome) {
+        return Counter.builder("product.lookup.cache")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.searchcommons.profiling.SearchEvent;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.StringJoiner;
+
+@Name("com.griddynamics.search.Product")
+@Label("Product Search")
+public class ProductSearchEvent extends SearchEvent {
+
+    @Label("Page")
+    int page;
+
+    @Label("Size")
+    int size;
+
+    ProductSearchEvent(ProductSearchRequest request) {
+        page = request.getPage() != null ? request.getPage() : 0;
+        size = request.getSize() != null ? request.getSize() : 0;
+    }
+
+    // Names of the filters set in the request, e.g. "color,price"
+    static String getFilters(ProductSearchRequest request) {
+        StringJoiner filters = new StringJoiner(",");
+        addIfSet(filters, "color", request.getColor());
+        addIfSet(filters, "size", request.getProductSize());
+        addIfSet(filters, "brand", request.getBrand());
+        addIfSet(filters, "category", request.getCategory());
+        if (request.getMinPrice() != null || request.getMaxPrice() != null) {
+            filters.add("price");
+        }
+        return filters.toString();
+    }
+
+    private static void addIfSet(StringJoiner filters, String name, String value) {
+        if (value != null && !value.trim().isEmpty()) {
+            filters.add(name);
+        }
+    }
+
+    // null response = the search threw
+    void finish(ProductSearchResponse response) {
+        if (response == null) {
+            setOutcome("failed");
+            finish(null, null, null);
+        } else {
+            finish(response.getTotalHits(), response.getStale(), response.getPartial());
+        }
+    }
+}
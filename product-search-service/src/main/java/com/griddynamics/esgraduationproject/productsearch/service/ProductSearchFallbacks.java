@@ -0,0 +1,40 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fallback cache helpers shared by the MVC and the reactive service.
+ */
+@Slf4j
+final class ProductSearchFallbacks {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ProductSearchFallbacks() {
+    }
+
+    static String getCacheKey(ProductSearchRequest request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Can not serialize request " + request, ex);
+        }
+    }
+
+    // No fallback entry: empty response, flagged as partial if only the latency budget was exceeded
+    static ProductSearchResponse getUnavailableResponse(SearchUnavailableException ex) {
+        ProductSearchResponse response = new ProductSearchResponse();
+        if (ex.isDeadlineExceeded()) {
+            log.warn(ex.getMessage());
+            response.setPartial(true);
+        } else {
+            log.error("Error searching products", ex);
+        }
+        return response;
+    }
+}
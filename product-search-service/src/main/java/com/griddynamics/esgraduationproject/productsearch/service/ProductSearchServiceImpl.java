@@ -3,6 +3,7 @@ package com.griddynamics.esgraduationproject.productsearch.service;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
 import com.griddynamics.esgraduationproject.productsearch.repository.ProductSearchRepository;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleFallbackCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -12,8 +13,24 @@ public class ProductSearchServiceImpl implements ProductSearchService {
     @Autowired
     private ProductSearchRepository productSearchRepository;
 
+    @Autowired
+    private StaleFallbackCache<ProductSearchResponse> productFallbackCache;
+
     @Override
     public ProductSearchResponse searchProducts(ProductSearchRequest request) {
-        return productSearchRepository.searchProducts(request);
+        // JFR event, ES and mapping times are added by the stage metrics
+        ProductSearchEvent event = new ProductSearchEvent(request);
+        event.start(request.getQueryText());
+        if (event.isEnabled()) {
+            event.setFilters(ProductSearchEvent.getFilters(request));
+        }
+        ProductSearchResponse response = null;
+        try {
+            response = productFallbackCache.execute(ProductSearchFallbacks.getCacheKey(request),
+                () -> productSearchRepository.searchProducts(request), ProductSearchFallbacks::getUnavailableResponse);
+            return response;
+        } finally {
+            event.finish(response);
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveProductSearchService {
+    Mono<ProductSearchResponse> searchProducts(ProductSearchRequest request);
+}
@@ -0,0 +1,88 @@
+package com.griddynamics.esgraduationproject.productsearch.service;
+
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
+import com.griddynamics.esgraduationproject.productsearch.repository.ProductSearchRepository;
+import com.griddynamics.esgraduationproject.productsearch.repository.ReactiveProductSearchRepository;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import com.griddynamics.esgraduationproject.searchcommons.fallback.StaleFallbackCache;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductSearchServiceImpl implements ReactiveProductSearchService {
+
+    @Autowired
+    private ReactiveProductSearchRepository productSearchRepository;
+
+    // Background refreshes of stale entries run on the fallback cache thread and may block
+    @Autowired
+    private ProductSearchRepository blockingProductSearchRepository;
+
+    @Autowired
+    private StaleFallbackCache<ProductSearchResponse> productFallbackCache;
+
+    @Override
+    public Mono<ProductSearchResponse> searchProducts(ProductSearchRequest request) {
+        // JFR event from the subscription to the last signal, the stages run on other threads so it has no stage times
+        return Mono.subscriberContext().flatMap(context -> {
+            ProductSearchEvent event = new ProductSearchEvent(request);
+            event.startDetached(request.getQueryText(), context.getOrDefault(RequestIds.REQUEST_ID_KEY, null));
+            if (event.isEnabled()) {
+                event.setFilters(ProductSearchEvent.getFilters(request));
+            }
+            AtomicReference<ProductSearchResponse> response = new AtomicReference<>();
+            return search(request)
+                .doOnNext(response::set)
+                .doFinally(signal -> event.finish(response.get()));
+        });
+    }
+
+    private Mono<ProductSearchResponse> search(ProductSearchRequest request) {
+        String cacheKey = ProductSearchFallbacks.getCacheKey(request);
+        Supplier<ProductSearchResponse> refresher = () -> blockingProductSearchRepository.searchProducts(request);
+
+        return Mono.defer(() -> {
+            if (!productFallbackCache.tryAcquirePermission()) {
+                return Mono.just(getStaleOrUnavailable(
+                    productFallbackCache.getStale(cacheKey, refresher), productFallbackCache.circuitOpen()));
+            }
+
+            // Exactly one outcome per permitted search, a cancelled one may be the half-open probe
+            AtomicBoolean reported = new AtomicBoolean();
+            return productSearchRepository.searchProductsAsync(request)
+                .doOnNext(response -> {
+                    if (reported.compareAndSet(false, true)) {
+                        productFallbackCache.onSuccess(cacheKey, response);
+                    }
+                })
+                .onErrorResume(SearchUnavailableException.class, ex -> {
+                    reported.set(true);
+                    return Mono.just(getStaleOrUnavailable(productFallbackCache.onFailure(cacheKey, refresher, ex), ex));
+                })
+                .doOnError(ex -> {
+                    if (reported.compareAndSet(false, true)) {
+                        productFallbackCache.reportFailure(ex);
+                    }
+                })
+                .doOnCancel(() -> {
+                    if (reported.compareAndSet(false, true)) {
+                        productFallbackCache.reportFailure(new CancellationException("Product search cancelled"));
+                    }
+                });
+        });
+    }
+
+    private static ProductSearchResponse getStaleOrUnavailable(ProductSearchResponse stale, SearchUnavailableException ex) {
+        return stale != null ? stale : ProductSearchFallbacks.getUnavailableResponse(ex);
+    }
+}
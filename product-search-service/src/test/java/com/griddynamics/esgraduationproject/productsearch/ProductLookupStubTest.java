@@ -0,0 +1,169 @@
+package com.griddynamics.esgraduationproject.productsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import com.griddynamics.esgraduationproject.esstub.StubIndex;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Product lookups by id against the in-JVM ES stub, without routing by category, so they are _mget calls.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = ProductLookupStubTest.EsStubInitializer.class)
+@TestPropertySource(properties = {
+    "com.griddynamics.es.graduation.project.product.index=product_index",
+    "com.griddynamics.es.graduation.project.lookup.batchWindowMicros=200000",
+    "com.griddynamics.es.graduation.project.lookup.generationRefreshSeconds=1",
+    "com.griddynamics.es.graduation.project.warmup.product.enabled=false"
+})
+public class ProductLookupStubTest {
+
+    private static final EsStubServer ES_STUB = startStub();
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeEach
+    void setUp() throws IOException, InterruptedException {
+        RestAssured.port = port;
+        RestAssured.baseURI = "http://localhost";
+
+        createIndex(null);
+    }
+
+    // Products are only cached once the generation refresh has seen the index
+    private static void createIndex(String firstProductName) throws IOException, InterruptedException {
+        StubIndex index = ES_STUB.createIndex("product_index");
+        JsonNode products = new ObjectMapper().readTree(
+            new File("../product-indexer/src/main/resources/elastic/products/products.json"));
+        products.forEach(product -> index.put(product.get("id").asText(), (ObjectNode) product));
+        if (firstProductName != null) {
+            ((ObjectNode) index.get("1")).put("name", firstProductName);
+        }
+        Thread.sleep(1500);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        ES_STUB.reset();
+    }
+
+    @Test
+    void testProductsAreLookedUpInBatchesAndCached() throws IOException {
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"ids\":[\"2\",\"1\",\"999\"]}")
+            .when()
+            .post("/v1/product/_mget")
+            .then()
+            .statusCode(200)
+            .body("products.id", contains("2", "1"))
+            .body("missing", contains("999"));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MGET), is(1L));
+        assertThat(readDocs(), is(3));
+
+        // Cached ones don't go to ES, concurrent misses share one _mget
+        CompletableFuture<List<String>> first = CompletableFuture.supplyAsync(() -> lookUp("1,3"));
+        CompletableFuture<List<String>> second = CompletableFuture.supplyAsync(() -> lookUp("2,4"));
+        assertThat(first.join(), contains("1", "3"));
+        assertThat(second.join(), contains("2", "4"));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MGET), is(2L));
+        assertThat(readDocs(), is(2));
+    }
+
+    @Test
+    void testProductsOfARecreatedIndexAreNotServedFromTheCache() throws IOException, InterruptedException {
+        assertThat(lookUpName("1"), is("Nike Air Max 270"));
+        assertThat(lookUpName("1"), is("Nike Air Max 270"));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MGET), is(1L));
+
+        // Same name, new index.uuid, as the indexer's default mode does
+        ES_STUB.reset();
+        createIndex("Nike Air Max 270 v2");
+
+        assertThat(lookUpName("1"), is("Nike Air Max 270 v2"));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MGET), is(1L));
+    }
+
+    @Test
+    void testTooManyIdsAreRejected() {
+        given()
+            .queryParam("ids", String.join(",", Collections.nCopies(101, "1")))
+            .when()
+            .get("/v1/product/_mget")
+            .then()
+            .statusCode(400);
+    }
+
+    private static int readDocs() throws IOException {
+        return new ObjectMapper().readTree(ES_STUB.getLastRequestBody(EsStubServer.MGET)).get("docs").size();
+    }
+
+    private static List<String> lookUp(String ids) {
+        return given()
+            .queryParam("ids", ids)
+            .when()
+            .get("/v1/product/_mget")
+            .then()
+            .statusCode(200)
+            .extract()
+            .jsonPath()
+            .getList("products.id", String.class);
+    }
+
+    private static String lookUpName(String id) {
+        return given()
+            .queryParam("ids", id)
+            .when()
+            .get("/v1/product/_mget")
+            .then()
+            .statusCode(200)
+            .extract()
+            .jsonPath()
+            .getString("products[0].name");
+    }
+
+    private static EsStubServer startStub() {
+        try {
+            return new EsStubServer(0).start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class EsStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                "elasticsearch.host=localhost",
+                "elasticsearch.port=" + ES_STUB.getPort(),
+                "elasticsearch.scheme=http"
+            ).applyTo(context);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.griddynamics.esgraduationproject.productsearch;
 
+import com.griddynamics.esgraduationproject.productsearch.model.ProductQueryMode;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
 import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchResponse;
 import io.restassured.RestAssured;
@@ -23,7 +24,10 @@ import static org.junit.jupiter.api.Assertions.*;
     "elasticsearch.host=localhost",
     "elasticsearch.port=9200",
     "elasticsearch.scheme=http",
-    "com.griddynamics.es.graduation.project.product.index=product_index"
+    "com.griddynamics.es.graduation.project.product.index=product_index",
+    "com.griddynamics.es.graduation.project.warmup.product.enabled=false",
+    "com.griddynamics.es.graduation.project.budget.product.deadlineMs=2000",
+    "com.griddynamics.es.graduation.project.budget.product.esTimeoutMs=1000"
 })
 public class ProductSearchIntegrationTest {
 
@@ -311,4 +315,28 @@ public class ProductSearchIntegrationTest {
         
         assertTrue(foundNikeAirMax, "Should find Nike Air Max products");
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testCombinedFieldQueryMode() {
+        ProductSearchRequest request = new ProductSearchRequest();
+        request.setQueryText("nike air max");
+        request.setQueryMode(ProductQueryMode.COMBINED_FIELD);
+        request.setSize(10);
+        request.setPage(0);
+
+        ProductSearchResponse response = given()
+            .contentType(ContentType.JSON)
+            .body(request)
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .extract()
+            .as(ProductSearchResponse.class);
+
+        // Same matches as the multi-field mode, name boost keeps "Nike Air Max" on top after rescoring
+        assertTrue(response.getTotalHits() > 0);
+        String topName = (String) response.getProducts().get(0).get("name");
+        assertTrue(topName.toLowerCase().contains("nike air max"), "Nike Air Max should be the top hit");
+    }
+}
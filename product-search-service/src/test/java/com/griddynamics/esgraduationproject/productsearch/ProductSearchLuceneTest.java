@@ -0,0 +1,103 @@
+package com.griddynamics.esgraduationproject.productsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esgraduationproject.productlucene.LuceneProductIndexWriter;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Product endpoints on the embedded Lucene engine, the index is written the way the indexer does in lucene mode.
+ * No ES is needed.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = ProductSearchLuceneTest.LuceneIndexInitializer.class)
+@TestPropertySource(properties = {
+    "com.griddynamics.es.graduation.project.product.engine=lucene",
+    "com.griddynamics.es.graduation.project.product.lucene.refreshIntervalMs=0",
+    "com.griddynamics.es.graduation.project.warmup.product.enabled=false"
+})
+public class ProductSearchLuceneTest {
+
+    private static final Path INDEX_DIR = writeIndex();
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeEach
+    void setUp() {
+        RestAssured.port = port;
+        RestAssured.baseURI = "http://localhost";
+    }
+
+    @Test
+    void testProductsAndFacetsAreSearchedLocally() {
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"size\":1}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .body("totalHits", is(2))
+            .body("products", hasSize(1))
+            .body("products[0].brand", equalTo("Nike"))
+            .body("facets.sizes.size()", is(2))
+            .body("facets.price_ranges", hasKey("200+"));
+    }
+
+    @Test
+    void testFiltersAndPriceRange() {
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"color\":\"white\",\"maxPrice\":100}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .body("totalHits", is(1))
+            .body("products[0].id", equalTo("4"));
+    }
+
+    private static Path writeIndex() {
+        try {
+            Path productsDir = Paths.get("../product-indexer/src/main/resources/elastic/products");
+            Path indexDir = Files.createTempDirectory("product-index");
+            new LuceneProductIndexWriter(indexDir,
+                new String(Files.readAllBytes(productsDir.resolve("settings.json")), StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(productsDir.resolve("mappings.json")), StandardCharsets.UTF_8))
+                .writeGeneration(new ObjectMapper().readTree(productsDir.resolve("products.json").toFile()));
+            return indexDir;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class LuceneIndexInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues
+                .of("com.griddynamics.es.graduation.project.product.lucene.dir=" + INDEX_DIR)
+                .applyTo(context);
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package com.griddynamics.esgraduationproject.productsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import com.griddynamics.esgraduationproject.esstub.StubIndex;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.shadow.ShadowTrafficSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Request paths of the service against the in-JVM ES stub, runs without an ES cluster.
+ * The stub doesn't evaluate queries, so only the plumbing is checked here, not the relevance.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = ProductSearchStubTest.EsStubInitializer.class)
+@TestPropertySource(properties = {
+    "com.griddynamics.es.graduation.project.product.index=product_index",
+    "com.griddynamics.es.graduation.project.product.routingByCategory=true",
+    "elasticsearch.client.smileResponses=true",
+    "com.griddynamics.es.graduation.project.export.batchSize=2",
+    "com.griddynamics.es.graduation.project.warmup.product.enabled=false",
+    "com.griddynamics.es.graduation.project.budget.product.deadlineMs=300",
+    "com.griddynamics.es.graduation.project.budget.product.esTimeoutMs=250"
+})
+public class ProductSearchStubTest {
+
+    private static final EsStubServer ES_STUB = startStub();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ShadowTrafficSettings productShadowTrafficSettings;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter productConcurrencyLimiter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        RestAssured.port = port;
+        RestAssured.baseURI = "http://localhost";
+
+        StubIndex index = ES_STUB.createIndex("product_index");
+        JsonNode products = new ObjectMapper().readTree(
+            new File("../product-indexer/src/main/resources/elastic/products/products.json"));
+        products.forEach(product -> index.put(product.get("id").asText(), (ObjectNode) product));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        productShadowTrafficSettings.setSampleRate(0.0);
+        ES_STUB.reset();
+    }
+
+    @Test
+    void testProductsArePagedFromStub() {
+        List<String> firstFour = searchIds("{\"queryText\":\"nike\",\"size\":4}");
+        List<String> firstPage = searchIds("{\"queryText\":\"nike\",\"size\":2,\"page\":0}");
+        List<String> secondPage = searchIds("{\"queryText\":\"nike\",\"size\":2,\"page\":1}");
+
+        // The stub doesn't score, so only the pages are compared, not which products come first
+        assertThat(firstFour, hasSize(4));
+        assertThat(secondPage, hasSize(2));
+        assertThat(secondPage, everyItem(not(isIn(firstPage))));
+        List<String> bothPages = new ArrayList<>(firstPage);
+        bothPages.addAll(secondPage);
+        assertThat(bothPages, containsInAnyOrder(firstFour.toArray()));
+    }
+
+    private static List<String> searchIds(String body) {
+        return given()
+            .contentType(ContentType.JSON)
+            .body(body)
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .body("totalHits", greaterThan(4))
+            .extract()
+            .path("products.id");
+    }
+
+    @Test
+    void testCategoryFilteredSearchIsRouted() {
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"category\":\"shoes\"}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200);
+        assertThat(ES_STUB.getLastRequestParams(EsStubServer.SEARCH), hasEntry("routing", "shoes"));
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\"}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200);
+        assertThat(ES_STUB.getLastRequestParams(EsStubServer.SEARCH), not(hasKey("routing")));
+    }
+
+    @Test
+    void testSmileIsNegotiatedWithClientAndEs() throws IOException {
+        byte[] body = given()
+            .contentType(ContentType.JSON)
+            .accept("application/x-jackson-smile")
+            .body("{\"queryText\":\"nike\",\"size\":2}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .contentType("application/x-jackson-smile")
+            .extract()
+            .asByteArray();
+
+        JsonNode response = new ObjectMapper(new SmileFactory()).readTree(body);
+        assertThat(response.get("products").size(), is(2));
+        assertThat(ES_STUB.getLastRequestHeaders(EsStubServer.SEARCH), hasEntry("accept", "application/smile"));
+    }
+
+    @Test
+    void testCborIsNegotiatedAndTimedByFormat() throws IOException {
+        byte[] body = given()
+            .contentType(ContentType.JSON)
+            .accept("application/cbor")
+            .body("{\"queryText\":\"nike\",\"size\":2}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .contentType("application/cbor")
+            .extract()
+            .asByteArray();
+
+        JsonNode response = new ObjectMapper(new CBORFactory()).readTree(body);
+        assertThat(response.get("products").size(), is(2));
+        Timer serialization = meterRegistry.get("search.stage.duration")
+            .tag("stage", "serialization")
+            .tag("format", "cbor")
+            .timer();
+        assertThat(serialization.getId().getTag("queryMode"), is("any"));
+        assertThat(serialization.count(), greaterThan(0L));
+    }
+
+    @Test
+    void testWildcardAcceptAndErrorsAreJson() {
+        given()
+            .contentType(ContentType.JSON)
+            .accept("*/*")
+            .body("{\"queryText\":\"nike\",\"size\":2}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .contentType("application/json");
+        given()
+            .contentType(ContentType.JSON)
+            .accept("*/*")
+            .body("{\"queryText\":")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(400)
+            .contentType("application/json")
+            .body("status", is(400));
+    }
+
+    @Test
+    void testRequestsAboveTheConcurrencyLimitAreRejected() {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (AdaptiveConcurrencyLimiter.Permit permit = productConcurrencyLimiter.tryAcquire(); permit != null;
+             permit = productConcurrencyLimiter.tryAcquire()) {
+            permits.add(permit);
+        }
+        try {
+            given()
+                .contentType(ContentType.JSON)
+                .body("{\"queryText\":\"nike\"}")
+                .when()
+                .post("/v1/product")
+                .then()
+                .statusCode(503)
+                .header("Retry-After", "1");
+        } finally {
+            permits.forEach(AdaptiveConcurrencyLimiter.Permit::release);
+        }
+    }
+
+    @Test
+    void testCatalogIsExportedInSlices() throws IOException {
+        byte[] body = given()
+            .queryParam("fields", "id,name")
+            .queryParam("slices", 3)
+            .queryParam("gzip", true)
+            .when()
+            .get("/v1/product/export")
+            .then()
+            .statusCode(200)
+            .contentType("application/gzip")
+            .extract()
+            .asByteArray();
+
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(new ByteArrayInputStream(body)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertThat(lines.size(), is(ES_STUB.getIndex("product_index").size()));
+        assertThat(lines.stream().map(line -> readId(objectMapper, line)).distinct().count(), is((long) lines.size()));
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertThat(first.size(), is(2));
+        assertThat(first.has("name"), is(true));
+
+        JsonNode search = objectMapper.readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(search.at("/slice/max").asInt(), is(3));
+        assertThat(search.at("/sort/0").has("_doc"), is(true));
+        assertThat(ES_STUB.getLastRequestParams(EsStubServer.SEARCH), hasKey("scroll"));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SCROLL), greaterThan(0L));
+        assertThat(ES_STUB.getOpenScrollCount(), is(0));
+    }
+
+    @Test
+    void testExportFailingMidStreamIsTruncated() throws IOException {
+        // Incompressible pages larger than the response buffer, the response is committed before the scroll fails
+        Random random = new Random(42);
+        ES_STUB.reset();
+        StubIndex index = ES_STUB.createIndex("product_index");
+        for (int i = 1; i <= 4; i++) {
+            index.put(String.valueOf(i), JsonNodeFactory.instance.objectNode()
+                .put("id", String.valueOf(i))
+                .put("description", new BigInteger(80_000, random).toString(36)));
+        }
+        ES_STUB.addRecordedResponse("POST", "/_search/scroll", 500, "{\"error\":{\"type\":\"exception\"},\"status\":500}");
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+            "http://localhost:" + port + "/v1/product/export?slices=1&gzip=true").openConnection();
+        assertThat(connection.getResponseCode(), is(200));
+        assertThrows(IOException.class, () -> {
+            try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+                while (in.read(new byte[8192]) >= 0) {
+                    // Until the end of the stream, which must not look complete
+                }
+            }
+        });
+    }
+
+    private static String readId(ObjectMapper objectMapper, String line) {
+        try {
+            return objectMapper.readTree(line).get("id").asText();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Test
+    void testCandidateStrategyIsComparedOnMirroredTraffic() throws IOException, InterruptedException {
+        productShadowTrafficSettings.setSampleRate(1.0);
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"size\":3,\"queryMode\":\"MULTI_FIELD\"}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .body("products", hasSize(3));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ES_STUB.getRequestCount(EsStubServer.SEARCH) < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        JsonNode candidateSearch = new ObjectMapper().readTree(ES_STUB.getLastRequestBody(EsStubServer.SEARCH));
+        assertThat(candidateSearch.has("rescore"), is(true));
+        while (meterRegistry.find("search.shadow.overlap").summary() == null
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(meterRegistry.get("search.shadow.overlap").tag("candidate", "COMBINED_FIELD").summary().mean(),
+            is(1.0));
+        assertThat(meterRegistry.get("search.shadow.took").tag("role", "primary").tag("strategy", "MULTI_FIELD")
+            .timer().count(), is(1L));
+    }
+
+    @Test
+    void testFederatedSearchIsOneRoundTripAndCachedPerPart() {
+        StubIndex typeaheads = ES_STUB.createIndex("typeaheads");
+        for (int i = 1; i <= 5; i++) {
+            typeaheads.put(String.valueOf(i), JsonNodeFactory.instance.objectNode()
+                .put("name", "nike shoes " + i)
+                .put("rank", i));
+        }
+        String body = "{\"queryText\":\"nike\",\"typeaheadSize\":3,\"productSize\":2}";
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(body)
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(200)
+            .body("typeaheads.typeaheads", hasSize(3))
+            .body("typeaheads.totalHits", is(5))
+            .body("products.products", hasSize(2))
+            .body("products.facets", notNullValue());
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MSEARCH), is(1L));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.SEARCH), is(0L));
+
+        // Same suggestions, other products: only the product part is searched
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"typeaheadSize\":3,\"productSize\":4}")
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(200)
+            .body("typeaheads.typeaheads", hasSize(3))
+            .body("products.products", hasSize(4));
+        given()
+            .contentType(ContentType.JSON)
+            .body(body)
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(200)
+            .body("products.products", hasSize(2));
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MSEARCH), is(2L));
+    }
+
+    @Test
+    void testFederatedSuggestionsAreRankedLikeTheTypeaheads() {
+        ES_STUB.createIndex("typeaheads");
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"considerItemCountInSorting\":true}")
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(200);
+        String typeaheadSearch = ES_STUB.getLastRequestBody(EsStubServer.MSEARCH).split("\n")[1];
+        assertThat(typeaheadSearch, containsString("\"itemCount\":{\"order\":\"desc\"}"));
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"scoringMode\":\"RANK_FEATURE\"}")
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(200);
+        typeaheadSearch = ES_STUB.getLastRequestBody(EsStubServer.MSEARCH).split("\n")[1];
+        assertThat(typeaheadSearch, containsString("\"wrapper\""));
+        assertThat(typeaheadSearch, not(containsString("\"sort\"")));
+    }
+
+    @Test
+    void testInvalidFederatedSizesAreRejected() {
+        for (String size : Arrays.asList("null", "0", "-1", "1000")) {
+            given()
+                .contentType(ContentType.JSON)
+                .body("{\"queryText\":\"nike\",\"typeaheadSize\":" + size + "}")
+                .when()
+                .post("/v1/search")
+                .then()
+                .statusCode(400);
+        }
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike\",\"productSize\":null}")
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(400);
+        assertThat(ES_STUB.getRequestCount(EsStubServer.MSEARCH), is(0L));
+    }
+
+    @Test
+    void testFederatedSearchFindsTheIndicesOfTheShippedConfigs() {
+        String productIndex = readConfig("src/main/resources/application.yml")
+            .getProperty("com.griddynamics.es.graduation.project.product.index");
+        String typeaheadIndex = readConfig("src/main/resources/application.yml")
+            .getProperty("com.griddynamics.es.graduation.project.federated.typeahead.index");
+        String typeaheadAlias = readConfig("../es-graduation-service/src/main/resources/application.yml")
+            .getProperty("com.griddynamics.es.graduation.project.index");
+        // A typeahead rebuild would replace a concrete index with the alias name
+        assertThat(typeaheadAlias, not(productIndex));
+        assertThat(typeaheadIndex, is(typeaheadAlias));
+
+        // As left by a rebuild of es-graduation-service
+        StubIndex generation = ES_STUB.createIndex(typeaheadAlias + "_1");
+        generation.put("1", JsonNodeFactory.instance.objectNode().put("name", "nike shoes").put("rank", 1));
+        ES_STUB.addAlias(typeaheadAlias, typeaheadAlias + "_1");
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"nike air\"}")
+            .when()
+            .post("/v1/search")
+            .then()
+            .statusCode(200)
+            .body("typeaheads.partial", not(true))
+            .body("products.partial", not(true))
+            .body("typeaheads.typeaheads", hasSize(1))
+            .body("products.products", not(empty()));
+        String[] msearch = ES_STUB.getLastRequestBody(EsStubServer.MSEARCH).split("\n");
+        assertThat(msearch[0], containsString("\"" + typeaheadAlias + "\""));
+        assertThat(msearch[2], containsString("\"" + productIndex + "\""));
+    }
+
+    private static Properties readConfig(String path) {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new FileSystemResource(path));
+        return yaml.getObject();
+    }
+
+    @Test
+    void testDeadlineExceededOnInjectedLatency() {
+        ES_STUB.setLatency(1000, 0);
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("{\"queryText\":\"slow query\"}")
+            .when()
+            .post("/v1/product")
+            .then()
+            .statusCode(200)
+            .body("partial", is(true));
+    }
+
+    private static EsStubServer startStub() {
+        try {
+            return new EsStubServer(0).start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class EsStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                "elasticsearch.host=localhost",
+                "elasticsearch.port=" + ES_STUB.getPort(),
+                "elasticsearch.scheme=http"
+            ).applyTo(context);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.griddynamics.esgraduationproject.productsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.griddynamics.esgraduationproject.esstub.EsStubServer;
+import com.griddynamics.esgraduationproject.esstub.StubIndex;
+import com.griddynamics.esgraduationproject.productsearch.model.ProductSearchRequest;
+import com.griddynamics.esgraduationproject.productsearch.service.ProductSearchService;
+import com.griddynamics.esgraduationproject.searchcommons.limit.AdaptiveConcurrencyLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * The WebFlux /v1/product against the in-JVM ES stub, compared with the MVC search service of the same
+ * context: the same responses, the same stale fallback and the same error mapping, and its JFR search events.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+@ContextConfiguration(initializers = ReactiveProductSearchStubTest.EsStubInitializer.class)
+@TestPropertySource(properties = {
+    "com.griddynamics.es.graduation.project.product.index=product_index",
+    "com.griddynamics.es.graduation.project.warmup.product.enabled=false",
+    // The injected ES errors must not open the circuit for the other tests
+    "com.griddynamics.es.graduation.project.fallback.product.circuit.failureThreshold=100"
+})
+public class ReactiveProductSearchStubTest {
+
+    private static final EsStubServer ES_STUB = startStub();
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter productConcurrencyLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StubIndex index = ES_STUB.createIndex("product_index");
+        JsonNode products = new ObjectMapper().readTree(
+            new File("../product-indexer/src/main/resources/elastic/products/products.json"));
+        products.forEach(product -> index.put(product.get("id").asText(), (ObjectNode) product));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        ES_STUB.reset();
+    }
+
+    @Test
+    void testResponseIsTheSameAsTheServletOne() throws IOException {
+        String body = "{\"queryText\":\"nike\",\"size\":2,\"page\":1}";
+
+        JsonNode response = search(body);
+
+        assertThat(response.get("products").size(), is(2));
+        assertThat(response, is(searchServlet(body)));
+    }
+
+    @Test
+    void testStaleResponseIsServedLikeTheServletOne() throws IOException {
+        String body = "{\"queryText\":\"adidas\",\"size\":3}";
+        JsonNode fresh = search(body);
+
+        ES_STUB.setErrorRate(1.0, 503);
+        JsonNode stale = search(body);
+
+        assertThat(stale.get("stale").asBoolean(), is(true));
+        assertThat(stale.get("products"), is(fresh.get("products")));
+        assertThat(stale, is(searchServlet(body)));
+    }
+
+    @Test
+    void testUnavailableEsIsMappedLikeTheServletPath() throws IOException {
+        String body = "{\"queryText\":\"puma\"}";
+        ES_STUB.setErrorRate(1.0, 503);
+
+        JsonNode response = search(body);
+
+        assertThat(response.has("stale"), is(false));
+        assertThat(response, is(searchServlet(body)));
+    }
+
+    @Test
+    void testSearchEventIsRecorded() throws IOException {
+        Path dump = Files.createTempFile("reactive-search", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.griddynamics.search.Product").withThreshold(Duration.ZERO);
+            recording.start();
+            webTestClient.post()
+                .uri("/v1/product")
+                .header(RequestIds.REQUEST_ID_HEADER, "reactive-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody("{\"queryText\":\"nike shoes\",\"brand\":\"nike\"}")
+                .exchange()
+                .expectStatus().isOk();
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            assertThat(events.size(), is(1));
+            assertThat(events.get(0).getString("requestId"), is("reactive-1"));
+            assertThat(events.get(0).getInt("wordCount"), is(2));
+            assertThat(events.get(0).getString("filters"), is("brand"));
+            assertThat(events.get(0).getLong("hits"), greaterThan(0L));
+            assertThat(events.get(0).getString("outcome"), is("ok"));
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    @Test
+    void testErrorsAreMappedLikeTheServletPath() {
+        webTestClient.post()
+            .uri("/v1/product")
+            .contentType(MediaType.APPLICATION_JSON)
+            .syncBody("{\"queryText\":")
+            .exchange()
+            .expectStatus().isBadRequest()
+            .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+            .expectBody().jsonPath("$.status").isEqualTo(400);
+
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (AdaptiveConcurrencyLimiter.Permit permit = productConcurrencyLimiter.tryAcquire(); permit != null;
+             permit = productConcurrencyLimiter.tryAcquire()) {
+            permits.add(permit);
+        }
+        try {
+            webTestClient.post()
+                .uri("/v1/product")
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody("{\"queryText\":\"nike\"}")
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+        } finally {
+            permits.forEach(AdaptiveConcurrencyLimiter.Permit::release);
+        }
+    }
+
+    private JsonNode search(String body) throws IOException {
+        byte[] response = webTestClient.post()
+            .uri("/v1/product")
+            .contentType(MediaType.APPLICATION_JSON)
+            .syncBody(body)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .returnResult()
+            .getResponseBody();
+        return objectMapper.readTree(response);
+    }
+
+    // The MVC controller only adds the concurrency limit around this service
+    private JsonNode searchServlet(String body) throws IOException {
+        ProductSearchRequest request = objectMapper.readValue(body, ProductSearchRequest.class);
+        return objectMapper.readTree(objectMapper.writeValueAsString(productSearchService.searchProducts(request)));
+    }
+
+    private static EsStubServer startStub() {
+        try {
+            return new EsStubServer(0).start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static class EsStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                "elasticsearch.host=localhost",
+                "elasticsearch.port=" + ES_STUB.getPort(),
+                "elasticsearch.scheme=http"
+            ).applyTo(context);
+        }
+    }
+}
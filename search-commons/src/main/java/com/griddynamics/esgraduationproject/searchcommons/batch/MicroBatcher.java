@@ -0,0 +1,110 @@
+package com.griddynamics.esgraduationproject.searchcommons.batch;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Merges the keys of concurrent lookups into one backend call: the first key of a batch opens a window of
+ * windowMicros, every key requested until it closes (or until maxBatchSize keys are pending) is loaded by the
+ * same call. A key requested twice in a window is loaded once and both callers get the value.
+ *
+ * @param <K> key type
+ * @param <V> value type; keys missing from the loaded map complete with null
+ */
+public class MicroBatcher<K, V> {
+    private final long windowMicros;
+    private final int maxBatchSize;
+    private final Function<Set<K>, CompletableFuture<Map<K, V>>> loader;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public MicroBatcher(long windowMicros, int maxBatchSize, Function<Set<K>, CompletableFuture<Map<K, V>>> loader,
+                        ScheduledExecutorService scheduler) {
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.loader = loader;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the values found, by key
+     */
+    public CompletableFuture<Map<K, V>> load(Collection<K> keys) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> fullBatch = null;
+        synchronized (this) {
+            for (K key : keys) {
+                futures.put(key, pending.computeIfAbsent(key, k -> new CompletableFuture<>()));
+            }
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = takePending();
+            } else if (scheduledFlush == null && !pending.isEmpty()) {
+                scheduledFlush = scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+            .thenApply(ignored -> {
+                Map<K, V> result = new LinkedHashMap<>();
+                futures.forEach((key, future) -> {
+                    V value = future.join();
+                    if (value != null) {
+                        result.put(key, value);
+                    }
+                });
+                return result;
+            });
+    }
+
+    private void flush() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    // Must hold the lock
+    private Map<K, CompletableFuture<V>> takePending() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<K, CompletableFuture<V>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Map<K, V>> result;
+        try {
+            result = loader.apply(batch.keySet());
+        } catch (RuntimeException ex) {
+            batch.values().forEach(future -> future.completeExceptionally(ex));
+            return;
+        }
+        result.whenComplete((values, ex) -> batch.forEach((key, future) -> {
+            if (ex != null) {
+                future.completeExceptionally(ex);
+            } else {
+                future.complete(values.get(key));
+            }
+        }));
+    }
+}
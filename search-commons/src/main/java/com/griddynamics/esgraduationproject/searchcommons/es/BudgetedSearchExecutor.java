@@ -0,0 +1,262 @@
+package com.griddynamics.esgraduationproject.searchcommons.es;
+
+import com.griddynamics.esgraduationproject.searchcommons.slowlog.SlowQueryLog;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs ES searches of one endpoint within its {@link SearchBudget}: the budget is mapped to the ES
+ * timeout/terminate_after, the call is bounded by a client-side deadline and, if hedging is enabled,
+ * a duplicate request with another preference is sent when the primary attempt is slower than the
+ * configured percentile of recent latencies. The first response wins.
+ * All attempts carry the request id as X-Opaque-Id; completed searches are passed to the slow query log.
+ */
+@Slf4j
+public class BudgetedSearchExecutor implements MeterBinder {
+    private static final int LATENCY_WINDOW_SIZE = 1024;
+
+    private final RestHighLevelClient esClient;
+    private final String endpoint;
+    private final SearchBudget budget;
+    private final ScheduledExecutorService scheduler;
+    private final LatencyTracker primaryLatencies;
+    private final SlowQueryLog slowQueryLog;
+    // Headers of all searches, e.g. Accept: application/smile
+    private RequestOptions requestOptions = RequestOptions.DEFAULT;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong deadlinesExceeded = new AtomicLong();
+
+    public BudgetedSearchExecutor(RestHighLevelClient esClient, String endpoint, SearchBudget budget,
+                                  ScheduledExecutorService scheduler) {
+        this(esClient, endpoint, budget, scheduler, null);
+    }
+
+    public BudgetedSearchExecutor(RestHighLevelClient esClient, String endpoint, SearchBudget budget,
+                                  ScheduledExecutorService scheduler, SlowQueryLog slowQueryLog) {
+        this.esClient = esClient;
+        this.endpoint = endpoint;
+        this.budget = budget;
+        this.scheduler = scheduler;
+        this.primaryLatencies = new LatencyTracker(LATENCY_WINDOW_SIZE, budget.getHedgePercentile());
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public BudgetedSearchExecutor setRequestOptions(RequestOptions requestOptions) {
+        this.requestOptions = requestOptions;
+        return this;
+    }
+
+    public SearchResponse search(SearchRequest searchRequest) throws IOException {
+        return await(searchAsync(searchRequest, RequestIds.current()));
+    }
+
+    public MultiSearchResponse multiSearch(MultiSearchRequest multiSearchRequest) throws IOException {
+        return await(multiSearchAsync(multiSearchRequest, RequestIds.current()));
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Search is interrupted for endpoint " + endpoint);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    public CompletableFuture<SearchResponse> searchAsync(SearchRequest searchRequest) {
+        return searchAsync(searchRequest, RequestIds.current());
+    }
+
+    /**
+     * @param requestId id of the service request, sent as X-Opaque-Id; null = no header
+     */
+    public CompletableFuture<SearchResponse> searchAsync(SearchRequest searchRequest, String requestId) {
+        applyBudget(searchRequest);
+        searches.incrementAndGet();
+
+        CompletableFuture<SearchResponse> result = new CompletableFuture<>();
+        AtomicInteger pendingAttempts = new AtomicInteger(1);
+        long startNanos = System.nanoTime();
+        RequestOptions searchOptions = RequestIds.requestOptions(requestOptions, requestId);
+
+        if (budget.getPrimaryPreference() != null) {
+            searchRequest.preference(budget.getPrimaryPreference());
+        }
+        sendSearch(searchRequest, searchOptions, attemptListener(result, pendingAttempts, startNanos, false));
+
+        if (budget.isHedgingEnabled()) {
+            ScheduledFuture<?> hedge = scheduler.schedule(
+                () -> sendHedge(searchRequest, searchOptions, result, pendingAttempts, startNanos),
+                getHedgeDelayMs(), TimeUnit.MILLISECONDS);
+            result.whenComplete((response, ex) -> hedge.cancel(false));
+        }
+
+        scheduleDeadline(result);
+
+        if (slowQueryLog != null) {
+            result.whenComplete((response, ex) -> slowQueryLog.onSearchCompleted(
+                searchRequest, requestId, response, ex, System.nanoTime() - startNanos));
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends the searches as one _msearch round trip. The budget applies to every item and the deadline
+     * to the whole call; there is no hedging, item failures are reported in the items.
+     */
+    public CompletableFuture<MultiSearchResponse> multiSearchAsync(MultiSearchRequest multiSearchRequest,
+                                                                   String requestId) {
+        multiSearchRequest.requests().forEach(this::applyBudget);
+        searches.incrementAndGet();
+
+        CompletableFuture<MultiSearchResponse> result = new CompletableFuture<>();
+        esClient.msearchAsync(multiSearchRequest, RequestIds.requestOptions(requestOptions, requestId),
+            ActionListener.wrap(result::complete, result::completeExceptionally));
+        scheduleDeadline(result);
+        return result;
+    }
+
+    private void scheduleDeadline(CompletableFuture<?> result) {
+        if (budget.getDeadlineMs() > 0) {
+            ScheduledFuture<?> deadline = scheduler.schedule(() -> {
+                if (result.completeExceptionally(new SearchDeadlineExceededException(endpoint, budget.getDeadlineMs()))) {
+                    deadlinesExceeded.incrementAndGet();
+                }
+            }, budget.getDeadlineMs(), TimeUnit.MILLISECONDS);
+            result.whenComplete((response, ex) -> deadline.cancel(false));
+        }
+    }
+
+    private void applyBudget(SearchRequest searchRequest) {
+        if (searchRequest.source() == null) {
+            return;
+        }
+        if (budget.getEsTimeoutMs() > 0) {
+            searchRequest.source().timeout(TimeValue.timeValueMillis(budget.getEsTimeoutMs()));
+        }
+        if (budget.getTerminateAfter() > 0) {
+            searchRequest.source().terminateAfter(budget.getTerminateAfter());
+        }
+    }
+
+    private void sendHedge(SearchRequest primaryRequest, RequestOptions requestOptions,
+                           CompletableFuture<SearchResponse> result,
+                           AtomicInteger pendingAttempts, long startNanos) {
+        long hedge = result.isDone() ? -1 : tryReserveHedge();
+        if (hedge < 0) {
+            return;
+        }
+        // The primary attempt is still pending, so pendingAttempts can't have dropped to 0 yet
+        pendingAttempts.incrementAndGet();
+        SearchRequest hedgeRequest = new SearchRequest(primaryRequest)
+            .preference(getHedgePreference(primaryRequest.preference(), hedge));
+        sendSearch(hedgeRequest, requestOptions, attemptListener(result, pendingAttempts, startNanos, true));
+    }
+
+    // Number of the hedge, -1 if the share of hedged requests is used up
+    private long tryReserveHedge() {
+        while (true) {
+            long sent = hedgesSent.get();
+            if ((sent + 1) * 100 > searches.get() * budget.getHedgeMaxPercent()) {
+                return -1;
+            }
+            if (hedgesSent.compareAndSet(sent, sent + 1)) {
+                return sent + 1;
+            }
+        }
+    }
+
+    private String getHedgePreference(String primaryPreference, long hedge) {
+        String preference = budget.getHedgePreference() + '-' + hedge;
+        return preference.equals(primaryPreference) ? preference + "-hedge" : preference;
+    }
+
+    // Overridden by the tests
+    void sendSearch(SearchRequest searchRequest, RequestOptions options, ActionListener<SearchResponse> listener) {
+        esClient.searchAsync(searchRequest, options, listener);
+    }
+
+    private ActionListener<SearchResponse> attemptListener(CompletableFuture<SearchResponse> result,
+                                                           AtomicInteger pendingAttempts,
+                                                           long startNanos, boolean isHedge) {
+        return ActionListener.wrap(
+            response -> {
+                if (!isHedge) {
+                    primaryLatencies.record(System.nanoTime() - startNanos);
+                }
+                if (result.complete(response) && isHedge) {
+                    hedgesWon.incrementAndGet();
+                }
+            },
+            ex -> {
+                // Fail only when no other attempt can still answer
+                if (pendingAttempts.decrementAndGet() == 0) {
+                    result.completeExceptionally(ex);
+                } else {
+                    log.debug("{} search attempt failed for endpoint {}", isHedge ? "Hedged" : "Primary", endpoint, ex);
+                }
+            });
+    }
+
+    private long getHedgeDelayMs() {
+        long percentileNanos = primaryLatencies.getPercentileNanos();
+        long percentileMs = percentileNanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(percentileNanos);
+        return Math.max(budget.getHedgeMinDelayMs(), percentileMs);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("search.hedge.sent", hedgesSent, AtomicLong::get)
+            .tag("endpoint", endpoint)
+            .description("Hedged search requests sent")
+            .register(registry);
+        FunctionCounter.builder("search.hedge.won", hedgesWon, AtomicLong::get)
+            .tag("endpoint", endpoint)
+            .description("Hedged search requests that answered before the primary attempt")
+            .register(registry);
+        FunctionCounter.builder("search.deadline.exceeded", deadlinesExceeded, AtomicLong::get)
+            .tag("endpoint", endpoint)
+            .description("Searches aborted by the client-side deadline")
+            .register(registry);
+        Gauge.builder("search.hedge.delay", this, BudgetedSearchExecutor::getHedgeDelayMs)
+            .tag("endpoint", endpoint)
+            .baseUnit("milliseconds")
+            .description("Current hedge delay derived from recent primary latencies")
+            .register(registry);
+    }
+}
@@ -0,0 +1,40 @@
+package com.griddynamics.esgraduationproject.searchcommons.es;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the latest latencies with a periodically recomputed percentile.
+ */
+public class LatencyTracker {
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final long[] window;
+    private final double percentile;
+    private int position;
+    private int count;
+    private long recorded;
+    private volatile long percentileNanos = -1;
+
+    public LatencyTracker(int windowSize, double percentile) {
+        this.window = new long[windowSize];
+        this.percentile = percentile;
+    }
+
+    public synchronized void record(long latencyNanos) {
+        window[position] = latencyNanos;
+        position = (position + 1) % window.length;
+        count = Math.min(count + 1, window.length);
+        if (++recorded % RECOMPUTE_EVERY == 0) {
+            long[] sorted = Arrays.copyOf(window, count);
+            Arrays.sort(sorted);
+            percentileNanos = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+
+    /**
+     * @return the percentile latency or -1 until enough samples are recorded
+     */
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+}
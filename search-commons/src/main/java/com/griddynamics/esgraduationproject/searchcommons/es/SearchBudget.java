@@ -0,0 +1,29 @@
+package com.griddynamics.esgraduationproject.searchcommons.es;
+
+import lombok.Data;
+
+/**
+ * Latency budget of one endpoint and its hedging policy.
+ */
+@Data
+public class SearchBudget {
+    // ES-side search timeout, shards that don't finish in time return partial results
+    private long esTimeoutMs;
+    // Client-side deadline for the whole call (including hedges), should be a bit larger than esTimeoutMs
+    private long deadlineMs;
+    // Max docs collected per shard, 0 = unlimited
+    private int terminateAfter;
+
+    private boolean hedgingEnabled;
+    // The hedge is sent when the primary attempt is slower than this percentile of recent primary latencies
+    private double hedgePercentile = 0.95;
+    // Lower bound of the hedge delay, also used until enough latencies are recorded
+    private long hedgeMinDelayMs;
+    // Max share of requests that may be hedged, keeps the extra ES load bounded
+    private int hedgeMaxPercent = 10;
+    // Preference of the primary attempt, null = adaptive replica selection
+    private String primaryPreference;
+    // Prefix of the hedge preferences: each hedge gets its own (hedge-<n>), so the hedges are spread over the
+    // shard copies instead of all going to the same ones, and never reuse the primary preference
+    private String hedgePreference = "hedge";
+}
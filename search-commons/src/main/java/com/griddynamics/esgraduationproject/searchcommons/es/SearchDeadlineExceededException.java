@@ -0,0 +1,9 @@
+package com.griddynamics.esgraduationproject.searchcommons.es;
+
+import java.io.IOException;
+
+public class SearchDeadlineExceededException extends IOException {
+    public SearchDeadlineExceededException(String endpoint, long deadlineMs) {
+        super("Search deadline of " + deadlineMs + "ms exceeded for endpoint " + endpoint);
+    }
+}
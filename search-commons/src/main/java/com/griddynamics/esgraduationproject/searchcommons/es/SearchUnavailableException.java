@@ -0,0 +1,18 @@
+package com.griddynamics.esgraduationproject.searchcommons.es;
+
+/**
+ * ES could not answer: connection error, error response, client deadline or an open circuit.
+ */
+public class SearchUnavailableException extends RuntimeException {
+    public SearchUnavailableException(String message) {
+        super(message);
+    }
+
+    public SearchUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public boolean isDeadlineExceeded() {
+        return getCause() instanceof SearchDeadlineExceededException;
+    }
+}
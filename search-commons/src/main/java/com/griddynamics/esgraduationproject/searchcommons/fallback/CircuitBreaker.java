@@ -0,0 +1,88 @@
+package com.griddynamics.esgraduationproject.searchcommons.fallback;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens after failureThreshold consecutive failures. While open, requests are not sent to ES;
+ * after openDurationMs a single probe is let through (half-open) and its result closes or re-opens it.
+ * A probe whose result is never reported is replaced by another one after openDurationMs.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    // Opening time while OPEN, probe start while HALF_OPEN
+    private long stateChangedAtNanos;
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+    }
+
+    /**
+     * No state change: true if a request would be let through now.
+     */
+    public synchronized boolean allowRequest() {
+        return state == State.CLOSED || isOpenDurationElapsed();
+    }
+
+    /**
+     * Lets the request through if the circuit is closed, or makes it the half-open probe once openDurationMs
+     * has elapsed; its result must be reported with onSuccess, onFailure or onIgnored.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (isOpenDurationElapsed()) {
+            state = State.HALF_OPEN;
+            stateChangedAtNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isOpenDurationElapsed() {
+        return state != State.CLOSED && System.nanoTime() - stateChangedAtNanos >= openDurationNanos;
+    }
+
+    /**
+     * @return true if the circuit was not closed before, i.e. ES has just recovered
+     */
+    public synchronized boolean onSuccess() {
+        boolean recovered = state != State.CLOSED;
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        return recovered;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            stateChangedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * The result says nothing about the health of ES (a client error, only the latency budget exceeded):
+     * not counted, a half-open probe is released so the next request probes again.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            stateChangedAtNanos = System.nanoTime() - openDurationNanos;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,321 @@
+package com.griddynamics.esgraduationproject.searchcommons.fallback;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.ResponseException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded last-known-good cache of successful responses of one endpoint. When ES fails or the circuit
+ * is open, the cached response is served with the stale flag and the request is remembered; once ES
+ * recovers, remembered requests are re-executed in the background to refresh their entries.
+ * The cache can be persisted to a local file to survive restarts.
+ */
+@Slf4j
+public class StaleFallbackCache<T extends StaleMarkable> implements MeterBinder {
+
+    private final String endpoint;
+    private final int maxEntries;
+    private final Class<T> responseClass;
+    private final CircuitBreaker circuitBreaker;
+    private final Path persistenceFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService backgroundExecutor;
+
+    private final Map<String, T> entries;
+    private final Map<String, Supplier<T>> pendingRefreshes = new ConcurrentHashMap<>();
+
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong refreshed = new AtomicLong();
+
+    /**
+     * @param persistenceFile      file to load the cache from and save it to, null to keep it in memory only
+     * @param persistIntervalSeconds period of saving to persistenceFile, 0 = only on close
+     */
+    public StaleFallbackCache(String endpoint, int maxEntries, Class<T> responseClass, CircuitBreaker circuitBreaker,
+                              Path persistenceFile, long persistIntervalSeconds) {
+        this.endpoint = endpoint;
+        this.maxEntries = maxEntries;
+        this.responseClass = responseClass;
+        this.circuitBreaker = circuitBreaker;
+        this.persistenceFile = persistenceFile;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > StaleFallbackCache.this.maxEntries;
+            }
+        });
+        this.backgroundExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stale-fallback-" + endpoint);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (persistenceFile != null) {
+            load();
+            if (persistIntervalSeconds > 0) {
+                backgroundExecutor.scheduleWithFixedDelay(this::save, persistIntervalSeconds, persistIntervalSeconds,
+                    TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs the search unless the circuit is open. On success the response is cached, on failure the
+     * stale response is returned or, if there is none, the result of onMissing.
+     */
+    public T execute(String key, Supplier<T> search, Function<SearchUnavailableException, T> onMissing) {
+        if (!tryAcquirePermission()) {
+            T stale = getStale(key, search);
+            return stale != null ? stale : onMissing.apply(circuitOpen());
+        }
+
+        T response;
+        try {
+            response = search.get();
+        } catch (SearchUnavailableException ex) {
+            T stale = onFailure(key, search, ex);
+            return stale != null ? stale : onMissing.apply(ex);
+        } catch (RuntimeException | Error ex) {
+            // Reported too, a half-open probe must never stay unanswered
+            reportFailure(ex);
+            throw ex;
+        }
+        onSuccess(key, response);
+        return response;
+    }
+
+    /**
+     * No state change: true if a request would be let through now.
+     */
+    public boolean allowRequest() {
+        return circuitBreaker.allowRequest();
+    }
+
+    /**
+     * No state change: false while the circuit is open or a half-open probe is running.
+     */
+    public boolean isClosed() {
+        return getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * For searches run outside of execute: true if the search may be sent, its result must then be reported
+     * with onSuccess, onFailure or reportFailure (also when it's cancelled).
+     */
+    public boolean tryAcquirePermission() {
+        return circuitBreaker.tryAcquirePermission();
+    }
+
+    public SearchUnavailableException circuitOpen() {
+        return new SearchUnavailableException("Circuit is open for endpoint " + endpoint);
+    }
+
+    public void onSuccess(String key, T response) {
+        if (circuitBreaker.onSuccess()) {
+            log.info("ES has recovered for endpoint {}, refreshing {} stale entries", endpoint, pendingRefreshes.size());
+            backgroundExecutor.execute(this::refreshPending);
+        }
+        // Partial responses are not a good fallback
+        if (!Boolean.TRUE.equals(response.getPartial())) {
+            entries.put(key, response);
+        }
+    }
+
+    /**
+     * Registers a failed search.
+     *
+     * @return a stale copy of the cached response or null
+     */
+    public T onFailure(String key, Supplier<T> refresher, Throwable failure) {
+        reportFailure(failure);
+        return getStale(key, refresher);
+    }
+
+    /**
+     * Registers a failed or cancelled search. Client errors and exceeded latency budgets don't count
+     * towards opening the circuit.
+     */
+    public void reportFailure(Throwable failure) {
+        if (isEsFailure(failure)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onIgnored();
+        }
+    }
+
+    private static boolean isEsFailure(Throwable failure) {
+        if (failure instanceof SearchUnavailableException && ((SearchUnavailableException) failure).isDeadlineExceeded()) {
+            return false;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            int status = getStatus(cause);
+            if (status >= 400 && status < 500) {
+                // Too many requests is an overloaded cluster
+                return status == 429;
+            }
+        }
+        return true;
+    }
+
+    private static int getStatus(Throwable ex) {
+        if (ex instanceof ElasticsearchException) {
+            return ((ElasticsearchException) ex).status().getStatus();
+        }
+        if (ex instanceof ResponseException) {
+            return ((ResponseException) ex).getResponse().getStatusLine().getStatusCode();
+        }
+        return 0;
+    }
+
+    /**
+     * @return a stale copy of the cached response or null; the request is refreshed once ES recovers
+     */
+    public T getStale(String key, Supplier<T> refresher) {
+        T cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (pendingRefreshes.size() < maxEntries) {
+            pendingRefreshes.putIfAbsent(key, refresher);
+        }
+        staleServed.incrementAndGet();
+        // Copy, so that the flag doesn't leak into the cached instance served elsewhere
+        // (convertValue would return the same instance for the same type)
+        T stale;
+        try {
+            stale = objectMapper.treeToValue(objectMapper.valueToTree(cached), responseClass);
+        } catch (IOException ex) {
+            log.warn("Fallback entry {} can't be copied: {}", key, ex.getMessage());
+            return null;
+        }
+        stale.setStale(true);
+        return stale;
+    }
+
+    private void refreshPending() {
+        Iterator<Map.Entry<String, Supplier<T>>> it = pendingRefreshes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Supplier<T>> pending = it.next();
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return; // ES failed again, the rest is refreshed after the next recovery
+            }
+            try {
+                T response = pending.getValue().get();
+                circuitBreaker.onSuccess();
+                if (!Boolean.TRUE.equals(response.getPartial())) {
+                    entries.put(pending.getKey(), response);
+                }
+                refreshed.incrementAndGet();
+                it.remove();
+            } catch (SearchUnavailableException ex) {
+                reportFailure(ex);
+                log.warn("Background refresh failed for endpoint {}: {}", endpoint, ex.getMessage());
+                return;
+            } catch (RuntimeException ex) {
+                reportFailure(ex);
+                log.error("Background refresh failed for endpoint {}", endpoint, ex);
+                it.remove();
+            }
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(persistenceFile)) {
+            return;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(persistenceFile.toFile());
+            root.fields().forEachRemaining(field -> {
+                try {
+                    entries.put(field.getKey(), objectMapper.treeToValue(field.getValue(), responseClass));
+                } catch (IOException ex) {
+                    log.warn("Skipping unreadable fallback entry {}: {}", field.getKey(), ex.getMessage());
+                }
+            });
+            log.info("{} fallback entries loaded for endpoint {} from {}", entries.size(), endpoint, persistenceFile);
+        } catch (IOException ex) {
+            log.warn("Fallback cache file {} can't be read: {}", persistenceFile, ex.getMessage());
+        }
+    }
+
+    public void save() {
+        if (persistenceFile == null) {
+            return;
+        }
+        List<Map.Entry<String, T>> snapshot;
+        synchronized (entries) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        ObjectNode root = objectMapper.createObjectNode();
+        snapshot.forEach(entry -> root.set(entry.getKey(), objectMapper.valueToTree(entry.getValue())));
+        try {
+            // Write to a temp file first, a crash during saving must not destroy the previous copy
+            Path parent = persistenceFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmpFile = Files.createTempFile(parent, persistenceFile.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tmpFile.toFile(), root);
+            Files.move(tmpFile, persistenceFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Fallback cache can't be saved to {}: {}", persistenceFile, ex.getMessage());
+        }
+    }
+
+    public void close() {
+        backgroundExecutor.shutdownNow();
+        save();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("search.fallback.entries", this, StaleFallbackCache::size)
+            .tag("endpoint", endpoint)
+            .description("Responses held in the last-known-good cache")
+            .register(registry);
+        Gauge.builder("search.fallback.circuit.open", circuitBreaker, cb -> cb.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+            .tag("endpoint", endpoint)
+            .description("1 if the ES circuit is open or half-open")
+            .register(registry);
+        FunctionCounter.builder("search.fallback.stale.served", staleServed, AtomicLong::get)
+            .tag("endpoint", endpoint)
+            .description("Stale responses served instead of failing")
+            .register(registry);
+        FunctionCounter.builder("search.fallback.refreshed", refreshed, AtomicLong::get)
+            .tag("endpoint", endpoint)
+            .description("Stale entries refreshed in the background after ES recovered")
+            .register(registry);
+    }
+}
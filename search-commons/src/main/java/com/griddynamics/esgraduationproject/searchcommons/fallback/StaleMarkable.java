@@ -0,0 +1,10 @@
+package com.griddynamics.esgraduationproject.searchcommons.fallback;
+
+/**
+ * Service response that can be served from {@link StaleFallbackCache}.
+ */
+public interface StaleMarkable {
+    Boolean getPartial();
+
+    void setStale(Boolean stale);
+}
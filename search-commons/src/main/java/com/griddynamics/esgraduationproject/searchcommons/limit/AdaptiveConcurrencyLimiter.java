@@ -0,0 +1,183 @@
+package com.griddynamics.esgraduationproject.searchcommons.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limiter for one endpoint with an AIMD limit: the limit grows by 1 once a window of `limit` fast
+ * requests has completed without a drop while the limit is actually in use, and is multiplied by backoffRatio
+ * when a request is slower than latencyThreshold (or failed). A latency spike slows down every request in flight,
+ * so only the requests started after the last decrease can decrease it again. Requests above the limit are
+ * rejected immediately.
+ */
+public class AdaptiveConcurrencyLimiter implements MeterBinder {
+
+    private final String endpoint;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final int retryAfterSeconds;
+
+    private volatile double limit;
+    // Fast samples since the last change of the limit
+    private int windowSuccesses;
+    // Decreases so far, the permits of the requests started before the last one can't back off
+    private volatile long decreases;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdaptiveConcurrencyLimiter(String endpoint, int initialLimit, int minLimit, int maxLimit,
+                                      long latencyThresholdMs, double backoffRatio, int retryAfterSeconds) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits for endpoint " + endpoint
+                + ": initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit);
+        }
+        if (backoffRatio <= 0.0 || backoffRatio >= 1.0) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1) for endpoint " + endpoint);
+        }
+        this.endpoint = endpoint;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.backoffRatio = backoffRatio;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.limit = initialLimit;
+    }
+
+    public AdaptiveConcurrencyLimiter(String endpoint, ConcurrencyLimitSettings settings) {
+        this(endpoint, settings.getInitial(), settings.getMin(), settings.getMax(), settings.getLatencyThresholdMs(),
+            settings.getBackoffRatio(), settings.getRetryAfterSeconds());
+    }
+
+    /**
+     * @return a permit that must be released exactly once, or null if the limit is reached
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1);
+            }
+        }
+    }
+
+    /**
+     * Runs the call under a permit.
+     *
+     * @throws ConcurrencyLimitExceededException if the limit is reached
+     */
+    public <T> T execute(Supplier<T> call) {
+        Permit permit = tryAcquire();
+        if (permit == null) {
+            throw new ConcurrencyLimitExceededException(endpoint, retryAfterSeconds);
+        }
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            if (success) {
+                permit.release();
+            } else {
+                permit.drop();
+            }
+        }
+    }
+
+    public ConcurrencyLimitExceededException limitExceeded() {
+        return new ConcurrencyLimitExceededException(endpoint, retryAfterSeconds);
+    }
+
+    private synchronized void onSample(long latencyNanos, int inFlightAtStart, long decreasesAtStart, boolean dropped) {
+        if (dropped || latencyNanos > latencyThresholdNanos) {
+            if (decreasesAtStart == decreases) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                windowSuccesses = 0;
+                decreases++;
+            }
+        } else if (inFlightAtStart * 2 >= limit && ++windowSuccesses >= getLimit()) {
+            // Grow only when the current limit is used, otherwise idle periods would inflate it;
+            // once per window, so the limit grows linearly and not with the request rate
+            limit = Math.min(maxLimit, limit + 1);
+            windowSuccesses = 0;
+        }
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("search.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+            .tag("endpoint", endpoint)
+            .description("Current adaptive concurrency limit")
+            .register(registry);
+        Gauge.builder("search.concurrency.inflight", this, AdaptiveConcurrencyLimiter::getInFlight)
+            .tag("endpoint", endpoint)
+            .description("Requests currently holding a permit")
+            .register(registry);
+        FunctionCounter.builder("search.concurrency.rejected", this, AdaptiveConcurrencyLimiter::getRejectedCount)
+            .tag("endpoint", endpoint)
+            .description("Requests rejected because the limit was reached")
+            .register(registry);
+    }
+
+    public class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart;
+        private final long decreasesAtStart = decreases;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Request completed, its latency is used to adjust the limit.
+         */
+        public void release() {
+            complete(false);
+        }
+
+        /**
+         * Request failed or was cancelled, the limit backs off unless it did since the request started.
+         */
+        public void drop() {
+            complete(true);
+        }
+
+        private void complete(boolean dropped) {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                onSample(System.nanoTime() - startNanos, inFlightAtStart, decreasesAtStart, dropped);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.griddynamics.esgraduationproject.searchcommons.limit;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Concurrency limiter of the service endpoint and the 503 + Retry-After response of its rejections.
+ * Each service extends it with its endpoint and binds the settings from its own properties.
+ */
+@Import(ConcurrencyLimitExceptionHandler.class)
+public abstract class ConcurrencyLimitConfig {
+
+    private final String endpoint;
+
+    protected ConcurrencyLimitConfig(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public abstract ConcurrencyLimitSettings concurrencyLimitSettings();
+
+    @Bean
+    public AdaptiveConcurrencyLimiter concurrencyLimiter() {
+        return new AdaptiveConcurrencyLimiter(endpoint, concurrencyLimitSettings());
+    }
+}
@@ -0,0 +1,14 @@
+package com.griddynamics.esgraduationproject.searchcommons.limit;
+
+public class ConcurrencyLimitExceededException extends RuntimeException {
+    private final int retryAfterSeconds;
+
+    public ConcurrencyLimitExceededException(String endpoint, int retryAfterSeconds) {
+        super("Concurrency limit exceeded for endpoint " + endpoint);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,21 @@
+package com.griddynamics.esgraduationproject.searchcommons.limit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+@Slf4j
+public class ConcurrencyLimitExceptionHandler {
+
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    public ResponseEntity<Void> handleLimitExceeded(ConcurrencyLimitExceededException ex) {
+        log.debug(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+            .build();
+    }
+}
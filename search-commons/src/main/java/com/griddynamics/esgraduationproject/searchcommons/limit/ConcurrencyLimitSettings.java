@@ -0,0 +1,17 @@
+package com.griddynamics.esgraduationproject.searchcommons.limit;
+
+import lombok.Data;
+
+/**
+ * Limits of one endpoint, see {@link AdaptiveConcurrencyLimiter}.
+ */
+@Data
+public class ConcurrencyLimitSettings {
+    private int initial = 20;
+    private int min = 4;
+    private int max = 200;
+    // Requests slower than this shrink the limit
+    private long latencyThresholdMs = 100;
+    private double backoffRatio = 0.9;
+    private int retryAfterSeconds = 1;
+}
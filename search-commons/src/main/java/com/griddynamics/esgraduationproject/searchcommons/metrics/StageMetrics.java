@@ -0,0 +1,120 @@
+package com.griddynamics.esgraduationproject.searchcommons.metrics;
+
+import com.griddynamics.esgraduationproject.searchcommons.profiling.SearchEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Per-stage latency timers (with percentile histograms) and outcome counters of one endpoint,
+ * tagged by endpoint, stage and query mode. Stage times are also added to the {@link SearchEvent} of the
+ * request thread, if one is recorded.
+ */
+public class StageMetrics {
+    public static final String QUERY_BUILD = "query_build";
+    public static final String ES_ROUND_TRIP = "es_round_trip";
+    // Time reported by ES itself ("took"), the difference to ES_ROUND_TRIP is network + client overhead
+    public static final String ES_TOOK = "es_took";
+    public static final String RESPONSE_MAPPING = "response_mapping";
+    public static final String SERIALIZATION = "serialization";
+
+    // Query mode tag of measurements that don't depend on it
+    public static final String ANY_MODE = "any";
+    // Format tag of the stages before the serialization
+    public static final String ANY_FORMAT = "any";
+
+    private static final String STAGE_TIMER = "search.stage.duration";
+
+    private final MeterRegistry registry;
+    private final String endpoint;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> responseSizes = new ConcurrentHashMap<>();
+
+    public StageMetrics(MeterRegistry registry, String endpoint) {
+        this.registry = registry;
+        this.endpoint = endpoint;
+    }
+
+    public <T> T time(String stage, String queryMode, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            record(stage, queryMode, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String stage, String queryMode, long nanos) {
+        getTimer(stage, queryMode, ANY_FORMAT).record(nanos, TimeUnit.NANOSECONDS);
+        SearchEvent event = SearchEvent.current();
+        if (event != null) {
+            event.recordStage(stage, queryMode, nanos);
+        }
+    }
+
+    /**
+     * The {@link #SERIALIZATION} stage, by response format (json, smile, cbor); the query mode isn't known there.
+     */
+    public void recordSerialization(String format, long nanos) {
+        getTimer(SERIALIZATION, ANY_MODE, format).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTook(String queryMode, long tookMillis) {
+        getTimer(ES_TOOK, queryMode, ANY_FORMAT).record(tookMillis, TimeUnit.MILLISECONDS);
+        SearchEvent event = SearchEvent.current();
+        if (event != null) {
+            event.recordTook(tookMillis);
+        }
+    }
+
+    // Serialized response body, by format (json, smile, cbor)
+    public void recordResponseSize(String format, long bytes) {
+        responseSizes.computeIfAbsent(format, key -> DistributionSummary.builder("search.response.size")
+            .baseUnit("bytes")
+            .tag("endpoint", endpoint)
+            .tag("format", format)
+            .publishPercentileHistogram()
+            .register(registry))
+            .record(bytes);
+    }
+
+    public void emptyResult(String queryMode) {
+        getCounter("search.results.empty", queryMode).increment();
+    }
+
+    public void shortQueryRejected() {
+        getCounter("search.requests.short", ANY_MODE).increment();
+    }
+
+    public void esError(String queryMode) {
+        getCounter("search.es.errors", queryMode).increment();
+    }
+
+    // Every stage timer has the format tag, Prometheus needs the same tag keys for all of them
+    private Timer getTimer(String stage, String queryMode, String format) {
+        return timers.computeIfAbsent(stage + '|' + queryMode + '|' + format, key -> Timer.builder(STAGE_TIMER)
+            .tag("endpoint", endpoint)
+            .tag("stage", stage)
+            .tag("queryMode", queryMode)
+            .tag("format", format)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofNanos(100_000))
+            .maximumExpectedValue(Duration.ofSeconds(10))
+            .register(registry));
+    }
+
+    private Counter getCounter(String name, String queryMode) {
+        return counters.computeIfAbsent(name + '|' + queryMode, key -> Counter.builder(name)
+            .tag("endpoint", endpoint)
+            .tag("queryMode", queryMode)
+            .register(registry));
+    }
+}
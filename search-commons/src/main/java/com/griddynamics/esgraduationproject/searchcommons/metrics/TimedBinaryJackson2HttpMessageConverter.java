@@ -0,0 +1,63 @@
+package com.griddynamics.esgraduationproject.searchcommons.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Smile or CBOR counterpart of {@link TimedJackson2HttpMessageConverter}, chosen by the Accept header of internal
+ * callers that parse binary Jackson formats faster than JSON text.
+ */
+public class TimedBinaryJackson2HttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final String CBOR_VALUE = "application/cbor";
+
+    private final String format;
+    private final Map<Class<?>, StageMetrics> metricsByResponseType;
+
+    private TimedBinaryJackson2HttpMessageConverter(ObjectMapper objectMapper, String format, MediaType mediaType,
+                                                    Map<Class<?>, StageMetrics> metricsByResponseType) {
+        super(objectMapper, mediaType);
+        this.format = format;
+        this.metricsByResponseType = metricsByResponseType;
+    }
+
+    /**
+     * @param objectMapperBuilder the builder of the JSON mapper, so both formats serialize the same way
+     */
+    public static TimedBinaryJackson2HttpMessageConverter smile(Jackson2ObjectMapperBuilder objectMapperBuilder,
+                                                                Map<Class<?>, StageMetrics> metricsByResponseType) {
+        return new TimedBinaryJackson2HttpMessageConverter(objectMapperBuilder.factory(new SmileFactory()).build(),
+            "smile", MediaType.valueOf(SMILE_VALUE), metricsByResponseType);
+    }
+
+    public static TimedBinaryJackson2HttpMessageConverter cbor(Jackson2ObjectMapperBuilder objectMapperBuilder,
+                                                               Map<Class<?>, StageMetrics> metricsByResponseType) {
+        return new TimedBinaryJackson2HttpMessageConverter(objectMapperBuilder.factory(new CBORFactory()).build(),
+            "cbor", MediaType.valueOf(CBOR_VALUE), metricsByResponseType);
+    }
+
+    // Only for an explicitly negotiated type: this converter is registered ahead of the JSON one, so it would
+    // otherwise win for Accept: */* wherever the handler doesn't declare what it produces (error responses)
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return mediaType != null && !mediaType.isWildcardType() && !mediaType.isWildcardSubtype()
+            && super.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+        throws IOException, HttpMessageNotWritableException {
+        TimedResponseWriter.write(object, outputMessage, format, metricsByResponseType,
+            message -> super.writeInternal(object, type, message));
+    }
+}
@@ -0,0 +1,32 @@
+package com.griddynamics.esgraduationproject.searchcommons.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Jackson converter that records the serialization time and the body size of the configured response types,
+ * see {@link TimedResponseWriter}.
+ */
+public class TimedJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private final Map<Class<?>, StageMetrics> metricsByResponseType;
+
+    public TimedJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                             Map<Class<?>, StageMetrics> metricsByResponseType) {
+        super(objectMapper);
+        this.metricsByResponseType = metricsByResponseType;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+        throws IOException, HttpMessageNotWritableException {
+        TimedResponseWriter.write(object, outputMessage, "json", metricsByResponseType,
+            message -> super.writeInternal(object, type, message));
+    }
+}
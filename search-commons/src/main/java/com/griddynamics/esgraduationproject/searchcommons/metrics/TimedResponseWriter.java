@@ -0,0 +1,66 @@
+package com.griddynamics.esgraduationproject.searchcommons.metrics;
+
+import com.google.common.io.CountingOutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Records the serialization time (the {@link StageMetrics#SERIALIZATION} stage, tagged with the format) and the body
+ * size of the configured response types, for the timed message converters.
+ */
+final class TimedResponseWriter {
+
+    interface Writer {
+        void write(HttpOutputMessage outputMessage) throws IOException;
+    }
+
+    private TimedResponseWriter() {
+    }
+
+    static void write(Object object, HttpOutputMessage outputMessage, String format,
+                      Map<Class<?>, StageMetrics> metricsByResponseType, Writer writer) throws IOException {
+        StageMetrics stageMetrics = object != null ? metricsByResponseType.get(object.getClass()) : null;
+        if (stageMetrics == null) {
+            writer.write(outputMessage);
+            return;
+        }
+        CountingHttpOutputMessage countingMessage = new CountingHttpOutputMessage(outputMessage);
+        long start = System.nanoTime();
+        try {
+            writer.write(countingMessage);
+        } finally {
+            stageMetrics.recordSerialization(format, System.nanoTime() - start);
+        }
+        stageMetrics.recordResponseSize(format, countingMessage.getCount());
+    }
+
+    private static class CountingHttpOutputMessage implements HttpOutputMessage {
+        private final HttpOutputMessage delegate;
+        private CountingOutputStream body;
+
+        CountingHttpOutputMessage(HttpOutputMessage delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            if (body == null) {
+                body = new CountingOutputStream(delegate.getBody());
+            }
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        long getCount() {
+            return body != null ? body.getCount() : 0;
+        }
+    }
+}
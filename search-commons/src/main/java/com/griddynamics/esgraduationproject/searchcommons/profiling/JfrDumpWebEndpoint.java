@@ -0,0 +1,32 @@
+package com.griddynamics.esgraduationproject.searchcommons.profiling;
+
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * GET /actuator/jfrdump: snapshot of the running JFR recording as a .jfr file for JMC, like the
+ * heapdump endpoint. The file stays in the dump dir until the next dump, the recording goes on.
+ */
+@WebEndpoint(id = "jfrdump")
+public class JfrDumpWebEndpoint {
+    private final JfrRecorder jfrRecorder;
+
+    public JfrDumpWebEndpoint(JfrRecorder jfrRecorder) {
+        this.jfrRecorder = jfrRecorder;
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump() throws IOException {
+        Path file = jfrRecorder.dump();
+        if (file == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        return new WebEndpointResponse<>(new FileSystemResource(file));
+    }
+}
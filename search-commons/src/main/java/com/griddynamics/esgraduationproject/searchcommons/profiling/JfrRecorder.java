@@ -0,0 +1,129 @@
+package com.griddynamics.esgraduationproject.searchcommons.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owns the JFR recording of the service: at most one at a time, bounded by age and size, with the
+ * search events enabled. Dumps are snapshots of the running recording, it goes on afterwards; only the
+ * last dump is kept on disk.
+ */
+@Slf4j
+public class JfrRecorder implements AutoCloseable {
+    private static final DateTimeFormatter DUMP_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final String name;
+    private final JfrSettings settings;
+    private final List<Class<? extends SearchEvent>> eventTypes;
+    private Recording recording;
+    private Path lastDump;
+
+    /**
+     * @param name       recording name and prefix of the dump files
+     * @param eventTypes search events of the service, recorded with the configured threshold
+     */
+    public JfrRecorder(String name, JfrSettings settings, List<Class<? extends SearchEvent>> eventTypes) {
+        this.name = name;
+        this.settings = settings;
+        this.eventTypes = eventTypes;
+        if (settings.isEnabled()) {
+            start(null, null);
+        }
+    }
+
+    /**
+     * Starts the recording, a running one is replaced.
+     *
+     * @param maxAgeSeconds null = the configured one
+     * @param maxSizeMb     null = the configured one
+     */
+    public synchronized void start(Long maxAgeSeconds, Long maxSizeMb) {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings.getConfiguration());
+        } catch (IOException | ParseException ex) {
+            throw new IllegalArgumentException("Can not load JFR configuration " + settings.getConfiguration(), ex);
+        }
+        stop();
+
+        Recording newRecording = new Recording(configuration);
+        newRecording.setName(name);
+        newRecording.setToDisk(true);
+        newRecording.setMaxAge(Duration.ofSeconds(maxAgeSeconds != null ? maxAgeSeconds : settings.getMaxAgeSeconds()));
+        newRecording.setMaxSize((maxSizeMb != null ? maxSizeMb : settings.getMaxSizeMb()) * 1024 * 1024);
+        eventTypes.forEach(eventType -> newRecording.enable(eventType)
+            .withThreshold(Duration.ofMillis(settings.getSearchEventThresholdMs())));
+        newRecording.start();
+        recording = newRecording;
+        log.info("JFR recording {} started, max age {}, max size {} bytes", name, recording.getMaxAge(),
+            recording.getMaxSize());
+    }
+
+    public synchronized void stop() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            log.info("JFR recording {} stopped", name);
+        }
+    }
+
+    /**
+     * Writes a new dump and deletes the previous one.
+     *
+     * @return the dump file, null when no recording is running
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null) {
+            return null;
+        }
+        Path dir = Paths.get(settings.getDumpDir() != null ? settings.getDumpDir() : System.getProperty("java.io.tmpdir"));
+        Files.createDirectories(dir);
+        Path file = dir.resolve(name + "-" + LocalDateTime.now().format(DUMP_TIMESTAMP) + ".jfr");
+        recording.dump(file);
+        // A download of the previous dump still in progress keeps reading the open file
+        if (lastDump != null && !lastDump.equals(file)) {
+            try {
+                Files.deleteIfExists(lastDump);
+            } catch (IOException ex) {
+                log.warn("Previous JFR dump {} couldn't be deleted: {}", lastDump, ex.getMessage());
+            }
+        }
+        lastDump = file;
+        log.info("JFR recording {} dumped to {}", name, file);
+        return file;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("name", name);
+        status.put("running", recording != null);
+        if (recording != null) {
+            status.put("configuration", settings.getConfiguration());
+            status.put("startTime", String.valueOf(recording.getStartTime()));
+            status.put("maxAgeSeconds", recording.getMaxAge().getSeconds());
+            status.put("maxSizeMb", recording.getMaxSize() / 1024 / 1024);
+        }
+        if (lastDump != null) {
+            status.put("lastDump", lastDump.toString());
+        }
+        return status;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+}
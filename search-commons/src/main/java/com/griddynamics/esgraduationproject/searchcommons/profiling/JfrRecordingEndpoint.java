@@ -0,0 +1,39 @@
+package com.griddynamics.esgraduationproject.searchcommons.profiling;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+
+/**
+ * Control of the JFR recording: GET /actuator/jfr shows it, POST starts (or restarts) it with optional
+ * maxAgeSeconds / maxSizeMb, DELETE stops it. The data is downloaded from /actuator/jfrdump.
+ */
+@Endpoint(id = "jfr")
+public class JfrRecordingEndpoint {
+    private final JfrRecorder jfrRecorder;
+
+    public JfrRecordingEndpoint(JfrRecorder jfrRecorder) {
+        this.jfrRecorder = jfrRecorder;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return jfrRecorder.getStatus();
+    }
+
+    @WriteOperation
+    public Map<String, Object> start(@Nullable Long maxAgeSeconds, @Nullable Long maxSizeMb) {
+        jfrRecorder.start(maxAgeSeconds, maxSizeMb);
+        return jfrRecorder.getStatus();
+    }
+
+    @DeleteOperation
+    public Map<String, Object> stop() {
+        jfrRecorder.stop();
+        return jfrRecorder.getStatus();
+    }
+}
@@ -0,0 +1,21 @@
+package com.griddynamics.esgraduationproject.searchcommons.profiling;
+
+import lombok.Data;
+
+/**
+ * Bounded JFR recording of the service, kept running so an incident can be dumped after the fact.
+ */
+@Data
+public class JfrSettings {
+    // Start the recording with the application, otherwise only on POST /actuator/jfr
+    private boolean enabled;
+    // JDK settings file: default (~1% overhead) or profile (more detail, ~2%)
+    private String configuration = "default";
+    // The oldest data is dropped beyond these bounds
+    private long maxAgeSeconds = 900;
+    private long maxSizeMb = 200;
+    // Search events shorter than this are not recorded, 0 = all
+    private long searchEventThresholdMs = 0;
+    // Where the dumps are written (only the last one is kept), the system temp dir if not set
+    private String dumpDir;
+}
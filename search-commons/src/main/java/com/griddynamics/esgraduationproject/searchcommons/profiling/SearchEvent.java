@@ -0,0 +1,153 @@
+package com.griddynamics.esgraduationproject.searchcommons.profiling;
+
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of one service search, the duration is the service call. While it is active on the request
+ * thread, {@link StageMetrics} adds the ES and mapping times to it, so GC pauses and lock contention
+ * of the recording line up with the slow searches in JMC. Costs nothing when the event isn't enabled.
+ * Reactive searches complete on other threads, their events are started detached and carry no stage times.
+ */
+@Category({"Search"})
+@StackTrace(false)
+public abstract class SearchEvent extends jdk.jfr.Event {
+    private static final ThreadLocal<SearchEvent> CURRENT = new ThreadLocal<>();
+
+    // Protected: the commit code JFR generates into each subclass writes them
+
+    @Label("Request Id")
+    protected String requestId;
+
+    @Label("Query Mode")
+    protected String queryMode;
+
+    @Label("Query Length")
+    protected int queryLength;
+
+    @Label("Word Count")
+    protected int wordCount;
+
+    @Label("Fuzziness")
+    @Description("Max edit distance of each word")
+    protected String fuzziness;
+
+    @Label("Filters")
+    protected String filters;
+
+    @Label("Hits")
+    @Description("Total hits, -1 when there is no response from ES")
+    protected long hits = -1;
+
+    @Label("ES Round Trip")
+    @Timespan
+    protected long esTime;
+
+    @Label("ES Took")
+    @Timespan(Timespan.MILLISECONDS)
+    protected long esTook;
+
+    @Label("Response Mapping")
+    @Timespan
+    protected long mappingTime;
+
+    @Label("Outcome")
+    @Description("ok, stale, partial, cached, short or failed")
+    protected String outcome = "ok";
+
+    // Started by startDetached, not recorded
+    private transient boolean detached;
+
+    /**
+     * Starts the event and makes it the current one of the thread, a no-op when it isn't enabled.
+     */
+    public void start(String queryText) {
+        if (startEvent(queryText, RequestIds.current())) {
+            CURRENT.set(this);
+        }
+    }
+
+    /**
+     * Starts the event without making it the current one of the thread, for searches finished on another thread;
+     * a no-op when it isn't enabled.
+     */
+    public void startDetached(String queryText, String requestId) {
+        detached = startEvent(queryText, requestId);
+    }
+
+    private boolean startEvent(String queryText, String requestId) {
+        if (!isEnabled()) {
+            return false;
+        }
+        this.requestId = requestId;
+        if (queryText != null) {
+            queryLength = queryText.length();
+            String trimmed = queryText.trim();
+            wordCount = trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+        }
+        begin();
+        return true;
+    }
+
+    /**
+     * Ends the event and commits it if it passes the threshold of the recording.
+     */
+    public void finish(Long totalHits, Boolean stale, Boolean partial) {
+        if (detached) {
+            detached = false;
+        } else if (CURRENT.get() == this) {
+            CURRENT.remove();
+        } else {
+            return;
+        }
+        if (totalHits != null) {
+            hits = totalHits;
+        }
+        if (Boolean.TRUE.equals(stale)) {
+            outcome = "stale";
+        } else if (Boolean.TRUE.equals(partial)) {
+            outcome = "partial";
+        }
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+
+    /**
+     * @return the active event of the thread, null when there is none or it isn't enabled
+     */
+    public static SearchEvent current() {
+        return CURRENT.get();
+    }
+
+    public void setFuzziness(String fuzziness) {
+        this.fuzziness = fuzziness;
+    }
+
+    public void setFilters(String filters) {
+        this.filters = filters;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    public void recordStage(String stage, String queryMode, long nanos) {
+        this.queryMode = queryMode;
+        if (StageMetrics.ES_ROUND_TRIP.equals(stage)) {
+            esTime += nanos;
+        } else if (StageMetrics.RESPONSE_MAPPING.equals(stage)) {
+            mappingTime += nanos;
+        }
+    }
+
+    public void recordTook(long tookMillis) {
+        esTook += tookMillis;
+    }
+}
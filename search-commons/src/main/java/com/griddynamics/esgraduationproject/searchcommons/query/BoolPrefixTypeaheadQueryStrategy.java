@@ -0,0 +1,24 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+import org.elasticsearch.index.query.MatchBoolPrefixQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+
+/**
+ * Cheaper alternative to {@link TypeaheadQueryBuilder}: a single match_bool_prefix query, every word must
+ * match exactly and the last one may be a prefix. No fuzzy expansions, so typos aren't tolerated.
+ */
+public class BoolPrefixTypeaheadQueryStrategy implements TypeaheadQueryStrategy {
+    public static final String NAME = "bool_prefix";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public QueryBuilder getQueryByText(String textQuery) {
+        return new MatchBoolPrefixQueryBuilder(TypeaheadQueryBuilder.NAME_FIELD, textQuery)
+            .operator(Operator.AND);
+    }
+}
@@ -0,0 +1,92 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.DisMaxQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Text query over the typeahead names, shared by the typeahead service and the federated search of the
+ * product service: every word must match with the Levenshtein distance allowed for its length,
+ * the last one may also be a prefix.
+ */
+public class TypeaheadQueryBuilder implements TypeaheadQueryStrategy {
+    public static final String NAME = "fuzzy_dismax";
+    public static final String NAME_FIELD = "name";
+
+    private final TypeaheadQuerySettings settings;
+
+    public TypeaheadQueryBuilder(TypeaheadQuerySettings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public QueryBuilder getQueryByText(String textQuery) {
+        List<String> words = Arrays.asList(textQuery.split(" "));
+        List<QueryBuilder> mainQueryList = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+
+            int maxLevenshteinDistance = getDistanceByTermLength(word);
+            List<QueryBuilder> wordQueries = new ArrayList<>();
+            // Queries for all possible Levenshtein distances
+            for (int distance = 0; distance <= maxLevenshteinDistance; distance++) {
+                float boost = getBoostByDistance(distance);
+                if (distance == 0) {
+                    wordQueries.add(QueryBuilders.matchQuery(NAME_FIELD, word).boost(boost));
+                } else {
+                    wordQueries.add(QueryBuilders.matchQuery(NAME_FIELD, word).boost(boost).fuzziness(String.valueOf(distance)));
+                }
+            }
+
+            // Prefix query for the last word
+            if (i == words.size() - 1) {
+                wordQueries.add(QueryBuilders.prefixQuery(NAME_FIELD, word.toLowerCase())
+                    .boost(settings.getPrefixQueryBoost()));
+            }
+
+            // Add all queries for the current word to mainQueryList
+            if (wordQueries.size() == 1) {
+                mainQueryList.add(wordQueries.get(0));
+            } else {
+                DisMaxQueryBuilder dmqb = QueryBuilders.disMaxQuery().tieBreaker(1.0f);
+                wordQueries.forEach(dmqb::add);
+                mainQueryList.add(dmqb);
+            }
+        }
+
+        // Create result query from mainQueryList
+        BoolQueryBuilder result = QueryBuilders.boolQuery();
+        mainQueryList.forEach(result::must);
+        return result;
+    }
+
+    // Max Levenshtein distance of each word, e.g. "0,1,2"
+    public String getFuzziness(String textQuery) {
+        return Arrays.stream(textQuery.split(" "))
+            .map(word -> String.valueOf(getDistanceByTermLength(word)))
+            .collect(Collectors.joining(","));
+    }
+
+    private int getDistanceByTermLength(final String token) {
+        return token.length() >= settings.getFuzzyTwoStartsFromLength()
+            ? 2
+            : (token.length() >= settings.getFuzzyOneStartsFromLength() ? 1 : 0);
+    }
+
+    private float getBoostByDistance(final int distance) {
+        return distance == 0
+            ? settings.getFuzzyZeroBoost()
+            : (distance == 1 ? settings.getFuzzyOneBoost() : settings.getFuzzyTwoBoost());
+    }
+}
@@ -0,0 +1,18 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+import lombok.Data;
+
+/**
+ * Fuzziness and boosts of the typeahead text query.
+ */
+@Data
+public class TypeaheadQuerySettings {
+    // Min word length for Levenshtein distance 1 and 2
+    private int fuzzyOneStartsFromLength = 4;
+    private int fuzzyTwoStartsFromLength = 6;
+    private float fuzzyZeroBoost = 1.0f;
+    private float fuzzyOneBoost = 0.5f;
+    private float fuzzyTwoBoost = 0.25f;
+    // Boost of the prefix query on the last word
+    private float prefixQueryBoost = 0.9f;
+}
@@ -0,0 +1,15 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+import org.elasticsearch.index.query.QueryBuilder;
+
+/**
+ * Text query of the typeahead search. The live strategy is chosen by name in the configuration,
+ * another one can be compared with it on mirrored traffic before switching.
+ */
+public interface TypeaheadQueryStrategy {
+
+    // Name used in the configuration and as the metrics tag
+    String getName();
+
+    QueryBuilder getQueryByText(String textQuery);
+}
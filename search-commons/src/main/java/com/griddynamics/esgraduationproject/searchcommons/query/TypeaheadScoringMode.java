@@ -0,0 +1,8 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+public enum TypeaheadScoringMode {
+    // _score, then rank (or itemCount) and _id as field sorts
+    FIELD_SORT,
+    // rankFeature (or itemCountFeature) rank_feature query added to the score, sorted by _score only
+    RANK_FEATURE
+}
@@ -0,0 +1,114 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.ScoreSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Typeahead search by text, shared by /v1/typeahead of the typeahead service and the federated search of the
+ * product service so both rank the suggestions the same way: the live query strategy, the scoring mode and the
+ * rank or itemCount popularity.
+ */
+public class TypeaheadSearchBuilder {
+    public static final String RANK_FIELD = "rank";
+    public static final String ITEM_COUNT_FIELD = "itemCount";
+    // rank_feature copies of the positive rank and itemCount values, written by the index rebuild
+    public static final String RANK_FEATURE_FIELD = "rankFeature";
+    public static final String ITEM_COUNT_FEATURE_FIELD = "itemCountFeature";
+    private static final String ID_FIELD = "_id";
+
+    private final TypeaheadSearchSettings settings;
+    private final Map<String, TypeaheadQueryStrategy> queryStrategies = new LinkedHashMap<>();
+    private final TypeaheadQueryStrategy queryStrategy;
+
+    /**
+     * @param queryStrategies the strategies that can be chosen by name, the live one and the shadow candidates
+     */
+    public TypeaheadSearchBuilder(TypeaheadSearchSettings settings, Collection<TypeaheadQueryStrategy> queryStrategies) {
+        this.settings = settings;
+        queryStrategies.forEach(strategy -> this.queryStrategies.put(strategy.getName(), strategy));
+        this.queryStrategy = getQueryStrategy(settings.getQueryStrategy());
+    }
+
+    public TypeaheadQueryStrategy getQueryStrategy() {
+        return queryStrategy;
+    }
+
+    /**
+     * @return null if there is no strategy with the name
+     */
+    public TypeaheadQueryStrategy findQueryStrategy(String name) {
+        return queryStrategies.get(name);
+    }
+
+    /**
+     * @throws IllegalStateException if there is no strategy with the name
+     */
+    public TypeaheadQueryStrategy getQueryStrategy(String name) {
+        TypeaheadQueryStrategy strategy = findQueryStrategy(name);
+        if (strategy == null) {
+            throw new IllegalStateException("Unknown typeahead query strategy " + name
+                + ", available: " + queryStrategies.keySet());
+        }
+        return strategy;
+    }
+
+    // null = the configured mode
+    public TypeaheadScoringMode getScoringMode(TypeaheadScoringMode requested) {
+        return requested != null ? requested : settings.getScoringMode();
+    }
+
+    /**
+     * Query, size and total hits tracking, without sorting.
+     */
+    public SearchSourceBuilder newSource(QueryBuilder query, int size, Boolean exactTotalHits) {
+        SearchSourceBuilder ssb = new SearchSourceBuilder()
+            .query(query)
+            .size(size);
+        if (Boolean.TRUE.equals(exactTotalHits) || settings.getTrackTotalHitsUpTo() < 0) {
+            ssb.trackTotalHits(true);
+        } else {
+            ssb.trackTotalHitsUpTo(settings.getTrackTotalHitsUpTo());
+        }
+        return ssb;
+    }
+
+    /**
+     * Search by the text query of one of the strategies, ranked by the scoring mode.
+     *
+     * @param considerItemCountInSorting itemCount instead of rank as the popularity
+     */
+    public SearchSourceBuilder buildSource(QueryBuilder textQuery, int size, Boolean considerItemCountInSorting,
+                                           TypeaheadScoringMode scoringMode, Boolean exactTotalHits) {
+        SearchSourceBuilder ssb = newSource(textQuery, size, exactTotalHits);
+        boolean byItemCount = Boolean.TRUE.equals(considerItemCountInSorting);
+        if (getScoringMode(scoringMode) == TypeaheadScoringMode.RANK_FEATURE) {
+            // Popularity is part of the score and _score is the only sort: ES can skip non-competitive blocks
+            ssb.query(QueryBuilders.boolQuery()
+                .must(textQuery)
+                .should(getPopularityQuery(byItemCount)));
+        } else {
+            ssb.sort(new ScoreSortBuilder().order(SortOrder.DESC));
+            ssb.sort(new FieldSortBuilder(byItemCount ? ITEM_COUNT_FIELD : RANK_FIELD).order(SortOrder.DESC));
+            ssb.sort(new FieldSortBuilder(ID_FIELD).order(SortOrder.DESC)); // tie breaker
+        }
+        return ssb;
+    }
+
+    // considerItemCountInSorting switches the feature, as it switches the secondary sort field in FIELD_SORT
+    private QueryBuilder getPopularityQuery(boolean byItemCount) {
+        String feature = byItemCount ? ITEM_COUNT_FEATURE_FIELD : RANK_FEATURE_FIELD;
+        // No rank_feature builder in the high level client, the query is passed as JSON
+        return QueryBuilders.wrapperQuery(String.format(Locale.ROOT,
+            "{\"rank_feature\":{\"field\":\"%s\",\"saturation\":{},\"boost\":%s}}",
+            feature, settings.getRankFeatureBoost()));
+    }
+}
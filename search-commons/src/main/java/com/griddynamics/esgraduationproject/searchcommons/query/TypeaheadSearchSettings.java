@@ -0,0 +1,18 @@
+package com.griddynamics.esgraduationproject.searchcommons.query;
+
+import lombok.Data;
+
+/**
+ * Scoring, sorting and total hits of the typeahead search, see {@link TypeaheadSearchBuilder}.
+ */
+@Data
+public class TypeaheadSearchSettings {
+    // Mode of the requests without one
+    private TypeaheadScoringMode scoringMode = TypeaheadScoringMode.FIELD_SORT;
+    // Weight of the rank_feature query in RANK_FEATURE mode
+    private float rankFeatureBoost = 1.0f;
+    // Total hits are counted exactly up to this number (lower bound above it), -1 = always exact
+    private int trackTotalHitsUpTo = 1000;
+    // Name of the live TypeaheadQueryStrategy
+    private String queryStrategy = TypeaheadQueryBuilder.NAME;
+}
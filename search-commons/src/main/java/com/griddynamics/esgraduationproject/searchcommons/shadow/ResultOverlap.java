@@ -0,0 +1,58 @@
+package com.griddynamics.esgraduationproject.searchcommons.shadow;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Agreement of two ranked result lists (document ids, best first).
+ */
+public final class ResultOverlap {
+
+    private ResultOverlap() {
+    }
+
+    // |A ∩ B| / |A ∪ B|, two empty lists agree completely
+    public static double jaccard(List<String> first, List<String> second) {
+        Set<String> union = new HashSet<>(first);
+        union.addAll(second);
+        if (union.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> intersection = new HashSet<>(first);
+        intersection.retainAll(second);
+        return (double) intersection.size() / union.size();
+    }
+
+    /**
+     * Spearman's rank correlation of the documents found by both lists, from -1 (reversed) to 1 (same order).
+     * Null if they have fewer than 2 documents in common, the order isn't defined then.
+     */
+    public static Double spearman(List<String> first, List<String> second) {
+        Set<String> secondIds = new HashSet<>(second);
+        List<String> common = first.stream()
+            .filter(secondIds::contains)
+            .distinct()
+            .collect(Collectors.toList());
+        int n = common.size();
+        if (n < 2) {
+            return null;
+        }
+
+        // Ranks among the common documents only, the ones missing in the other list are covered by jaccard
+        Set<String> commonIds = new HashSet<>(common);
+        Map<String, Integer> secondRanks = new HashMap<>();
+        second.stream()
+            .filter(commonIds::contains)
+            .forEach(id -> secondRanks.putIfAbsent(id, secondRanks.size()));
+        double squaredDiffs = 0;
+        for (int rank = 0; rank < n; rank++) {
+            int diff = rank - secondRanks.get(common.get(rank));
+            squaredDiffs += diff * diff;
+        }
+        return 1.0 - 6.0 * squaredDiffs / ((double) n * (n * n - 1));
+    }
+}
@@ -0,0 +1,202 @@
+package com.griddynamics.esgraduationproject.searchcommons.shadow;
+
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Mirrors a sample of the live searches of one endpoint to a candidate query strategy and compares the two:
+ * latency and ES took per strategy, top-N overlap (Jaccard) and rank correlation (Spearman, rescaled to 0..1) of
+ * the results.
+ * The candidate search is built and sent by a comparator thread once the live one has completed, and compared on
+ * the ES client IO threads, so it never delays or fails the user response; when maxInFlight mirrored searches
+ * are pending or running, it's dropped.
+ */
+@Slf4j
+public class ShadowTrafficComparator {
+    public static final String PRIMARY = "primary";
+    public static final String CANDIDATE = "candidate";
+
+    private final String endpoint;
+    private final ShadowTrafficSettings settings;
+    private final RestHighLevelClient esClient;
+    private final MeterRegistry registry;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ShadowTrafficComparator(String endpoint, ShadowTrafficSettings settings, RestHighLevelClient esClient,
+                                   MeterRegistry registry) {
+        this.endpoint = endpoint;
+        this.settings = settings;
+        this.esClient = esClient;
+        this.registry = registry;
+        this.inFlight = new Semaphore(Math.max(1, settings.getMaxInFlight()));
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shadow-" + endpoint);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Inferred as the destroy method of the bean
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public String getCandidate() {
+        return settings.getCandidate();
+    }
+
+    // Sampling decision, made once per live search; never true when the candidate is the live strategy
+    public boolean shouldMirror(String primaryStrategy) {
+        String candidate = settings.getCandidate();
+        return candidate != null && !candidate.isEmpty() && !candidate.equals(primaryStrategy)
+            && settings.getSampleRate() > 0
+            && ThreadLocalRandom.current().nextDouble() < settings.getSampleRate();
+    }
+
+    /**
+     * Hands the candidate search to the comparator thread and returns, the comparison is recorded once it completes.
+     *
+     * @param primaryNanos ES round trip of the live search
+     * @param candidateRequest the same service request built with the candidate strategy
+     */
+    public void mirror(String primaryStrategy, SearchResponse primaryResponse, long primaryNanos,
+                       Supplier<SearchRequest> candidateRequest) {
+        String candidate = settings.getCandidate();
+        if (!inFlight.tryAcquire()) {
+            getCounter(candidate, "dropped").increment();
+            return;
+        }
+        // Thread-bound, captured on the request thread
+        String requestId = RequestIds.current();
+        try {
+            executor.execute(() -> send(primaryStrategy, primaryResponse, primaryNanos, candidate, candidateRequest,
+                requestId));
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            getCounter(candidate, "dropped").increment();
+        }
+    }
+
+    private void send(String primaryStrategy, SearchResponse primaryResponse, long primaryNanos, String candidate,
+                      Supplier<SearchRequest> candidateRequest, String requestId) {
+        try {
+            SearchRequest searchRequest = candidateRequest.get();
+            if (searchRequest.source() != null) {
+                searchRequest.source().timeout(TimeValue.timeValueMillis(settings.getTimeoutMs()));
+            }
+            long start = System.nanoTime();
+            esClient.searchAsync(searchRequest, RequestIds.requestOptions(requestId),
+                new ActionListener<SearchResponse>() {
+                    @Override
+                    public void onResponse(SearchResponse candidateResponse) {
+                        try {
+                            compare(primaryStrategy, primaryResponse, primaryNanos, candidate, candidateResponse,
+                                System.nanoTime() - start);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        inFlight.release();
+                        getCounter(candidate, "failed").increment();
+                        log.debug("Shadow {} search with {} failed, requestId {}: {}",
+                            endpoint, candidate, requestId, e.getMessage());
+                    }
+                });
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            getCounter(candidate, "failed").increment();
+            log.warn("Shadow {} search with {} couldn't be sent", endpoint, candidate, ex);
+        }
+    }
+
+    private void compare(String primaryStrategy, SearchResponse primaryResponse, long primaryNanos,
+                         String candidate, SearchResponse candidateResponse, long candidateNanos) {
+        // Primary times are recorded for the mirrored searches only, so both sides have the same query mix
+        getTimer("search.shadow.duration", PRIMARY, primaryStrategy).record(primaryNanos, TimeUnit.NANOSECONDS);
+        getTimer("search.shadow.duration", CANDIDATE, candidate).record(candidateNanos, TimeUnit.NANOSECONDS);
+        getTimer("search.shadow.took", PRIMARY, primaryStrategy)
+            .record(primaryResponse.getTook().millis(), TimeUnit.MILLISECONDS);
+        getTimer("search.shadow.took", CANDIDATE, candidate)
+            .record(candidateResponse.getTook().millis(), TimeUnit.MILLISECONDS);
+
+        List<String> primaryIds = getTopIds(primaryResponse);
+        List<String> candidateIds = getTopIds(candidateResponse);
+        getSummary("search.shadow.overlap", primaryStrategy, candidate)
+            .record(ResultOverlap.jaccard(primaryIds, candidateIds));
+        Double rankCorrelation = ResultOverlap.spearman(primaryIds, candidateIds);
+        if (rankCorrelation != null) {
+            // Summaries drop negative amounts, so -1 (reversed) .. 1 (same order) is recorded as 0 .. 1
+            getSummary("search.shadow.rank_correlation", primaryStrategy, candidate)
+                .record((rankCorrelation + 1) / 2);
+        }
+        getCounter(candidate, "compared").increment();
+    }
+
+    private List<String> getTopIds(SearchResponse response) {
+        return Arrays.stream(response.getHits().getHits())
+            .limit(settings.getTopN())
+            .map(SearchHit::getId)
+            .collect(Collectors.toList());
+    }
+
+    private Timer getTimer(String name, String role, String strategy) {
+        return timers.computeIfAbsent(name + '|' + role + '|' + strategy, key -> Timer.builder(name)
+            .tag("endpoint", endpoint)
+            .tag("role", role)
+            .tag("strategy", strategy)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofNanos(100_000))
+            .maximumExpectedValue(Duration.ofSeconds(10))
+            .register(registry));
+    }
+
+    // Ratios from 0 to 1, percentiles show how often the candidate disagrees
+    private DistributionSummary getSummary(String name, String primaryStrategy, String candidate) {
+        return summaries.computeIfAbsent(name + '|' + primaryStrategy + '|' + candidate,
+            key -> DistributionSummary.builder(name)
+                .tag("endpoint", endpoint)
+                .tag("primary", primaryStrategy)
+                .tag("candidate", candidate)
+                .publishPercentiles(0.05, 0.25, 0.5)
+                .register(registry));
+    }
+
+    private Counter getCounter(String candidate, String outcome) {
+        return counters.computeIfAbsent(candidate + '|' + outcome, key -> Counter.builder("search.shadow.requests")
+            .tag("endpoint", endpoint)
+            .tag("candidate", candidate)
+            .tag("outcome", outcome)
+            .register(registry));
+    }
+}
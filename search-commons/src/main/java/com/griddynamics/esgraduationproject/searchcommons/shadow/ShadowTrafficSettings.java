@@ -0,0 +1,20 @@
+package com.griddynamics.esgraduationproject.searchcommons.shadow;
+
+import lombok.Data;
+
+/**
+ * Mirroring policy of one endpoint: which query strategy is compared with the live one and on how much traffic.
+ */
+@Data
+public class ShadowTrafficSettings {
+    // Name of the candidate query strategy, null = no mirroring
+    private String candidate;
+    // Share of the live searches mirrored to the candidate, 0.05 = 5%
+    private double sampleRate = 0.0;
+    // Results compared by the overlap metrics
+    private int topN = 10;
+    // Mirrored searches running at the same time, more are dropped instead of queued
+    private int maxInFlight = 4;
+    // ES-side timeout of a mirrored search
+    private long timeoutMs = 1000;
+}
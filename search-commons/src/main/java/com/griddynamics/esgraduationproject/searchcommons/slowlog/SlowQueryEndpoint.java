@@ -0,0 +1,44 @@
+package com.griddynamics.esgraduationproject.searchcommons.slowlog;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin view of the slow query logs: /actuator/slowqueries (all endpoints) and
+ * /actuator/slowqueries/{endpoint}; DELETE clears the logs.
+ */
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+    private final List<SlowQueryLog> slowQueryLogs;
+
+    public SlowQueryEndpoint(List<SlowQueryLog> slowQueryLogs) {
+        this.slowQueryLogs = slowQueryLogs;
+    }
+
+    @ReadOperation
+    public Map<String, List<SlowQueryRecord>> slowQueries() {
+        Map<String, List<SlowQueryRecord>> result = new LinkedHashMap<>();
+        slowQueryLogs.forEach(slowQueryLog -> result.put(slowQueryLog.getEndpoint(), slowQueryLog.getRecords()));
+        return result;
+    }
+
+    @ReadOperation
+    public List<SlowQueryRecord> endpointSlowQueries(@Selector String endpoint) {
+        return slowQueryLogs.stream()
+            .filter(slowQueryLog -> slowQueryLog.getEndpoint().equals(endpoint))
+            .findFirst()
+            .map(SlowQueryLog::getRecords)
+            .orElse(null);
+    }
+
+    @DeleteOperation
+    public void clear() {
+        slowQueryLogs.forEach(SlowQueryLog::clear);
+    }
+}
@@ -0,0 +1,172 @@
+package com.griddynamics.esgraduationproject.searchcommons.slowlog;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchDeadlineExceededException;
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.profile.SearchProfileShardResults;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory log of the searches of one endpoint that were slower than the threshold
+ * (plus a small random sample). Each record keeps the generated query and the ES shard stats;
+ * optionally the query is re-run with profile: true and the profile is attached to the record.
+ */
+@Slf4j
+public class SlowQueryLog {
+    private final String endpoint;
+    private final SlowQuerySettings settings;
+    private final RestHighLevelClient esClient;
+    private final RateLimiter profileRateLimiter;
+    private final Semaphore profilesInFlight;
+
+    // Ring buffer, guarded by this
+    private final SlowQueryRecord[] records;
+    private int next;
+    private int size;
+
+    public SlowQueryLog(String endpoint, SlowQuerySettings settings, RestHighLevelClient esClient) {
+        this(endpoint, settings, esClient, RateLimiter.create(Math.max(settings.getMaxProfilesPerMinute(), 0.001) / 60));
+    }
+
+    // The tests pass their own rate limiter, the per-minute one depends on the time between the searches
+    SlowQueryLog(String endpoint, SlowQuerySettings settings, RestHighLevelClient esClient,
+                 RateLimiter profileRateLimiter) {
+        this.endpoint = endpoint;
+        this.settings = settings;
+        this.esClient = esClient;
+        this.records = new SlowQueryRecord[Math.max(1, settings.getCapacity())];
+        this.profileRateLimiter = profileRateLimiter;
+        this.profilesInFlight = new Semaphore(Math.max(1, settings.getMaxProfilesInFlight()));
+    }
+
+    /**
+     * Called once per search with either the response or the error of the call.
+     */
+    public void onSearchCompleted(SearchRequest searchRequest, String requestId, SearchResponse searchResponse,
+                                  Throwable error, long elapsedNanos) {
+        boolean deadlineExceeded = error instanceof SearchDeadlineExceededException;
+        if (searchResponse == null && !deadlineExceeded) {
+            return; // ES errors are logged and counted elsewhere
+        }
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        boolean slow = deadlineExceeded || (settings.getThresholdMs() > 0 && durationMs >= settings.getThresholdMs());
+        boolean sampled = !slow && ThreadLocalRandom.current().nextDouble() < settings.getSampleRate();
+        if (!slow && !sampled) {
+            return;
+        }
+
+        SlowQueryRecord record = new SlowQueryRecord();
+        record.setEndpoint(endpoint);
+        record.setRequestId(requestId);
+        record.setTimestamp(System.currentTimeMillis());
+        record.setDurationMs(durationMs);
+        record.setSampled(sampled);
+        record.setDeadlineExceeded(deadlineExceeded);
+        if (searchRequest.source() != null) {
+            record.setSource(Strings.toString(searchRequest.source()));
+        }
+        if (searchResponse != null) {
+            record.setTookMs(searchResponse.getTook().millis());
+            record.setTimedOut(searchResponse.isTimedOut());
+            record.setTotalShards(searchResponse.getTotalShards());
+            record.setSuccessfulShards(searchResponse.getSuccessfulShards());
+            record.setSkippedShards(searchResponse.getSkippedShards());
+            record.setFailedShards(searchResponse.getFailedShards());
+        }
+        add(record);
+
+        if (slow) {
+            log.info("Slow {} search: {} ms, requestId {}", endpoint, durationMs, requestId);
+        }
+        if (settings.isProfileEnabled() && searchRequest.source() != null) {
+            profile(searchRequest, requestId, record);
+        }
+    }
+
+    private void profile(SearchRequest searchRequest, String requestId, SlowQueryRecord record) {
+        if (!profilesInFlight.tryAcquire()) {
+            record.setProfileDropped(true);
+            return;
+        }
+        if (!profileRateLimiter.tryAcquire()) {
+            profilesInFlight.release();
+            record.setProfileDropped(true);
+            return;
+        }
+        // Copy of the source, the original may still be referenced by a pending hedge
+        SearchSourceBuilder profileSource = searchRequest.source().copyWithNewSlice(searchRequest.source().slice());
+        SearchRequest profileRequest = new SearchRequest(searchRequest).source(profileSource.profile(true));
+        String profileRequestId = requestId != null ? requestId + "-profile" : null;
+        try {
+            sendProfileSearch(profileRequest, profileRequestId, ActionListener.wrap(
+                response -> {
+                    profilesInFlight.release();
+                    record.setProfile(toProfileJson(response));
+                },
+                ex -> {
+                    profilesInFlight.release();
+                    log.debug("Profiling of a slow {} search failed, requestId {}", endpoint, requestId, ex);
+                }));
+        } catch (RuntimeException ex) {
+            profilesInFlight.release();
+            log.warn("Profiling of a slow {} search couldn't be sent, requestId {}", endpoint, requestId, ex);
+        }
+    }
+
+    // Overridden by the tests
+    void sendProfileSearch(SearchRequest profileRequest, String profileRequestId,
+                           ActionListener<SearchResponse> listener) {
+        esClient.searchAsync(profileRequest, RequestIds.requestOptions(profileRequestId), listener);
+    }
+
+    private static String toProfileJson(SearchResponse response) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        new SearchProfileShardResults(response.getProfileResults()).toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return Strings.toString(builder.endObject());
+    }
+
+    private synchronized void add(SlowQueryRecord record) {
+        records[next] = record;
+        next = (next + 1) % records.length;
+        size = Math.min(size + 1, records.length);
+    }
+
+    /**
+     * Records from the newest to the oldest.
+     */
+    public synchronized List<SlowQueryRecord> getRecords() {
+        List<SlowQueryRecord> result = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            result.add(records[(next - i + records.length) % records.length]);
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(records, null);
+        next = 0;
+        size = 0;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,34 @@
+package com.griddynamics.esgraduationproject.searchcommons.slowlog;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SlowQueryRecord {
+    private String endpoint;
+    // X-Opaque-Id sent to ES, same as the X-Request-Id of the service request
+    private String requestId;
+    private long timestamp;
+    private long durationMs;
+    // Recorded by sampling, not by the threshold
+    private boolean sampled;
+    private boolean deadlineExceeded;
+
+    // ES response stats, absent when the deadline was exceeded
+    private Long tookMs;
+    private Boolean timedOut;
+    private Integer totalShards;
+    private Integer successfulShards;
+    private Integer skippedShards;
+    private Integer failedShards;
+
+    // Serialized SearchSourceBuilder and the profile section of the re-run
+    @JsonRawValue
+    private String source;
+    @JsonRawValue
+    private volatile String profile;
+    // Set when the profile re-run was skipped because of maxProfilesPerMinute/maxProfilesInFlight
+    private volatile Boolean profileDropped;
+}
@@ -0,0 +1,21 @@
+package com.griddynamics.esgraduationproject.searchcommons.slowlog;
+
+import lombok.Data;
+
+/**
+ * Capture policy of the slow query log of one endpoint.
+ */
+@Data
+public class SlowQuerySettings {
+    // Searches slower than this (client-side, including hedges) are recorded, 0 = disabled
+    private long thresholdMs = 100;
+    // Share of the remaining searches recorded anyway, to have a baseline to compare with
+    private double sampleRate = 0.001;
+    // Ring buffer size, the oldest records are overwritten
+    private int capacity = 200;
+    // Re-run recorded queries with profile: true (one extra ES request per record)
+    private boolean profileEnabled;
+    // Caps of the re-runs, an ES slowdown makes every search slow; profiles over them are dropped
+    private double maxProfilesPerMinute = 6;
+    private int maxProfilesInFlight = 1;
+}
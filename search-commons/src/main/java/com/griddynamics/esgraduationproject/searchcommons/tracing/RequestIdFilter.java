@@ -0,0 +1,30 @@
+package com.griddynamics.esgraduationproject.searchcommons.tracing;
+
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Takes X-Request-Id from the incoming request (or generates one), keeps it in the MDC for the
+ * request thread and echoes it in the response.
+ */
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        String requestId = RequestIds.resolve(request.getHeader(RequestIds.REQUEST_ID_HEADER));
+        response.setHeader(RequestIds.REQUEST_ID_HEADER, requestId);
+        MDC.put(RequestIds.REQUEST_ID_KEY, requestId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(RequestIds.REQUEST_ID_KEY);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.griddynamics.esgraduationproject.searchcommons.tracing;
+
+import org.elasticsearch.client.RequestOptions;
+import org.slf4j.MDC;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Request id of the incoming service request. It is kept in the MDC (servlet threads) or in the
+ * Reactor context (WebFlux) and sent to ES as X-Opaque-Id, so ES slowlogs and tasks can be traced back.
+ */
+public final class RequestIds {
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+    public static final String OPAQUE_ID_HEADER = "X-Opaque-Id";
+    // MDC key and Reactor context key
+    public static final String REQUEST_ID_KEY = "requestId";
+
+    // Client supplied ids end up in ES logs, so only short plain tokens are accepted
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+
+    private RequestIds() {
+    }
+
+    public static String resolve(String incomingId) {
+        return incomingId != null && VALID_ID.matcher(incomingId).matches()
+            ? incomingId
+            : UUID.randomUUID().toString();
+    }
+
+    public static String current() {
+        return MDC.get(REQUEST_ID_KEY);
+    }
+
+    public static RequestOptions requestOptions(String requestId) {
+        return requestOptions(RequestOptions.DEFAULT, requestId);
+    }
+
+    public static RequestOptions requestOptions(RequestOptions baseOptions, String requestId) {
+        if (requestId == null) {
+            return baseOptions;
+        }
+        RequestOptions.Builder options = baseOptions.toBuilder();
+        options.addHeader(OPAQUE_ID_HEADER, requestId);
+        return options.build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.griddynamics.esgraduationproject.searchcommons.warmup;
+
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /actuator/readiness: 503 OUT_OF_SERVICE while the instance warms up, 200 UP afterwards.
+ * Meant for the load balancer / readiness probe; /actuator/health stays the liveness check.
+ */
+@WebEndpoint(id = "readiness")
+public class ReadinessEndpoint {
+    private final List<WarmUp> warmUps;
+
+    public ReadinessEndpoint(List<WarmUp> warmUps) {
+        this.warmUps = warmUps;
+    }
+
+    @ReadOperation
+    public WebEndpointResponse<Map<String, Object>> readiness() {
+        boolean ready = warmUps.stream().allMatch(WarmUp::isReady);
+
+        Map<String, Object> details = new LinkedHashMap<>();
+        warmUps.forEach(warmUp -> {
+            Map<String, Object> warmUpDetails = new LinkedHashMap<>();
+            warmUpDetails.put("state", warmUp.getState());
+            warmUpDetails.put("requests", warmUp.getRequests());
+            warmUpDetails.put("errors", warmUp.getErrors());
+            warmUpDetails.put("durationMs", warmUp.getDurationMs());
+            details.put(warmUp.getEndpoint(), warmUpDetails);
+        });
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", ready ? "UP" : "OUT_OF_SERVICE");
+        body.put("warmUp", details);
+        return new WebEndpointResponse<>(body,
+            ready ? WebEndpointResponse.STATUS_OK : WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+    }
+}
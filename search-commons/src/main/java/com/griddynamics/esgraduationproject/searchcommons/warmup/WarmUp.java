@@ -0,0 +1,148 @@
+package com.griddynamics.esgraduationproject.searchcommons.warmup;
+
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a corpus of request bodies through the service stack of one endpoint right after startup:
+ * it JIT-compiles the request path, initializes the Jackson (de)serializers, opens the pooled ES
+ * connections and fills the in-process caches. The instance is reported ready once all warm-ups are done.
+ */
+@Slf4j
+public class WarmUp {
+    public enum State { PENDING, RUNNING, DONE, DISABLED }
+
+    private final String endpoint;
+    private final WarmUpSettings settings;
+    private final List<String> corpus;
+    // Parses the request body, runs it through the service and serializes the response
+    private final Consumer<String> replay;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile State state;
+    private volatile long durationMs;
+    private volatile boolean cutShort;
+
+    public WarmUp(String endpoint, WarmUpSettings settings, List<String> corpus, Consumer<String> replay) {
+        this.endpoint = endpoint;
+        this.settings = settings;
+        this.corpus = corpus;
+        this.replay = replay;
+        this.state = settings.isEnabled() && !corpus.isEmpty() ? State.PENDING : State.DISABLED;
+    }
+
+    public static List<String> readCorpus(Resource resource) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            return reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+        }
+    }
+
+    // Runs in the background, the web server is up (liveness) while the instance warms up
+    public void start() {
+        if (state != State.PENDING) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "warmup-" + endpoint);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+        if (state != State.PENDING) {
+            return;
+        }
+        state = State.RUNNING;
+        log.info("Warming up {}: {} requests x {} iterations, concurrency {}",
+            endpoint, corpus.size(), settings.getIterations(), settings.getConcurrency());
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(settings.getMaxDurationSeconds());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, settings.getConcurrency()));
+        try {
+            for (int iteration = 0; iteration < settings.getIterations(); iteration++) {
+                for (String body : corpus) {
+                    executor.execute(() -> replay(body, deadline));
+                }
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(settings.getMaxDurationSeconds() + 1, TimeUnit.SECONDS)) {
+                cutShort = true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            state = State.DONE;
+        }
+        if (cutShort) {
+            log.warn("Warm-up of {} cut short after {} ms: {} requests, {} errors",
+                endpoint, durationMs, requests.get(), errors.get());
+        } else {
+            log.info("Warm-up of {} done in {} ms: {} requests, {} errors",
+                endpoint, durationMs, requests.get(), errors.get());
+        }
+    }
+
+    private void replay(String body, long deadline) {
+        if (System.nanoTime() - deadline > 0) {
+            cutShort = true;
+            return;
+        }
+        long requestNumber = requests.incrementAndGet();
+        // Shows up as X-Opaque-Id, so warm-up searches can be told apart in the ES and slow query logs
+        MDC.put(RequestIds.REQUEST_ID_KEY, "warmup-" + endpoint + "-" + requestNumber);
+        try {
+            replay.accept(body);
+        } catch (RuntimeException ex) {
+            if (errors.incrementAndGet() == 1) {
+                log.warn("Warm-up request of {} failed: {}", endpoint, body, ex);
+            }
+        } finally {
+            MDC.remove(RequestIds.REQUEST_ID_KEY);
+        }
+    }
+
+    public boolean isReady() {
+        return state == State.DONE || state == State.DISABLED;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+}
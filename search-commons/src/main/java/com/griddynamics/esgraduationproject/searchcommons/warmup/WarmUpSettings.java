@@ -0,0 +1,19 @@
+package com.griddynamics.esgraduationproject.searchcommons.warmup;
+
+import lombok.Data;
+
+/**
+ * Warm-up run of one endpoint before the instance reports readiness.
+ */
+@Data
+public class WarmUpSettings {
+    private boolean enabled = true;
+    // Spring resource with the request bodies, one JSON request per line ('#' starts a comment)
+    private String corpus;
+    // Passes over the corpus, enough calls for the hot paths to get JIT-compiled
+    private int iterations = 20;
+    // Parallel callers, also the number of pooled ES connections opened
+    private int concurrency = 4;
+    // The instance becomes ready after this even if the passes aren't finished
+    private long maxDurationSeconds = 60;
+}
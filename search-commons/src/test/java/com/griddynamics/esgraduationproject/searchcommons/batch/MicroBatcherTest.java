@@ -0,0 +1,87 @@
+package com.griddynamics.esgraduationproject.searchcommons.batch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentLookupsInWindowAreOneCall() throws Exception {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(TimeUnit.MILLISECONDS.toMicros(200), 100,
+            upperCaseLoader(), scheduler);
+
+        CompletableFuture<Map<String, String>> first = batcher.load(Arrays.asList("a", "b"));
+        CompletableFuture<Map<String, String>> second = batcher.load(Arrays.asList("b", "c", "missing"));
+
+        assertThat(first.get(5, TimeUnit.SECONDS).values(), contains("A", "B"));
+        assertThat(second.get(5, TimeUnit.SECONDS).keySet(), contains("b", "c"));
+        assertThat(batches, hasSize(1));
+        assertThat(batches.get(0), containsInAnyOrder("a", "b", "c", "missing"));
+    }
+
+    @Test
+    public void testFullBatchIsSentWithoutWaitingForTheWindow() throws Exception {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(TimeUnit.SECONDS.toMicros(60), 2,
+            upperCaseLoader(), scheduler);
+
+        Map<String, String> result = batcher.load(Arrays.asList("a", "b")).get(5, TimeUnit.SECONDS);
+
+        assertThat(result.size(), is(2));
+        assertThat(batches, hasSize(1));
+    }
+
+    @Test
+    public void testLoaderFailureFailsEveryCaller() throws Exception {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(1000, 100, keys -> {
+            CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+            result.completeExceptionally(new IllegalStateException("down"));
+            return result;
+        }, scheduler);
+
+        try {
+            batcher.load(Collections.singletonList("a")).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    private Function<Set<String>, CompletableFuture<Map<String, String>>> upperCaseLoader() {
+        return keys -> {
+            batches.add(keys);
+            return CompletableFuture.completedFuture(keys.stream()
+                .filter(key -> !key.equals("missing"))
+                .collect(Collectors.toMap(Function.identity(), String::toUpperCase)));
+        };
+    }
+}
@@ -0,0 +1,203 @@
+package com.griddynamics.esgraduationproject.searchcommons.es;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BudgetedSearchExecutorTest {
+
+    private ScheduledExecutorService scheduler;
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testHedgeIsSentAfterTheDelayWithItsOwnPreference() throws InterruptedException {
+        SearchBudget budget = newHedgingBudget(100, 100);
+        budget.setPrimaryPreference("_local");
+        AttemptCapturingExecutor executor = newExecutor(budget);
+
+        long start = System.nanoTime();
+        executor.searchAsync(newSearchRequest(), "req-1");
+        Attempt primary = executor.nextAttempt();
+        Attempt hedge = executor.nextAttempt();
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(hedge.sentAtNanos - start), greaterThanOrEqualTo(100L));
+        assertThat(primary.request.preference(), is("_local"));
+        assertThat(hedge.request.preference(), is("hedge-1"));
+        assertThat(hedge.options.getHeaders().get(0).getValue(), is("req-1"));
+
+        executor.searchAsync(newSearchRequest(), "req-2");
+        executor.nextAttempt();
+        assertThat(executor.nextAttempt().request.preference(), is("hedge-2"));
+    }
+
+    @Test
+    public void testHedgesAreCappedToTheirShareOfRequests() throws InterruptedException {
+        AttemptCapturingExecutor executor = newExecutor(newHedgingBudget(50, 50));
+
+        for (int i = 0; i < 4; i++) {
+            executor.searchAsync(newSearchRequest(), null);
+        }
+        // Runs the pending hedge timers
+        scheduler.shutdown();
+        assertThat(scheduler.awaitTermination(1, TimeUnit.SECONDS), is(true));
+
+        assertThat(executor.attempts.size(), is(6));
+        assertThat(registry.get("search.hedge.sent").functionCounter().count(), is(2.0));
+    }
+
+    @Test
+    public void testDeadlineFailsTheSearch() throws IOException, InterruptedException {
+        SearchBudget budget = new SearchBudget();
+        budget.setEsTimeoutMs(40);
+        budget.setDeadlineMs(50);
+        AttemptCapturingExecutor executor = newExecutor(budget);
+
+        SearchRequest searchRequest = newSearchRequest();
+        try {
+            executor.search(searchRequest);
+            fail("The search never answers");
+        } catch (SearchDeadlineExceededException ex) {
+            // The deadline task counts after failing the search
+            scheduler.shutdown();
+            assertThat(scheduler.awaitTermination(1, TimeUnit.SECONDS), is(true));
+            assertThat(registry.get("search.deadline.exceeded").functionCounter().count(), is(1.0));
+        }
+        assertThat(searchRequest.source().timeout(), is(TimeValue.timeValueMillis(40)));
+        assertThat(executor.attempts.size(), is(1));
+    }
+
+    @Test
+    public void testFirstResponseWins() throws Exception {
+        AttemptCapturingExecutor executor = newExecutor(newHedgingBudget(0, 100));
+
+        CompletableFuture<SearchResponse> result = executor.searchAsync(newSearchRequest(), null);
+        Attempt primary = executor.nextAttempt();
+        Attempt hedge = executor.nextAttempt();
+
+        // The hedge can still answer
+        primary.listener.onFailure(new IOException("Connection reset"));
+        assertThat(result.isDone(), is(false));
+
+        SearchResponse hedgeResponse = newSearchResponse();
+        hedge.listener.onResponse(hedgeResponse);
+        primary.listener.onResponse(newSearchResponse());
+
+        assertThat(result.get(), sameInstance(hedgeResponse));
+        assertThat(registry.get("search.hedge.won").functionCounter().count(), is(1.0));
+    }
+
+    @Test
+    public void testSearchFailsWhenAllAttemptsFail() throws Exception {
+        AttemptCapturingExecutor executor = newExecutor(newHedgingBudget(0, 100));
+
+        CompletableFuture<SearchResponse> result = executor.searchAsync(newSearchRequest(), null);
+        Attempt primary = executor.nextAttempt();
+        Attempt hedge = executor.nextAttempt();
+        hedge.listener.onFailure(new IOException("Connection reset"));
+        primary.listener.onFailure(new IOException("Connection refused"));
+
+        try {
+            result.get();
+            fail("Both attempts failed");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(IOException.class));
+            assertThat(ex.getCause().getMessage(), is("Connection refused"));
+        }
+        assertThat(registry.get("search.hedge.won").functionCounter().count(), is(0.0));
+    }
+
+    private AttemptCapturingExecutor newExecutor(SearchBudget budget) {
+        AttemptCapturingExecutor executor = new AttemptCapturingExecutor(budget, scheduler);
+        executor.bindTo(registry);
+        return executor;
+    }
+
+    private static SearchBudget newHedgingBudget(long hedgeMinDelayMs, int hedgeMaxPercent) {
+        SearchBudget budget = new SearchBudget();
+        budget.setHedgingEnabled(true);
+        budget.setHedgeMinDelayMs(hedgeMinDelayMs);
+        budget.setHedgeMaxPercent(hedgeMaxPercent);
+        return budget;
+    }
+
+    private static SearchRequest newSearchRequest() {
+        return new SearchRequest("typeaheads")
+            .source(new SearchSourceBuilder().query(QueryBuilders.prefixQuery("name", "sho")));
+    }
+
+    private static SearchResponse newSearchResponse() {
+        return new SearchResponse(InternalSearchResponse.empty(), null, 1, 1, 0, 1,
+            ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+    }
+
+    private static class Attempt {
+        final SearchRequest request;
+        final RequestOptions options;
+        final ActionListener<SearchResponse> listener;
+        final long sentAtNanos = System.nanoTime();
+
+        Attempt(SearchRequest request, RequestOptions options, ActionListener<SearchResponse> listener) {
+            this.request = request;
+            this.options = options;
+            this.listener = listener;
+        }
+    }
+
+    // Keeps the attempts pending until the test answers them
+    private static class AttemptCapturingExecutor extends BudgetedSearchExecutor {
+        final BlockingQueue<Attempt> attempts = new LinkedBlockingQueue<>();
+
+        AttemptCapturingExecutor(SearchBudget budget, ScheduledExecutorService scheduler) {
+            super(null, "typeahead", budget, scheduler);
+        }
+
+        @Override
+        void sendSearch(SearchRequest searchRequest, RequestOptions options, ActionListener<SearchResponse> listener) {
+            attempts.add(new Attempt(searchRequest, options, listener));
+        }
+
+        Attempt nextAttempt() throws InterruptedException {
+            Attempt attempt = attempts.poll(1, TimeUnit.SECONDS);
+            assertThat(attempt, notNullValue());
+            return attempt;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.griddynamics.esgraduationproject.searchcommons.fallback;
+
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchDeadlineExceededException;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchUnavailableException;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StaleFallbackCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Data
+    @NoArgsConstructor
+    public static class TestResponse implements StaleMarkable {
+        private String value;
+        private Boolean partial;
+        private Boolean stale;
+
+        TestResponse(String value) {
+            this.value = value;
+        }
+    }
+
+    private static final Supplier<TestResponse> FAILING = () -> {
+        throw new SearchUnavailableException("ES is down");
+    };
+
+    @Test
+    public void testServesStaleCopyWhenSearchFails() {
+        StaleFallbackCache<TestResponse> cache = newCache(new CircuitBreaker(5, 60000), null);
+        TestResponse fresh = cache.execute("k", () -> new TestResponse("v1"), ex -> new TestResponse("empty"));
+
+        TestResponse stale = cache.execute("k", FAILING, ex -> new TestResponse("empty"));
+
+        assertThat(stale.getValue(), is("v1"));
+        assertThat(stale.getStale(), is(true));
+        assertThat(fresh.getStale(), nullValue());
+        assertThat(cache.execute("other", FAILING, ex -> new TestResponse("empty")).getValue(), is("empty"));
+    }
+
+    @Test
+    public void testOpenCircuitSkipsSearch() {
+        StaleFallbackCache<TestResponse> cache = newCache(new CircuitBreaker(1, 60000), null);
+        cache.execute("k", () -> new TestResponse("v1"), ex -> null);
+        cache.execute("k", FAILING, ex -> null);
+
+        AtomicInteger calls = new AtomicInteger();
+        TestResponse response = cache.execute("k", () -> {
+            calls.incrementAndGet();
+            return new TestResponse("v2");
+        }, ex -> null);
+
+        assertThat(calls.get(), is(0));
+        assertThat(response.getValue(), is("v1"));
+        assertThat(response.getStale(), is(true));
+    }
+
+    @Test
+    public void testAllowRequestDoesNotStartTheHalfOpenProbe() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 10);
+        StaleFallbackCache<TestResponse> cache = newCache(circuitBreaker, null);
+        cache.execute("k", FAILING, ex -> null);
+        Thread.sleep(20);
+
+        assertThat(cache.allowRequest(), is(true));
+        assertThat(cache.allowRequest(), is(true));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(cache.execute("k", () -> new TestResponse("v1"), ex -> null).getValue(), is("v1"));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testUnexpectedExceptionOfTheProbeReopensTheCircuit() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 10);
+        StaleFallbackCache<TestResponse> cache = newCache(circuitBreaker, null);
+        cache.execute("k", FAILING, ex -> null);
+        Thread.sleep(20);
+
+        try {
+            cache.execute("k", () -> {
+                throw new IllegalStateException("Unexpected");
+            }, ex -> null);
+            fail();
+        } catch (IllegalStateException expected) {
+            // rethrown
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testUnreportedProbeIsReplacedAfterTheOpenDuration() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 10);
+        circuitBreaker.onFailure();
+        Thread.sleep(20);
+
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+        Thread.sleep(20);
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+    }
+
+    @Test
+    public void testClientErrorsAndDeadlinesDoNotOpenTheCircuit() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 60000);
+        StaleFallbackCache<TestResponse> cache = newCache(circuitBreaker, null);
+
+        cache.execute("k", () -> {
+            throw new SearchUnavailableException("Bad request",
+                new ElasticsearchStatusException("parse_exception", RestStatus.BAD_REQUEST));
+        }, ex -> null);
+        cache.execute("k", () -> {
+            throw new SearchUnavailableException("Deadline", new SearchDeadlineExceededException("test", 50));
+        }, ex -> null);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        cache.execute("k", () -> {
+            throw new SearchUnavailableException("Overloaded",
+                new ElasticsearchStatusException("rejected", RestStatus.TOO_MANY_REQUESTS));
+        }, ex -> null);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testPartialResponsesAreNotCached() {
+        StaleFallbackCache<TestResponse> cache = newCache(new CircuitBreaker(5, 60000), null);
+        TestResponse partial = new TestResponse("partial");
+        partial.setPartial(true);
+        cache.execute("k", () -> partial, ex -> null);
+
+        assertThat(cache.execute("k", FAILING, ex -> null), nullValue());
+    }
+
+    @Test
+    public void testPersistsEntriesAcrossInstances() throws Exception {
+        Path file = tmp.getRoot().toPath().resolve("fallback.json");
+        StaleFallbackCache<TestResponse> cache = newCache(new CircuitBreaker(5, 60000), file);
+        cache.execute("k", () -> new TestResponse("v1"), ex -> null);
+        cache.close();
+
+        StaleFallbackCache<TestResponse> restored = newCache(new CircuitBreaker(5, 60000), file);
+        assertThat(restored.size(), is(1));
+        assertThat(restored.execute("k", FAILING, ex -> null).getValue(), is("v1"));
+        restored.close();
+    }
+
+    private static StaleFallbackCache<TestResponse> newCache(CircuitBreaker circuitBreaker, Path file) {
+        return new StaleFallbackCache<>("test", 100, TestResponse.class, circuitBreaker, file, 0);
+    }
+}
@@ -0,0 +1,118 @@
+package com.griddynamics.esgraduationproject.searchcommons.limit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void testRejectsAboveLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 1000, 0.9, 1);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        assertThat(first, notNullValue());
+        assertThat(second, notNullValue());
+        assertThat(limiter.tryAcquire(), nullValue());
+        assertThat(limiter.getInFlight(), is(2));
+        assertThat(limiter.getRejectedCount(), is(1L));
+
+        // Double release must not free two slots
+        first.release();
+        first.release();
+        assertThat(limiter.getInFlight(), is(1));
+    }
+
+    @Test
+    public void testLimitGrowsOnFastRequestsWhenUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 1000, 0.9, 1);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        limiter.tryAcquire().release(); // 2 in flight out of 2: 1 sample of the window of 2
+        assertThat(limiter.getLimit(), is(2));
+        first.release(); // 1 in flight out of 2: the window is complete, limit grows to 3
+        assertThat(limiter.getLimit(), is(3));
+
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire().release(); // 1 in flight out of 3: limit is not used enough to grow
+        }
+        assertThat(limiter.getLimit(), is(3));
+    }
+
+    @Test
+    public void testDropRestartsTheWindow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 3, 3, 10, 1000, 0.9, 1);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit third = limiter.tryAcquire();
+        third.release();
+        second.release();
+        first.drop(); // limit stays at min 3, the 2 samples are discarded
+        assertThat(limiter.getLimit(), is(3));
+
+        AdaptiveConcurrencyLimiter.Permit[] permits = {limiter.tryAcquire(), limiter.tryAcquire(), limiter.tryAcquire()};
+        permits[2].release();
+        permits[1].release();
+        assertThat(limiter.getLimit(), is(3));
+        permits[0].release(); // 1 in flight out of 3 doesn't count
+        assertThat(limiter.getLimit(), is(3));
+    }
+
+    @Test
+    public void testLimitBacksOffOnDropsButNotBelowMin() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 2, 10, 1000, 0.5, 1);
+
+        limiter.tryAcquire().drop();
+        assertThat(limiter.getLimit(), lessThan(10));
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire().drop();
+        }
+        assertThat(limiter.getLimit(), is(2));
+    }
+
+    @Test
+    public void testConcurrentSlowRequestsBackOffOnce() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 10, 1, 0.5, 1);
+
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            permits.add(limiter.tryAcquire());
+        }
+        Thread.sleep(5);
+        permits.forEach(AdaptiveConcurrencyLimiter.Permit::release); // all slower than 1 ms
+        assertThat(limiter.getLimit(), is(5));
+
+        // A request started after the decrease backs off again
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        Thread.sleep(5);
+        permit.release();
+        assertThat(limiter.getLimit(), is(2));
+    }
+
+    @Test
+    public void testExecuteThrowsWhenLimitReached() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 1000, 0.9, 3);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+
+        try {
+            limiter.execute(() -> "never");
+            throw new AssertionError("Exception expected");
+        } catch (ConcurrencyLimitExceededException ex) {
+            assertThat(ex.getRetryAfterSeconds(), is(3));
+        }
+
+        permit.release();
+        assertThat(limiter.execute(() -> "ok"), is("ok"));
+        assertThat(limiter.getInFlight(), is(0));
+    }
+}
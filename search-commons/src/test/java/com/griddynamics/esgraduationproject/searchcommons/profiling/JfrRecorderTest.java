@@ -0,0 +1,134 @@
+package com.griddynamics.esgraduationproject.searchcommons.profiling;
+
+import com.griddynamics.esgraduationproject.searchcommons.metrics.StageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Name;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class JfrRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JfrRecorder jfrRecorder;
+
+    @After
+    public void tearDown() {
+        if (jfrRecorder != null) {
+            jfrRecorder.close();
+        }
+    }
+
+    @Test
+    public void testSearchEventWithStageTimesIsDumped() throws IOException {
+        jfrRecorder = new JfrRecorder("test", newSettings(true), Collections.singletonList(TestSearchEvent.class));
+        StageMetrics stageMetrics = new StageMetrics(new SimpleMeterRegistry(), "test");
+
+        TestSearchEvent event = new TestSearchEvent();
+        event.start("red  running shoes");
+        event.setFuzziness("0,1,1");
+        stageMetrics.record(StageMetrics.ES_ROUND_TRIP, "combined", TimeUnit.MILLISECONDS.toNanos(30));
+        stageMetrics.recordTook("combined", 20);
+        stageMetrics.record(StageMetrics.RESPONSE_MAPPING, "combined", TimeUnit.MILLISECONDS.toNanos(2));
+        event.finish(42L, null, true);
+        assertThat(SearchEvent.current(), nullValue());
+
+        Path dump = jfrRecorder.dump();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+            .filter(recorded -> recorded.getEventType().getName().equals("test.Search"))
+            .collect(Collectors.toList());
+        assertThat(events.size(), is(1));
+        RecordedEvent recorded = events.get(0);
+        assertThat(recorded.getInt("queryLength"), is(18));
+        assertThat(recorded.getInt("wordCount"), is(3));
+        assertThat(recorded.getString("fuzziness"), is("0,1,1"));
+        assertThat(recorded.getString("queryMode"), is("combined"));
+        assertThat(recorded.getLong("hits"), is(42L));
+        assertThat(recorded.getDuration("esTime"), is(Duration.ofMillis(30)));
+        assertThat(recorded.getDuration("esTook"), is(Duration.ofMillis(20)));
+        assertThat(recorded.getDuration("mappingTime"), is(Duration.ofMillis(2)));
+        assertThat(recorded.getString("outcome"), is("partial"));
+    }
+
+    @Test
+    public void testDetachedEventIsFinishedOnAnotherThread() throws IOException, InterruptedException {
+        jfrRecorder = new JfrRecorder("test", newSettings(true), Collections.singletonList(TestSearchEvent.class));
+
+        TestSearchEvent event = new TestSearchEvent();
+        event.startDetached("shoes", "req-1");
+        assertThat(SearchEvent.current(), nullValue());
+        Thread thread = new Thread(() -> event.finish(7L, true, null));
+        thread.start();
+        thread.join();
+
+        Path dump = jfrRecorder.dump();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+            .filter(recorded -> recorded.getEventType().getName().equals("test.Search"))
+            .collect(Collectors.toList());
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getString("requestId"), is("req-1"));
+        assertThat(events.get(0).getLong("hits"), is(7L));
+        assertThat(events.get(0).getString("outcome"), is("stale"));
+        assertThat(events.get(0).hasField("detached"), is(false));
+    }
+
+    @Test
+    public void testOnlyTheLastDumpIsKept() throws IOException, InterruptedException {
+        jfrRecorder = new JfrRecorder("test", newSettings(true), Collections.singletonList(TestSearchEvent.class));
+
+        Path first = jfrRecorder.dump();
+        // Dump names have a second resolution
+        Thread.sleep(1100);
+        Path second = jfrRecorder.dump();
+
+        assertThat(Files.exists(first), is(false));
+        assertThat(Files.exists(second), is(true));
+        assertThat(folder.getRoot().list().length, is(1));
+        assertThat(jfrRecorder.getStatus().get("lastDump"), is(second.toString()));
+    }
+
+    @Test
+    public void testNothingIsRecordedUntilStarted() throws IOException {
+        jfrRecorder = new JfrRecorder("test", newSettings(false), Collections.singletonList(TestSearchEvent.class));
+
+        TestSearchEvent event = new TestSearchEvent();
+        event.start("shoes");
+        assertThat(SearchEvent.current(), nullValue());
+        event.finish(1L, null, null);
+        assertThat(jfrRecorder.dump(), nullValue());
+        assertThat(jfrRecorder.getStatus().get("running"), is(false));
+
+        jfrRecorder.start(60L, 10L);
+        assertThat(jfrRecorder.getStatus().get("running"), is(true));
+        assertThat(jfrRecorder.getStatus().get("maxAgeSeconds"), is(60L));
+    }
+
+    private JfrSettings newSettings(boolean enabled) {
+        JfrSettings settings = new JfrSettings();
+        settings.setEnabled(enabled);
+        settings.setDumpDir(folder.getRoot().getPath());
+        return settings;
+    }
+
+    @Name("test.Search")
+    static class TestSearchEvent extends SearchEvent {
+    }
+}
@@ -0,0 +1,32 @@
+package com.griddynamics.esgraduationproject.searchcommons.shadow;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResultOverlapTest {
+
+    @Test
+    public void testJaccardOfTopIds() {
+        assertThat(ResultOverlap.jaccard(Arrays.asList("1", "2", "3"), Arrays.asList("3", "2", "1")), is(1.0));
+        assertThat(ResultOverlap.jaccard(Arrays.asList("1", "2", "3"), Arrays.asList("2", "3", "4")), is(0.5));
+        assertThat(ResultOverlap.jaccard(Arrays.asList("1", "2"), Arrays.asList("3", "4")), is(0.0));
+        assertThat(ResultOverlap.jaccard(Collections.emptyList(), Collections.emptyList()), is(1.0));
+    }
+
+    @Test
+    public void testSpearmanOfCommonIds() {
+        assertThat(ResultOverlap.spearman(Arrays.asList("1", "2", "3"), Arrays.asList("1", "2", "3")), is(1.0));
+        assertThat(ResultOverlap.spearman(Arrays.asList("1", "2", "3"), Arrays.asList("3", "2", "1")), is(-1.0));
+        // Common ids 1, 2, 3 ranked 1 2 3 and 1 3 2: 1 - 6 * 2 / (3 * 8)
+        assertThat(ResultOverlap.spearman(Arrays.asList("1", "x", "2", "3"), Arrays.asList("1", "3", "y", "2")),
+            closeTo(0.5, 1e-9));
+        assertThat(ResultOverlap.spearman(Arrays.asList("1", "2"), Arrays.asList("1", "3")), nullValue());
+    }
+}
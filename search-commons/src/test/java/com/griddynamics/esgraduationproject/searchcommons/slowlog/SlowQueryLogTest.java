@@ -0,0 +1,136 @@
+package com.griddynamics.esgraduationproject.searchcommons.slowlog;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.griddynamics.esgraduationproject.searchcommons.es.SearchDeadlineExceededException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SlowQueryLogTest {
+
+    private static final SearchRequest SEARCH_REQUEST = new SearchRequest("typeaheads")
+        .source(new SearchSourceBuilder().query(QueryBuilders.prefixQuery("name", "sho")));
+
+    @Test
+    public void testDeadlineExceededSearchIsRecorded() {
+        SlowQueryLog slowQueryLog = new SlowQueryLog("typeahead", newSettings(3), null);
+
+        slowQueryLog.onSearchCompleted(SEARCH_REQUEST, "req-1",
+            null, new SearchDeadlineExceededException("typeahead", 50), TimeUnit.MILLISECONDS.toNanos(50));
+
+        List<SlowQueryRecord> records = slowQueryLog.getRecords();
+        assertThat(records.size(), is(1));
+        assertThat(records.get(0).getRequestId(), is("req-1"));
+        assertThat(records.get(0).isDeadlineExceeded(), is(true));
+        assertThat(records.get(0).getDurationMs(), is(50L));
+        assertThat(records.get(0).getSource(), containsString("\"prefix\""));
+    }
+
+    @Test
+    public void testOtherErrorsAreNotRecorded() {
+        SlowQueryLog slowQueryLog = new SlowQueryLog("typeahead", newSettings(3), null);
+
+        slowQueryLog.onSearchCompleted(SEARCH_REQUEST, "req-1",
+            null, new IOException("Connection refused"), TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(slowQueryLog.getRecords().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testOldestRecordsAreOverwritten() {
+        SlowQueryLog slowQueryLog = new SlowQueryLog("typeahead", newSettings(3), null);
+        for (int i = 1; i <= 5; i++) {
+            slowQueryLog.onSearchCompleted(SEARCH_REQUEST, "req-" + i,
+                null, new SearchDeadlineExceededException("typeahead", 50), TimeUnit.MILLISECONDS.toNanos(50));
+        }
+
+        List<String> requestIds = slowQueryLog.getRecords().stream()
+            .map(SlowQueryRecord::getRequestId)
+            .collect(Collectors.toList());
+        assertThat(requestIds, contains("req-5", "req-4", "req-3"));
+
+        slowQueryLog.clear();
+        assertThat(slowQueryLog.getRecords().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testProfilesOverTheInFlightCapAreDropped() {
+        SlowQuerySettings settings = newSettings(3);
+        settings.setProfileEnabled(true);
+        // Only the in-flight cap is exercised
+        ProfileCapturingLog slowQueryLog = new ProfileCapturingLog(settings,
+            RateLimiter.create(Double.POSITIVE_INFINITY));
+
+        search(slowQueryLog, "req-1");
+        search(slowQueryLog, "req-2");
+        assertThat(slowQueryLog.listeners.size(), is(1));
+
+        slowQueryLog.listeners.get(0).onFailure(new IOException("Connection refused"));
+        search(slowQueryLog, "req-3");
+        assertThat(slowQueryLog.listeners.size(), is(2));
+
+        List<Boolean> dropped = slowQueryLog.getRecords().stream()
+            .map(SlowQueryRecord::getProfileDropped)
+            .collect(Collectors.toList());
+        assertThat(dropped, contains(nullValue(), is(true), nullValue()));
+    }
+
+    @Test
+    public void testProfilesOverThePerMinuteCapAreDropped() {
+        SlowQuerySettings settings = newSettings(3);
+        settings.setProfileEnabled(true);
+        settings.setMaxProfilesPerMinute(1);
+        settings.setMaxProfilesInFlight(10);
+        ProfileCapturingLog slowQueryLog = new ProfileCapturingLog(settings,
+            RateLimiter.create(settings.getMaxProfilesPerMinute() / 60.0));
+
+        search(slowQueryLog, "req-1");
+        search(slowQueryLog, "req-2");
+
+        assertThat(slowQueryLog.listeners.size(), is(1));
+        assertThat(slowQueryLog.getRecords().get(0).getProfileDropped(), is(true));
+    }
+
+    private static void search(SlowQueryLog slowQueryLog, String requestId) {
+        slowQueryLog.onSearchCompleted(SEARCH_REQUEST, requestId,
+            null, new SearchDeadlineExceededException("typeahead", 50), TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    private static SlowQuerySettings newSettings(int capacity) {
+        SlowQuerySettings settings = new SlowQuerySettings();
+        settings.setThresholdMs(100);
+        settings.setSampleRate(0);
+        settings.setCapacity(capacity);
+        return settings;
+    }
+
+    // Keeps the profile searches pending instead of sending them
+    private static class ProfileCapturingLog extends SlowQueryLog {
+        final List<ActionListener<SearchResponse>> listeners = new ArrayList<>();
+
+        ProfileCapturingLog(SlowQuerySettings settings, RateLimiter profileRateLimiter) {
+            super("typeahead", settings, null, profileRateLimiter);
+        }
+
+        @Override
+        void sendProfileSearch(SearchRequest profileRequest, String profileRequestId,
+                               ActionListener<SearchResponse> listener) {
+            listeners.add(listener);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.griddynamics.esgraduationproject.searchcommons.warmup;
+
+import com.griddynamics.esgraduationproject.searchcommons.tracing.RequestIds;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class WarmUpTest {
+
+    @Test
+    public void testCorpusIsReplayedForEachIteration() {
+        Set<String> requestIds = ConcurrentHashMap.newKeySet();
+        WarmUp warmUp = new WarmUp("typeahead", newSettings(3, 60), Arrays.asList("{\"a\":1}", "{\"b\":2}"),
+            body -> requestIds.add(RequestIds.current()));
+
+        assertThat(warmUp.isReady(), is(false));
+        warmUp.run();
+
+        assertThat(warmUp.isReady(), is(true));
+        assertThat(warmUp.getState(), is(WarmUp.State.DONE));
+        assertThat(warmUp.getRequests(), is(6L));
+        assertThat(requestIds.size(), is(6));
+    }
+
+    @Test
+    public void testFailedRequestsAreCountedAndDontStopWarmUp() {
+        WarmUp warmUp = new WarmUp("typeahead", newSettings(2, 60), Arrays.asList("ok", "fail"), body -> {
+            if (body.equals("fail")) {
+                throw new IllegalStateException("ES is down");
+            }
+        });
+
+        warmUp.run();
+
+        assertThat(warmUp.isReady(), is(true));
+        assertThat(warmUp.getRequests(), is(4L));
+        assertThat(warmUp.getErrors(), is(2L));
+    }
+
+    @Test
+    public void testWarmUpIsCutShortAfterMaxDuration() {
+        WarmUp warmUp = new WarmUp("typeahead", newSettings(1000, 0), Collections.singletonList("slow"), body -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        warmUp.run();
+
+        assertThat(warmUp.isReady(), is(true));
+        assertThat(warmUp.getRequests(), lessThan(1000L));
+    }
+
+    @Test
+    public void testDisabledWarmUpIsReady() {
+        WarmUpSettings settings = newSettings(3, 60);
+        settings.setEnabled(false);
+
+        WarmUp warmUp = new WarmUp("typeahead", settings, Collections.singletonList("{}"), body -> { });
+
+        assertThat(warmUp.isReady(), is(true));
+        assertThat(warmUp.getState(), is(WarmUp.State.DISABLED));
+    }
+
+    @Test
+    public void testCommentsAndBlankLinesAreSkipped() throws IOException {
+        List<String> corpus = WarmUp.readCorpus(new ByteArrayResource(
+            "# prefixes\n{\"textQuery\":\"wom\"}\n\n  {\"textQuery\":\"shoe\"}  \n".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(corpus, contains("{\"textQuery\":\"wom\"}", "{\"textQuery\":\"shoe\"}"));
+    }
+
+    private static WarmUpSettings newSettings(int iterations, long maxDurationSeconds) {
+        WarmUpSettings settings = new WarmUpSettings();
+        settings.setIterations(iterations);
+        settings.setConcurrency(2);
+        settings.setMaxDurationSeconds(maxDurationSeconds);
+        return settings;
+    }
+}